@@ -7,6 +7,12 @@ This file is the entry point for the program.
 
 package AES;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
 import static java.lang.System.exit;
 
 /**
@@ -15,21 +21,364 @@ import static java.lang.System.exit;
 public class AESDriver {
     /**
      * Runs the AES.
+     * <p>
+     * Usage: {@code AESDriver [--threads N] [filename...]}. Without a filename the user is prompted for one.
+     * {@code --threads N} tallies the ballots on {@code N} threads. Several filenames, or the name of a directory,
+     * are read as the precinct files of one election by a {@link PrecinctLoader}. The filename {@code -} reads the
+     * ballot data from standard input, and named pipes are read as they are written; see {@link FileInput#open}.
+     * {@code --convert OUT} writes the ballot file to {@code OUT} in the binary ballot format instead of counting it,
+     * with the record encoding chosen by {@code --encoding fixed|varint|bitmap} (default {@code fixed}).
+     * {@code --spoiled skip|quarantine} chooses what happens to overvotes and malformed ballot lines (default
+     * {@code skip}); either way they are not counted, and {@code quarantine} also lists them in the audit file.
+     * {@code --checkpoint N} saves the progress of the tally every {@code N} ballots, or every {@code N} seconds if
+     * written as {@code Ns}, and resumes an interrupted tally of the same file; see {@link TallyCheckpoint}.
+     * {@code --read-ahead K} reads the file on a background thread into buffers of {@code K} KiB while the tally
+     * counts, with up to {@code --queue-depth N} filled buffers waiting (default 4), and prints how long each side
+     * stalled; see {@link FileInput#setReadAhead(int, int)}. {@code --index K} writes a {@link BallotIndex} of the
+     * offset of every {@code K}-th ballot during the tally, for random access to the ballots later.
+     * {@code --merkle K} hashes the file into a {@link BallotMerkleTree} of {@code K} KiB chunks on the
+     * {@code --threads} threads while it is tallied, and records the root in the audit file.
+     * {@code --method M} divides the seats with the {@link ApportionmentMethod} named {@code M} (default {@code lra}).
+     * {@code --random splittable|secure} chooses the random source of the tiebreaks (default {@code splittable}), and
+     * {@code --seed N} seeds it to replay the tiebreaks of an earlier run from the seed in its audit file.
+     * {@code --simulate T} repeats every tie the election broke {@code T} times on the {@code --threads} threads and
+     * writes a report testing that the tiebreaks are uniform; see {@link TiebreakSimulation}.
+     * {@code --batch MANIFEST} runs the independent district elections listed in {@code MANIFEST}, one ballot file
+     * or precinct directory per line, on {@code --threads} threads in this JVM, writing an audit file per district
+     * and a summary; {@code --method}, {@code --spoiled}, {@code --random} and {@code --seed} apply to every district.
+     * See {@link BatchRunner}. {@code --live S} prints a seat projection of the ballots tallied so far every
+     * {@code S} seconds while the tally runs; see {@link LiveResults}. {@code --audit F,...} chooses the audit outputs
+     * from {@code text}, {@code jsonl} and {@code columnar} (default {@code text}); see {@link AuditExport}. The audit
+     * is written on a background thread while the winners are displayed, and the program exits once it is forced to
+     * disk; see {@link AuditJob}. {@code --verify AUDIT} recounts the ballot files named, or those the audit commits
+     * to, on all threads (or {@code --threads N}), replays the audit's tiebreaks, and writes a report of every item
+     * of the audit the recount differs from; see {@link AuditVerifier}.
      *
      * @param args command line arguments
      */
     public static void main(String[] args) {
         try {
-            FileInput fin = args.length == 0 ? new FileInput() : new FileInput(args[0]);
-            Election election = fin.isOPL() ? new OPLElection() : new CPLElection();
-            election.processBallotData(fin);
+            List<String> filenames = new ArrayList<>();
+            int threadCount = 1;
+            boolean threadsGiven = false;
+            String convertTo = null;
+            BinaryBallotFile.Encoding encoding = BinaryBallotFile.Encoding.FIXED;
+            BallotStatistics.Policy spoilagePolicy = BallotStatistics.Policy.SKIP;
+            long[] checkpointInterval = null;
+            int readAheadSize = 0;
+            int queueDepth = ReadAheadStream.DEFAULT_QUEUE_DEPTH;
+            int indexStride = 0;
+            int merkleChunkSize = 0;
+            ApportionmentMethod apportionmentMethod = ApportionmentMethod.LARGEST_REMAINDER;
+            Tiebreaker.Source randomSource = Tiebreaker.Source.SPLITTABLE;
+            Long seed = null;
+            int simulationTrials = 0;
+            String manifest = null;
+            int liveSeconds = 0;
+            Set<AuditExport.Format> auditFormats = EnumSet.of(AuditExport.Format.TEXT);
+            String verifyAudit = null;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--threads" -> {
+                        threadCount = parseCount(args, ++i, "--threads");
+                        threadsGiven = true;
+                    }
+                    case "--convert" -> convertTo = parseValue(args, ++i, "--convert");
+                    case "--encoding" -> encoding = parseEncoding(parseValue(args, ++i, "--encoding"));
+                    case "--spoiled" -> spoilagePolicy = parsePolicy(parseValue(args, ++i, "--spoiled"));
+                    case "--checkpoint" -> checkpointInterval = parseInterval(parseValue(args, ++i, "--checkpoint"));
+                    case "--read-ahead" -> readAheadSize = parseCount(args, ++i, "--read-ahead");
+                    case "--queue-depth" -> queueDepth = parseCount(args, ++i, "--queue-depth");
+                    case "--index" -> indexStride = parseCount(args, ++i, "--index");
+                    case "--merkle" -> merkleChunkSize = kibibytes(parseCount(args, ++i, "--merkle"), "--merkle");
+                    case "--method" -> apportionmentMethod = ApportionmentMethod.forName(parseValue(args, ++i,
+                            "--method"));
+                    case "--random" -> randomSource = parseSource(parseValue(args, ++i, "--random"));
+                    case "--seed" -> seed = parseSeed(parseValue(args, ++i, "--seed"));
+                    case "--simulate" -> simulationTrials = parseCount(args, ++i, "--simulate");
+                    case "--batch" -> manifest = parseValue(args, ++i, "--batch");
+                    case "--live" -> liveSeconds = parseCount(args, ++i, "--live");
+                    case "--audit" -> auditFormats = parseAuditFormats(parseValue(args, ++i, "--audit"));
+                    case "--verify" -> verifyAudit = parseValue(args, ++i, "--verify");
+                    default -> filenames.add(args[i]);
+                }
+            }
+
+            if (convertTo != null) {
+                if (filenames.size() != 1) {
+                    throw new RuntimeException("Error: --convert needs exactly one ballot file");
+                }
+                int ballots = BinaryBallotFile.convert(filenames.get(0), convertTo, encoding);
+                System.out.println("Binary Ballot File Generated: " + convertTo + " (" + ballots + " ballots)");
+                return;
+            }
+            if (manifest != null) {
+                if (!filenames.isEmpty()) {
+                    throw new RuntimeException("Error: --batch reads the district files from its manifest");
+                }
+                BatchRunner batch = new BatchRunner(BatchRunner.readManifest(manifest), threadCount);
+                batch.setApportionmentMethod(apportionmentMethod);
+                batch.setSpoilagePolicy(spoilagePolicy);
+                batch.setTiebreaker(randomSource, seed);
+                batch.run();
+                String summary = batch.writeSummary();
+                System.out.println("Batch Summary Generated: " + summary);
+                if (batch.getFailureCount() > 0) {
+                    throw new RuntimeException("Error: " + batch.getFailureCount() + " of "
+                            + batch.getResults().length + " districts failed; see " + summary);
+                }
+                return;
+            }
+            if (verifyAudit != null) {
+                int threads = threadsGiven ? threadCount : Runtime.getRuntime().availableProcessors();
+                AuditVerifier verifier = new AuditVerifier(verifyAudit, filenames, threads);
+                int discrepancies = verifier.verify().size();
+                String report = verifier.writeReport();
+                System.out.print(verifier.generateReport());
+                System.out.println("\nVerify Report Generated: " + report);
+                if (discrepancies > 0) {
+                    throw new RuntimeException("Error: The recount differs from \"" + verifyAudit + "\" in "
+                            + discrepancies + " items; see " + report);
+                }
+                return;
+            }
+            if (filenames.size() == 1 && new File(filenames.get(0)).isDirectory()) {
+                filenames = PrecinctLoader.listDirectory(filenames.get(0));
+            }
+
+            LiveResults liveResults = null;
+            if (liveSeconds > 0) {
+                liveResults = new LiveResults();
+                liveResults.start(liveSeconds * 1000L, snapshot -> System.out.println(snapshot.generateReport()));
+            }
+
+            Election election;
+            if (filenames.size() > 1) {
+                PrecinctLoader loader = new PrecinctLoader(filenames, threadCount);
+                loader.setSpoilagePolicy(spoilagePolicy);
+                if (checkpointInterval != null) {
+                    loader.setCheckpointInterval(checkpointInterval[0], checkpointInterval[1]);
+                }
+                if (readAheadSize > 0) {
+                    loader.setReadAhead(kibibytes(readAheadSize, "--read-ahead"), queueDepth);
+                }
+                loader.setIndexStride(indexStride);
+                loader.setMerkleChunkSize(merkleChunkSize);
+                loader.setLiveResults(liveResults);
+                election = loader.load();
+            } else {
+                FileInput fin = filenames.isEmpty() ? new FileInput() : FileInput.open(filenames.get(0));
+                fin.setThreadCount(threadCount);
+                fin.setSpoilagePolicy(spoilagePolicy);
+                if (checkpointInterval != null) {
+                    fin.setCheckpointInterval(checkpointInterval[0], checkpointInterval[1]);
+                }
+                if (readAheadSize > 0) {
+                    fin.setReadAhead(kibibytes(readAheadSize, "--read-ahead"), queueDepth);
+                }
+                if (indexStride > 0) {
+                    fin.setIndexStride(indexStride);
+                }
+                if (merkleChunkSize > 0) {
+                    fin.setMerkleChunkSize(merkleChunkSize);
+                }
+                election = fin.isOPL() ? new OPLElection() : new CPLElection();
+                election.setLiveResults(liveResults);
+                election.processBallotData(fin);
+                if (readAheadSize > 0 && fin.getReadAhead() != null) {
+                    System.out.println(fin.getReadAhead().generateStallReport());
+                }
+            }
+            if (liveResults != null) {
+                liveResults.stop();
+            }
+            election.setApportionmentMethod(apportionmentMethod);
+            election.setTiebreaker(seed != null ? new Tiebreaker(randomSource, seed) : new Tiebreaker(randomSource));
             election.allocatePartySeats();
             election.assignCandidateSeats();
-            election.displayWinners();
-            election.generateAuditFile();
+            // the audit is written from a snapshot on its own thread while the results are shown
+            AuditJob audit = AuditJob.start(election, auditFormats);
+            try {
+                election.displayWinners();
+                if (simulationTrials > 0) {
+                    String report = TiebreakSimulation.writeReport(election, simulationTrials, threadCount);
+                    System.out.println("Tiebreak Report Generated: " + report);
+                }
+            } catch (RuntimeException e) {
+                // still finish the audit, without letting its failure hide the first one
+                try {
+                    audit.await();
+                } catch (RuntimeException auditFailure) {
+                    e.addSuppressed(auditFailure);
+                }
+                throw e;
+            }
+            System.out.print("\n" + audit.await());
         } catch (RuntimeException e) {
             System.err.println(e.getMessage());
+            for (Throwable suppressed : e.getSuppressed()) {
+                System.err.println(suppressed.getMessage());
+            }
             exit(1);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the value of a command line option.
+     *
+     * @param args   command line arguments
+     * @param index  the index of the option's value
+     * @param option the option name, for error messages
+     * @return the value
+     * @throws RuntimeException if the value is missing
+     */
+    protected static String parseValue(String[] args, int index, String option) throws RuntimeException {
+        if (index >= args.length) {
+            throw new RuntimeException("Error: Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Parses a binary ballot record encoding name.
+     *
+     * @param name the encoding name, e.g. {@code "varint"}
+     * @return the encoding
+     * @throws RuntimeException if there is no encoding with that name
+     */
+    protected static BinaryBallotFile.Encoding parseEncoding(String name) throws RuntimeException {
+        for (BinaryBallotFile.Encoding encoding : BinaryBallotFile.Encoding.values()) {
+            if (encoding.name().equalsIgnoreCase(name)) {
+                return encoding;
+            }
+        }
+        throw new RuntimeException("Error: Unknown encoding \"" + name + "\"; use fixed, varint or bitmap");
+    }
+
+    /**
+     * Parses a spoilage policy name.
+     *
+     * @param name the policy name, e.g. {@code "quarantine"}
+     * @return the policy
+     * @throws RuntimeException if there is no policy with that name
+     */
+    protected static BallotStatistics.Policy parsePolicy(String name) throws RuntimeException {
+        for (BallotStatistics.Policy policy : BallotStatistics.Policy.values()) {
+            if (policy.name().equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+        throw new RuntimeException("Error: Unknown spoilage policy \"" + name + "\"; use skip or quarantine");
+    }
+
+    /**
+     * Parses a comma-separated list of audit output names.
+     *
+     * @param names the output names, e.g. {@code "text,jsonl"}
+     * @return the outputs
+     * @throws RuntimeException if there is no output with one of the names
+     */
+    protected static Set<AuditExport.Format> parseAuditFormats(String names) throws RuntimeException {
+        Set<AuditExport.Format> formats = EnumSet.noneOf(AuditExport.Format.class);
+        for (String name : names.split(",", -1)) {
+            AuditExport.Format match = null;
+            for (AuditExport.Format format : AuditExport.Format.values()) {
+                if (format.name().equalsIgnoreCase(name.trim())) {
+                    match = format;
+                }
+            }
+            if (match == null) {
+                throw new RuntimeException("Error: Unknown audit output \"" + name + "\"; use text, jsonl or columnar");
+            }
+            formats.add(match);
+        }
+        return formats;
+    }
+
+    /**
+     * Parses a tiebreak random source name.
+     *
+     * @param name the source name, e.g. {@code "secure"}
+     * @return the source
+     * @throws RuntimeException if there is no source with that name
+     */
+    protected static Tiebreaker.Source parseSource(String name) throws RuntimeException {
+        for (Tiebreaker.Source source : Tiebreaker.Source.values()) {
+            if (source.name().equalsIgnoreCase(name)) {
+                return source;
+            }
+        }
+        throw new RuntimeException("Error: Unknown random source \"" + name + "\"; use splittable or secure");
+    }
+
+    /**
+     * Parses a tiebreak seed.
+     *
+     * @param text the seed, any long
+     * @return the seed
+     * @throws RuntimeException if the seed is not a long
+     */
+    protected static long parseSeed(String text) throws RuntimeException {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Error: --seed needs an integer, got \"" + text + "\"");
+        }
+    }
+
+    /**
+     * Parses a checkpoint interval, a number of ballots or a number of seconds followed by {@code s}.
+     *
+     * @param text the interval, e.g. {@code "1000000"} or {@code "30s"}
+     * @return the interval as {ballots, seconds}, one of which is 0
+     * @throws RuntimeException if the interval is not a positive integer, optionally followed by {@code s}
+     */
+    protected static long[] parseInterval(String text) throws RuntimeException {
+        boolean seconds = text.endsWith("s");
+        try {
+            long value = Long.parseLong(seconds ? text.substring(0, text.length() - 1) : text);
+            if (value > 0) {
+                return seconds ? new long[]{0, value} : new long[]{value, 0};
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new RuntimeException("Error: --checkpoint needs a positive number of ballots or seconds (e.g. 30s), "
+                + "got \"" + text + "\"");
+    }
+
+    /**
+     * Converts a size in KiB to bytes.
+     *
+     * @param size   the size in KiB
+     * @param option the option name, for error messages
+     * @return the size in bytes
+     * @throws RuntimeException if the size does not fit in an int
+     */
+    protected static int kibibytes(int size, String option) throws RuntimeException {
+        if (size > Integer.MAX_VALUE / 1024) {
+            throw new RuntimeException("Error: " + option + " size is too large, got " + size + " KiB");
+        }
+        return size * 1024;
+    }
+
+    /**
+     * Parses the positive integer value of a command line option.
+     *
+     * @param args   command line arguments
+     * @param index  the index of the option's value
+     * @param option the option name, for error messages
+     * @return the parsed value
+     * @throws RuntimeException if the value is missing or is not a positive integer
+     */
+    protected static int parseCount(String[] args, int index, String option) throws RuntimeException {
+        String text = parseValue(args, index, option);
+        try {
+            int value = Integer.parseInt(text);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new RuntimeException("Error: " + option + " needs a positive integer, got \"" + text + "\"");
+    }
+}
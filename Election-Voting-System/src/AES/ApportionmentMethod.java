@@ -0,0 +1,111 @@
+/*
+ApportionmentMethod.java
+
+The ApportionmentMethod abstract class defines how the seats of an election are divided among its parties.
+
+*/
+
+package AES;
+
+/**
+ * A method of dividing the seats of an election among the parties by their votes. A method fills the rows of
+ * {@link Election#allocationData}: row 0 holds the votes and row 4 the seats won, and the meaning of rows 1 to 3
+ * depends on the method and is named by {@link #getColumnNames()} in the audit file. No party wins more seats than
+ * it has candidates; seats left over once every candidate has one stay empty.
+ */
+public abstract class ApportionmentMethod {
+    /**
+     * The largest remainder method with the Hare quota, the default.
+     */
+    public static final ApportionmentMethod LARGEST_REMAINDER = new LargestRemainderMethod();
+
+    /**
+     * The D'Hondt highest averages method, with divisors 1, 2, 3, ...
+     */
+    public static final ApportionmentMethod D_HONDT = new DivisorMethod(DivisorMethod.Rule.D_HONDT);
+
+    /**
+     * The Sainte-Lague highest averages method, with divisors 1, 3, 5, ...
+     */
+    public static final ApportionmentMethod SAINTE_LAGUE = new DivisorMethod(DivisorMethod.Rule.SAINTE_LAGUE);
+
+    /**
+     * The modified Sainte-Lague highest averages method, with divisors 1.4, 3, 5, ...
+     */
+    public static final ApportionmentMethod MODIFIED_SAINTE_LAGUE =
+            new DivisorMethod(DivisorMethod.Rule.MODIFIED_SAINTE_LAGUE);
+
+    /**
+     * The Huntington-Hill highest averages method, with divisors sqrt(s * (s + 1)) for a party holding s seats.
+     */
+    public static final ApportionmentMethod HUNTINGTON_HILL = new DivisorMethod(DivisorMethod.Rule.HUNTINGTON_HILL);
+
+    /**
+     * Finds a method by its command line name.
+     *
+     * @param name the name: {@code lra}, {@code dhondt}, {@code sainte-lague}, {@code modified-sainte-lague} or
+     *             {@code huntington-hill}.
+     * @return the method.
+     * @throws RuntimeException if there is no method with that name.
+     */
+    public static ApportionmentMethod forName(String name) throws RuntimeException {
+        return switch (name.toLowerCase()) {
+            case "lra" -> LARGEST_REMAINDER;
+            case "dhondt" -> D_HONDT;
+            case "sainte-lague" -> SAINTE_LAGUE;
+            case "modified-sainte-lague" -> MODIFIED_SAINTE_LAGUE;
+            case "huntington-hill" -> HUNTINGTON_HILL;
+            default -> throw new RuntimeException("Error: Unknown apportionment method \"" + name + "\"; use lra, "
+                    + "dhondt, sainte-lague, modified-sainte-lague or huntington-hill");
+        };
+    }
+
+    /**
+     * Gets the name of the method for display.
+     *
+     * @return the name, e.g. {@code "D'Hondt"}.
+     */
+    public abstract String getName();
+
+    /**
+     * Gets the audit file column headers of rows 1 to 3 of the allocation data.
+     *
+     * @return the 3 headers.
+     */
+    public abstract String[] getColumnNames();
+
+    /**
+     * Allocates the seats.
+     *
+     * @param votes       the votes of each party.
+     * @param listSizes   the number of candidates of each party.
+     * @param ballotCount the number of ballots cast.
+     * @param seatCount   the number of seats.
+     * @param election    the election, whose {@link Election#tiebreak(int, int)} settles ties.
+     * @return the allocation data, as described by {@link Election#allocationData}.
+     */
+    public abstract int[][] allocate(int[] votes, int[] listSizes, int ballotCount, int seatCount, Election election);
+
+    /**
+     * Computes how many votes each party would need to gain or lose a seat, from the allocation data this method
+     * produced and without allocating the seats again.
+     *
+     * @param votes          the votes of each party.
+     * @param listSizes      the number of candidates of each party.
+     * @param ballotCount    the number of ballots cast.
+     * @param seatCount      the number of seats.
+     * @param allocationData the allocation data from {@link #allocate(int[], int[], int, int, Election)}.
+     * @return the margins.
+     */
+    public abstract SeatSensitivity computeSensitivity(int[] votes, int[] listSizes, int ballotCount, int seatCount,
+                                                       int[][] allocationData);
+
+    /**
+     * Produces the explanation of the calculation for the audit file.
+     *
+     * @param ballotCount the number of ballots cast.
+     * @param seatCount   the number of seats.
+     * @return the explanation as a displayable String.
+     */
+    public abstract String generateCalculation(int ballotCount, int seatCount);
+}
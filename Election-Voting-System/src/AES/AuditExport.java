@@ -0,0 +1,618 @@
+/*
+AuditExport.java
+
+The AuditExport class writes the machine-readable audit outputs of an election.
+
+*/
+
+package AES;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the machine-readable audit outputs of an election, from the same state as its audit file, in one pass over
+ * the parties and candidates:
+ * <ul>
+ *     <li>a JSON Lines file in UTF-8, one JSON object per line, told apart by its {@code "type"}: an
+ *     {@code "election"} record, a {@code "tiebreaker"} record with the random source and seed, a {@code "tiebreak"}
+ *     record for each tie broken with the options it chose, a {@code "party"} and an {@code "allocation"} record for
+ *     each party, whose rows 1 to 3 are named after the method's audit file columns, and a {@code "candidate"}
+ *     record for each candidate in party and list order, followed by a {@code "winner"} record if the candidate won
+ *     a seat;</li>
+ *     <li>a {@link ColumnarAudit} file, whose columns are written side by side through a buffer each, at offsets
+ *     known from the counts alone.</li>
+ * </ul>
+ */
+public class AuditExport {
+    /**
+     * The audit outputs {@link Election#generateAuditFiles(java.util.Set)} can write.
+     */
+    public enum Format {
+        /**
+         * The human-readable audit file.
+         */
+        TEXT(".txt"),
+        /**
+         * The JSON Lines audit.
+         */
+        JSONL(".jsonl"),
+        /**
+         * The columnar binary audit; see {@link ColumnarAudit}.
+         */
+        COLUMNAR(".aesa");
+
+        /**
+         * The file name extension of the output.
+         */
+        public final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * The size of each column's write buffer, in bytes.
+     */
+    protected static final int COLUMN_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The election exported.
+     */
+    protected final Election election;
+
+    /**
+     * Whether the files are forced to the storage device before they are closed.
+     */
+    protected boolean sync;
+
+    /**
+     * The time the last {@link #write(String, String)} spent writing to the files, in nanoseconds.
+     */
+    protected long writeNanos;
+
+    /**
+     * The time the last {@link #write(String, String)} spent forcing the files to the storage device, in
+     * nanoseconds.
+     */
+    protected long syncNanos;
+
+    /**
+     * Constructs an AuditExport of an election whose seats have been assigned.
+     *
+     * @param election the election.
+     */
+    public AuditExport(Election election) {
+        this.election = election;
+    }
+
+    /**
+     * Sets whether the files are forced to the storage device with {@code fsync} before they are closed.
+     *
+     * @param sync whether to force the files; {@code false} by default.
+     */
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * Gets the time the last {@link #write(String, String)} spent writing to the files, as opposed to formatting.
+     *
+     * @return the time in nanoseconds.
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * Gets the time the last {@link #write(String, String)} spent forcing the files to the storage device.
+     *
+     * @return the time in nanoseconds; 0 unless {@link #setSync(boolean)} was set.
+     */
+    public long getSyncNanos() {
+        return syncNanos;
+    }
+
+    /**
+     * Writes the outputs in one pass.
+     *
+     * @param jsonlFilename    the name of the JSON Lines file, or {@code null} to not write one.
+     * @param columnarFilename the name of the columnar file, or {@code null} to not write one.
+     * @throws RuntimeException if a file could not be written.
+     */
+    public void write(String jsonlFilename, String columnarFilename) throws RuntimeException {
+        Party[] parties = election.parties;
+        List<ArrayList<Candidate>> candidates = election.candidates;
+        int[][] allocationData = election.allocationData;
+        String[] fields = fieldNames(election.apportionmentMethod);
+        int candidateTotal = 0;
+        for (ArrayList<Candidate> list : candidates) {
+            candidateTotal += list.size();
+        }
+
+        writeNanos = 0;
+        syncNanos = 0;
+        AuditWriter json = null;
+        ColumnWriter columns = null;
+        try (AuditWriter jsonFile = jsonlFilename == null ? null
+                : new AuditWriter(jsonlFilename, StandardCharsets.UTF_8);
+             ColumnWriter columnFile = columnarFilename == null ? null
+                     : new ColumnWriter(columnarFilename, parties.length, candidateTotal, sync)) {
+            json = jsonFile;
+            columns = columnFile;
+            if (json != null) {
+                json.setSync(sync);
+                writeElection(json, candidateTotal);
+            }
+            for (int p = 0; p < parties.length; p++) {
+                if (json != null) {
+                    json.append("{\"type\":\"party\",\"party\":").append(p).append(",\"name\":");
+                    string(json, parties[p].getName());
+                    json.append(",\"votes\":").append(parties[p].getVoteCount()).append("}\n");
+                    json.append("{\"type\":\"allocation\",\"party\":").append(p)
+                            .append(",\"votes\":").append(allocationData[0][p])
+                            .append(",\"").append(fields[0]).append("\":").append(allocationData[1][p])
+                            .append(",\"").append(fields[1]).append("\":").append(allocationData[2][p])
+                            .append(",\"").append(fields[2]).append("\":").append(allocationData[3][p])
+                            .append(",\"seats\":").append(allocationData[4][p]).append("}\n");
+                }
+                if (columns != null) {
+                    columns.addParty(parties[p].getName(), allocationData, p);
+                }
+            }
+            for (int p = 0; p < parties.length; p++) {
+                List<Candidate> list = candidates.get(p);
+                for (int c = 0; c < list.size(); c++) {
+                    Candidate candidate = list.get(c);
+                    if (json != null) {
+                        json.append("{\"type\":\"candidate\",\"party\":").append(p).append(",\"index\":").append(c)
+                                .append(",\"name\":");
+                        string(json, candidate.getName());
+                        json.append(",\"votes\":").append(candidate.getVoteCount())
+                                .append(",\"seated\":").append(candidate.isSat() ? "true" : "false").append("}\n");
+                        if (candidate.isSat()) {
+                            json.append("{\"type\":\"winner\",\"party\":").append(p).append(",\"index\":").append(c)
+                                    .append(",\"name\":");
+                            string(json, candidate.getName());
+                            json.append(",\"partyName\":");
+                            string(json, parties[p].getName());
+                            json.append("}\n");
+                        }
+                    }
+                    if (columns != null) {
+                        columns.addCandidate(candidate);
+                    }
+                }
+            }
+            if (columns != null) {
+                columns.finish(election);
+            }
+        } finally {
+            if (json != null) {
+                writeNanos += json.getWriteNanos();
+                syncNanos += json.getSyncNanos();
+            }
+            if (columns != null) {
+                writeNanos += columns.writeNanos;
+                syncNanos += columns.syncNanos;
+            }
+        }
+    }
+
+    /**
+     * Writes the election, tiebreaker and tiebreak records.
+     *
+     * @param json           the writer.
+     * @param candidateTotal the number of candidates.
+     * @throws RuntimeException if the file could not be written.
+     */
+    protected void writeElection(AuditWriter json, int candidateTotal) throws RuntimeException {
+        json.append("{\"type\":\"election\",\"electionType\":");
+        string(json, election.electionType);
+        json.append(",\"parties\":").append(election.parties.length)
+                .append(",\"candidates\":").append(candidateTotal)
+                .append(",\"ballots\":").append(election.ballotCount)
+                .append(",\"seats\":").append(election.seatCount)
+                .append(",\"method\":");
+        string(json, election.apportionmentMethod.getName());
+        json.append("}\n");
+
+        Tiebreaker tiebreaker = election.tiebreaker;
+        json.append("{\"type\":\"tiebreaker\",\"source\":");
+        string(json, tiebreaker.getSource().name().toLowerCase());
+        json.append(",\"seed\":").append(tiebreaker.getSeed())
+                .append(",\"drawn\":").append(tiebreaker.getTiebreakCount()).append("}\n");
+        for (int i = 0; i < election.ties.size(); i++) {
+            int[] tie = election.ties.get(i);
+            json.append("{\"type\":\"tiebreak\",\"options\":").append(tie[0])
+                    .append(",\"winners\":").append(tie[1]).append(",\"selected\":[");
+            int[] selected = election.tieSelections.get(i);
+            for (int j = 0; j < selected.length; j++) {
+                if (j > 0) {
+                    json.append(',');
+                }
+                json.append(selected[j]);
+            }
+            json.append("]}\n");
+        }
+    }
+
+    /**
+     * Gets the JSON field names of rows 1 to 3 of the allocation data, from the method's audit file column headers in
+     * lower camel case, e.g. {@code "seatsByHighestAverage"}.
+     *
+     * @param method the apportionment method.
+     * @return the 3 field names.
+     */
+    protected static String[] fieldNames(ApportionmentMethod method) {
+        String[] columnNames = method.getColumnNames();
+        String[] fields = new String[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            StringBuilder field = new StringBuilder();
+            for (String word : columnNames[i].split("[^A-Za-z0-9]+")) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                field.append(field.length() == 0 ? Character.toLowerCase(word.charAt(0))
+                        : Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+            }
+            fields[i] = field.toString();
+        }
+        return fields;
+    }
+
+    /**
+     * Writes a JSON string, escaping quotes, backslashes and control characters.
+     *
+     * @param json the writer.
+     * @param text the string; {@code null} is written as {@code null}.
+     * @throws RuntimeException if the file could not be written.
+     */
+    protected static void string(AuditWriter json, String text) throws RuntimeException {
+        if (text == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append("\\u00").append(Character.forDigit(c >> 4, 16))
+                                .append(Character.forDigit(c & 0xf, 16));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Writes the columns of a {@link ColumnarAudit} file side by side, each through its own buffer at its own
+     * offset.
+     */
+    protected static class ColumnWriter implements Closeable {
+        /**
+         * The file.
+         */
+        protected final FileChannel channel;
+
+        /**
+         * The number of parties.
+         */
+        protected final int partyCount;
+
+        /**
+         * The number of candidates.
+         */
+        protected final int candidateCount;
+
+        /**
+         * The allocation data rows, candidate starts, candidate votes, name starts, seated flags and name heap
+         * columns, in file order.
+         */
+        protected final Column[] columns;
+
+        /**
+         * The candidate starts column.
+         */
+        protected final Column starts;
+
+        /**
+         * The candidate votes column.
+         */
+        protected final Column votes;
+
+        /**
+         * The name starts column.
+         */
+        protected final Column nameStarts;
+
+        /**
+         * The seated flags column.
+         */
+        protected final Column seated;
+
+        /**
+         * The name heap.
+         */
+        protected final Column heap;
+
+        /**
+         * The number of candidates added.
+         */
+        protected int candidatesAdded;
+
+        /**
+         * Whether the file is forced to the storage device before it is closed.
+         */
+        protected final boolean sync;
+
+        /**
+         * The time spent writing to the file, in nanoseconds.
+         */
+        protected long writeNanos;
+
+        /**
+         * The time spent forcing the file to the storage device, in nanoseconds.
+         */
+        protected long syncNanos;
+
+        /**
+         * Creates or truncates a columnar file.
+         *
+         * @param filename       the name of the file.
+         * @param partyCount     the number of parties.
+         * @param candidateCount the number of candidates.
+         * @param sync           whether to force the file to the storage device before closing it.
+         * @throws RuntimeException if the file could not be created.
+         */
+        protected ColumnWriter(String filename, int partyCount, int candidateCount, boolean sync)
+                throws RuntimeException {
+            try {
+                this.channel = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                throw new RuntimeException("Error: Unable to create or write to the audit file");
+            }
+            this.partyCount = partyCount;
+            this.candidateCount = candidateCount;
+            this.sync = sync;
+            columns = new Column[10];
+            for (int row = 0; row < 5; row++) {
+                columns[row] = new Column(ColumnarAudit.allocationOffset() + 4L * row * partyCount);
+            }
+            starts = columns[5] = new Column(ColumnarAudit.startOffset(partyCount));
+            votes = columns[6] = new Column(ColumnarAudit.votesOffset(partyCount));
+            nameStarts = columns[7] = new Column(ColumnarAudit.nameOffset(partyCount, candidateCount));
+            seated = columns[8] = new Column(ColumnarAudit.seatedOffset(partyCount, candidateCount));
+            heap = columns[9] = new Column(ColumnarAudit.heapOffset(partyCount, candidateCount));
+        }
+
+        /**
+         * Adds a party, in party number order, before any candidate.
+         *
+         * @param name           the party's name.
+         * @param allocationData the election's allocation data.
+         * @param party          the party number.
+         * @throws RuntimeException if the file could not be written.
+         */
+        protected void addParty(String name, int[][] allocationData, int party) throws RuntimeException {
+            for (int row = 0; row < 5; row++) {
+                columns[row].putInt(allocationData[row][party]);
+            }
+            addName(name);
+        }
+
+        /**
+         * Adds a candidate, in party and then list order.
+         *
+         * @param candidate the candidate.
+         * @throws RuntimeException if the file could not be written.
+         */
+        protected void addCandidate(Candidate candidate) throws RuntimeException {
+            votes.putInt(candidate.getVoteCount());
+            seated.put((byte) (candidate.isSat() ? 1 : 0));
+            addName(candidate.getName());
+            candidatesAdded++;
+        }
+
+        /**
+         * Adds a name to the name heap and its start to the name starts.
+         *
+         * @param name the name.
+         * @throws RuntimeException if the heap grows past the largest int offset.
+         */
+        protected void addName(String name) throws RuntimeException {
+            if (heap.written > Integer.MAX_VALUE) {
+                throw new RuntimeException("Error: The names of the election do not fit in a columnar audit file");
+            }
+            nameStarts.putInt((int) heap.written);
+            heap.put(String.valueOf(name).getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Writes the candidate starts, the end of the name starts and the header.
+         *
+         * @param election the election, for the header.
+         * @throws RuntimeException if the file could not be written.
+         */
+        protected void finish(Election election) throws RuntimeException {
+            int start = 0;
+            for (List<Candidate> list : election.candidates) {
+                starts.putInt(start);
+                start += list.size();
+            }
+            starts.putInt(start);
+            if (heap.written > Integer.MAX_VALUE) {
+                throw new RuntimeException("Error: The names of the election do not fit in a columnar audit file");
+            }
+            nameStarts.putInt((int) heap.written);
+
+            Column header = new Column(0);
+            header.put(ColumnarAudit.MAGIC);
+            header.put(new byte[]{(byte) ColumnarAudit.VERSION, (byte) ("OPL".equals(election.electionType) ? 1 : 0),
+                    (byte) ColumnarAudit.methodCode(election.apportionmentMethod), 0});
+            header.putInt(partyCount);
+            header.putInt(candidateCount);
+            header.putInt(election.ballotCount);
+            header.putInt(election.seatCount);
+            header.putLong(election.tiebreaker.getSeed());
+            header.putLong(heap.written);
+            header.flush();
+        }
+
+        /**
+         * Writes out every column and closes the file, first forcing it to the storage device if asked to.
+         *
+         * @throws RuntimeException if the file could not be written.
+         */
+        @Override
+        public void close() throws RuntimeException {
+            try {
+                for (Column column : columns) {
+                    column.flush();
+                }
+                if (sync) {
+                    long start = System.nanoTime();
+                    channel.force(true);
+                    syncNanos += System.nanoTime() - start;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error: Unable to create or write to the audit file");
+            } finally {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throw new RuntimeException("Error: Unable to create or write to the audit file");
+                }
+            }
+        }
+
+        /**
+         * One column of the file, buffered and written at its own offset.
+         */
+        protected class Column {
+            /**
+             * The values not yet written.
+             */
+            protected final ByteBuffer buffer = ByteBuffer.allocate(COLUMN_BUFFER_SIZE);
+
+            /**
+             * The offset of the column in the file.
+             */
+            protected final long offset;
+
+            /**
+             * The number of bytes put in the column, written or not.
+             */
+            protected long written;
+
+            /**
+             * Constructs a Column.
+             *
+             * @param offset the offset of the column in the file.
+             */
+            protected Column(long offset) {
+                this.offset = offset;
+            }
+
+            /**
+             * Puts an int in the column.
+             *
+             * @param value the value.
+             * @throws RuntimeException if the file could not be written.
+             */
+            protected void putInt(int value) throws RuntimeException {
+                if (buffer.remaining() < 4) {
+                    flush();
+                }
+                buffer.putInt(value);
+                written += 4;
+            }
+
+            /**
+             * Puts a long in the column.
+             *
+             * @param value the value.
+             * @throws RuntimeException if the file could not be written.
+             */
+            protected void putLong(long value) throws RuntimeException {
+                if (buffer.remaining() < 8) {
+                    flush();
+                }
+                buffer.putLong(value);
+                written += 8;
+            }
+
+            /**
+             * Puts a byte in the column.
+             *
+             * @param value the value.
+             * @throws RuntimeException if the file could not be written.
+             */
+            protected void put(byte value) throws RuntimeException {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                buffer.put(value);
+                written++;
+            }
+
+            /**
+             * Puts bytes in the column.
+             *
+             * @param bytes the bytes.
+             * @throws RuntimeException if the file could not be written.
+             */
+            protected void put(byte[] bytes) throws RuntimeException {
+                int from = 0;
+                while (from < bytes.length) {
+                    if (!buffer.hasRemaining()) {
+                        flush();
+                    }
+                    int n = Math.min(bytes.length - from, buffer.remaining());
+                    buffer.put(bytes, from, n);
+                    from += n;
+                    written += n;
+                }
+            }
+
+            /**
+             * Writes the buffered bytes at their place in the file.
+             *
+             * @throws RuntimeException if the file could not be written.
+             */
+            protected void flush() throws RuntimeException {
+                long start = System.nanoTime();
+                buffer.flip();
+                long position = offset + written - buffer.remaining();
+                try {
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Error: Unable to create or write to the audit file");
+                }
+                buffer.clear();
+                writeNanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+AuditJob.java
+
+The AuditJob class writes the audit outputs of an election on a background thread.
+
+*/
+
+package AES;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the audit outputs of a counted election, from a {@link Election#snapshot()} taken when the job is created,
+ * so the results can be displayed while the audit is formatted and written on a background thread. Every output is
+ * forced to the storage device with {@code fsync} before the job finishes, and {@link #await()} returns only once it
+ * has, so a caller that awaits the job before exiting never loses an audit it reported as generated.
+ * <p>
+ * The job times each output: the time spent writing to the file, the time spent forcing it to the storage device,
+ * and the rest, spent formatting.
+ */
+public class AuditJob {
+    /**
+     * The copy of the election audited.
+     */
+    protected final Election snapshot;
+
+    /**
+     * The outputs to write.
+     */
+    protected final Set<AuditExport.Format> formats;
+
+    /**
+     * The name of the outputs without their extension, e.g. {@code "OPL_AuditFile_2024-01-01_12-00-00-000"}.
+     */
+    protected final String basename;
+
+    /**
+     * The thread the job runs on, or {@code null} if it is run by {@link #run()} directly.
+     */
+    protected ExecutorService executor;
+
+    /**
+     * The running job, or {@code null} if it was not started.
+     */
+    protected Future<?> future;
+
+    /**
+     * The summary of the outputs written, filled in as each is written.
+     */
+    protected final StringBuilder report = new StringBuilder();
+
+    /**
+     * Constructs an AuditJob, taking a snapshot of the election and naming the outputs after the current time.
+     *
+     * @param election the counted election, whose seats have been assigned.
+     * @param formats  the outputs to write.
+     */
+    public AuditJob(Election election, Set<AuditExport.Format> formats) {
+        this.snapshot = election.snapshot();
+        this.formats = formats.isEmpty() ? EnumSet.noneOf(AuditExport.Format.class) : EnumSet.copyOf(formats);
+        SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss-SSS");
+        this.basename = snapshot.getElectionType() + "_AuditFile_" + timestamp.format(new Date());
+    }
+
+    /**
+     * Creates an AuditJob and starts it on a background thread.
+     *
+     * @param election the counted election, whose seats have been assigned.
+     * @param formats  the outputs to write.
+     * @return the running job.
+     */
+    public static AuditJob start(Election election, Set<AuditExport.Format> formats) {
+        AuditJob job = new AuditJob(election, formats);
+        job.executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "audit"));
+        job.future = job.executor.submit(job::run);
+        return job;
+    }
+
+    /**
+     * Gets the name of an output.
+     *
+     * @param format the output.
+     * @return the file name.
+     */
+    public String getFilename(AuditExport.Format format) {
+        return basename + format.extension;
+    }
+
+    /**
+     * Writes the outputs on the calling thread: the text audit file, then the JSON Lines and columnar outputs in
+     * one pass.
+     *
+     * @throws RuntimeException if an output could not be written.
+     */
+    public void run() throws RuntimeException {
+        if (formats.contains(AuditExport.Format.TEXT)) {
+            String filename = getFilename(AuditExport.Format.TEXT);
+            long start = System.nanoTime();
+            long writeNanos;
+            long syncNanos;
+            AuditWriter out = new AuditWriter(filename);
+            try (out) {
+                out.setSync(true);
+                snapshot.writeAudit(out);
+            } finally {
+                writeNanos = out.getWriteNanos();
+                syncNanos = out.getSyncNanos();
+            }
+            report("Audit File Generated: " + filename + "\n", System.nanoTime() - start, writeNanos, syncNanos);
+        }
+        String jsonl = formats.contains(AuditExport.Format.JSONL) ? getFilename(AuditExport.Format.JSONL) : null;
+        String columnar = formats.contains(AuditExport.Format.COLUMNAR) ? getFilename(AuditExport.Format.COLUMNAR)
+                : null;
+        if (jsonl != null || columnar != null) {
+            long start = System.nanoTime();
+            AuditExport export = new AuditExport(snapshot);
+            export.setSync(true);
+            export.write(jsonl, columnar);
+            report((jsonl != null ? "JSON Lines Audit Generated: " + jsonl + "\n" : "")
+                            + (columnar != null ? "Columnar Audit Generated: " + columnar + "\n" : ""),
+                    System.nanoTime() - start, export.getWriteNanos(), export.getSyncNanos());
+        }
+    }
+
+    /**
+     * Adds an output and its timings to the summary.
+     *
+     * @param names        the lines naming the files written.
+     * @param elapsedNanos the time taken to write them.
+     * @param writeNanos   the time spent writing to the files.
+     * @param syncNanos    the time spent forcing the files to the storage device.
+     */
+    protected void report(String names, long elapsedNanos, long writeNanos, long syncNanos) {
+        long formatNanos = Math.max(0, elapsedNanos - writeNanos - syncNanos);
+        synchronized (report) {
+            report.append(names)
+                    .append(" - Formatting : ").append(String.format("%.1f ms", formatNanos / 1e6)).append("\n")
+                    .append(" - Writing    : ").append(String.format("%.1f ms", writeNanos / 1e6)).append("\n")
+                    .append(" - Syncing    : ").append(String.format("%.1f ms", syncNanos / 1e6)).append("\n");
+        }
+    }
+
+    /**
+     * Waits for a started job to write and force every output, then stops its thread.
+     *
+     * @return the summary of the outputs written and their timings.
+     * @throws RuntimeException if an output could not be written, or if interrupted while waiting.
+     */
+    public String await() throws RuntimeException {
+        try {
+            if (future != null) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause
+                    : new RuntimeException("Error: Audit generation failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Error: Interrupted while waiting for the audit to be written");
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        return generateReport();
+    }
+
+    /**
+     * Produces the summary of the outputs written so far and their timings.
+     *
+     * @return the summary as a displayable String.
+     */
+    public String generateReport() {
+        synchronized (report) {
+            return report.toString();
+        }
+    }
+}
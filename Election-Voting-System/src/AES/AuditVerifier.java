@@ -0,0 +1,669 @@
+/*
+AuditVerifier.java
+
+The AuditVerifier class recounts the ballot files of an audit file and reports where the recount differs from it.
+
+*/
+
+package AES;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recounts an election from its audit file: the ballot files are tallied again on all threads, the seats are
+ * allocated again with the apportionment method the audit names, and the tiebreaks the audit records are replayed
+ * instead of drawn afresh. The recount's audit is then compared with the original item by item.
+ * <p>
+ * Both audits are parsed into sections, named by their heading lines, of items keyed by label: {@code " - Key : value"}
+ * lines, {@code ", Votes: "} lines keyed by party or candidate, table rows keyed by party, and any other line by its
+ * text. Nested lines are keyed under the item above them. A {@link Discrepancy} is every item whose value differs, or
+ * that only one audit has. The audit must have been written in the same locale as the recount, since the tables
+ * group digits by locale.
+ * <p>
+ * The ballot files are the ones named when verifying, or else the files of the audit's ballot commitments; if the
+ * audit has commitments, the recount hashes the files with the same chunk size, so a changed ballot file shows as a
+ * different Merkle root. If a JSON Lines audit with the same name sits next to the text audit, each tie is given
+ * the selection it records; otherwise the tiebreaks are replayed from the audit's random source and seed, which
+ * draws the same selections.
+ */
+public class AuditVerifier {
+    /**
+     * The heading of the tiebreak section.
+     */
+    protected static final String TIEBREAKS = "Tiebreaks";
+
+    /**
+     * A tiebreak record of a JSON Lines audit.
+     */
+    protected static final Pattern TIEBREAK_RECORD = Pattern.compile(
+            "\\{\"type\":\"tiebreak\",\"options\":(\\d+),\"winners\":(\\d+),\"selected\":\\[([0-9,]*)]}");
+
+    /**
+     * The audit filename.
+     */
+    protected final String auditFilename;
+
+    /**
+     * The ballot filenames, or none to recount the files of the audit's ballot commitments.
+     */
+    protected final List<String> ballotFilenames;
+
+    /**
+     * The number of threads to tally on.
+     */
+    protected final int threadCount;
+
+    /**
+     * The differences between the audit and the recount, once verified.
+     */
+    protected final List<Discrepancy> discrepancies = new ArrayList<>();
+
+    /**
+     * The recounted election, once verified.
+     */
+    protected Election recount;
+
+    /**
+     * The ballot files recounted.
+     */
+    protected List<String> recounted = new ArrayList<>();
+
+    /**
+     * The number of tie selections the JSON Lines audit recorded, or -1 if the tiebreaks were replayed from the seed.
+     */
+    protected int recordedTies = -1;
+
+    /**
+     * The total size of the ballot files, in bytes.
+     */
+    protected long byteCount;
+
+    /**
+     * The number of ballot lines read.
+     */
+    protected long ballotsRead;
+
+    /**
+     * The time spent tallying, in nanoseconds.
+     */
+    protected long tallyNanos;
+
+    /**
+     * The time spent verifying, in nanoseconds.
+     */
+    protected long totalNanos;
+
+    /**
+     * Constructs an AuditVerifier.
+     *
+     * @param auditFilename   the text audit file.
+     * @param ballotFilenames the ballot files, or an empty list to recount the files of the audit's ballot
+     *                        commitments.
+     * @param threadCount     the number of threads to tally on; must be positive.
+     * @throws RuntimeException if {@code threadCount <= 0}.
+     */
+    public AuditVerifier(String auditFilename, List<String> ballotFilenames, int threadCount) throws RuntimeException {
+        if (threadCount <= 0) {
+            throw new RuntimeException("Error: Thread count must be positive, got " + threadCount);
+        }
+        this.auditFilename = auditFilename;
+        this.ballotFilenames = new ArrayList<>(ballotFilenames);
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Recounts the election and compares the recount's audit with the audit file.
+     *
+     * @return the discrepancies, in the order of the audit file; empty if the recount matches it.
+     * @throws RuntimeException if the audit or a ballot file could not be read.
+     */
+    public List<Discrepancy> verify() throws RuntimeException {
+        long start = System.nanoTime();
+        discrepancies.clear();
+        String text;
+        try {
+            text = Files.readString(Path.of(auditFilename), Charset.defaultCharset());
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not read audit file \"" + auditFilename + "\"");
+        }
+        Map<String, Map<String, String>> audit = parse(text);
+
+        // the files and settings the audit was counted with
+        List<String> filenames = new ArrayList<>(ballotFilenames);
+        int chunkSize = 0;
+        for (Map.Entry<String, Map<String, String>> section : audit.entrySet()) {
+            String name = section.getKey();
+            if (name.startsWith("Ballot Commitment (") && name.endsWith(")")) {
+                if (ballotFilenames.isEmpty()) {
+                    filenames.add(name.substring("Ballot Commitment (".length(), name.length() - 1));
+                }
+                chunkSize = (int) parseLeadingLong(section.getValue().get("Chunk Size"), 0);
+            }
+        }
+        if (filenames.isEmpty()) {
+            throw new RuntimeException("Error: \"" + auditFilename + "\" names no ballot files; give them to verify");
+        }
+        if (filenames.size() == 1 && new File(filenames.get(0)).isDirectory()) {
+            filenames = PrecinctLoader.listDirectory(filenames.get(0));
+        }
+        Map<String, String> validation = audit.getOrDefault("Ballot Validation", Map.of());
+        boolean quarantined = validation.keySet().stream().anyMatch(key -> key.startsWith("Quarantined Ballots"));
+        BallotStatistics.Policy policy = quarantined ? BallotStatistics.Policy.QUARANTINE
+                : BallotStatistics.Policy.SKIP;
+
+        // recount on all threads
+        long tallyStart = System.nanoTime();
+        recount = tally(filenames, policy, chunkSize);
+        tallyNanos = System.nanoTime() - tallyStart;
+        recounted = filenames;
+        byteCount = 0;
+        for (String filename : filenames) {
+            try {
+                byteCount += Files.size(Path.of(filename));
+            } catch (IOException e) {
+                // a stream has no size to report
+            }
+        }
+        ballotsRead = recount.ballotStatistics != null ? recount.ballotStatistics.getRead() : recount.ballotCount;
+
+        // allocate again, replaying the recorded tiebreaks
+        recount.setApportionmentMethod(findMethod(audit));
+        Map<String, String> tiebreaks = audit.getOrDefault(TIEBREAKS, Map.of());
+        Tiebreaker.Source source = Tiebreaker.Source.SPLITTABLE;
+        try {
+            source = Tiebreaker.Source.valueOf(tiebreaks.getOrDefault("Random Source", "splittable").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            // reported as a discrepancy of the random source
+        }
+        RecordedTiebreaker tiebreaker = new RecordedTiebreaker(source,
+                parseLeadingLong(tiebreaks.get("Seed"), 0), readRecordedTies());
+        recordedTies = tiebreaker.recorded != null ? tiebreaker.recorded.size() : -1;
+        recount.setTiebreaker(tiebreaker);
+        recount.allocatePartySeats();
+        recount.assignCandidateSeats();
+        discrepancies.addAll(tiebreaker.mismatches);
+
+        compare(audit, parse(recount.generateAudit()));
+        totalNanos = System.nanoTime() - start;
+        return new ArrayList<>(discrepancies);
+    }
+
+    /**
+     * Tallies the ballot files into a new election: one file on {@link #threadCount} threads, or several as the
+     * precinct files of one election, tallied concurrently.
+     *
+     * @param filenames the ballot files.
+     * @param policy    what happens to spoiled ballots.
+     * @param chunkSize the chunk size of each file's Merkle tree, or 0 to not hash.
+     * @return the election, with its votes tallied.
+     * @throws RuntimeException if a file could not be tallied.
+     */
+    protected Election tally(List<String> filenames, BallotStatistics.Policy policy, int chunkSize)
+            throws RuntimeException {
+        if (filenames.size() > 1) {
+            PrecinctLoader loader = new PrecinctLoader(filenames, threadCount);
+            loader.setSpoilagePolicy(policy);
+            loader.setMerkleChunkSize(chunkSize);
+            return loader.load();
+        }
+        FileInput fin = FileInput.open(filenames.get(0));
+        fin.setThreadCount(threadCount);
+        fin.setSpoilagePolicy(policy);
+        if (chunkSize > 0) {
+            fin.setMerkleChunkSize(chunkSize);
+        }
+        Election election = fin.isOPL() ? new OPLElection() : new CPLElection();
+        election.processBallotData(fin);
+        return election;
+    }
+
+    /**
+     * Finds the apportionment method whose calculation heads a section of the audit.
+     *
+     * @param audit the parsed audit.
+     * @return the method; largest remainder if the audit names none.
+     */
+    protected static ApportionmentMethod findMethod(Map<String, Map<String, String>> audit) {
+        ApportionmentMethod[] methods = {ApportionmentMethod.LARGEST_REMAINDER, ApportionmentMethod.D_HONDT,
+                ApportionmentMethod.SAINTE_LAGUE, ApportionmentMethod.MODIFIED_SAINTE_LAGUE,
+                ApportionmentMethod.HUNTINGTON_HILL};
+        for (String section : audit.keySet()) {
+            if (section.endsWith(" Calculation")) {
+                for (ApportionmentMethod method : methods) {
+                    if (section.startsWith(method.getName() + " ")) {
+                        return method;
+                    }
+                }
+            }
+        }
+        return ApportionmentMethod.LARGEST_REMAINDER;
+    }
+
+    /**
+     * Reads the tie selections recorded by the JSON Lines audit named like the text audit, if there is one.
+     *
+     * @return the ties, as {@code {n, r, selected...}} arrays in the order they were broken, or {@code null} if
+     *         there is no JSON Lines audit.
+     * @throws RuntimeException if the JSON Lines audit could not be read.
+     */
+    protected List<int[]> readRecordedTies() throws RuntimeException {
+        String text = AuditExport.Format.TEXT.extension;
+        if (!auditFilename.endsWith(text)) {
+            return null;
+        }
+        Path jsonl = Path.of(auditFilename.substring(0, auditFilename.length() - text.length())
+                + AuditExport.Format.JSONL.extension);
+        if (!Files.exists(jsonl)) {
+            return null;
+        }
+        List<int[]> ties = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(jsonl)) {
+                Matcher matcher = TIEBREAK_RECORD.matcher(line);
+                if (matcher.matches()) {
+                    String[] selected = matcher.group(3).isEmpty() ? new String[0] : matcher.group(3).split(",");
+                    int[] tie = new int[2 + selected.length];
+                    tie[0] = parseIndex(matcher.group(1));
+                    tie[1] = parseIndex(matcher.group(2));
+                    for (int i = 0; i < selected.length; i++) {
+                        tie[2 + i] = parseIndex(selected[i]);
+                    }
+                    ties.add(tie);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not read the tiebreaks of \"" + jsonl + "\"");
+        }
+        return ties;
+    }
+
+    /**
+     * Parses a recorded count or option index.
+     *
+     * @param digits the decimal digits.
+     * @return the value, or -1 if it does not fit in an int, which no tie matches.
+     */
+    protected static int parseIndex(String digits) {
+        try {
+            return Integer.parseInt(digits);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses an audit into its sections. A section starts at a heading, a line that is not indented and ends with
+     * {@code ':'}, and holds the items of the lines up to the next heading; blank lines, table headings and table
+     * rules hold no item. Repeated keys are numbered {@code "#2"}, {@code "#3"}, ... in order.
+     *
+     * @param audit the audit text.
+     * @return the items of each section, keyed by heading without its {@code ':'}, in the order of the audit.
+     */
+    public static Map<String, Map<String, String>> parse(String audit) {
+        Map<String, Map<String, String>> sections = new LinkedHashMap<>();
+        Map<String, String> items = null;
+        String parent = "";
+        for (String line : audit.split("\r?\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            if (!line.startsWith(" ") && line.endsWith(":")) {
+                String heading = line.substring(0, line.length() - 1);
+                String unique = heading;
+                for (int n = 2; sections.containsKey(unique); n++) {
+                    unique = heading + " #" + n;
+                }
+                items = new LinkedHashMap<>();
+                sections.put(unique, items);
+                parent = "";
+                continue;
+            }
+            String text = line.strip();
+            if (items == null || text.startsWith("---")) {
+                continue;
+            }
+            String key;
+            String value;
+            if (text.startsWith("|")) {
+                String[] cells = text.substring(1).split("\\|");
+                if (cells.length < 2 || cells[0].strip().equals("Parties")) {
+                    continue;
+                }
+                key = cells[0].strip();
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i < cells.length; i++) {
+                    row.append(i > 1 ? " | " : "").append(cells[i].strip().replaceAll("\\s+", " "));
+                }
+                value = row.toString();
+            } else {
+                if (text.startsWith("- ")) {
+                    text = text.substring(2);
+                }
+                int colon = text.indexOf(" : ");
+                int votes = text.lastIndexOf(", Votes: ");
+                if (colon >= 0) {
+                    key = text.substring(0, colon).strip();
+                    value = text.substring(colon + 3).strip();
+                } else if (votes >= 0) {
+                    key = text.substring(0, votes);
+                    value = text.substring(votes + ", Votes: ".length());
+                } else {
+                    key = text;
+                    value = "";
+                }
+                // nested lines belong to the item above them
+                if (line.startsWith("   ")) {
+                    key = parent + " / " + key;
+                } else {
+                    parent = key;
+                }
+            }
+            String unique = key;
+            for (int n = 2; items.containsKey(unique); n++) {
+                unique = key + " #" + n;
+            }
+            items.put(unique, value);
+        }
+        return sections;
+    }
+
+    /**
+     * Adds a discrepancy for every item whose value differs between two parsed audits, or that only one has.
+     *
+     * @param audit   the parsed audit file.
+     * @param recount the parsed audit of the recount.
+     */
+    protected void compare(Map<String, Map<String, String>> audit, Map<String, Map<String, String>> recount) {
+        Set<String> sections = new LinkedHashSet<>(audit.keySet());
+        sections.addAll(recount.keySet());
+        for (String section : sections) {
+            Map<String, String> expected = audit.getOrDefault(section, Map.of());
+            Map<String, String> actual = recount.getOrDefault(section, Map.of());
+            Set<String> keys = new LinkedHashSet<>(expected.keySet());
+            keys.addAll(actual.keySet());
+            for (String key : keys) {
+                String auditValue = expected.get(key);
+                String recountValue = actual.get(key);
+                if (auditValue == null || !auditValue.equals(recountValue)) {
+                    discrepancies.add(new Discrepancy(section, key, auditValue, recountValue));
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the integer at the start of a value, e.g. {@code 1048576} of {@code "1048576 bytes"}.
+     *
+     * @param value    the value, or {@code null}.
+     * @param fallback the result if the value does not start with an integer.
+     * @return the integer.
+     */
+    protected static long parseLeadingLong(String value, long fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        Matcher matcher = Pattern.compile("^-?\\d+").matcher(value);
+        try {
+            return matcher.find() ? Long.parseLong(matcher.group()) : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Gets the recounted election.
+     *
+     * @return the election, or {@code null} if not verified yet.
+     */
+    public Election getRecount() {
+        return recount;
+    }
+
+    /**
+     * Gets the differences found by the last verification.
+     *
+     * @return a copy of the discrepancies.
+     */
+    public List<Discrepancy> getDiscrepancies() {
+        return new ArrayList<>(discrepancies);
+    }
+
+    /**
+     * Produces the verification report: what was recounted, how fast, and every discrepancy.
+     *
+     * @return the report as a displayable String.
+     */
+    public String generateReport() {
+        double seconds = Math.max(tallyNanos, 1) / 1e9;
+        StringBuilder report = new StringBuilder("Recount Verification:\n");
+        report.append(" - Audit File      : ").append(auditFilename).append("\n");
+        for (String filename : recounted) {
+            report.append(" - Ballot File     : ").append(filename).append("\n");
+        }
+        report.append(" - Threads         : ").append(threadCount).append("\n")
+                .append(" - Ballots Read    : ").append(ballotsRead).append("\n")
+                .append(" - Bytes Read      : ").append(byteCount).append("\n")
+                .append(" - Tally Time      : ").append(String.format("%.1f ms", tallyNanos / 1e6)).append("\n")
+                .append(" - Throughput      : ").append(String.format("%.1f MB/s, %.0f ballots/s",
+                        byteCount / 1e6 / seconds, ballotsRead / seconds)).append("\n")
+                .append(" - Total Time      : ").append(String.format("%.1f ms", totalNanos / 1e6)).append("\n")
+                .append(" - Tiebreaks       : ").append(recordedTies >= 0
+                        ? "replayed from " + recordedTies + " recorded selections"
+                        : "replayed from the recorded seed").append("\n")
+                .append(" - Discrepancies   : ").append(discrepancies.size()).append("\n");
+        if (!discrepancies.isEmpty()) {
+            report.append("\nDiscrepancies:\n");
+            for (Discrepancy discrepancy : discrepancies) {
+                report.append(discrepancy).append("\n");
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes the verification report to a {@code <type>_VerifyReport_<timestamp>.txt} file.
+     *
+     * @return the name of the report file.
+     * @throws RuntimeException if the report could not be written.
+     */
+    public String writeReport() throws RuntimeException {
+        SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss-SSS");
+        String type = recount != null ? recount.getElectionType() : "Audit";
+        String filename = type + "_VerifyReport_" + timestamp.format(new Date()) + ".txt";
+        try (PrintWriter printWriter = new PrintWriter(filename)) {
+            printWriter.write(generateReport());
+            printWriter.flush();
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException("Error: Unable to create or write to the verify report");
+        }
+        return filename;
+    }
+
+    /**
+     * An item of the audit whose value the recount does not reproduce.
+     */
+    public static class Discrepancy {
+        /**
+         * The heading of the section the item is in.
+         */
+        protected final String section;
+
+        /**
+         * The key of the item.
+         */
+        protected final String item;
+
+        /**
+         * The value in the audit file, or {@code null} if the audit file does not have the item.
+         */
+        protected final String auditValue;
+
+        /**
+         * The value in the recount, or {@code null} if the recount does not have the item.
+         */
+        protected final String recountValue;
+
+        /**
+         * Constructs a Discrepancy.
+         *
+         * @param section      the heading of the section the item is in.
+         * @param item         the key of the item.
+         * @param auditValue   the value in the audit file, or {@code null} if the audit file does not have the item.
+         * @param recountValue the value in the recount, or {@code null} if the recount does not have the item.
+         */
+        public Discrepancy(String section, String item, String auditValue, String recountValue) {
+            this.section = section;
+            this.item = item;
+            this.auditValue = auditValue;
+            this.recountValue = recountValue;
+        }
+
+        /**
+         * Gets the heading of the section the item is in.
+         *
+         * @return the heading, without its {@code ':'}.
+         */
+        public String getSection() {
+            return section;
+        }
+
+        /**
+         * Gets the key of the item.
+         *
+         * @return the key.
+         */
+        public String getItem() {
+            return item;
+        }
+
+        /**
+         * Gets the value in the audit file.
+         *
+         * @return the value, or {@code null} if the audit file does not have the item.
+         */
+        public String getAuditValue() {
+            return auditValue;
+        }
+
+        /**
+         * Gets the value in the recount.
+         *
+         * @return the value, or {@code null} if the recount does not have the item.
+         */
+        public String getRecountValue() {
+            return recountValue;
+        }
+
+        /**
+         * Describes the discrepancy on one line.
+         *
+         * @return the description.
+         */
+        @Override
+        public String toString() {
+            return " - [" + section + "] " + item + ": audit " + describe(auditValue) + ", recount "
+                    + describe(recountValue);
+        }
+
+        /**
+         * Quotes a value for display.
+         *
+         * @param value the value, or {@code null}.
+         * @return the quoted value, or {@code "missing"}.
+         */
+        protected static String describe(String value) {
+            return value == null ? "missing" : "\"" + value + "\"";
+        }
+    }
+
+    /**
+     * A tiebreaker that gives each tie the selection recorded for it, in order, and checks that the recount breaks
+     * the same ties. Every tiebreak also draws from the seeded stream, so once the recorded selections run out, stop
+     * matching or hold an option that is out of range or chosen twice, the recount continues with the selections the
+     * seed draws.
+     */
+    protected static class RecordedTiebreaker extends Tiebreaker {
+        /**
+         * The recorded ties, as {@code {n, r, selected...}} arrays, or {@code null} to replay from the seed alone.
+         */
+        protected final List<int[]> recorded;
+
+        /**
+         * The ties that did not match the recorded ones.
+         */
+        protected final List<Discrepancy> mismatches = new ArrayList<>();
+
+        /**
+         * The number of ties with more options than winners broken so far.
+         */
+        protected int tieCount;
+
+        /**
+         * Whether the recount still breaks the recorded ties.
+         */
+        protected boolean replaying = true;
+
+        /**
+         * Constructs a RecordedTiebreaker.
+         *
+         * @param source   the recorded random source.
+         * @param seed     the recorded seed.
+         * @param recorded the recorded ties, or {@code null} to replay from the seed alone.
+         */
+        protected RecordedTiebreaker(Tiebreaker.Source source, long seed, List<int[]> recorded) {
+            super(source, seed);
+            this.recorded = recorded;
+        }
+
+        /**
+         * Draws a tiebreak from the seeded stream, then replaces its selection with the recorded one if it is valid.
+         *
+         * @param n        the number of options to choose from.
+         * @param r        the number of allowed winners.
+         * @param selected the array to receive the chosen options.
+         */
+        @Override
+        public void choose(int n, int r, int[] selected) {
+            super.choose(n, r, selected);
+            if (recorded == null || n == r || !replaying) {
+                return;
+            }
+            int[] tie = tieCount < recorded.size() ? recorded.get(tieCount) : null;
+            tieCount++;
+            if (tie == null || tie[0] != n || tie[1] != r || tie.length != 2 + r) {
+                replaying = false;
+                mismatches.add(new Discrepancy(TIEBREAKS, "Tie " + tieCount,
+                        tie == null ? null : tie[1] + " of " + tie[0], r + " of " + n));
+                return;
+            }
+            // the selections of a tiebreaker are sorted, so valid ones are strictly increasing in [0, n)
+            for (int i = 2; i < tie.length; i++) {
+                if (tie[i] < 0 || tie[i] >= n || (i > 2 && tie[i] <= tie[i - 1])) {
+                    replaying = false;
+                    mismatches.add(new Discrepancy(TIEBREAKS, "Tie " + tieCount,
+                            Arrays.toString(Arrays.copyOfRange(tie, 2, tie.length)),
+                            Arrays.toString(Arrays.copyOf(selected, r))));
+                    return;
+                }
+            }
+            System.arraycopy(tie, 2, selected, 0, r);
+        }
+    }
+}
@@ -0,0 +1,555 @@
+/*
+AuditWriter.java
+
+The AuditWriter class streams the sections of an audit file to disk through one fixed-size buffer.
+
+*/
+
+package AES;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Writes an audit file section by section, so its size does not depend on the memory available: text is gathered in
+ * a fixed-size character buffer, encoded in the file's charset (the default charset unless one is given) into a
+ * direct byte buffer and written to a {@link FileChannel}. Table rows are written by a {@link RowFormat}, compiled
+ * once from a {@code String.format} pattern, which produces the same text without parsing the pattern for every row.
+ * The bytes written are the same as those of a {@code PrintWriter} on the same file.
+ * <p>
+ * A writer can also gather the text in memory, for the {@code generate} methods that return a section as a String.
+ */
+public class AuditWriter implements Closeable {
+    /**
+     * The size of the character and byte buffers.
+     */
+    protected static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The channel the audit is written to, or {@code null} if it is gathered in {@code builder}.
+     */
+    protected final FileChannel channel;
+
+    /**
+     * The builder the text is gathered in, or {@code null} if it is written to {@code channel}.
+     */
+    protected final StringBuilder builder;
+
+    /**
+     * The name of the file written, for messages.
+     */
+    protected final String filename;
+
+    /**
+     * The characters not yet encoded.
+     */
+    protected final char[] chars;
+
+    /**
+     * The number of characters in {@code chars}.
+     */
+    protected int length;
+
+    /**
+     * Encodes the characters in the file's charset, replacing those it cannot encode as a {@code PrintWriter} does.
+     */
+    protected final CharsetEncoder encoder;
+
+    /**
+     * The encoded bytes not yet written.
+     */
+    protected final ByteBuffer bytes;
+
+    /**
+     * Whether closing the writer forces the file to the storage device.
+     */
+    protected boolean sync;
+
+    /**
+     * The time spent writing encoded bytes to the channel, in nanoseconds.
+     */
+    protected long writeNanos;
+
+    /**
+     * The time spent forcing the file to the storage device, in nanoseconds.
+     */
+    protected long syncNanos;
+
+    /**
+     * The grouping separator of the default format locale, as used by {@code %,d}.
+     */
+    protected final char groupingSeparator;
+
+    /**
+     * The decimal separator of the default format locale, as used by {@code %.2f}.
+     */
+    protected final char decimalSeparator;
+
+    /**
+     * The zero digit of the default format locale.
+     */
+    protected final char zeroDigit;
+
+    /**
+     * Constructs an AuditWriter that creates or truncates a file in the default charset.
+     *
+     * @param filename the name of the audit file.
+     * @throws RuntimeException if the file could not be created.
+     */
+    public AuditWriter(String filename) throws RuntimeException {
+        this(filename, Charset.defaultCharset());
+    }
+
+    /**
+     * Constructs an AuditWriter that creates or truncates a file.
+     *
+     * @param filename the name of the audit file.
+     * @param charset  the charset of the file.
+     * @throws RuntimeException if the file could not be created.
+     */
+    public AuditWriter(String filename, Charset charset) throws RuntimeException {
+        this.filename = filename;
+        this.builder = null;
+        try {
+            this.channel = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Error: Unable to create or write to the audit file");
+        }
+        this.chars = new char[BUFFER_SIZE];
+        this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        this.groupingSeparator = symbols.getGroupingSeparator();
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.zeroDigit = symbols.getZeroDigit();
+    }
+
+    /**
+     * Constructs an AuditWriter that gathers the text in a StringBuilder.
+     *
+     * @param builder the builder to append to.
+     */
+    public AuditWriter(StringBuilder builder) {
+        this.filename = null;
+        this.builder = builder;
+        this.channel = null;
+        this.chars = new char[1024];
+        this.encoder = null;
+        this.bytes = null;
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        this.groupingSeparator = symbols.getGroupingSeparator();
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.zeroDigit = symbols.getZeroDigit();
+    }
+
+    /**
+     * Produces a section as a String by writing it to an in-memory AuditWriter.
+     *
+     * @param section writes the section.
+     * @return the section.
+     */
+    public static String capture(Consumer<AuditWriter> section) {
+        StringBuilder builder = new StringBuilder();
+        AuditWriter out = new AuditWriter(builder);
+        section.accept(out);
+        out.flush();
+        return builder.toString();
+    }
+
+    /**
+     * Appends a String.
+     *
+     * @param text the text; {@code null} is written as {@code "null"}.
+     * @return this writer.
+     * @throws RuntimeException if the file could not be written.
+     */
+    public AuditWriter append(String text) throws RuntimeException {
+        if (text == null) {
+            text = "null";
+        }
+        int from = 0;
+        int count = text.length();
+        while (from < count) {
+            if (length == chars.length) {
+                spill(false);
+            }
+            int n = Math.min(count - from, chars.length - length);
+            text.getChars(from, from + n, chars, length);
+            length += n;
+            from += n;
+        }
+        return this;
+    }
+
+    /**
+     * Appends a character.
+     *
+     * @param c the character.
+     * @return this writer.
+     * @throws RuntimeException if the file could not be written.
+     */
+    public AuditWriter append(char c) throws RuntimeException {
+        if (length == chars.length) {
+            spill(false);
+        }
+        chars[length++] = c;
+        return this;
+    }
+
+    /**
+     * Appends a number in decimal, without grouping, as {@code StringBuilder.append(long)} does.
+     *
+     * @param value the number.
+     * @return this writer.
+     * @throws RuntimeException if the file could not be written.
+     */
+    public AuditWriter append(long value) throws RuntimeException {
+        return append(Long.toString(value));
+    }
+
+    /**
+     * Appends {@code count} copies of a character.
+     *
+     * @param c     the character.
+     * @param count the number of copies.
+     * @return this writer.
+     * @throws RuntimeException if the file could not be written.
+     */
+    public AuditWriter repeat(char c, int count) throws RuntimeException {
+        for (int i = 0; i < count; i++) {
+            append(c);
+        }
+        return this;
+    }
+
+    /**
+     * Encodes and writes out the buffered characters. A high surrogate at the end of the buffer is kept until the
+     * character that completes it arrives, unless {@code last} is set.
+     *
+     * @param last whether no more characters will be written.
+     * @throws RuntimeException if the file could not be written.
+     */
+    protected void spill(boolean last) throws RuntimeException {
+        if (builder != null) {
+            builder.append(chars, 0, length);
+            length = 0;
+            return;
+        }
+        try {
+            CharBuffer in = CharBuffer.wrap(chars, 0, length);
+            while (true) {
+                CoderResult result = encoder.encode(in, bytes, last);
+                if (result.isOverflow()) {
+                    drain();
+                } else {
+                    break;
+                }
+            }
+            if (last) {
+                while (encoder.flush(bytes).isOverflow()) {
+                    drain();
+                }
+                drain();
+            }
+            int left = in.remaining();
+            System.arraycopy(chars, in.position(), chars, 0, left);
+            length = left;
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Unable to create or write to the audit file");
+        }
+    }
+
+    /**
+     * Writes the encoded bytes to the channel.
+     *
+     * @throws IOException if the file could not be written.
+     */
+    protected void drain() throws IOException {
+        long start = System.nanoTime();
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+        writeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Sets whether closing the writer forces the file to the storage device with {@code fsync}, so the audit
+     * survives a crash once {@link #close()} returns.
+     *
+     * @param sync whether to force the file; {@code false} by default.
+     */
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * Gets the time spent writing encoded bytes to the file, as opposed to formatting and encoding them.
+     *
+     * @return the time in nanoseconds.
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * Gets the time spent forcing the file to the storage device on {@link #close()}.
+     *
+     * @return the time in nanoseconds; 0 unless {@link #setSync(boolean)} was set.
+     */
+    public long getSyncNanos() {
+        return syncNanos;
+    }
+
+    /**
+     * Writes out everything appended so far that can be encoded.
+     *
+     * @throws RuntimeException if the file could not be written.
+     */
+    public void flush() throws RuntimeException {
+        spill(false);
+        if (channel != null) {
+            try {
+                drain();
+            } catch (IOException e) {
+                throw new RuntimeException("Error: Unable to create or write to the audit file");
+            }
+        }
+    }
+
+    /**
+     * Writes out everything appended and closes the file, first forcing it to the storage device if
+     * {@link #setSync(boolean)} was set.
+     *
+     * @throws RuntimeException if the file could not be written.
+     */
+    @Override
+    public void close() throws RuntimeException {
+        if (channel == null) {
+            spill(true);
+            return;
+        }
+        try {
+            spill(true);
+            if (sync) {
+                long start = System.nanoTime();
+                channel.force(true);
+                syncNanos += System.nanoTime() - start;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Unable to create or write to the audit file");
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Error: Unable to create or write to the audit file");
+            }
+        }
+    }
+
+    /**
+     * A row pattern compiled once from the subset of {@code String.format} syntax the audit tables use:
+     * {@code %s}, {@code %d} and {@code %f} conversions with an optional {@code -} or {@code ,} flag, width and
+     * precision, and {@code %%}. Writing a row gives the same text as {@code String.format} in the default locale.
+     */
+    public static class RowFormat {
+        /**
+         * The literal text before each conversion, and after the last one.
+         */
+        protected final String[] literals;
+
+        /**
+         * The conversion character of each conversion: {@code 's'}, {@code 'd'} or {@code 'f'}.
+         */
+        protected final char[] conversions;
+
+        /**
+         * The minimum width of each conversion, or 0.
+         */
+        protected final int[] widths;
+
+        /**
+         * The precision of each {@code 'f'} conversion.
+         */
+        protected final int[] precisions;
+
+        /**
+         * Whether each conversion is left-justified.
+         */
+        protected final boolean[] leftJustified;
+
+        /**
+         * Whether each {@code 'd'} conversion groups its digits.
+         */
+        protected final boolean[] grouped;
+
+        /**
+         * Compiles a pattern.
+         *
+         * @param pattern the pattern.
+         * @throws RuntimeException if the pattern uses syntax outside the supported subset.
+         */
+        public RowFormat(String pattern) throws RuntimeException {
+            List<String> literalList = new ArrayList<>();
+            List<int[]> specs = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            int i = 0;
+            while (i < pattern.length()) {
+                char c = pattern.charAt(i++);
+                if (c != '%') {
+                    literal.append(c);
+                    continue;
+                }
+                if (i < pattern.length() && pattern.charAt(i) == '%') {
+                    literal.append('%');
+                    i++;
+                    continue;
+                }
+                // [-,]* width? (.precision)? conversion
+                boolean left = false;
+                boolean group = false;
+                while (i < pattern.length() && (pattern.charAt(i) == '-' || pattern.charAt(i) == ',')) {
+                    left |= pattern.charAt(i) == '-';
+                    group |= pattern.charAt(i) == ',';
+                    i++;
+                }
+                int width = 0;
+                while (i < pattern.length() && Character.isDigit(pattern.charAt(i))) {
+                    width = width * 10 + pattern.charAt(i++) - '0';
+                }
+                int precision = 6;
+                if (i < pattern.length() && pattern.charAt(i) == '.') {
+                    precision = 0;
+                    i++;
+                    while (i < pattern.length() && Character.isDigit(pattern.charAt(i))) {
+                        precision = precision * 10 + pattern.charAt(i++) - '0';
+                    }
+                }
+                char conversion = i < pattern.length() ? pattern.charAt(i++) : '?';
+                if ((conversion != 's' && conversion != 'd' && conversion != 'f') || (group && conversion != 'd')) {
+                    throw new RuntimeException("Error: Unsupported row pattern \"" + pattern + "\"");
+                }
+                literalList.add(literal.toString());
+                literal.setLength(0);
+                specs.add(new int[]{conversion, width, precision, left ? 1 : 0, group ? 1 : 0});
+            }
+            literalList.add(literal.toString());
+
+            literals = literalList.toArray(new String[0]);
+            conversions = new char[specs.size()];
+            widths = new int[specs.size()];
+            precisions = new int[specs.size()];
+            leftJustified = new boolean[specs.size()];
+            grouped = new boolean[specs.size()];
+            for (int j = 0; j < specs.size(); j++) {
+                int[] spec = specs.get(j);
+                conversions[j] = (char) spec[0];
+                widths[j] = spec[1];
+                precisions[j] = spec[2];
+                leftJustified[j] = spec[3] == 1;
+                grouped[j] = spec[4] == 1;
+            }
+        }
+
+        /**
+         * Writes a row.
+         *
+         * @param out  the writer.
+         * @param args one argument per conversion: any object for {@code %s}, an integral Number for {@code %d}, and
+         *             a Number for {@code %f}.
+         * @throws RuntimeException if the file could not be written.
+         */
+        public void write(AuditWriter out, Object... args) throws RuntimeException {
+            for (int j = 0; j < conversions.length; j++) {
+                out.append(literals[j]);
+                String text = switch (conversions[j]) {
+                    case 's' -> String.valueOf(args[j]);
+                    case 'd' -> formatInteger(out, ((Number) args[j]).longValue(), grouped[j]);
+                    default -> formatDecimal(out, ((Number) args[j]).doubleValue(), precisions[j]);
+                };
+                int padding = widths[j] - text.length();
+                if (!leftJustified[j]) {
+                    out.repeat(' ', padding);
+                }
+                out.append(text);
+                if (leftJustified[j]) {
+                    out.repeat(' ', padding);
+                }
+            }
+            out.append(literals[conversions.length]);
+        }
+
+        /**
+         * Formats an integer like {@code %d}, or {@code %,d} with groups of 3 digits.
+         *
+         * @param out     the writer, for the locale's symbols.
+         * @param value   the integer.
+         * @param grouped whether to group the digits.
+         * @return the text.
+         */
+        protected static String formatInteger(AuditWriter out, long value, boolean grouped) {
+            String digits = Long.toString(value);
+            int start = value < 0 ? 1 : 0;
+            int count = digits.length() - start;
+            StringBuilder text = new StringBuilder(digits.length() + count / 3);
+            if (start == 1) {
+                text.append('-');
+            }
+            for (int i = start; i < digits.length(); i++) {
+                if (grouped && i > start && (digits.length() - i) % 3 == 0) {
+                    text.append(out.groupingSeparator);
+                }
+                text.append((char) (digits.charAt(i) - '0' + out.zeroDigit));
+            }
+            return text.toString();
+        }
+
+        /**
+         * Formats a number like {@code %.Nf}: the shortest decimal representation of the double, rounded half up
+         * to {@code precision} places, as {@code Formatter} does.
+         *
+         * @param out       the writer, for the locale's symbols.
+         * @param value     the number.
+         * @param precision the number of decimal places.
+         * @return the text.
+         */
+        protected static String formatDecimal(AuditWriter out, double value, int precision) {
+            if (Double.isNaN(value)) {
+                return "NaN";
+            }
+            if (Double.isInfinite(value)) {
+                return value > 0 ? "Infinity" : "-Infinity";
+            }
+            String plain = new BigDecimal(Double.toString(Math.abs(value))).setScale(precision, RoundingMode.HALF_UP)
+                    .toPlainString();
+            StringBuilder text = new StringBuilder(plain.length() + 1);
+            if (Math.copySign(1.0, value) < 0) {
+                text.append('-');
+            }
+            for (int i = 0; i < plain.length(); i++) {
+                char c = plain.charAt(i);
+                text.append(c == '.' ? out.decimalSeparator : (char) (c - '0' + out.zeroDigit));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/*
+BallotIndex.java
+
+The BallotIndex class gives random access to the ballots of a CSV ballot file through an offset index sidecar.
+
+*/
+
+package AES;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Random access to the ballots of a CSV ballot file, through an index sidecar next to the file named after it with
+ * {@link #SUFFIX} appended. The index is built by a {@link Builder} during a tally, so it costs no extra pass over
+ * the file.
+ * <p>
+ * If every ballot line has the same length the index holds only the offset of the first ballot and the line
+ * length, and any ballot is found by arithmetic. Otherwise it holds the offset of every {@code stride}-th ballot, and
+ * a ballot is found by reading forward from the closest indexed ballot before it, which reads at most
+ * {@code stride - 1} extra lines. The sidecar records the size and modification time of the ballot file, and an
+ * index of a file that has changed since is refused.
+ */
+public class BallotIndex implements Closeable {
+    /**
+     * The suffix appended to the ballot filename to name the sidecar file.
+     */
+    public static final String SUFFIX = ".index";
+
+    /**
+     * The default number of ballots between indexed offsets.
+     */
+    public static final int DEFAULT_STRIDE = 64;
+
+    /**
+     * The leading bytes of an index file.
+     */
+    protected static final int MAGIC = 0x41455349;
+
+    /**
+     * The current index format version.
+     */
+    protected static final int VERSION = 1;
+
+    /**
+     * The ballot filename.
+     */
+    protected final String filename;
+
+    /**
+     * The channel open on the ballot file.
+     */
+    protected final FileChannel channel;
+
+    /**
+     * The number of indexed ballots.
+     */
+    protected final long ballotCount;
+
+    /**
+     * The number of ballots between indexed offsets.
+     */
+    protected final int stride;
+
+    /**
+     * The length of every ballot line after the first, including its terminator, or 0 if the lengths vary.
+     */
+    protected final long lineLength;
+
+    /**
+     * The offsets of ballots {@code 0, stride, 2 * stride, ...}; for fixed-length lines, only ballots 0 and 1.
+     * An offset may point at the {@code '\n'} of a {@code "\r\n"} terminator.
+     */
+    protected final long[] offsets;
+
+    /**
+     * Constructs a BallotIndex over an open ballot file.
+     *
+     * @param filename    the ballot filename.
+     * @param channel     the channel open on the ballot file.
+     * @param ballotCount the number of indexed ballots.
+     * @param stride      the number of ballots between indexed offsets.
+     * @param lineLength  the length of every ballot line after the first, or 0 if the lengths vary.
+     * @param offsets     the indexed offsets.
+     */
+    protected BallotIndex(String filename, FileChannel channel, long ballotCount, int stride, long lineLength,
+                          long[] offsets) {
+        this.filename = filename;
+        this.channel = channel;
+        this.ballotCount = ballotCount;
+        this.stride = stride;
+        this.lineLength = lineLength;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Opens the index of a ballot file.
+     *
+     * @param ballotFilename the ballot file, whose sidecar was written by an indexed tally.
+     * @return the index, which must be closed after use.
+     * @throws RuntimeException if the sidecar is missing, unreadable, or older than the ballot file.
+     */
+    public static BallotIndex open(String ballotFilename) throws RuntimeException {
+        Path ballotPath = Path.of(ballotFilename);
+        Path indexPath = Path.of(ballotFilename + SUFFIX);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new RuntimeException("Error: \"" + indexPath + "\" is not a ballot index");
+            }
+            if (in.readLong() != Files.size(ballotPath)
+                    || in.readLong() != Files.getLastModifiedTime(ballotPath).toMillis()) {
+                throw new RuntimeException("Error: Index \"" + indexPath + "\" is out of date; tally the file again");
+            }
+            long ballotCount = in.readLong();
+            int stride = in.readInt();
+            long lineLength = in.readLong();
+            long[] offsets = new long[in.readInt()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readLong();
+            }
+            return new BallotIndex(ballotFilename, FileChannel.open(ballotPath, StandardOpenOption.READ),
+                    ballotCount, stride, lineLength, offsets);
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not read index \"" + indexPath + "\"");
+        }
+    }
+
+    /**
+     * Gets the number of indexed ballots.
+     *
+     * @return the number of ballots that can be read.
+     */
+    public long getBallotCount() {
+        return ballotCount;
+    }
+
+    /**
+     * Checks whether every ballot line has the same length, so ballots are found without reading other lines.
+     *
+     * @return true if the line lengths are fixed, false otherwise.
+     */
+    public boolean isFixedLength() {
+        return lineLength > 0;
+    }
+
+    /**
+     * Reads one ballot line.
+     *
+     * @param ballot the 0-based index of the ballot.
+     * @return the ballot line, without its terminator.
+     * @throws RuntimeException if the ballot is not indexed or the file could not be read.
+     */
+    public String getBallot(long ballot) throws RuntimeException {
+        return getBallots(ballot, 1).get(0);
+    }
+
+    /**
+     * Reads a range of consecutive ballot lines.
+     *
+     * @param first the 0-based index of the first ballot.
+     * @param count the number of ballots to read.
+     * @return the ballot lines, without their terminators.
+     * @throws RuntimeException if a ballot in the range is not indexed or the file could not be read.
+     */
+    public List<String> getBallots(long first, int count) throws RuntimeException {
+        if (first < 0 || count < 0 || first + count > ballotCount) {
+            throw new RuntimeException("Error: Ballots " + (first + 1) + " to " + (first + count) + " are not in the "
+                    + ballotCount + " indexed ballots of \"" + filename + "\"");
+        }
+        List<String> ballots = new ArrayList<>(count);
+        if (count == 0) {
+            return ballots;
+        }
+        try {
+            long[] start = locate(first);
+            long skip = start[1];
+            channel.position(start[0]);
+            // the reader is not closed, since that would close the channel
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                    StandardCharsets.UTF_8));
+            for (long i = 0; i < skip; i++) {
+                reader.readLine();
+            }
+            for (int i = 0; i < count; i++) {
+                String line = reader.readLine();
+                ballots.add(line != null ? line : "");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not read file \"" + filename + "\"");
+        }
+        return ballots;
+    }
+
+    /**
+     * Finds the closest indexed ballot at or before a ballot.
+     *
+     * @param ballot the 0-based index of an indexed ballot.
+     * @return the offset of the start of the closest indexed ballot, and the number of lines from it to the ballot.
+     * @throws IOException if the file could not be read.
+     */
+    protected long[] locate(long ballot) throws IOException {
+        if (lineLength > 0) {
+            return new long[]{skipLineFeed(ballot == 0 ? offsets[0] : offsets[1] + (ballot - 1) * lineLength), 0};
+        }
+        return new long[]{skipLineFeed(offsets[(int) (ballot / stride)]), ballot % stride};
+    }
+
+    /**
+     * Moves an offset that points at the {@code '\n'} of a {@code "\r\n"} terminator to the start of the next line.
+     *
+     * @param offset an indexed offset.
+     * @return the offset of the line start.
+     * @throws IOException if the file could not be read.
+     */
+    protected long skipLineFeed(long offset) throws IOException {
+        if (offset == offsets[0]) {
+            return offset;
+        }
+        ByteBuffer pair = ByteBuffer.allocate(2);
+        channel.read(pair, offset - 1);
+        return pair.position() == 2 && pair.get(0) == '\r' && pair.get(1) == '\n' ? offset + 1 : offset;
+    }
+
+    /**
+     * Closes the ballot file.
+     *
+     * @throws IOException if the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Builds an index from the line ends reported by a {@link BallotScanner}.
+     */
+    public static class Builder {
+        /**
+         * The number of ballots between indexed offsets.
+         */
+        protected final int stride;
+
+        /**
+         * The offsets of ballots {@code 0, stride, 2 * stride, ...}, in the first {@code count} entries.
+         */
+        protected long[] offsets;
+
+        /**
+         * The number of offsets.
+         */
+        protected int count;
+
+        /**
+         * The file offset of index 0 of the buffer being scanned.
+         */
+        protected long base;
+
+        /**
+         * The number of lines ended so far.
+         */
+        protected long lines;
+
+        /**
+         * The offset after the terminator of the last line.
+         */
+        protected long lastEnd;
+
+        /**
+         * The offset after the terminator of the first line.
+         */
+        protected long firstEnd;
+
+        /**
+         * The length of the lines after the first, or -1 once two of them differ.
+         */
+        protected long lineLength;
+
+        /**
+         * Constructs a Builder.
+         *
+         * @param start  the offset of the first ballot.
+         * @param stride the number of ballots between indexed offsets; must be positive.
+         * @throws RuntimeException if {@code stride} is not positive.
+         */
+        public Builder(long start, int stride) throws RuntimeException {
+            if (stride <= 0) {
+                throw new RuntimeException("Error: Index stride must be positive, got " + stride);
+            }
+            this.stride = stride;
+            this.offsets = new long[16];
+            this.offsets[0] = start;
+            this.count = 1;
+            this.base = 0;
+            this.lines = 0;
+            this.lastEnd = start;
+            this.firstEnd = start;
+            this.lineLength = 0;
+        }
+
+        /**
+         * Sets the file offset of index 0 of the next buffer to be scanned.
+         *
+         * @param base the file offset.
+         */
+        public void setBase(long base) {
+            this.base = base;
+        }
+
+        /**
+         * Records the ends of a batch of ballot lines.
+         *
+         * @param ends  the indices in the current buffer after the lines' terminators.
+         * @param count the number of entries of {@code ends} in use.
+         */
+        public void lineEnds(int[] ends, int count) {
+            for (int i = 0; i < count; i++) {
+                lineEnd(ends[i]);
+            }
+        }
+
+        /**
+         * Records the end of a ballot line.
+         *
+         * @param index the index in the current buffer after the line's terminator.
+         */
+        public void lineEnd(int index) {
+            long end = base + index;
+            if (lines == 0) {
+                firstEnd = end;
+            } else if (lines == 1) {
+                lineLength = end - lastEnd;
+            } else if (lineLength != end - lastEnd) {
+                lineLength = -1;
+            }
+            lastEnd = end;
+            lines++;
+            if (lines % stride == 0) {
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = end;
+            }
+        }
+
+        /**
+         * Writes the index sidecar of a ballot file. A line at the end of the file without a terminator is indexed
+         * like the others.
+         *
+         * @param ballotFilename the ballot file.
+         * @param ballotCount    the number of ballots tallied, which is also the number indexed.
+         * @throws IOException if the sidecar could not be written.
+         */
+        public void write(String ballotFilename, long ballotCount) throws IOException {
+            Path ballotPath = Path.of(ballotFilename);
+            Path indexPath = Path.of(ballotFilename + SUFFIX);
+            Path temporary = Path.of(indexPath + ".tmp");
+            boolean fixed = lines >= 2 && lineLength > 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(Files.size(ballotPath));
+                out.writeLong(Files.getLastModifiedTime(ballotPath).toMillis());
+                out.writeLong(ballotCount);
+                out.writeInt(stride);
+                out.writeLong(fixed ? lineLength : 0);
+                if (fixed) {
+                    out.writeInt(2);
+                    out.writeLong(offsets[0]);
+                    out.writeLong(firstEnd);
+                } else {
+                    out.writeInt(count);
+                    for (int i = 0; i < count; i++) {
+                        out.writeLong(offsets[i]);
+                    }
+                }
+            }
+            Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
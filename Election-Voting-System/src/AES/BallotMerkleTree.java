@@ -0,0 +1,795 @@
+/*
+BallotMerkleTree.java
+
+The BallotMerkleTree class commits to the contents of a ballot file with a Merkle tree over fixed-size chunks.
+
+*/
+
+package AES;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Merkle tree over a ballot file split into chunks of {@code chunkSize} bytes, the last of which may be shorter.
+ * Its root commits to every byte of the file, so an audit file that records the root, the chunk size and the number
+ * of chunks identifies the exact ballot file it was counted from.
+ * <p>
+ * Leaves are {@code SHA-256(0x00 || chunk)} and inner nodes {@code SHA-256(0x01 || left || right)}; the last node of
+ * a level with an odd number of nodes moves up to the next level unchanged. A {@link Proof} that a ballot is in the
+ * file holds the chunks the ballot line lies in and one sibling hash per level for each, so it is checked against
+ * the root with {@code O(log n)} hashes.
+ * <p>
+ * The leaves are hashed by a {@link Hasher} on a thread pool while the file is tallied, and written to a sidecar
+ * next to the file named after it with {@link #SUFFIX} appended, so proofs can be made later without hashing the
+ * file again. The sidecar records the size and modification time of the ballot file, and a tree of a file that has
+ * changed since is refused.
+ */
+public class BallotMerkleTree {
+    /**
+     * The suffix appended to the ballot filename to name the sidecar file.
+     */
+    public static final String SUFFIX = ".merkle";
+
+    /**
+     * The default chunk size, in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * The length of a hash, in bytes.
+     */
+    public static final int HASH_LENGTH = 32;
+
+    /**
+     * The leading bytes of a sidecar file.
+     */
+    protected static final int MAGIC = 0x4145534D;
+
+    /**
+     * The current sidecar format version.
+     */
+    protected static final int VERSION = 1;
+
+    /**
+     * The prefix of a leaf hash's input.
+     */
+    protected static final byte LEAF = 0;
+
+    /**
+     * The prefix of an inner node hash's input.
+     */
+    protected static final byte NODE = 1;
+
+    /**
+     * The ballot filename.
+     */
+    protected final String filename;
+
+    /**
+     * The size of the ballot file when it was hashed, in bytes.
+     */
+    protected final long fileSize;
+
+    /**
+     * The offset of the first ballot line in the file.
+     */
+    protected final long ballotOffset;
+
+    /**
+     * The size of every chunk but the last, in bytes.
+     */
+    protected final int chunkSize;
+
+    /**
+     * The hashes of each level, leaves first, each packed into one array of {@link #HASH_LENGTH} bytes per node;
+     * the last level holds only the root.
+     */
+    protected final byte[][] levels;
+
+    /**
+     * Constructs a BallotMerkleTree from its leaves, computing the inner nodes.
+     *
+     * @param filename     the ballot filename.
+     * @param fileSize     the size of the ballot file, in bytes.
+     * @param ballotOffset the offset of the first ballot line in the file.
+     * @param chunkSize    the size of every chunk but the last, in bytes.
+     * @param leaves       the leaf hashes, packed.
+     */
+    protected BallotMerkleTree(String filename, long fileSize, long ballotOffset, int chunkSize, byte[] leaves) {
+        this.filename = filename;
+        this.fileSize = fileSize;
+        this.ballotOffset = ballotOffset;
+        this.chunkSize = chunkSize;
+        List<byte[]> built = new ArrayList<>();
+        built.add(leaves);
+        MessageDigest digest = newDigest();
+        byte[] level = leaves;
+        while (level.length > HASH_LENGTH) {
+            int count = level.length / HASH_LENGTH;
+            byte[] next = new byte[(count + 1) / 2 * HASH_LENGTH];
+            for (int i = 0; i < count; i += 2) {
+                if (i + 1 < count) {
+                    digest.update(NODE);
+                    digest.update(level, i * HASH_LENGTH, 2 * HASH_LENGTH);
+                    System.arraycopy(digest.digest(), 0, next, i / 2 * HASH_LENGTH, HASH_LENGTH);
+                } else {
+                    System.arraycopy(level, i * HASH_LENGTH, next, i / 2 * HASH_LENGTH, HASH_LENGTH);
+                }
+            }
+            built.add(next);
+            level = next;
+        }
+        this.levels = built.toArray(new byte[0][]);
+    }
+
+    /**
+     * Opens the tree of a ballot file from its sidecar.
+     *
+     * @param ballotFilename the ballot file, whose sidecar was written by a hashed tally.
+     * @return the tree.
+     * @throws RuntimeException if the sidecar is missing, unreadable, or older than the ballot file.
+     */
+    public static BallotMerkleTree open(String ballotFilename) throws RuntimeException {
+        Path ballotPath = Path.of(ballotFilename);
+        Path treePath = Path.of(ballotFilename + SUFFIX);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(treePath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new RuntimeException("Error: \"" + treePath + "\" is not a ballot Merkle tree");
+            }
+            long fileSize = in.readLong();
+            if (fileSize != Files.size(ballotPath)
+                    || in.readLong() != Files.getLastModifiedTime(ballotPath).toMillis()) {
+                throw new RuntimeException("Error: Merkle tree \"" + treePath + "\" is out of date; tally the file "
+                        + "again");
+            }
+            long ballotOffset = in.readLong();
+            int chunkSize = in.readInt();
+            int leafCount = in.readInt();
+            if (chunkSize <= 0 || leafCount != getChunkCount(fileSize, chunkSize)) {
+                throw new RuntimeException("Error: \"" + treePath + "\" is not a ballot Merkle tree");
+            }
+            byte[] leaves = new byte[leafCount * HASH_LENGTH];
+            in.readFully(leaves);
+            return new BallotMerkleTree(ballotFilename, fileSize, ballotOffset, chunkSize, leaves);
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not read Merkle tree \"" + treePath + "\"");
+        }
+    }
+
+    /**
+     * Writes the sidecar of the ballot file, through a temporary file so an interrupted write leaves no sidecar.
+     *
+     * @throws IOException if the sidecar could not be written.
+     */
+    public void write() throws IOException {
+        Path ballotPath = Path.of(filename);
+        Path treePath = Path.of(filename + SUFFIX);
+        Path temporary = Path.of(treePath + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(Files.getLastModifiedTime(ballotPath).toMillis());
+            out.writeLong(ballotOffset);
+            out.writeInt(chunkSize);
+            out.writeInt(getChunkCount());
+            out.write(levels[0]);
+        }
+        Files.move(temporary, treePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Computes the number of chunks of a file. An empty file has one empty chunk.
+     *
+     * @param fileSize  the size of the file, in bytes.
+     * @param chunkSize the size of every chunk but the last, in bytes.
+     * @return the number of chunks.
+     * @throws RuntimeException if the file has more chunks than a tree can hold.
+     */
+    public static int getChunkCount(long fileSize, int chunkSize) throws RuntimeException {
+        long count = Math.max(1, (fileSize + chunkSize - 1) / chunkSize);
+        if (count > Integer.MAX_VALUE / HASH_LENGTH) {
+            throw new RuntimeException("Error: Chunk size " + chunkSize + " is too small for a file of " + fileSize
+                    + " bytes");
+        }
+        return (int) count;
+    }
+
+    /**
+     * Gets the ballot filename.
+     *
+     * @return the filename.
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Gets the size of the ballot file when it was hashed.
+     *
+     * @return the size, in bytes.
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Gets the offset of the first ballot line in the file.
+     *
+     * @return the offset, in bytes.
+     */
+    public long getBallotOffset() {
+        return ballotOffset;
+    }
+
+    /**
+     * Gets the size of every chunk but the last.
+     *
+     * @return the chunk size, in bytes.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Gets the number of chunks, which is the number of leaves.
+     *
+     * @return the number of chunks.
+     */
+    public int getChunkCount() {
+        return levels[0].length / HASH_LENGTH;
+    }
+
+    /**
+     * Gets the root hash, which commits to the whole file.
+     *
+     * @return a copy of the root.
+     */
+    public byte[] getRoot() {
+        return levels[levels.length - 1].clone();
+    }
+
+    /**
+     * Gets the root hash as lowercase hexadecimal, as it is written in the audit file.
+     *
+     * @return the root, in hexadecimal.
+     */
+    public String getRootHex() {
+        return HexFormat.of().formatHex(levels[levels.length - 1]);
+    }
+
+    /**
+     * Produces the commitment section of the audit file.
+     *
+     * @return the commitment as a displayable String.
+     */
+    public String generateReport() {
+        return "Ballot Commitment (" + filename + "):\n" +
+                " - Merkle Root   : " + getRootHex() + "\n" +
+                " - Hash          : SHA-256, leaf 0x00, node 0x01\n" +
+                " - File Size     : " + fileSize + " bytes\n" +
+                " - Chunk Size    : " + chunkSize + " bytes\n" +
+                " - Chunk Count   : " + getChunkCount() + "\n" +
+                " - Ballot Offset : " + ballotOffset + "\n";
+    }
+
+    /**
+     * Collects the sibling hashes from a leaf to the root.
+     *
+     * @param chunk the index of the leaf.
+     * @return the sibling hashes, lowest level first; levels where the node has no sibling contribute none.
+     */
+    public byte[][] getPath(int chunk) {
+        if (chunk < 0 || chunk >= getChunkCount()) {
+            throw new RuntimeException("Error: Chunk " + chunk + " is not in the " + getChunkCount()
+                    + " chunks of \"" + filename + "\"");
+        }
+        List<byte[]> path = new ArrayList<>();
+        int index = chunk;
+        for (int level = 0; level < levels.length - 1; level++) {
+            int sibling = index ^ 1;
+            if (sibling < levels[level].length / HASH_LENGTH) {
+                path.add(Arrays.copyOfRange(levels[level], sibling * HASH_LENGTH, (sibling + 1) * HASH_LENGTH));
+            }
+            index /= 2;
+        }
+        return path.toArray(new byte[0][]);
+    }
+
+    /**
+     * Proves that a ballot line is in the file. The ballot is found through the file's {@link BallotIndex} if it has
+     * an up-to-date one, and by reading the ballot lines from the first one otherwise.
+     *
+     * @param ballot the 0-based index of the ballot.
+     * @return the proof.
+     * @throws RuntimeException if the file has changed since it was hashed, has no such ballot, or could not be read.
+     */
+    public Proof proveBallot(long ballot) throws RuntimeException {
+        if (ballot < 0) {
+            throw new RuntimeException("Error: Ballot " + (ballot + 1) + " is not in \"" + filename + "\"");
+        }
+        long[] start = {ballotOffset, ballot};
+        if (Files.exists(Path.of(filename + BallotIndex.SUFFIX))) {
+            try (BallotIndex index = BallotIndex.open(filename)) {
+                if (ballot < index.getBallotCount()) {
+                    start = index.locate(ballot);
+                }
+            } catch (IOException | RuntimeException e) {
+                // an unusable index only means reading from the first ballot
+            }
+        }
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            if (channel.size() != fileSize) {
+                throw new RuntimeException("Error: \"" + filename + "\" has changed since it was hashed");
+            }
+            long[] line = findLine(channel, start[0], start[1]);
+            if (line == null) {
+                throw new RuntimeException("Error: Ballot " + (ballot + 1) + " is not in \"" + filename + "\"");
+            }
+            return prove(channel, ballot, line[0], (int) (line[1] - line[0]));
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not read file \"" + filename + "\"");
+        }
+    }
+
+    /**
+     * Finds the bytes of a line, skipping lines from a line start. Line terminators are {@code "\n"}, {@code "\r"}
+     * or {@code "\r\n"}.
+     *
+     * @param channel the channel open on the ballot file.
+     * @param offset  the offset of a line start.
+     * @param skip    the number of lines to skip.
+     * @return the offsets of the first byte of the line and of its terminator, or {@code null} if the file ends first.
+     * @throws IOException if the file could not be read.
+     */
+    protected long[] findLine(FileChannel channel, long offset, long skip) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(8192);
+        long position = offset;
+        long lineStart = offset;
+        long lines = 0;
+        boolean pendingLineFeed = false;
+        while (position < fileSize) {
+            chunk.clear();
+            int read = channel.read(chunk, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = chunk.get(i);
+                if (pendingLineFeed) {
+                    pendingLineFeed = false;
+                    if (b == '\n') {
+                        lineStart = position + i + 1;
+                        continue;
+                    }
+                }
+                if (b == '\n' || b == '\r') {
+                    if (lines == skip) {
+                        return new long[]{lineStart, position + i};
+                    }
+                    lines++;
+                    lineStart = position + i + 1;
+                    pendingLineFeed = b == '\r';
+                }
+            }
+            position += read;
+        }
+        // a last line without a terminator
+        return lines == skip && lineStart < fileSize ? new long[]{lineStart, fileSize} : null;
+    }
+
+    /**
+     * Proves that a line of the file is in the file.
+     *
+     * @param channel the channel open on the ballot file.
+     * @param ballot  the 0-based index of the ballot the range holds.
+     * @param offset  the offset of the range; 0 or after a line terminator.
+     * @param length  the length of the range; the file ends or a line terminator follows it.
+     * @return the proof.
+     * @throws IOException if the file could not be read.
+     */
+    protected Proof prove(FileChannel channel, long ballot, long offset, int length) throws IOException {
+        // include the terminators around the line, so the proof shows it is a whole line
+        int first = (int) (Math.max(offset - 1, 0) / chunkSize);
+        int last = (int) (Math.min(offset + length, fileSize - 1) / chunkSize);
+        byte[][] chunks = new byte[last - first + 1][];
+        byte[][][] paths = new byte[chunks.length][][];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = (long) (first + i) * chunkSize;
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(chunkSize, fileSize - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                // read the whole chunk
+            }
+            chunks[i] = buffer.array();
+            paths[i] = getPath(first + i);
+        }
+        return new Proof(ballot, offset, (int) (offset - (long) first * chunkSize), length, first, chunks, paths);
+    }
+
+    /**
+     * Creates a SHA-256 digest.
+     *
+     * @return the digest.
+     */
+    protected static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Error: SHA-256 is not available");
+        }
+    }
+
+    /**
+     * A proof that a ballot line is in a ballot file: the chunks the line lies in, usually one, and the sibling
+     * hashes from each to the root. It is checked with the root, chunk size and chunk count of the audit file alone.
+     */
+    public static class Proof {
+        /**
+         * The 0-based index of the ballot.
+         */
+        protected final long ballot;
+
+        /**
+         * The offset of the ballot line in the file.
+         */
+        protected final long offset;
+
+        /**
+         * The position of the ballot line in the chunks, counted from the start of the first chunk.
+         */
+        protected final int position;
+
+        /**
+         * The length of the ballot line, without its terminator.
+         */
+        protected final int length;
+
+        /**
+         * The index of the first chunk.
+         */
+        protected final int firstChunk;
+
+        /**
+         * The contents of the chunks the line lies in.
+         */
+        protected final byte[][] chunks;
+
+        /**
+         * The sibling hashes of each chunk, as returned by {@link #getPath(int)}.
+         */
+        protected final byte[][][] paths;
+
+        /**
+         * Constructs a Proof.
+         *
+         * @param ballot     the 0-based index of the ballot.
+         * @param offset     the offset of the ballot line in the file.
+         * @param position   the position of the ballot line in the chunks.
+         * @param length     the length of the ballot line, without its terminator.
+         * @param firstChunk the index of the first chunk.
+         * @param chunks     the contents of the chunks the line and its surrounding terminators lie in.
+         * @param paths      the sibling hashes of each chunk.
+         */
+        public Proof(long ballot, long offset, int position, int length, int firstChunk, byte[][] chunks,
+                     byte[][][] paths) {
+            this.ballot = ballot;
+            this.offset = offset;
+            this.position = position;
+            this.length = length;
+            this.firstChunk = firstChunk;
+            this.chunks = chunks;
+            this.paths = paths;
+        }
+
+        /**
+         * Gets the 0-based index of the ballot.
+         *
+         * @return the ballot index.
+         */
+        public long getBallot() {
+            return ballot;
+        }
+
+        /**
+         * Gets the offset of the ballot line in the file.
+         *
+         * @return the offset, in bytes.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Gets the ballot line, as the bytes of the proved chunks decoded as UTF-8.
+         *
+         * @return the ballot line, without its terminator.
+         */
+        public String getLine() {
+            return new String(getBytes(position, length), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Gets the number of sibling hashes in the proof.
+         *
+         * @return the number of hashes.
+         */
+        public int getHashCount() {
+            int count = 0;
+            for (byte[][] path : paths) {
+                count += path.length;
+            }
+            return count;
+        }
+
+        /**
+         * Checks the proof against the commitment recorded in an audit file: every chunk must hash to the root and
+         * have the length its position requires, and the ballot line must be a whole line of the ballot section.
+         *
+         * @param root         the root hash, in hexadecimal.
+         * @param chunkSize    the size of every chunk but the last, in bytes.
+         * @param chunkCount   the number of chunks.
+         * @param ballotOffset the offset of the first ballot line in the file.
+         * @param line         the ballot line the proof should hold, or {@code null} to not check it.
+         * @return true if the proof holds, false otherwise.
+         */
+        public boolean verify(String root, int chunkSize, int chunkCount, long ballotOffset, String line) {
+            byte[] expected;
+            try {
+                expected = HexFormat.of().parseHex(root);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            if (chunkSize <= 0 || chunks.length == 0 || paths.length != chunks.length || firstChunk < 0
+                    || firstChunk + chunks.length > chunkCount) {
+                return false;
+            }
+            MessageDigest digest = newDigest();
+            for (int i = 0; i < chunks.length; i++) {
+                int index = firstChunk + i;
+                boolean lastChunk = index == chunkCount - 1;
+                if (lastChunk ? chunks[i].length > chunkSize : chunks[i].length != chunkSize) {
+                    return false;
+                }
+                digest.update(LEAF);
+                byte[] hash = digest.digest(chunks[i]);
+                int count = chunkCount;
+                int used = 0;
+                while (count > 1) {
+                    if ((index ^ 1) < count) {
+                        if (used == paths[i].length) {
+                            return false;
+                        }
+                        byte[] sibling = paths[i][used++];
+                        digest.update(NODE);
+                        digest.update((index & 1) == 0 ? hash : sibling);
+                        hash = digest.digest((index & 1) == 0 ? sibling : hash);
+                    }
+                    index /= 2;
+                    count = (count + 1) / 2;
+                }
+                if (used != paths[i].length || !MessageDigest.isEqual(hash, expected)) {
+                    return false;
+                }
+            }
+
+            // the line must be a whole ballot line, between line terminators or the end of the file
+            long total = 0;
+            for (byte[] chunk : chunks) {
+                total += chunk.length;
+            }
+            if (offset < ballotOffset || offset != (long) firstChunk * chunkSize + position || position < 0
+                    || length < 0 || position + length > total) {
+                return false;
+            }
+            if (offset > 0 && (position == 0 || !isTerminator(getBytes(position - 1, 1)[0]))) {
+                return false;
+            }
+            boolean lastChunk = firstChunk + chunks.length == chunkCount;
+            if (position + length < total ? !isTerminator(getBytes(position + length, 1)[0]) : !lastChunk) {
+                return false;
+            }
+            return line == null || line.equals(getLine());
+        }
+
+        /**
+         * Checks whether a byte ends a line.
+         *
+         * @param b the byte.
+         * @return true for {@code '\n'} and {@code '\r'}, false otherwise.
+         */
+        protected static boolean isTerminator(byte b) {
+            return b == '\n' || b == '\r';
+        }
+
+        /**
+         * Copies bytes of the proved chunks, which are consecutive in the file.
+         *
+         * @param from   the position of the first byte, counted from the start of the first chunk.
+         * @param length the number of bytes.
+         * @return the bytes.
+         */
+        protected byte[] getBytes(long from, int length) {
+            byte[] bytes = new byte[length];
+            long base = 0;
+            for (byte[] chunk : chunks) {
+                for (int i = 0; i < chunk.length; i++) {
+                    long position = base + i - from;
+                    if (position >= 0 && position < length) {
+                        bytes[(int) position] = chunk[i];
+                    }
+                }
+                base += chunk.length;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Hashes the chunks of a ballot file on a thread pool. Each thread takes the next unhashed chunk, so the chunks
+     * are read roughly in file order and share the page cache with a tally reading the same file.
+     */
+    public static class Hasher {
+        /**
+         * The ballot filename.
+         */
+        protected final String filename;
+
+        /**
+         * The channel open on the ballot file; the hasher has its own so a tally may close its channel first.
+         */
+        protected final FileChannel channel;
+
+        /**
+         * The size of the ballot file when hashing started.
+         */
+        protected final long fileSize;
+
+        /**
+         * The offset of the first ballot line in the file.
+         */
+        protected final long ballotOffset;
+
+        /**
+         * The size of every chunk but the last.
+         */
+        protected final int chunkSize;
+
+        /**
+         * The leaf hashes, packed; each is written by the thread that hashed its chunk.
+         */
+        protected final byte[] leaves;
+
+        /**
+         * The index of the next chunk to hash.
+         */
+        protected final AtomicInteger next = new AtomicInteger();
+
+        /**
+         * Whether hashing was stopped; the threads take no further chunk once it is set.
+         */
+        protected volatile boolean cancelled;
+
+        /**
+         * The hashing threads.
+         */
+        protected final ExecutorService pool;
+
+        /**
+         * The running hashing tasks.
+         */
+        protected final List<Future<?>> futures;
+
+        /**
+         * Starts hashing a ballot file.
+         *
+         * @param filename     the ballot filename; must be an uncompressed file.
+         * @param ballotOffset the offset of the first ballot line in the file.
+         * @param chunkSize    the size of every chunk but the last, in bytes; must be positive.
+         * @param threadCount  the number of hashing threads; must be positive.
+         * @throws RuntimeException if the chunk size is not positive or the file could not be opened.
+         */
+        public Hasher(String filename, long ballotOffset, int chunkSize, int threadCount) throws RuntimeException {
+            if (chunkSize <= 0) {
+                throw new RuntimeException("Error: Merkle chunk size must be positive, got " + chunkSize);
+            }
+            this.filename = filename;
+            this.ballotOffset = ballotOffset;
+            this.chunkSize = chunkSize;
+            try {
+                this.channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ);
+                this.fileSize = channel.size();
+            } catch (IOException e) {
+                throw new RuntimeException("Error: Could not read file \"" + filename + "\"");
+            }
+            int chunkCount = getChunkCount(fileSize, chunkSize);
+            this.leaves = new byte[chunkCount * HASH_LENGTH];
+            int threads = Math.min(threadCount, chunkCount);
+            this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "merkle");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(() -> {
+                    hashChunks();
+                    return null;
+                }));
+            }
+        }
+
+        /**
+         * Hashes chunks until none are left or hashing is cancelled.
+         *
+         * @throws IOException if the file could not be read.
+         */
+        protected void hashChunks() throws IOException {
+            MessageDigest digest = newDigest();
+            int chunkCount = leaves.length / HASH_LENGTH;
+            int chunk;
+            while (!cancelled && (chunk = next.getAndIncrement()) < chunkCount) {
+                long start = (long) chunk * chunkSize;
+                int length = (int) Math.min(chunkSize, fileSize - start);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                digest.update(LEAF);
+                digest.update(buffer);
+                System.arraycopy(digest.digest(), 0, leaves, chunk * HASH_LENGTH, HASH_LENGTH);
+            }
+        }
+
+        /**
+         * Waits for every chunk to be hashed and builds the tree.
+         *
+         * @return the tree.
+         * @throws RuntimeException if the file could not be hashed, or if interrupted while waiting.
+         */
+        public BallotMerkleTree finish() throws RuntimeException {
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                return new BallotMerkleTree(filename, fileSize, ballotOffset, chunkSize, leaves);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error: Could not hash file \"" + filename + "\": " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Error: Interrupted while hashing file \"" + filename + "\"");
+            } finally {
+                cancel();
+            }
+        }
+
+        /**
+         * Stops hashing, e.g. because the tally failed, and closes the file.
+         */
+        public void cancel() {
+            cancelled = true;
+            pool.shutdown();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing was written, so nothing is lost
+            }
+        }
+    }
+}
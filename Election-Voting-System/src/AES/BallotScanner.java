@@ -0,0 +1,560 @@
+/*
+BallotScanner.java
+
+The BallotScanner class tallies raw ballot bytes without decoding them into Strings.
+
+*/
+
+package AES;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Byte-level tally engine for the ballot section of an election file. Each ballot line holds one {@code 1} preceded
+ * by one comma per votable entity before it, so the index of the vote is the number of commas seen on the line before
+ * the {@code 1}. The scanner keeps its per-line state between calls to {@link #scan(ByteBuffer, int, int)}, which
+ * allows a ballot section to be fed in arbitrary pieces (memory-mapped windows, read buffers, etc.) without aligning
+ * them to line boundaries. No objects are allocated per ballot.
+ * <p>
+ * Ballots are validated in the same pass. A valid ballot has exactly {@code votableCount - 1} commas and one
+ * {@code 1}, optionally with spaces or tabs. A ballot with no {@code 1} is an undervote, one with several is an
+ * overvote, and any other line (blank, wrong number of commas, other characters) is malformed. Only valid ballots are
+ * counted; under {@link BallotStatistics.Policy#QUARANTINE} the indices of overvotes and malformed lines are kept.
+ */
+public class BallotScanner {
+    /**
+     * Kind code of a quarantined overvote.
+     */
+    protected static final byte OVERVOTE = 1;
+
+    /**
+     * Kind code of a quarantined malformed line.
+     */
+    protected static final byte MALFORMED = 2;
+
+    /**
+     * The number of line ends collected before they are handed to the index builder. Batching keeps the call out of
+     * the scan loop, where it would stop the JIT from hoisting the buffer checks.
+     */
+    protected static final int LINE_END_BATCH = 4096;
+
+    /**
+     * The vote counts, where {@code votes[i]} holds the votes for votable entity {@code i}.
+     */
+    protected final int[] votes;
+
+    /**
+     * The number of ballot lines to tally before the scanner stops consuming input.
+     */
+    protected final long ballotLimit;
+
+    /**
+     * Whether the indices of spoiled ballots are kept.
+     */
+    protected final boolean quarantine;
+
+    /**
+     * The number of ballot lines tallied so far.
+     */
+    protected long ballotsScanned;
+
+    /**
+     * The number of valid ballots counted so far.
+     */
+    protected long valid;
+
+    /**
+     * The number of ballots without a mark so far.
+     */
+    protected long undervotes;
+
+    /**
+     * The number of ballots with several marks so far.
+     */
+    protected long overvotes;
+
+    /**
+     * The number of malformed lines so far, including blank lines.
+     */
+    protected long malformed;
+
+    /**
+     * The number of blank lines so far.
+     */
+    protected long blankLines;
+
+    /**
+     * The number of blank lines at the end of the lines so far. Not saved by {@link #writeState(DataOutputStream)},
+     * since only parallel tallies, which are never checkpointed, use it.
+     */
+    protected long trailingBlankLines;
+
+    /**
+     * The indices of the quarantined ballots, in the first {@code quarantinedCount} entries.
+     */
+    protected long[] quarantinedIndices;
+
+    /**
+     * The kind codes of the quarantined ballots, parallel to {@code quarantinedIndices}.
+     */
+    protected byte[] quarantinedKinds;
+
+    /**
+     * The number of quarantined ballots.
+     */
+    protected int quarantinedCount;
+
+    /**
+     * The number of commas seen on the current line.
+     */
+    protected int commas;
+
+    /**
+     * The index of the first mark on the current line, or -1 if no mark has been seen yet.
+     */
+    protected int mark;
+
+    /**
+     * The number of marks seen on the current line.
+     */
+    protected int marks;
+
+    /**
+     * Whether the current line has a byte other than a comma, mark, space or tab.
+     */
+    protected boolean invalid;
+
+    /**
+     * Whether the current line has consumed any bytes.
+     */
+    protected boolean lineStarted;
+
+    /**
+     * Whether the previous byte was a {@code '\r'}, in which case a following {@code '\n'} ends no additional line.
+     */
+    protected boolean pendingLineFeed;
+
+    /**
+     * Receives the end offset of every ballot line, or {@code null} if the tally is not indexed.
+     */
+    protected BallotIndex.Builder indexer;
+
+    /**
+     * The buffer indices after the terminators of the lines ended since the last hand-off to {@code indexer}, or
+     * {@code null} if the tally is not indexed.
+     */
+    protected int[] lineEnds;
+
+    /**
+     * The number of entries of {@code lineEnds} in use.
+     */
+    protected int lineEndCount;
+
+    /**
+     * Constructs a scanner that tallies up to {@code ballotLimit} ballots and skips spoiled ballots.
+     *
+     * @param votableCount the number of votable entities on the ballot.
+     * @param ballotLimit  the number of ballot lines to tally.
+     */
+    public BallotScanner(int votableCount, long ballotLimit) {
+        this(votableCount, ballotLimit, BallotStatistics.Policy.SKIP);
+    }
+
+    /**
+     * Constructs a scanner that tallies up to {@code ballotLimit} ballots.
+     *
+     * @param votableCount the number of votable entities on the ballot.
+     * @param ballotLimit  the number of ballot lines to tally.
+     * @param policy       what happens to spoiled ballots.
+     */
+    public BallotScanner(int votableCount, long ballotLimit, BallotStatistics.Policy policy) {
+        this.votes = new int[votableCount];
+        this.ballotLimit = ballotLimit;
+        this.quarantine = policy == BallotStatistics.Policy.QUARANTINE;
+        this.ballotsScanned = 0;
+        this.quarantinedIndices = new long[0];
+        this.quarantinedKinds = new byte[0];
+        this.quarantinedCount = 0;
+        this.commas = 0;
+        this.mark = -1;
+        this.marks = 0;
+        this.invalid = false;
+        this.lineStarted = false;
+        this.pendingLineFeed = false;
+        this.indexer = null;
+    }
+
+    /**
+     * Reports the end of every ballot line to an index builder. The caller sets the builder's base offset before
+     * each call to {@link #scan(ByteBuffer, int, int)}.
+     *
+     * @param indexer the index builder, or {@code null} to stop indexing.
+     */
+    public void setIndexer(BallotIndex.Builder indexer) {
+        this.indexer = indexer;
+        this.lineEnds = indexer != null ? new int[LINE_END_BATCH] : null;
+    }
+
+    /**
+     * Tallies the bytes of {@code buffer} on the range {@code [from, to)}, stopping early once {@code ballotLimit}
+     * ballots have been tallied. The buffer's position and limit are not modified.
+     *
+     * @param buffer the bytes to tally.
+     * @param from   the index of the first byte to tally.
+     * @param to     the index after the last byte to tally.
+     * @return the index after the last consumed byte.
+     */
+    public int scan(ByteBuffer buffer, int from, int to) {
+        if (indexer == null) {
+            return scanLines(buffer, from, to);
+        }
+        int i = from;
+        do {
+            int batchStart = i;
+            i = scanLines(buffer, i, to);
+            indexer.lineEnds(lineEnds, lineEndCount);
+            lineEndCount = 0;
+            if (i == batchStart) {
+                break;
+            }
+        } while (i < to && !isDone());
+        return i;
+    }
+
+    /**
+     * Tallies bytes like {@link #scan(ByteBuffer, int, int)}, but also stops once {@code lineEnds} is full.
+     *
+     * @param buffer the bytes to tally.
+     * @param from   the index of the first byte to tally.
+     * @param to     the index after the last byte to tally.
+     * @return the index after the last consumed byte.
+     */
+    protected int scanLines(ByteBuffer buffer, int from, int to) {
+        // copy the state into locals so the loop runs on registers
+        final long ballotLimit = this.ballotLimit;
+        final int[] lineEnds = this.lineEnds;
+        int lineEndCount = 0;
+        long ballotsScanned = this.ballotsScanned;
+        int commas = this.commas;
+        int mark = this.mark;
+        int marks = this.marks;
+        boolean invalid = this.invalid;
+        boolean lineStarted = this.lineStarted;
+        boolean pendingLineFeed = this.pendingLineFeed;
+
+        int i = from;
+        while (i < to && ballotsScanned < ballotLimit) {
+            byte b = buffer.get(i++);
+            if (pendingLineFeed) {
+                pendingLineFeed = false;
+                // the '\n' of a "\r\n" pair was already counted by the '\r'
+                if (b == '\n') {
+                    continue;
+                }
+            }
+            if (b == ',') {
+                commas++;
+                lineStarted = true;
+            } else if (b == '1') {
+                if (marks++ == 0) {
+                    mark = commas;
+                }
+                lineStarted = true;
+            } else if (b == '\n' || b == '\r') {
+                // end of ballot
+                endLine(ballotsScanned, commas, mark, marks, invalid, lineStarted);
+                ballotsScanned++;
+                pendingLineFeed = b == '\r';
+                commas = 0;
+                mark = -1;
+                marks = 0;
+                invalid = false;
+                lineStarted = false;
+                if (lineEnds != null) {
+                    lineEnds[lineEndCount++] = i;
+                    if (lineEndCount == lineEnds.length) {
+                        break;
+                    }
+                }
+            } else {
+                invalid |= b != ' ' && b != '\t';
+                lineStarted = true;
+            }
+        }
+
+        this.ballotsScanned = ballotsScanned;
+        this.commas = commas;
+        this.mark = mark;
+        this.marks = marks;
+        this.invalid = invalid;
+        this.lineStarted = lineStarted;
+        this.pendingLineFeed = pendingLineFeed;
+        this.lineEndCount = lineEndCount;
+        return i;
+    }
+
+    /**
+     * Classifies a finished ballot line and counts it if it is valid.
+     *
+     * @param index       the 0-based index of the ballot.
+     * @param commas      the number of commas on the line.
+     * @param mark        the index of the first mark, or -1.
+     * @param marks       the number of marks on the line.
+     * @param invalid     whether the line has other characters.
+     * @param lineStarted whether the line has any bytes.
+     */
+    protected void endLine(long index, int commas, int mark, int marks, boolean invalid, boolean lineStarted) {
+        boolean blank = false;
+        if (invalid || commas != votes.length - 1) {
+            malformed++;
+            if (!lineStarted) {
+                blankLines++;
+                blank = true;
+            }
+            reject(index, MALFORMED);
+        } else if (marks == 1) {
+            votes[mark]++;
+            valid++;
+        } else if (marks == 0) {
+            undervotes++;
+        } else {
+            overvotes++;
+            reject(index, OVERVOTE);
+        }
+        trailingBlankLines = blank ? trailingBlankLines + 1 : 0;
+    }
+
+    /**
+     * Keeps the index of a spoiled ballot if quarantining.
+     *
+     * @param index the 0-based index of the ballot.
+     * @param kind  {@code OVERVOTE} or {@code MALFORMED}.
+     */
+    protected void reject(long index, byte kind) {
+        if (!quarantine) {
+            return;
+        }
+        if (quarantinedCount == quarantinedIndices.length) {
+            int capacity = Math.max(16, quarantinedCount * 2);
+            quarantinedIndices = Arrays.copyOf(quarantinedIndices, capacity);
+            quarantinedKinds = Arrays.copyOf(quarantinedKinds, capacity);
+        }
+        quarantinedIndices[quarantinedCount] = index;
+        quarantinedKinds[quarantinedCount] = kind;
+        quarantinedCount++;
+    }
+
+    /**
+     * Ends the input, tallying a final ballot line that was not followed by a line terminator.
+     */
+    public void finish() {
+        if (lineStarted && ballotsScanned < ballotLimit) {
+            endLine(ballotsScanned, commas, mark, marks, invalid, true);
+            ballotsScanned++;
+        }
+        commas = 0;
+        mark = -1;
+        marks = 0;
+        invalid = false;
+        lineStarted = false;
+        pendingLineFeed = false;
+    }
+
+    /**
+     * Checks whether {@code ballotLimit} ballots have been tallied.
+     *
+     * @return true if no more input will be consumed, false otherwise.
+     */
+    public boolean isDone() {
+        return ballotsScanned >= ballotLimit;
+    }
+
+    /**
+     * Gets the number of ballot lines tallied so far.
+     *
+     * @return the number of ballots tallied.
+     */
+    public long getBallotsScanned() {
+        return ballotsScanned;
+    }
+
+    /**
+     * Gets the number of non-blank lines tallied so far.
+     *
+     * @return the number of ballots tallied, excluding blank lines.
+     */
+    public long getNonBlankLines() {
+        return ballotsScanned - blankLines;
+    }
+
+    /**
+     * Gets the number of blank lines at the end of the lines tallied so far.
+     *
+     * @return the number of trailing blank lines.
+     */
+    public long getTrailingBlankLines() {
+        return trailingBlankLines;
+    }
+
+    /**
+     * Untallies blank lines from the end of the lines tallied so far, e.g. blank lines after the declared ballots
+     * that a parallel tally could not tell apart from ballots.
+     *
+     * @param count the number of lines to untally; at most {@link #getTrailingBlankLines()}.
+     */
+    public void dropTrailingBlankLines(long count) {
+        ballotsScanned -= count;
+        malformed -= count;
+        blankLines -= count;
+        trailingBlankLines -= count;
+        if (quarantine) {
+            quarantinedCount -= (int) count;
+        }
+    }
+
+    /**
+     * Gets the vote counts. The returned array is the scanner's own tally, not a copy.
+     *
+     * @return an int array of all the vote counts.
+     */
+    public int[] getVotes() {
+        return votes;
+    }
+
+    /**
+     * Adds the tally and validation counts of a scanner that read the lines following this scanner's lines, e.g.
+     * the next chunk of a parallel tally.
+     *
+     * @param next the scanner of the following lines.
+     */
+    public void append(BallotScanner next) {
+        for (int i = 0; i < votes.length; i++) {
+            votes[i] += next.votes[i];
+        }
+        for (int i = 0; i < next.quarantinedCount; i++) {
+            reject(ballotsScanned + next.quarantinedIndices[i], next.quarantinedKinds[i]);
+        }
+        ballotsScanned += next.ballotsScanned;
+        valid += next.valid;
+        undervotes += next.undervotes;
+        overvotes += next.overvotes;
+        malformed += next.malformed;
+        blankLines += next.blankLines;
+        trailingBlankLines = next.trailingBlankLines == next.ballotsScanned
+                ? trailingBlankLines + next.trailingBlankLines : next.trailingBlankLines;
+    }
+
+    /**
+     * Produces the validation statistics of the tally.
+     *
+     * @param source   the name of the ballot file, for quarantined ballots.
+     * @param declared the number of ballots declared by the header.
+     * @param extra    the number of non-blank lines after the declared ballots.
+     * @return the statistics.
+     */
+    public BallotStatistics getStatistics(String source, long declared, long extra) {
+        BallotStatistics statistics = new BallotStatistics(declared, ballotsScanned, valid, undervotes, overvotes,
+                malformed, extra);
+        for (int i = 0; i < quarantinedCount; i++) {
+            statistics.quarantine(source, quarantinedIndices[i],
+                    quarantinedKinds[i] == OVERVOTE ? "overvote" : "malformed");
+        }
+        return statistics;
+    }
+
+    /**
+     * Writes the complete scanner state, including a partial line, so the tally can be continued later by
+     * {@link #readState(DataInputStream)}.
+     *
+     * @param out the destination.
+     * @throws IOException if the state could not be written.
+     */
+    protected void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(votes.length);
+        out.writeLong(ballotLimit);
+        out.writeBoolean(quarantine);
+        for (int count : votes) {
+            out.writeInt(count);
+        }
+        out.writeLong(ballotsScanned);
+        out.writeLong(valid);
+        out.writeLong(undervotes);
+        out.writeLong(overvotes);
+        out.writeLong(malformed);
+        out.writeLong(blankLines);
+        out.writeInt(quarantinedCount);
+        for (int i = 0; i < quarantinedCount; i++) {
+            out.writeLong(quarantinedIndices[i]);
+            out.writeByte(quarantinedKinds[i]);
+        }
+        out.writeInt(commas);
+        out.writeInt(mark);
+        out.writeInt(marks);
+        out.writeBoolean(invalid);
+        out.writeBoolean(lineStarted);
+        out.writeBoolean(pendingLineFeed);
+    }
+
+    /**
+     * Replaces the scanner state with one written by {@link #writeState(DataOutputStream)}.
+     *
+     * @param in the source.
+     * @return false if the state belongs to a scanner with a different votable count, ballot limit or policy, in
+     * which case this scanner is unchanged; true otherwise.
+     * @throws IOException if the state could not be read.
+     */
+    protected boolean readState(DataInputStream in) throws IOException {
+        if (in.readInt() != votes.length || in.readLong() != ballotLimit || in.readBoolean() != quarantine) {
+            return false;
+        }
+        int[] savedVotes = new int[votes.length];
+        for (int i = 0; i < savedVotes.length; i++) {
+            savedVotes[i] = in.readInt();
+        }
+        long savedBallotsScanned = in.readLong();
+        long savedValid = in.readLong();
+        long savedUndervotes = in.readLong();
+        long savedOvervotes = in.readLong();
+        long savedMalformed = in.readLong();
+        long savedBlankLines = in.readLong();
+        int savedQuarantinedCount = in.readInt();
+        if (savedQuarantinedCount < 0 || savedQuarantinedCount > savedBallotsScanned) {
+            throw new IOException("Invalid quarantined ballot count " + savedQuarantinedCount);
+        }
+        long[] savedIndices = new long[savedQuarantinedCount];
+        byte[] savedKinds = new byte[savedQuarantinedCount];
+        for (int i = 0; i < savedQuarantinedCount; i++) {
+            savedIndices[i] = in.readLong();
+            savedKinds[i] = in.readByte();
+        }
+        int savedCommas = in.readInt();
+        int savedMark = in.readInt();
+        int savedMarks = in.readInt();
+        boolean savedInvalid = in.readBoolean();
+        boolean savedLineStarted = in.readBoolean();
+        boolean savedPendingLineFeed = in.readBoolean();
+
+        // only overwrite the state once all of it has been read
+        System.arraycopy(savedVotes, 0, votes, 0, votes.length);
+        ballotsScanned = savedBallotsScanned;
+        valid = savedValid;
+        undervotes = savedUndervotes;
+        overvotes = savedOvervotes;
+        malformed = savedMalformed;
+        blankLines = savedBlankLines;
+        quarantinedIndices = savedIndices;
+        quarantinedKinds = savedKinds;
+        quarantinedCount = savedQuarantinedCount;
+        commas = savedCommas;
+        mark = savedMark;
+        marks = savedMarks;
+        invalid = savedInvalid;
+        lineStarted = savedLineStarted;
+        pendingLineFeed = savedPendingLineFeed;
+        return true;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+BallotStatistics.java
+
+The BallotStatistics class records how many ballots were valid, spoiled or missing during a tally.
+
+*/
+
+package AES;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the validation results of a tally: how many ballot lines were read, how many were valid, how many were
+ * undervotes, overvotes or malformed, and how the number of ballot lines compares to the count declared in the
+ * header. Only valid ballots are counted; undervotes have no vote to count, and overvotes and malformed lines are
+ * spoiled. Under {@link Policy#QUARANTINE} the spoiled ballots are also listed individually.
+ */
+public class BallotStatistics {
+    /**
+     * What happens to spoiled ballots (overvotes and malformed lines).
+     */
+    public enum Policy {
+        /**
+         * Spoiled ballots are not counted; only their totals are kept.
+         */
+        SKIP,
+        /**
+         * Spoiled ballots are not counted, and each one is listed by source and ballot number.
+         */
+        QUARANTINE
+    }
+
+    /**
+     * The number of ballots declared by the headers.
+     */
+    protected long declared;
+
+    /**
+     * The number of ballot lines read, up to the declared number.
+     */
+    protected long read;
+
+    /**
+     * The number of valid ballots, i.e. ballots that were counted.
+     */
+    protected long valid;
+
+    /**
+     * The number of ballots without a mark.
+     */
+    protected long undervotes;
+
+    /**
+     * The number of ballots with more than one mark.
+     */
+    protected long overvotes;
+
+    /**
+     * The number of ballot lines that are blank, have the wrong number of entries, or contain other characters.
+     */
+    protected long malformed;
+
+    /**
+     * The number of non-blank lines after the declared number of ballots.
+     */
+    protected long extra;
+
+    /**
+     * The quarantined ballots, e.g. {@code "ballots.csv: ballot 17 (overvote)"}.
+     */
+    protected List<String> quarantined;
+
+    /**
+     * Constructs empty statistics.
+     */
+    public BallotStatistics() {
+        this.quarantined = new ArrayList<>();
+    }
+
+    /**
+     * Constructs statistics from the counts of a tally.
+     *
+     * @param declared   the number of ballots declared by the header.
+     * @param read       the number of ballot lines read.
+     * @param valid      the number of valid ballots.
+     * @param undervotes the number of ballots without a mark.
+     * @param overvotes  the number of ballots with more than one mark.
+     * @param malformed  the number of malformed ballot lines.
+     * @param extra      the number of non-blank lines after the declared ballots.
+     */
+    public BallotStatistics(long declared, long read, long valid, long undervotes, long overvotes, long malformed,
+                            long extra) {
+        this();
+        this.declared = declared;
+        this.read = read;
+        this.valid = valid;
+        this.undervotes = undervotes;
+        this.overvotes = overvotes;
+        this.malformed = malformed;
+        this.extra = extra;
+    }
+
+    /**
+     * Adds the counts and quarantined ballots of {@code other} to these statistics.
+     *
+     * @param other the statistics to add.
+     */
+    public void add(BallotStatistics other) {
+        declared += other.declared;
+        read += other.read;
+        valid += other.valid;
+        undervotes += other.undervotes;
+        overvotes += other.overvotes;
+        malformed += other.malformed;
+        extra += other.extra;
+        quarantined.addAll(other.quarantined);
+    }
+
+    /**
+     * Lists a spoiled ballot as quarantined.
+     *
+     * @param source      the name of the ballot's file.
+     * @param ballotIndex the 0-based index of the ballot in its file.
+     * @param reason      why the ballot was spoiled.
+     */
+    public void quarantine(String source, long ballotIndex, String reason) {
+        quarantined.add(source + ": ballot " + (ballotIndex + 1) + " (" + reason + ")");
+    }
+
+    /**
+     * Gets the number of ballots declared by the headers.
+     *
+     * @return the declared ballot count.
+     */
+    public long getDeclared() {
+        return declared;
+    }
+
+    /**
+     * Gets the number of ballot lines read.
+     *
+     * @return the number of ballot lines read, up to the declared number.
+     */
+    public long getRead() {
+        return read;
+    }
+
+    /**
+     * Gets the number of valid ballots.
+     *
+     * @return the number of ballots that were counted.
+     */
+    public long getValid() {
+        return valid;
+    }
+
+    /**
+     * Gets the number of undervotes.
+     *
+     * @return the number of ballots without a mark.
+     */
+    public long getUndervotes() {
+        return undervotes;
+    }
+
+    /**
+     * Gets the number of overvotes.
+     *
+     * @return the number of ballots with more than one mark.
+     */
+    public long getOvervotes() {
+        return overvotes;
+    }
+
+    /**
+     * Gets the number of malformed ballot lines.
+     *
+     * @return the number of blank lines, lines with the wrong number of entries, and lines with other characters.
+     */
+    public long getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * Gets the number of declared ballots that were missing from the files.
+     *
+     * @return the declared count minus the number of ballot lines read.
+     */
+    public long getMissing() {
+        return declared - read;
+    }
+
+    /**
+     * Gets the number of lines after the declared ballots.
+     *
+     * @return the number of non-blank lines after the declared number of ballots.
+     */
+    public long getExtra() {
+        return extra;
+    }
+
+    /**
+     * Gets the quarantined ballots.
+     *
+     * @return a copy of the list of quarantined ballots.
+     */
+    public List<String> getQuarantined() {
+        return new ArrayList<>(quarantined);
+    }
+
+    /**
+     * Produces the validation summary for display.
+     *
+     * @return the summary as a displayable String.
+     */
+    public String generateReport() {
+        return AuditWriter.capture(this::writeReport);
+    }
+
+    /**
+     * Writes the validation summary, one quarantined ballot at a time.
+     *
+     * @param out the writer.
+     * @throws RuntimeException if the summary could not be written.
+     */
+    public void writeReport(AuditWriter out) throws RuntimeException {
+        out.append("Ballot Validation:\n")
+                .append(" - Declared Ballots   : ").append(declared).append('\n')
+                .append(" - Valid Ballots      : ").append(valid).append('\n')
+                .append(" - Undervotes         : ").append(undervotes).append('\n')
+                .append(" - Overvotes          : ").append(overvotes).append('\n')
+                .append(" - Malformed Lines    : ").append(malformed).append('\n')
+                .append(" - Missing Ballots    : ").append(getMissing()).append('\n')
+                .append(" - Extra Lines        : ").append(extra).append('\n');
+        if (!quarantined.isEmpty()) {
+            out.append(" - Quarantined Ballots:\n");
+            for (String ballot : quarantined) {
+                out.append("   - ").append(ballot).append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,626 @@
+/*
+BatchRunner.java
+
+The BatchRunner class runs many independent district elections in one JVM, concurrently.
+
+*/
+
+package AES;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the independent elections of many districts, listed in a manifest, on a work-stealing {@link ForkJoinPool}.
+ * Each district is counted, allocated, seated and audited exactly as a single run of {@link AESDriver} would do it,
+ * and gets its own audit file; a summary file then consolidates the results of every district.
+ * <p>
+ * The districts share nothing while they run, so throughput grows with the number of threads until the disk is the
+ * limit. The pool splits the districts in halves down to single districts, largest files first, and idle threads
+ * steal the halves still waiting, so a few huge districts do not leave the other threads without work. A district
+ * that fails is reported in the summary and does not stop the others.
+ */
+public class BatchRunner {
+    /**
+     * The ballot file of each district, or a directory of its precinct files, in manifest order.
+     */
+    protected final List<String> filenames;
+
+    /**
+     * The unique name of each district, in manifest order.
+     */
+    protected final List<String> districtNames;
+
+    /**
+     * The number of threads running districts.
+     */
+    protected final int threadCount;
+
+    /**
+     * The directory the audit files and the summary are written to.
+     */
+    protected String outputDirectory = ".";
+
+    /**
+     * The method dividing the seats of every district.
+     */
+    protected ApportionmentMethod apportionmentMethod = ApportionmentMethod.LARGEST_REMAINDER;
+
+    /**
+     * What happens to spoiled ballots in every district.
+     */
+    protected BallotStatistics.Policy spoilagePolicy = BallotStatistics.Policy.SKIP;
+
+    /**
+     * The random source of the tiebreaks.
+     */
+    protected Tiebreaker.Source randomSource = Tiebreaker.Source.SPLITTABLE;
+
+    /**
+     * The seed the district seeds are drawn from, or {@code null} for random seeds.
+     */
+    protected Long seed;
+
+    /**
+     * The result of each district, in manifest order, once run.
+     */
+    protected DistrictResult[] results;
+
+    /**
+     * The time the batch took, in nanoseconds.
+     */
+    protected long wallTime;
+
+    /**
+     * Constructs a BatchRunner.
+     *
+     * @param filenames   the ballot file of each district, or a directory of its precinct files; must not be empty.
+     * @param threadCount the number of threads running districts; must be positive.
+     * @throws RuntimeException if there are no districts or if {@code threadCount <= 0}.
+     */
+    public BatchRunner(List<String> filenames, int threadCount) throws RuntimeException {
+        if (filenames.isEmpty()) {
+            throw new RuntimeException("Error: No district files given");
+        }
+        if (threadCount <= 0) {
+            throw new RuntimeException("Error: Thread count must be positive, got " + threadCount);
+        }
+        this.filenames = new ArrayList<>(filenames);
+        this.districtNames = nameDistricts(filenames);
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Reads a manifest: one ballot file or precinct directory per line, relative to the manifest's directory. Blank
+     * lines and lines starting with {@code #} are skipped.
+     *
+     * @param manifest the manifest filename.
+     * @return the district filenames, in manifest order.
+     * @throws RuntimeException if the manifest could not be read or lists no districts.
+     */
+    public static List<String> readManifest(String manifest) throws RuntimeException {
+        Path base = Path.of(manifest).toAbsolutePath().getParent();
+        List<String> filenames = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(manifest), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    filenames.add(base.resolve(line).normalize().toString());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not read manifest \"" + manifest + "\"");
+        }
+        if (filenames.isEmpty()) {
+            throw new RuntimeException("Error: Manifest \"" + manifest + "\" lists no districts");
+        }
+        return filenames;
+    }
+
+    /**
+     * Names the districts after their files, without extensions, numbering repeated names.
+     *
+     * @param filenames the district filenames.
+     * @return the unique names, e.g. {@code "district-7"} for {@code "ballots/district-7.csv.gz"}.
+     */
+    protected static List<String> nameDistricts(List<String> filenames) {
+        Map<String, Integer> counts = new HashMap<>();
+        List<String> names = new ArrayList<>(filenames.size());
+        for (String filename : filenames) {
+            String name = new File(filename).getName();
+            int dot = name.indexOf('.', 1);
+            if (dot > 0) {
+                name = name.substring(0, dot);
+            }
+            int count = counts.merge(name, 1, Integer::sum);
+            names.add(count == 1 ? name : name + "_" + count);
+        }
+        return names;
+    }
+
+    /**
+     * Sets the directory the audit files and the summary are written to.
+     *
+     * @param outputDirectory the directory, which must exist.
+     */
+    public void setOutputDirectory(String outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Sets the method dividing the seats of every district.
+     *
+     * @param apportionmentMethod the method.
+     */
+    public void setApportionmentMethod(ApportionmentMethod apportionmentMethod) {
+        this.apportionmentMethod = apportionmentMethod;
+    }
+
+    /**
+     * Sets what happens to spoiled ballots in every district.
+     *
+     * @param spoilagePolicy the spoilage policy.
+     */
+    public void setSpoilagePolicy(BallotStatistics.Policy spoilagePolicy) {
+        this.spoilagePolicy = spoilagePolicy;
+    }
+
+    /**
+     * Sets the tiebreaks of every district. With a seed, the seed of each district is drawn from it in manifest
+     * order, so a rerun replays every district whatever order the districts ran in.
+     *
+     * @param source the random source.
+     * @param seed   the seed, or {@code null} for a random seed per district.
+     */
+    public void setTiebreaker(Tiebreaker.Source source, Long seed) {
+        this.randomSource = source;
+        this.seed = seed;
+    }
+
+    /**
+     * Runs every district and writes its audit file.
+     */
+    public void run() {
+        results = new DistrictResult[filenames.size()];
+        long[] seeds = new long[filenames.size()];
+        if (seed != null) {
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int i = 0; i < seeds.length; i++) {
+                seeds[i] = random.nextLong();
+            }
+        }
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss-SSS").format(new Date());
+
+        // schedule the largest files first, so the longest districts are not the last to start
+        Integer[] order = new Integer[filenames.size()];
+        long[] sizes = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            sizes[i] = new File(filenames.get(i)).length();
+        }
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> sizes[i]).reversed());
+
+        long startTime = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            pool.invoke(new DistrictTask(order, 0, order.length, seeds, timestamp));
+        } finally {
+            pool.shutdown();
+        }
+        wallTime = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Runs one district, recording its result or why it failed.
+     *
+     * @param index     the district's place in the manifest.
+     * @param seed      the district's seed, used if the batch is seeded.
+     * @param timestamp the start time of the batch, for the audit filename.
+     */
+    protected void runDistrict(int index, long seed, String timestamp) {
+        String filename = filenames.get(index);
+        DistrictResult result = new DistrictResult(districtNames.get(index), filename);
+        long startTime = System.nanoTime();
+        try {
+            Election election;
+            if (new File(filename).isDirectory()) {
+                PrecinctLoader loader = new PrecinctLoader(PrecinctLoader.listDirectory(filename), 1);
+                loader.setSpoilagePolicy(spoilagePolicy);
+                election = loader.load();
+            } else {
+                FileInput fin = FileInput.open(filename);
+                try {
+                    fin.setSpoilagePolicy(spoilagePolicy);
+                    election = fin.isOPL() ? new OPLElection() : new CPLElection();
+                    election.processBallotData(fin);
+                } finally {
+                    fin.close();
+                }
+            }
+            election.setApportionmentMethod(apportionmentMethod);
+            election.setTiebreaker(this.seed != null ? new Tiebreaker(randomSource, seed)
+                    : new Tiebreaker(randomSource));
+            election.allocatePartySeats();
+            election.assignCandidateSeats();
+            String auditFile = new File(outputDirectory, result.name + "_" + election.getElectionType()
+                    + "_AuditFile_" + timestamp + ".txt").getPath();
+            election.generateAuditFile(auditFile);
+            result.record(election, auditFile);
+        } catch (RuntimeException e) {
+            result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        result.time = System.nanoTime() - startTime;
+        results[index] = result;
+    }
+
+    /**
+     * Gets the result of each district.
+     *
+     * @return the results in manifest order, or {@code null} before {@link #run()}.
+     */
+    public DistrictResult[] getResults() {
+        return results == null ? null : results.clone();
+    }
+
+    /**
+     * Gets the number of districts that failed.
+     *
+     * @return the number of districts with an error.
+     */
+    public int getFailureCount() {
+        int failures = 0;
+        for (DistrictResult result : results) {
+            if (result.error != null) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Produces the summary of the batch: totals, a row per district, the seats won by each party name across the
+     * districts, and the districts that failed.
+     *
+     * @return the summary as a displayable String.
+     */
+    public String generateSummary() {
+        long ballots = 0;
+        long seats = 0;
+        long districtTime = 0;
+        Map<String, long[]> partyTotals = new LinkedHashMap<>();
+        for (DistrictResult result : results) {
+            districtTime += result.time;
+            if (result.error == null) {
+                ballots += result.ballotCount;
+                seats += result.seatCount;
+                for (int i = 0; i < result.partyNames.length; i++) {
+                    long[] totals = partyTotals.computeIfAbsent(result.partyNames[i], name -> new long[3]);
+                    totals[0]++;
+                    totals[1] += result.partyVotes[i];
+                    totals[2] += result.partySeats[i];
+                }
+            }
+        }
+        int failures = getFailureCount();
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("Batch Election Summary:\n")
+                .append(" - District Count  : ").append(results.length).append(" (")
+                .append(results.length - failures).append(" completed, ").append(failures).append(" failed)\n")
+                .append(" - Thread Count    : ").append(threadCount).append("\n")
+                .append(" - Ballot Count    : ").append(ballots).append("\n")
+                .append(" - Seat Count      : ").append(seats).append("\n")
+                .append(String.format(" - Wall Time       : %.1f ms (%.1f districts per second)\n", wallTime / 1e6,
+                        results.length / Math.max(wallTime / 1e9, 1e-9)))
+                .append(String.format(" - District Time   : %.1f ms (%.2fx the wall time)\n\n", districtTime / 1e6,
+                        (double) districtTime / Math.max(wallTime, 1)));
+
+        builder.append("Districts:\n");
+        final String headerFormat = " | %-20s | %4s | %12s | %6s | %10s | %-60s |\n " + "-".repeat(131) + "\n";
+        final String rowFormat = " | %-20s | %4s | %,12d | %,6d | %,10.1f | %-60s |\n";
+        builder.append(String.format(headerFormat, "District", "Type", "Ballots", "Seats", "Time (ms)", "Audit File"));
+        for (DistrictResult result : results) {
+            if (result.error == null) {
+                builder.append(String.format(rowFormat, result.name, result.electionType, result.ballotCount,
+                        result.seatCount, result.time / 1e6, result.auditFile));
+            }
+        }
+        builder.append("\n");
+
+        builder.append("Seats by Party:\n");
+        final String partyHeaderFormat = " | %-15s | %9s | %14s | %8s |\n " + "-".repeat(60) + "\n";
+        final String partyRowFormat = " | %-15s | %,9d | %,14d | %,8d |\n";
+        builder.append(String.format(partyHeaderFormat, "Parties", "Districts", "Votes", "Seats"));
+        for (Map.Entry<String, long[]> entry : partyTotals.entrySet()) {
+            long[] totals = entry.getValue();
+            builder.append(String.format(partyRowFormat, entry.getKey(), totals[0], totals[1], totals[2]));
+        }
+
+        if (failures > 0) {
+            builder.append("\nFailed Districts:\n");
+            for (DistrictResult result : results) {
+                if (result.error != null) {
+                    builder.append(" - ").append(result.name).append(" (").append(result.filename).append("): ")
+                            .append(result.error).append("\n");
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the summary of the batch to a file in the output directory.
+     *
+     * @return the summary filename.
+     * @throws RuntimeException if the summary could not be written.
+     */
+    public String writeSummary() throws RuntimeException {
+        SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss-SSS");
+        String filename = new File(outputDirectory, "Batch_Summary_" + timestamp.format(new Date()) + ".txt")
+                .getPath();
+        try (PrintWriter printWriter = new PrintWriter(filename)) {
+            printWriter.write(generateSummary());
+            printWriter.flush();
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException("Error: Unable to create or write to the batch summary");
+        }
+        return filename;
+    }
+
+    /**
+     * The result of one district.
+     */
+    public static class DistrictResult {
+        /**
+         * The district name.
+         */
+        protected final String name;
+
+        /**
+         * The ballot file or precinct directory.
+         */
+        protected final String filename;
+
+        /**
+         * The election type, {@code "CPL"} or {@code "OPL"}.
+         */
+        protected String electionType;
+
+        /**
+         * The number of ballots.
+         */
+        protected int ballotCount;
+
+        /**
+         * The number of seats.
+         */
+        protected int seatCount;
+
+        /**
+         * The party names, in party number order.
+         */
+        protected String[] partyNames = new String[0];
+
+        /**
+         * The votes of each party.
+         */
+        protected int[] partyVotes = new int[0];
+
+        /**
+         * The seats won by each party.
+         */
+        protected int[] partySeats = new int[0];
+
+        /**
+         * The seed of the district's tiebreaks.
+         */
+        protected long seed;
+
+        /**
+         * The audit filename.
+         */
+        protected String auditFile;
+
+        /**
+         * The time the district took, in nanoseconds.
+         */
+        protected long time;
+
+        /**
+         * Why the district failed, or {@code null} if it completed.
+         */
+        protected String error;
+
+        /**
+         * Constructs a DistrictResult for a district that has not run yet.
+         *
+         * @param name     the district name.
+         * @param filename the ballot file or precinct directory.
+         */
+        protected DistrictResult(String name, String filename) {
+            this.name = name;
+            this.filename = filename;
+        }
+
+        /**
+         * Records the outcome of a completed district.
+         *
+         * @param election  the election, after its audit file was written.
+         * @param auditFile the audit filename.
+         */
+        protected void record(Election election, String auditFile) {
+            Party[] parties = election.getParties();
+            int[][] allocationData = election.getAllocationData();
+            electionType = election.getElectionType();
+            ballotCount = election.getBallotCount();
+            seatCount = election.getSeatCount();
+            partyNames = new String[parties.length];
+            partyVotes = new int[parties.length];
+            for (int i = 0; i < parties.length; i++) {
+                partyNames[i] = parties[i].getName();
+                partyVotes[i] = parties[i].getVoteCount();
+            }
+            partySeats = allocationData[4];
+            seed = election.getTiebreaker().getSeed();
+            this.auditFile = auditFile;
+        }
+
+        /**
+         * Gets the district name.
+         *
+         * @return the name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the ballot file or precinct directory.
+         *
+         * @return the filename.
+         */
+        public String getFilename() {
+            return filename;
+        }
+
+        /**
+         * Gets the election type.
+         *
+         * @return {@code "CPL"} or {@code "OPL"}, or {@code null} if the district failed.
+         */
+        public String getElectionType() {
+            return electionType;
+        }
+
+        /**
+         * Gets the number of ballots.
+         *
+         * @return the ballot count.
+         */
+        public int getBallotCount() {
+            return ballotCount;
+        }
+
+        /**
+         * Gets the seats won by each party.
+         *
+         * @return a copy of the seats, in party number order.
+         */
+        public int[] getPartySeats() {
+            return partySeats.clone();
+        }
+
+        /**
+         * Gets the seed of the district's tiebreaks.
+         *
+         * @return the seed, which replays the district's tiebreaks with {@code --seed}.
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * Gets the audit filename.
+         *
+         * @return the filename, or {@code null} if the district failed.
+         */
+        public String getAuditFile() {
+            return auditFile;
+        }
+
+        /**
+         * Gets why the district failed.
+         *
+         * @return the error message, or {@code null} if the district completed.
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Runs a range of the scheduled districts, splitting it in halves for other threads to steal.
+     */
+    protected class DistrictTask extends RecursiveAction {
+        /**
+         * The serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The district indices in scheduling order.
+         */
+        protected final Integer[] order;
+
+        /**
+         * The first place in the order to run.
+         */
+        protected final int start;
+
+        /**
+         * One past the last place in the order to run.
+         */
+        protected final int end;
+
+        /**
+         * The seed of each district, by index.
+         */
+        protected final long[] seeds;
+
+        /**
+         * The start time of the batch, for the audit filenames.
+         */
+        protected final String timestamp;
+
+        /**
+         * Constructs a DistrictTask.
+         *
+         * @param order     the district indices in scheduling order.
+         * @param start     the first place in the order to run.
+         * @param end       one past the last place in the order to run.
+         * @param seeds     the seed of each district, by index.
+         * @param timestamp the start time of the batch.
+         */
+        protected DistrictTask(Integer[] order, int start, int end, long[] seeds, String timestamp) {
+            this.order = order;
+            this.start = start;
+            this.end = end;
+            this.seeds = seeds;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * Runs the range: a single district directly, otherwise both halves, the first half first.
+         */
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                int index = order[start];
+                runDistrict(index, seeds[index], timestamp);
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new DistrictTask(order, start, middle, seeds, timestamp),
+                        new DistrictTask(order, middle, end, seeds, timestamp));
+            }
+        }
+    }
+}
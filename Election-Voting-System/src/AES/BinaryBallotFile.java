@@ -0,0 +1,253 @@
+/*
+BinaryBallotFile.java
+
+The BinaryBallotFile class defines the binary ballot format and converts CSV ballot files to it.
+
+*/
+
+package AES;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Defines the versioned binary ballot format and converts CSV ballot files to it. A binary file is laid out as:
+ * <ol>
+ *     <li>the 4 magic bytes {@code "AESB"};</li>
+ *     <li>the format version byte, currently {@link #VERSION};</li>
+ *     <li>the {@link Encoding} code byte;</li>
+ *     <li>the number of votable entities, as a big-endian int;</li>
+ *     <li>the number of ballot records, as a big-endian int;</li>
+ *     <li>the byte length of the header, as a big-endian int, then the header: the CSV header lines (election type,
+ *     seats, ballots, party/candidate count and the party/candidate lines) in UTF-8, separated by {@code '\n'};</li>
+ *     <li>one record per ballot line of the CSV file, in the file's encoding.</li>
+ * </ol>
+ * The records are every ballot line, whether the CSV file holds fewer or more than its header declares, so a binary
+ * file is tallied like its CSV file: up to the declared number of ballots, with any records past them reported as
+ * extra lines. Like {@link FileInput}, only non-blank lines past the declared ballots count as ballot lines.
+ * A single-choice record stores the ballot's choice plus one, so 0 is a ballot without a mark, {@code votableCount + 1}
+ * is an overvote and {@code votableCount + 2} a malformed line (see {@link BallotScanner}). A CSV ballot costs one
+ * byte per votable entity; a record costs 1 to 5 bytes regardless of the number of entities.
+ */
+public class BinaryBallotFile {
+    /**
+     * The leading bytes of a binary ballot file.
+     */
+    public static final byte[] MAGIC = {'A', 'E', 'S', 'B'};
+
+    /**
+     * The current format version.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * The byte length of the fixed part of the layout, up to and including the header length.
+     */
+    public static final int PREFIX_LENGTH = MAGIC.length + 2 + 4 + 4 + 4;
+
+    /**
+     * The byte offset of the record count.
+     */
+    public static final int RECORD_COUNT_OFFSET = MAGIC.length + 2 + 4;
+
+    /**
+     * The ways a ballot record can be encoded.
+     */
+    public enum Encoding {
+        /**
+         * The choice plus one as an unsigned big-endian integer of 1, 2 or 4 bytes, the smallest that fits every
+         * choice (see {@link #fixedWidth(int)}).
+         */
+        FIXED(0),
+        /**
+         * The choice plus one as an unsigned LEB128 varint: 7 bits per byte, low bits first, with the high bit set
+         * on every byte but the last.
+         */
+        VARINT(1),
+        /**
+         * One bit per votable entity, {@code (votableCount + 7) / 8} bytes per ballot, with entity {@code i} at bit
+         * {@code i % 8} of byte {@code i / 8}. Can hold several marks per ballot; a single-choice tally treats a
+         * ballot with several marks as an overvote.
+         */
+        BITMAP(2);
+
+        /**
+         * The code stored in the file.
+         */
+        public final int code;
+
+        Encoding(int code) {
+            this.code = code;
+        }
+
+        /**
+         * Gets the encoding stored as {@code code}.
+         *
+         * @param code the stored code.
+         * @return the encoding.
+         * @throws RuntimeException if no encoding has that code.
+         */
+        public static Encoding fromCode(int code) throws RuntimeException {
+            for (Encoding encoding : values()) {
+                if (encoding.code == code) {
+                    return encoding;
+                }
+            }
+            throw new RuntimeException("Error: Unknown binary ballot encoding " + code);
+        }
+    }
+
+    /**
+     * Gets the byte width of a {@link Encoding#FIXED} record.
+     *
+     * @param votableCount the number of votable entities.
+     * @return 1, 2 or 4.
+     */
+    public static int fixedWidth(int votableCount) {
+        // records store the choice plus one, up to votableCount, or the two spoiled codes above it
+        if (votableCount + 2 <= 0xff) {
+            return 1;
+        }
+        return votableCount + 2 <= 0xffff ? 2 : 4;
+    }
+
+    /**
+     * Converts a CSV ballot file to the binary format, writing a record for every ballot line.
+     *
+     * @param csvFilename    the CSV file to read; any file {@link FileInput} can read.
+     * @param binaryFilename the binary file to write.
+     * @param encoding       the ballot record encoding.
+     * @return the number of ballot lines converted, which may differ from the number the header declares.
+     * @throws RuntimeException if a file could not be read or written, or if a ballot is malformed and the encoding
+     *                          is {@link Encoding#BITMAP}.
+     */
+    public static int convert(String csvFilename, String binaryFilename, Encoding encoding) throws RuntimeException {
+        FileInput fin = new FileInput(csvFilename);
+        try {
+            // header: type, seats, ballots, party/candidate count, then one line per party/candidate
+            List<String> header = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                header.add(fin.getLine());
+            }
+            int ballotCount = Integer.parseInt(header.get(2));
+            int lineCount = Integer.parseInt(header.get(3));
+            for (int i = 0; i < lineCount; i++) {
+                header.add(fin.getLine());
+            }
+            // CPL ballots have one entry per party line, OPL ballots one per candidate line
+            int votableCount = lineCount;
+            byte[] headerBytes = String.join("\n", header).getBytes(StandardCharsets.UTF_8);
+
+            int recordCount = 0;
+            try (FileOutputStream file = new FileOutputStream(binaryFilename);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                out.write(MAGIC);
+                out.writeByte(VERSION);
+                out.writeByte(encoding.code);
+                out.writeInt(votableCount);
+                // the record count is written once the lines have been read
+                out.writeInt(0);
+                out.writeInt(headerBytes.length);
+                out.write(headerBytes);
+
+                byte[] bitmap = new byte[(votableCount + 7) / 8];
+                String line;
+                while ((line = fin.getLine()) != null) {
+                    // a blank line past the declared ballots is not a ballot line
+                    if (recordCount >= ballotCount && line.isEmpty()) {
+                        continue;
+                    }
+                    writeBallot(out, line, encoding, votableCount, bitmap, recordCount);
+                    recordCount++;
+                }
+                out.flush();
+                file.getChannel().write(ByteBuffer.allocate(4).putInt(0, recordCount), RECORD_COUNT_OFFSET);
+            } catch (IOException e) {
+                throw new RuntimeException("Error: Could not write file \"" + binaryFilename + "\"");
+            }
+            return recordCount;
+        } finally {
+            fin.close();
+        }
+    }
+
+    /**
+     * Writes one CSV ballot line as a record. The line is classified the same way {@link BallotScanner} classifies
+     * it, so a tally of the binary file matches a tally of the CSV file.
+     *
+     * @param out          the destination.
+     * @param line         the CSV ballot line.
+     * @param encoding     the record encoding.
+     * @param votableCount the number of votable entities.
+     * @param bitmap       a scratch array of {@code (votableCount + 7) / 8} bytes.
+     * @param ballotIndex  the index of the ballot, for messages.
+     * @throws IOException      if the record could not be written.
+     * @throws RuntimeException if the ballot is malformed and the encoding is {@link Encoding#BITMAP}.
+     */
+    protected static void writeBallot(DataOutputStream out, String line, Encoding encoding, int votableCount,
+                                      byte[] bitmap, int ballotIndex) throws IOException, RuntimeException {
+        // find the marks; the entity index of a mark is the number of commas before it
+        int choice = -1;
+        int marks = 0;
+        int commas = 0;
+        boolean invalid = false;
+        if (encoding == Encoding.BITMAP) {
+            Arrays.fill(bitmap, (byte) 0);
+        }
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ',') {
+                commas++;
+            } else if (c == '1') {
+                if (marks++ == 0) {
+                    choice = commas;
+                }
+                if (encoding == Encoding.BITMAP && commas < votableCount) {
+                    bitmap[commas >>> 3] |= (byte) (1 << (commas & 7));
+                }
+            } else if (c != ' ' && c != '\t') {
+                invalid = true;
+            }
+        }
+
+        int value;
+        if (invalid || commas != votableCount - 1) {
+            if (encoding == Encoding.BITMAP) {
+                throw new RuntimeException("Error: Ballot " + (ballotIndex + 1)
+                        + " is malformed and cannot be stored in the bitmap encoding");
+            }
+            value = votableCount + 2;
+        } else if (marks > 1) {
+            value = votableCount + 1;
+        } else {
+            value = choice + 1;
+        }
+        switch (encoding) {
+            case FIXED -> {
+                int width = fixedWidth(votableCount);
+                if (width == 1) {
+                    out.writeByte(value);
+                } else if (width == 2) {
+                    out.writeShort(value);
+                } else {
+                    out.writeInt(value);
+                }
+            }
+            case VARINT -> {
+                while ((value & ~0x7f) != 0) {
+                    out.writeByte((value & 0x7f) | 0x80);
+                    value >>>= 7;
+                }
+                out.writeByte(value);
+            }
+            case BITMAP -> out.write(bitmap);
+        }
+    }
+}
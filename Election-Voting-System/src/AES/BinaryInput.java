@@ -0,0 +1,294 @@
+/*
+BinaryInput.java
+
+The BinaryInput class reads ballot data in the binary ballot format.
+
+*/
+
+package AES;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a ballot file in the binary format defined by {@link BinaryBallotFile}. The header lines are served by
+ * {@link #getLine()} exactly as they appear in the original CSV file, so CPLElection and OPLElection consume a
+ * BinaryInput like any other FileInput; the ballot records are decoded straight into the tally.
+ */
+public class BinaryInput extends FileInput {
+    /**
+     * The size of the read buffer, in bytes.
+     */
+    protected static final int READ_SIZE = 1 << 20;
+
+    /**
+     * The record encoding of the file.
+     */
+    protected BinaryBallotFile.Encoding encoding;
+
+    /**
+     * The number of votable entities per record.
+     */
+    protected int votableCount;
+
+    /**
+     * The number of ballot records, which may differ from the number the header declares.
+     */
+    protected int recordCount;
+
+    /**
+     * The header lines.
+     */
+    protected String[] headerLines;
+
+    /**
+     * The byte offset of the first ballot record.
+     */
+    protected long recordOffset;
+
+    /**
+     * Opens a binary ballot file and reads its header.
+     *
+     * @param filename the name of the file.
+     * @throws RuntimeException if the file could not be read or is not a binary ballot file.
+     */
+    public BinaryInput(String filename) throws RuntimeException {
+        super(filename, null);
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            ByteBuffer prefix = ByteBuffer.allocate(BinaryBallotFile.PREFIX_LENGTH);
+            readFully(channel, prefix, 0);
+            prefix.flip();
+            for (byte b : BinaryBallotFile.MAGIC) {
+                if (prefix.get() != b) {
+                    throw new RuntimeException("Error: File \"" + filename + "\" is not a binary ballot file");
+                }
+            }
+            int version = prefix.get() & 0xff;
+            if (version != BinaryBallotFile.VERSION) {
+                throw new RuntimeException("Error: File \"" + filename + "\" has unsupported binary ballot version "
+                        + version);
+            }
+            encoding = BinaryBallotFile.Encoding.fromCode(prefix.get() & 0xff);
+            votableCount = prefix.getInt();
+            recordCount = prefix.getInt();
+            int headerLength = prefix.getInt();
+
+            ByteBuffer header = ByteBuffer.allocate(headerLength);
+            readFully(channel, header, BinaryBallotFile.PREFIX_LENGTH);
+            headerLines = new String(header.array(), StandardCharsets.UTF_8).split("\n", -1);
+            recordOffset = BinaryBallotFile.PREFIX_LENGTH + (long) headerLength;
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not read file \"" + filename + "\"");
+        }
+    }
+
+    /**
+     * Fills {@code buffer} from {@code channel}, starting at {@code position}.
+     *
+     * @param channel  the channel to read.
+     * @param buffer   the buffer to fill.
+     * @param position the file offset to read from.
+     * @throws IOException if the channel could not be read or ends early.
+     */
+    protected void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of file");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Gets the record encoding.
+     *
+     * @return the encoding of the ballot records.
+     */
+    public BinaryBallotFile.Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Consumes and returns the next header line.
+     *
+     * @return the header line, or {@code null} once all header lines are consumed.
+     */
+    @Override
+    public String getLine() {
+        if (linesRead >= headerLines.length) {
+            return null;
+        }
+        return headerLines[linesRead++];
+    }
+
+    /**
+     * Tallies {@code ballotCount} ballot records, or every record if there are fewer. Only records with one choice in
+     * range are counted; the validation results are available from {@link #getStatistics()} afterwards, with any
+     * records past {@code ballotCount} as extra lines, as for a CSV file.
+     *
+     * @param votableCount the number of votable entities on the ballot
+     * @param ballotCount the number of ballots to tally
+     * @return an int array of all the vote counts
+     * @throws RuntimeException if the file could not be read, or if it does not match {@code votableCount}.
+     */
+    @Override
+    public int[] tallyVotes(int votableCount, int ballotCount) throws RuntimeException {
+        if (votableCount != this.votableCount) {
+            throw new RuntimeException("Error: File \"" + filename + "\" has " + this.votableCount
+                    + " entries per ballot, expected " + votableCount);
+        }
+        int[] votes = new int[votableCount];
+        statistics = new BallotStatistics(ballotCount, 0, 0, 0, 0, 0, 0);
+        int recordSize = encoding == BinaryBallotFile.Encoding.BITMAP ? (votableCount + 7) / 8
+                : encoding == BinaryBallotFile.Encoding.FIXED ? BinaryBallotFile.fixedWidth(votableCount) : 5;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(READ_SIZE, recordSize * 2));
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long position = recordOffset;
+            int remaining = ballotCount;
+            boolean atEnd = false;
+            while (remaining > 0) {
+                // keep at least one whole record in the buffer until the file ends
+                if (!atEnd && buffer.remaining() < recordSize) {
+                    buffer.compact();
+                    int read = channel.read(buffer, position);
+                    buffer.flip();
+                    if (read < 0) {
+                        atEnd = true;
+                    } else {
+                        position += read;
+                    }
+                    continue;
+                }
+                int decoded = decode(buffer, votes, remaining, atEnd ? 0 : recordSize);
+                if (decoded == 0) {
+                    // the file ended early; the statistics show the missing ballots
+                    break;
+                }
+                remaining -= decoded;
+                reportLive(votes, ballotCount - remaining);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not read file \"" + filename + "\"");
+        }
+        statistics.extra = Math.max(0, recordCount - ballotCount);
+        return votes;
+    }
+
+    /**
+     * Decodes records from {@code buffer} into {@code votes} while at least {@code reserve} bytes remain, or while
+     * complete records remain if {@code reserve} is 0.
+     *
+     * @param buffer  the records, between its position and limit.
+     * @param votes   the tally.
+     * @param limit   the maximum number of records to decode.
+     * @param reserve the number of bytes that must remain before each record.
+     * @return the number of records decoded.
+     */
+    protected int decode(ByteBuffer buffer, int[] votes, int limit, int reserve) {
+        int decoded = 0;
+        int floor = Math.max(reserve, 1);
+        switch (encoding) {
+            case FIXED -> {
+                int width = BinaryBallotFile.fixedWidth(votableCount);
+                floor = Math.max(floor, width);
+                while (decoded < limit && buffer.remaining() >= floor) {
+                    int value = width == 1 ? buffer.get() & 0xff : width == 2 ? buffer.getShort() & 0xffff
+                            : buffer.getInt();
+                    count(votes, value);
+                    decoded++;
+                }
+            }
+            case VARINT -> {
+                while (decoded < limit && buffer.remaining() >= floor) {
+                    int start = buffer.position();
+                    int value = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        if (!buffer.hasRemaining()) {
+                            // truncated record at the end of the file
+                            buffer.position(start);
+                            return decoded;
+                        }
+                        b = buffer.get();
+                        value |= (b & 0x7f) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    count(votes, value);
+                    decoded++;
+                }
+            }
+            case BITMAP -> {
+                int width = (votableCount + 7) / 8;
+                floor = Math.max(floor, width);
+                while (decoded < limit && buffer.remaining() >= floor) {
+                    int value = 0;
+                    int marks = 0;
+                    for (int i = 0; i < width; i++) {
+                        int bits = buffer.get() & 0xff;
+                        if (bits != 0) {
+                            if (marks == 0) {
+                                value = i * 8 + Integer.numberOfTrailingZeros(bits) + 1;
+                            }
+                            marks += Integer.bitCount(bits);
+                        }
+                    }
+                    count(votes, marks > 1 ? -1 : value);
+                    decoded++;
+                }
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Counts one record value, the choice plus one, and records it in the statistics.
+     *
+     * @param votes the tally.
+     * @param value the record value; 0 is an undervote, and -1 or {@code votableCount + 1} an overvote.
+     */
+    protected void count(int[] votes, int value) {
+        long index = statistics.read++;
+        if (value > 0 && value <= votableCount) {
+            votes[value - 1]++;
+            statistics.valid++;
+        } else if (value == 0) {
+            statistics.undervotes++;
+        } else if (value == -1 || value == votableCount + 1) {
+            statistics.overvotes++;
+            if (spoilagePolicy == BallotStatistics.Policy.QUARANTINE) {
+                statistics.quarantine(filename, index, "overvote");
+            }
+        } else {
+            statistics.malformed++;
+            if (spoilagePolicy == BallotStatistics.Policy.QUARANTINE) {
+                statistics.quarantine(filename, index, "malformed");
+            }
+        }
+    }
+
+    /**
+     * Closes the file. The file is only open while it is being read, so there is nothing to release.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Checks whether this input is an uncompressed CSV file. Binary files are not, so they cannot be checkpointed or
+     * indexed.
+     *
+     * @return false.
+     */
+    @Override
+    protected boolean isPlainFile() {
+        return false;
+    }
+}
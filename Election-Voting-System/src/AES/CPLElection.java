@@ -23,10 +23,12 @@ public class CPLElection extends Election {
     }
 
     /**
-     * Processes the header data from a file.
+     * Processes the header data from a file. If the election was already set up by an earlier file, the header
+     * must list the same seat count, parties and candidates in the same order.
      *
      * @param fin the file input wrapper, where the next line available is the 2nd line of the original file.
      * @return the ballot count in the current file.
+     * @throws RuntimeException if the header does not match the election set up by an earlier file.
      */
     protected int processHeaderData(FileInput fin) {
         // consume the first 3 lines
@@ -34,10 +36,22 @@ public class CPLElection extends Election {
         int currentBallots = Integer.parseInt(fin.getLine());
         int partyCount = Integer.parseInt(fin.getLine());
 
-        // if we already set up our data structures, just consume the parties lines, record the ballotCount and return
+        // if we already set up our data structures, check the parties lines, record the ballotCount and return
         if (parties != null) {
-            for (int i = 0; i < candidateCount; i++) {
-                fin.getLine();
+            if (seatCount != this.seatCount || partyCount != this.partyCount) {
+                throw headerMismatch(fin);
+            }
+            for (int i = 0; i < partyCount; i++) {
+                String[] tokens = fin.getLine().split(", ");
+                ArrayList<Candidate> cands = candidates.get(i);
+                if (!tokens[0].equals(parties[i].getName()) || tokens.length - 1 != cands.size()) {
+                    throw headerMismatch(fin);
+                }
+                for (int j = 0; j < cands.size(); j++) {
+                    if (!tokens[j + 1].equals(cands.get(j).getName())) {
+                        throw headerMismatch(fin);
+                    }
+                }
             }
             this.ballotCount += currentBallots;
             return currentBallots;
@@ -77,19 +91,40 @@ public class CPLElection extends Election {
     }
 
     /**
-     * Processes the ballot data from the specified file input.
+     * Processes the ballot data from the specified file input. Votes are added to those of any earlier file.
      *
      * @param fin the file input wrapper that contains the path to the election data file.
      */
     @Override
     public void processBallotData(FileInput fin) {
         int currentBallots = processHeaderData(fin);
+        beginLiveResults(fin);
         int[] voteCounts = fin.tallyVotes(partyCount, currentBallots);
         fin.close();
+        recordVotes(voteCounts);
+        recordStatistics(fin.getStatistics());
+        recordMerkleTree(fin.getMerkleTree());
+    }
 
-        // record votes
+    /**
+     * Gets the number of votable entities on a ballot.
+     *
+     * @return the number of parties.
+     */
+    @Override
+    protected int getVotableCount() {
+        return partyCount;
+    }
+
+    /**
+     * Adds tallied votes to the parties.
+     *
+     * @param voteCounts the votes per party, in ballot order.
+     */
+    @Override
+    protected void recordVotes(int[] voteCounts) {
         for (int i = 0; i < partyCount; i++) {
-            parties[i].setVoteCount(voteCounts[i]);
+            parties[i].addVoteCount(voteCounts[i]);
         }
     }
 
@@ -117,20 +152,30 @@ public class CPLElection extends Election {
      */
     @Override
     protected String generatePartyCandidateList() {
-        StringBuilder builder = new StringBuilder();
-        builder.append("Parties & Candidates:\n");
+        return AuditWriter.capture(this::writePartyCandidateList);
+    }
+
+    /**
+     * Writes the list of parties and candidates, along with party vote counts and proportions, one candidate at a
+     * time.
+     *
+     * @param out the writer.
+     * @throws RuntimeException if the list could not be written.
+     */
+    @Override
+    protected void writePartyCandidateList(AuditWriter out) throws RuntimeException {
+        final AuditWriter.RowFormat shareFormat = new AuditWriter.RowFormat("%.2f%%");
+        out.append("Parties & Candidates:\n");
         for (int i = 0; i < parties.length; i++) {
             int votes = parties[i].getVoteCount();
-            builder.append(" - Party: ").append(parties[i].name)
-                    .append(", Votes: ").append(votes)
-                    .append(" (").append(
-                            String.format("%.2f%%", (double) votes / ballotCount * 100)
-                    ).append(" of total)").append("\n");
+            out.append(" - Party: ").append(parties[i].name)
+                    .append(", Votes: ").append(votes).append(" (");
+            shareFormat.write(out, (double) votes / ballotCount * 100);
+            out.append(" of total)\n");
             for (Candidate candidate : candidates.get(i)) {
-                builder.append("   - Candidate: ").append(candidate.getName()).append("\n");
+                out.append("   - Candidate: ").append(candidate.getName()).append('\n');
             }
-            builder.append("\n");
+            out.append('\n');
         }
-        return builder.toString();
     }
 }
@@ -0,0 +1,328 @@
+/*
+CandidateRanking.java
+
+The CandidateRanking class keeps the candidates of each party ranked by votes as votes are added.
+
+*/
+
+package AES;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The candidates of each party of an open list election, kept in rank order as votes are added: most votes first,
+ * and in list order among equal votes. Since the candidates tied with the last seat of a party are consecutive and
+ * already in list order, {@link #cutoff(int, int)} finds who wins any number of seats in {@code O(seats)} plus a
+ * binary search, with the tied group ready for the tiebreak, so seats can be assigned again, or for a different seat
+ * count, without ranking anything again.
+ * <p>
+ * One candidate's votes are added by moving it forward past the candidates it overtakes. A batch of votes for many
+ * candidates of a party is added by sorting just the changed candidates and merging them with the others, which
+ * keep their order.
+ */
+public class CandidateRanking {
+    /**
+     * The list positions of each party's candidates, in rank order.
+     */
+    protected final int[][] order;
+
+    /**
+     * The rank of each party's candidates, by list position: the inverse of {@code order}.
+     */
+    protected final int[][] ranks;
+
+    /**
+     * The votes of each party's candidates, by list position.
+     */
+    protected final int[][] votes;
+
+    /**
+     * Constructs a CandidateRanking of candidates without votes, ranked in list order.
+     *
+     * @param listSizes the number of candidates of each party.
+     */
+    public CandidateRanking(int[] listSizes) {
+        order = new int[listSizes.length][];
+        ranks = new int[listSizes.length][];
+        votes = new int[listSizes.length][];
+        for (int party = 0; party < listSizes.length; party++) {
+            order[party] = new int[listSizes[party]];
+            ranks[party] = new int[listSizes[party]];
+            votes[party] = new int[listSizes[party]];
+            for (int i = 0; i < listSizes[party]; i++) {
+                order[party][i] = i;
+                ranks[party][i] = i;
+            }
+        }
+    }
+
+    /**
+     * Constructs a CandidateRanking of the candidates of an election and their current votes.
+     *
+     * @param candidates the candidate lists of each party.
+     * @return the ranking.
+     */
+    public static CandidateRanking of(List<? extends List<Candidate>> candidates) {
+        int[] listSizes = new int[candidates.size()];
+        for (int party = 0; party < listSizes.length; party++) {
+            listSizes[party] = candidates.get(party).size();
+        }
+        CandidateRanking ranking = new CandidateRanking(listSizes);
+        for (int party = 0; party < listSizes.length; party++) {
+            int[] partyVotes = new int[listSizes[party]];
+            for (int i = 0; i < partyVotes.length; i++) {
+                partyVotes[i] = candidates.get(party).get(i).getVoteCount();
+            }
+            ranking.addVotes(party, partyVotes);
+        }
+        return ranking;
+    }
+
+    /**
+     * Adds votes to one candidate and moves it forward past the candidates it now ranks before.
+     *
+     * @param party     the party number.
+     * @param candidate the candidate's list position.
+     * @param added     the votes to add; must not be negative.
+     * @throws RuntimeException if {@code added} is negative.
+     */
+    public void addVotes(int party, int candidate, int added) throws RuntimeException {
+        if (added < 0) {
+            throw new RuntimeException("Error: Cannot remove " + -added + " votes from a ranked candidate");
+        }
+        if (added == 0) {
+            return;
+        }
+        int[] partyOrder = order[party];
+        int[] partyRanks = ranks[party];
+        votes[party][candidate] += added;
+        long key = key(party, candidate);
+        int rank = partyRanks[candidate];
+
+        // the first of the candidates ahead of it that it now ranks before
+        int low = 0;
+        int high = rank;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (key(party, partyOrder[middle]) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        System.arraycopy(partyOrder, low, partyOrder, low + 1, rank - low);
+        partyOrder[low] = candidate;
+        for (int i = low; i <= rank; i++) {
+            partyRanks[partyOrder[i]] = i;
+        }
+    }
+
+    /**
+     * Adds a batch of votes to the candidates of a party. The changed candidates are sorted and merged with the
+     * unchanged ones, which keep their order.
+     *
+     * @param party the party number.
+     * @param added the votes to add to each candidate, by list position; none may be negative.
+     * @throws RuntimeException if a number of votes is negative.
+     */
+    public void addVotes(int party, int[] added) throws RuntimeException {
+        int[] partyOrder = order[party];
+        int[] partyVotes = votes[party];
+        long[] changed = new long[partyOrder.length];
+        int changedCount = 0;
+        for (int i = 0; i < added.length; i++) {
+            if (added[i] < 0) {
+                throw new RuntimeException("Error: Cannot remove " + -added[i] + " votes from a ranked candidate");
+            }
+            if (added[i] > 0) {
+                partyVotes[i] += added[i];
+                changed[changedCount++] = key(party, i);
+            }
+        }
+        if (changedCount == 0) {
+            return;
+        }
+        Arrays.sort(changed, 0, changedCount);
+
+        int[] merged = new int[partyOrder.length];
+        int count = 0;
+        int next = 0;
+        for (int candidate : partyOrder) {
+            if (added[candidate] > 0) {
+                continue;
+            }
+            long key = key(party, candidate);
+            while (next < changedCount && changed[next] < key) {
+                merged[count++] = candidate(changed[next++]);
+            }
+            merged[count++] = candidate;
+        }
+        while (next < changedCount) {
+            merged[count++] = candidate(changed[next++]);
+        }
+        order[party] = merged;
+        for (int i = 0; i < merged.length; i++) {
+            ranks[party][merged[i]] = i;
+        }
+    }
+
+    /**
+     * Packs a candidate's votes and list position into a long that sorts in rank order, like
+     * {@link LargestRemainderMethod#rank(int, int)} does for parties.
+     *
+     * @param party     the party number.
+     * @param candidate the candidate's list position.
+     * @return the packed key.
+     */
+    protected long key(int party, int candidate) {
+        return LargestRemainderMethod.rank(votes[party][candidate], candidate);
+    }
+
+    /**
+     * Unpacks the list position from a key.
+     *
+     * @param key the key from {@link #key(int, int)}.
+     * @return the candidate's list position.
+     */
+    protected static int candidate(long key) {
+        return LargestRemainderMethod.party(key);
+    }
+
+    /**
+     * Gets the votes of a candidate.
+     *
+     * @param party     the party number.
+     * @param candidate the candidate's list position.
+     * @return the votes.
+     */
+    public int getVotes(int party, int candidate) {
+        return votes[party][candidate];
+    }
+
+    /**
+     * Gets the candidates of a party in rank order.
+     *
+     * @param party the party number.
+     * @return a copy of the list positions, most votes first.
+     */
+    public int[] getOrder(int party) {
+        return order[party].clone();
+    }
+
+    /**
+     * Finds which candidates of a party win a number of seats: those ranked before the group tied with the last
+     * seat, and the group itself, from which the tiebreak picks the rest.
+     *
+     * @param party the party number.
+     * @param seats the number of seats, from 0 to the party's list size.
+     * @return the cutoff.
+     * @throws RuntimeException if {@code seats} is out of range.
+     */
+    public Cutoff cutoff(int party, int seats) throws RuntimeException {
+        int[] partyOrder = order[party];
+        if (seats < 0 || seats > partyOrder.length) {
+            throw new RuntimeException("Error: Cannot seat " + seats + " of " + partyOrder.length + " candidates");
+        }
+        if (seats == 0) {
+            return new Cutoff(new int[0], new int[0], 0);
+        }
+        int[] partyVotes = votes[party];
+        int tiedVotes = partyVotes[partyOrder[seats - 1]];
+
+        // the group of candidates with the last seat's votes starts at or before it and ends at or after it
+        int low = 0;
+        int high = seats - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (partyVotes[partyOrder[middle]] > tiedVotes) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int tieStart = low;
+        high = partyOrder.length;
+        low = seats;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (partyVotes[partyOrder[middle]] == tiedVotes) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int tieEnd = low;
+        return new Cutoff(Arrays.copyOfRange(partyOrder, 0, tieStart),
+                Arrays.copyOfRange(partyOrder, tieStart, tieEnd), seats - tieStart);
+    }
+
+    /**
+     * The candidates of a party who win a number of seats.
+     */
+    public static class Cutoff {
+        /**
+         * The list positions of the candidates with more votes than the last seat, in rank order.
+         */
+        protected final int[] winners;
+
+        /**
+         * The list positions of the candidates with as many votes as the last seat, in list order.
+         */
+        protected final int[] tied;
+
+        /**
+         * The number of seats left for the tied candidates.
+         */
+        protected final int tiedSeats;
+
+        /**
+         * Constructs a Cutoff, taking ownership of the arrays.
+         *
+         * @param winners   the candidates with more votes than the last seat.
+         * @param tied      the candidates with as many votes as the last seat.
+         * @param tiedSeats the seats left for the tied candidates.
+         */
+        protected Cutoff(int[] winners, int[] tied, int tiedSeats) {
+            this.winners = winners;
+            this.tied = tied;
+            this.tiedSeats = tiedSeats;
+        }
+
+        /**
+         * Gets the candidates with more votes than the last seat, who win a seat for certain.
+         *
+         * @return a copy of their list positions, in rank order.
+         */
+        public int[] getWinners() {
+            return winners.clone();
+        }
+
+        /**
+         * Gets the candidates with as many votes as the last seat.
+         *
+         * @return a copy of their list positions, in list order.
+         */
+        public int[] getTied() {
+            return tied.clone();
+        }
+
+        /**
+         * Gets the number of seats left for the tied candidates.
+         *
+         * @return the seats, from 0 to the number of tied candidates; 0 only if there are no seats.
+         */
+        public int getTiedSeats() {
+            return tiedSeats;
+        }
+
+        /**
+         * Checks whether the tied candidates are more than their seats, so the tiebreak decides who wins.
+         *
+         * @return {@code true} if a tiebreak is needed.
+         */
+        public boolean isTie() {
+            return tied.length > tiedSeats;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ColumnarAudit.java
+
+The ColumnarAudit class defines the columnar binary audit format and reads it by memory-mapping.
+
+*/
+
+package AES;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Defines the versioned columnar binary audit format written by {@link AuditExport}, and reads it by
+ * memory-mapping the file, so opening an election of any size only checks the header: each value is read from the
+ * mapped file when asked for. Every number is big-endian, as in {@link BinaryBallotFile}. A file is laid out as:
+ * <ol>
+ *     <li>the 4 magic bytes {@code "AESA"}, the format version byte, currently {@link #VERSION}, the election type
+ *     byte (0 for CPL, 1 for OPL), the apportionment method byte, its index in {@link #METHODS}, which names rows 1
+ *     to 3 of the allocation data, and a reserved zero byte;</li>
+ *     <li>the party count, candidate count, ballot count and seat count, as ints; the tiebreak seed, as a long;
+ *     and the byte length of the name heap, as a long, completing the {@link #HEADER_LENGTH}-byte header;</li>
+ *     <li>the 5 rows of the allocation data, each one int per party, in the order of
+ *     {@link Election#getAllocationData()};</li>
+ *     <li>the index of each party's first candidate, one int per party followed by the candidate count: the
+ *     candidates of party {@code p} are {@code [start[p], start[p + 1])}, in list order;</li>
+ *     <li>the votes of each candidate, one int per candidate;</li>
+ *     <li>the start of each name in the name heap, one int per party, then one per candidate, then the heap
+ *     length;</li>
+ *     <li>one byte per candidate, 1 if the candidate won a seat and 0 otherwise;</li>
+ *     <li>the name heap: the party names, then the candidate names, in UTF-8.</li>
+ * </ol>
+ * Every section starts at an offset that depends only on the counts in the header, and every int column is aligned
+ * to 4 bytes.
+ */
+public class ColumnarAudit {
+    /**
+     * The leading bytes of a columnar audit file.
+     */
+    public static final byte[] MAGIC = {'A', 'E', 'S', 'A'};
+
+    /**
+     * The current format version.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * The apportionment methods, in the order of their header codes.
+     */
+    protected static final ApportionmentMethod[] METHODS = {ApportionmentMethod.LARGEST_REMAINDER,
+            ApportionmentMethod.D_HONDT, ApportionmentMethod.SAINTE_LAGUE, ApportionmentMethod.MODIFIED_SAINTE_LAGUE,
+            ApportionmentMethod.HUNTINGTON_HILL};
+
+    /**
+     * The byte length of the header.
+     */
+    public static final int HEADER_LENGTH = 40;
+
+    /**
+     * The mapped file.
+     */
+    protected final ByteBuffer buffer;
+
+    /**
+     * The election type, {@code "CPL"} or {@code "OPL"}.
+     */
+    protected final String electionType;
+
+    /**
+     * The apportionment method the seats were allocated with.
+     */
+    protected final ApportionmentMethod apportionmentMethod;
+
+    /**
+     * The number of parties.
+     */
+    protected final int partyCount;
+
+    /**
+     * The number of candidates.
+     */
+    protected final int candidateCount;
+
+    /**
+     * The number of ballots cast.
+     */
+    protected final int ballotCount;
+
+    /**
+     * The number of seats.
+     */
+    protected final int seatCount;
+
+    /**
+     * The seed of the election's tiebreaks.
+     */
+    protected final long seed;
+
+    /**
+     * Opens a columnar audit file, mapping it into memory and checking its header.
+     *
+     * @param filename the name of the file.
+     * @throws RuntimeException if the file could not be read or is not a columnar audit file.
+     */
+    public ColumnarAudit(String filename) throws RuntimeException {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE) {
+                throw new RuntimeException("Error: File \"" + filename + "\" is not a columnar audit file");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not read file \"" + filename + "\"");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                throw new RuntimeException("Error: File \"" + filename + "\" is not a columnar audit file");
+            }
+        }
+        int version = buffer.get(4) & 0xff;
+        if (version != VERSION) {
+            throw new RuntimeException("Error: File \"" + filename + "\" has unsupported columnar audit version "
+                    + version);
+        }
+        electionType = buffer.get(5) == 1 ? "OPL" : "CPL";
+        int method = buffer.get(6) & 0xff;
+        if (method >= METHODS.length) {
+            throw new RuntimeException("Error: File \"" + filename + "\" has unknown apportionment method " + method);
+        }
+        apportionmentMethod = METHODS[method];
+        partyCount = buffer.getInt(8);
+        candidateCount = buffer.getInt(12);
+        ballotCount = buffer.getInt(16);
+        seatCount = buffer.getInt(20);
+        seed = buffer.getLong(24);
+        long heapLength = buffer.getLong(32);
+        if (partyCount < 0 || candidateCount < 0 || fileLength(partyCount, candidateCount, heapLength)
+                != buffer.capacity()) {
+            throw new RuntimeException("Error: File \"" + filename + "\" is truncated or corrupt");
+        }
+    }
+
+    /**
+     * Gets the header code of an apportionment method.
+     *
+     * @param method the method.
+     * @return the code, its index in {@link #METHODS}.
+     * @throws RuntimeException if the method has no code.
+     */
+    protected static int methodCode(ApportionmentMethod method) throws RuntimeException {
+        for (int i = 0; i < METHODS.length; i++) {
+            if (METHODS[i] == method) {
+                return i;
+            }
+        }
+        throw new RuntimeException("Error: Apportionment method " + method.getName() + " has no columnar audit code");
+    }
+
+    /**
+     * Gets the offset of the allocation data.
+     *
+     * @return the offset.
+     */
+    protected static long allocationOffset() {
+        return HEADER_LENGTH;
+    }
+
+    /**
+     * Gets the offset of the candidate starts.
+     *
+     * @param partyCount the number of parties.
+     * @return the offset.
+     */
+    protected static long startOffset(int partyCount) {
+        return allocationOffset() + 5L * 4 * partyCount;
+    }
+
+    /**
+     * Gets the offset of the candidate votes.
+     *
+     * @param partyCount the number of parties.
+     * @return the offset.
+     */
+    protected static long votesOffset(int partyCount) {
+        return startOffset(partyCount) + 4L * (partyCount + 1);
+    }
+
+    /**
+     * Gets the offset of the name starts.
+     *
+     * @param partyCount     the number of parties.
+     * @param candidateCount the number of candidates.
+     * @return the offset.
+     */
+    protected static long nameOffset(int partyCount, int candidateCount) {
+        return votesOffset(partyCount) + 4L * candidateCount;
+    }
+
+    /**
+     * Gets the offset of the seated flags.
+     *
+     * @param partyCount     the number of parties.
+     * @param candidateCount the number of candidates.
+     * @return the offset.
+     */
+    protected static long seatedOffset(int partyCount, int candidateCount) {
+        return nameOffset(partyCount, candidateCount) + 4L * (partyCount + candidateCount + 1);
+    }
+
+    /**
+     * Gets the offset of the name heap.
+     *
+     * @param partyCount     the number of parties.
+     * @param candidateCount the number of candidates.
+     * @return the offset.
+     */
+    protected static long heapOffset(int partyCount, int candidateCount) {
+        return seatedOffset(partyCount, candidateCount) + candidateCount;
+    }
+
+    /**
+     * Gets the length of a file.
+     *
+     * @param partyCount     the number of parties.
+     * @param candidateCount the number of candidates.
+     * @param heapLength     the byte length of the name heap.
+     * @return the length.
+     */
+    protected static long fileLength(int partyCount, int candidateCount, long heapLength) {
+        return heapOffset(partyCount, candidateCount) + heapLength;
+    }
+
+    /**
+     * Gets the election type.
+     *
+     * @return {@code "CPL"} or {@code "OPL"}.
+     */
+    public String getElectionType() {
+        return electionType;
+    }
+
+    /**
+     * Gets the number of parties.
+     *
+     * @return the party count.
+     */
+    public int getPartyCount() {
+        return partyCount;
+    }
+
+    /**
+     * Gets the number of candidates.
+     *
+     * @return the candidate count.
+     */
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+    /**
+     * Gets the number of ballots cast.
+     *
+     * @return the ballot count.
+     */
+    public int getBallotCount() {
+        return ballotCount;
+    }
+
+    /**
+     * Gets the number of seats.
+     *
+     * @return the seat count.
+     */
+    public int getSeatCount() {
+        return seatCount;
+    }
+
+    /**
+     * Gets the apportionment method the seats were allocated with, whose {@link ApportionmentMethod#getColumnNames()}
+     * name rows 1 to 3 of the allocation data.
+     *
+     * @return the method.
+     */
+    public ApportionmentMethod getApportionmentMethod() {
+        return apportionmentMethod;
+    }
+
+    /**
+     * Gets the seed of the election's tiebreaks.
+     *
+     * @return the seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets one value of the allocation data.
+     *
+     * @param row   the row, 0 to 4, as in {@link Election#getAllocationData()}.
+     * @param party the party number.
+     * @return the value.
+     */
+    public int getAllocation(int row, int party) {
+        return buffer.getInt((int) (allocationOffset() + 4L * ((long) row * partyCount + party)));
+    }
+
+    /**
+     * Gets a row of the allocation data.
+     *
+     * @param row the row, 0 to 4, as in {@link Election#getAllocationData()}.
+     * @return the row, one value per party.
+     */
+    public int[] getAllocationRow(int row) {
+        int[] values = new int[partyCount];
+        buffer.slice((int) (allocationOffset() + 4L * row * partyCount), 4 * partyCount).asIntBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Gets the index of a party's first candidate.
+     *
+     * @param party the party number, or the party count for the end of the last party.
+     * @return the candidate index.
+     */
+    public int getCandidateStart(int party) {
+        return buffer.getInt((int) (startOffset(partyCount) + 4L * party));
+    }
+
+    /**
+     * Gets the party of a candidate, by binary search of the candidate starts.
+     *
+     * @param candidate the candidate index.
+     * @return the party number.
+     */
+    public int getParty(int candidate) {
+        int low = 0;
+        int high = partyCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (getCandidateStart(middle) <= candidate) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the votes of a candidate.
+     *
+     * @param candidate the candidate index.
+     * @return the votes.
+     */
+    public int getVotes(int candidate) {
+        return buffer.getInt((int) (votesOffset(partyCount) + 4L * candidate));
+    }
+
+    /**
+     * Gets the votes of every candidate.
+     *
+     * @return the votes, by candidate index.
+     */
+    public int[] getVotes() {
+        int[] votes = new int[candidateCount];
+        buffer.slice((int) votesOffset(partyCount), 4 * candidateCount).asIntBuffer().get(votes);
+        return votes;
+    }
+
+    /**
+     * Checks whether a candidate won a seat.
+     *
+     * @param candidate the candidate index.
+     * @return {@code true} if the candidate won a seat.
+     */
+    public boolean isSeated(int candidate) {
+        return buffer.get((int) (seatedOffset(partyCount, candidateCount) + candidate)) != 0;
+    }
+
+    /**
+     * Gets the name of a party.
+     *
+     * @param party the party number.
+     * @return the name.
+     */
+    public String getPartyName(int party) {
+        return name(party);
+    }
+
+    /**
+     * Gets the name of a candidate.
+     *
+     * @param candidate the candidate index.
+     * @return the name.
+     */
+    public String getCandidateName(int candidate) {
+        return name(partyCount + candidate);
+    }
+
+    /**
+     * Decodes a name from the name heap.
+     *
+     * @param index the index of the name: the party number, or the party count plus the candidate index.
+     * @return the name.
+     */
+    protected String name(int index) {
+        long starts = nameOffset(partyCount, candidateCount);
+        int start = buffer.getInt((int) (starts + 4L * index));
+        int end = buffer.getInt((int) (starts + 4L * (index + 1)));
+        byte[] bytes = new byte[end - start];
+        buffer.get((int) heapOffset(partyCount, candidateCount) + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
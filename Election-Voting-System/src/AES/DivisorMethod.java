@@ -0,0 +1,514 @@
+/*
+DivisorMethod.java
+
+The DivisorMethod class allocates seats by a highest averages method: D'Hondt, Sainte-Lague, modified Sainte-Lague or
+Huntington-Hill.
+
+*/
+
+package AES;
+
+import java.util.Arrays;
+
+/**
+ * A highest averages method. Seats are given out one at a time, each to the party with the highest average
+ * {@code votes / divisor(s)}, where {@code s} is the number of seats the party holds so far and the divisors are set
+ * by the {@link Rule}. A party whose candidates all have seats drops out.
+ * <p>
+ * The averages are kept in a max-heap of primitive keys, so allocating {@code S} seats among {@code P} parties costs
+ * {@code O(P + S log P)}. The keys are rounded, so they only rank the parties; the parties whose keys are close to
+ * the highest are compared exactly to find the ones sharing the highest average. When more parties share it than
+ * there are seats left, the election's tiebreak picks among them in party order.
+ * <p>
+ * Row 1 of the allocation data holds the seats won with a highest average, row 2 the party's average for its next
+ * seat rounded down (its votes, if that divisor is 0), and row 3 the seats won in a tiebreak.
+ */
+public class DivisorMethod extends ApportionmentMethod {
+    /**
+     * The divisor sequences.
+     */
+    public enum Rule {
+        /**
+         * Divisors 1, 2, 3, ...
+         */
+        D_HONDT,
+
+        /**
+         * Divisors 1, 3, 5, ...
+         */
+        SAINTE_LAGUE,
+
+        /**
+         * Divisors 1.4, 3, 5, ...
+         */
+        MODIFIED_SAINTE_LAGUE,
+
+        /**
+         * Divisors sqrt(s * (s + 1)): 0, 1.41, 2.45, ...; every party with votes gets a seat before any gets two.
+         */
+        HUNTINGTON_HILL
+    }
+
+    /**
+     * The divisor sequence.
+     */
+    protected final Rule rule;
+
+    /**
+     * Constructs a DivisorMethod.
+     *
+     * @param rule the divisor sequence.
+     */
+    public DivisorMethod(Rule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Gets the name of the method for display.
+     *
+     * @return the name.
+     */
+    @Override
+    public String getName() {
+        return switch (rule) {
+            case D_HONDT -> "D'Hondt";
+            case SAINTE_LAGUE -> "Sainte-Lague";
+            case MODIFIED_SAINTE_LAGUE -> "Modified Sainte-Lague";
+            case HUNTINGTON_HILL -> "Huntington-Hill";
+        };
+    }
+
+    /**
+     * Gets the audit file column headers of rows 1 to 3 of the allocation data.
+     *
+     * @return the 3 headers.
+     */
+    @Override
+    public String[] getColumnNames() {
+        return new String[]{"Seats by Highest Average", "Next Average", "Seats by Tiebreak"};
+    }
+
+    /**
+     * Gets the divisor for a party's next seat.
+     *
+     * @param seats the number of seats the party holds.
+     * @return the divisor.
+     */
+    public double divisor(int seats) {
+        return switch (rule) {
+            case D_HONDT -> seats + 1;
+            case SAINTE_LAGUE -> 2.0 * seats + 1;
+            case MODIFIED_SAINTE_LAGUE -> seats == 0 ? 1.4 : 2.0 * seats + 1;
+            case HUNTINGTON_HILL -> Math.sqrt((double) seats * (seats + 1));
+        };
+    }
+
+    /**
+     * The relative error allowed between the heap keys of parties with equal averages. A key is off by a few units in
+     * the last place at most, far less than this.
+     */
+    protected static final double KEY_ERROR = 0x1p-40;
+
+    /**
+     * Gets the heap key of a party's next seat, which ranks parties by their averages. The key is rounded, so equal
+     * averages can get slightly different keys; {@link #compareAverages(int, int, int, int)} tells them apart.
+     *
+     * @param votes the party's votes.
+     * @param seats the number of seats the party holds.
+     * @return the key.
+     */
+    protected double key(int votes, int seats) {
+        return switch (rule) {
+            case D_HONDT, SAINTE_LAGUE -> votes / divisor(seats);
+            // the divisors times 5: 7, 15, 25, ...
+            case MODIFIED_SAINTE_LAGUE -> votes / (seats == 0 ? 7.0 : 10.0 * seats + 5);
+            // a zero divisor ranks above every average, in order of votes; 2^128 exceeds any int
+            case HUNTINGTON_HILL -> seats == 0 ? Math.scalb((double) votes, 128) : votes / divisor(seats);
+        };
+    }
+
+    /**
+     * Gets a party's next divisor as a whole number, scaled by the same factor for every seat: the divisors times 5
+     * for modified Sainte-Lague, and the square of the divisor for Huntington-Hill.
+     *
+     * @param seats the number of seats the party holds.
+     * @return the scaled divisor.
+     */
+    protected long scaledDivisor(int seats) {
+        return switch (rule) {
+            case D_HONDT -> seats + 1L;
+            case SAINTE_LAGUE -> 2L * seats + 1;
+            case MODIFIED_SAINTE_LAGUE -> seats == 0 ? 7 : 10L * seats + 5;
+            case HUNTINGTON_HILL -> (long) seats * (seats + 1);
+        };
+    }
+
+    /**
+     * Compares the averages of two parties' next seats exactly, by cross-multiplying the votes and the scaled
+     * divisors in 128 bits. Huntington-Hill compares the squares of the averages.
+     *
+     * @param votes      the first party's votes.
+     * @param seats      the number of seats the first party holds.
+     * @param otherVotes the second party's votes.
+     * @param otherSeats the number of seats the second party holds.
+     * @return a negative number, zero or a positive number as the first average is lower, equal or higher.
+     */
+    protected int compareAverages(int votes, int seats, int otherVotes, int otherSeats) {
+        long divisor = scaledDivisor(seats);
+        long otherDivisor = scaledDivisor(otherSeats);
+        if (divisor == 0 || otherDivisor == 0) {
+            // keys of a zero divisor are exact and rank above every average
+            return Double.compare(key(votes, seats), key(otherVotes, otherSeats));
+        }
+        long numerator = rule == Rule.HUNTINGTON_HILL ? (long) votes * votes : votes;
+        long otherNumerator = rule == Rule.HUNTINGTON_HILL ? (long) otherVotes * otherVotes : otherVotes;
+        long high = Math.multiplyHigh(numerator, otherDivisor);
+        long otherHigh = Math.multiplyHigh(otherNumerator, divisor);
+        if (high != otherHigh) {
+            return Long.compare(high, otherHigh);
+        }
+        return Long.compareUnsigned(numerator * otherDivisor, otherNumerator * divisor);
+    }
+
+    /**
+     * Allocates the seats.
+     *
+     * @param votes       the votes of each party.
+     * @param listSizes   the number of candidates of each party.
+     * @param ballotCount the number of ballots cast.
+     * @param seatCount   the number of seats.
+     * @param election    the election, whose {@link Election#tiebreak(int, int)} settles ties.
+     * @return the allocation data.
+     */
+    @Override
+    public int[][] allocate(int[] votes, int[] listSizes, int ballotCount, int seatCount, Election election) {
+        int partyCount = votes.length;
+        int[][] allocationData = new int[5][partyCount];
+        System.arraycopy(votes, 0, allocationData[0], 0, partyCount);
+        MaxHeap heap = new MaxHeap(partyCount);
+        for (int i = 0; i < partyCount; i++) {
+            if (listSizes[i] > 0) {
+                heap.add(key(votes[i], 0), i);
+            }
+        }
+        heap.heapify();
+
+        int remainingSeats = seatCount;
+        int[] near = new int[partyCount];
+        int[] tied = new int[partyCount];
+        while (remainingSeats > 0 && heap.size() > 0) {
+            // take every party whose key could hold the highest average, then keep those that do
+            double highest = heap.peekKey();
+            double floor = highest - highest * KEY_ERROR;
+            int nearCount = 0;
+            while (heap.size() > 0 && heap.peekKey() >= floor) {
+                near[nearCount++] = heap.poll();
+            }
+            int best = near[0];
+            for (int t = 1; t < nearCount; t++) {
+                int party = near[t];
+                if (compareAverages(votes[party], allocationData[1][party], votes[best], allocationData[1][best]) > 0) {
+                    best = party;
+                }
+            }
+            int tiedCount = 0;
+            for (int t = 0; t < nearCount; t++) {
+                int party = near[t];
+                int seats = allocationData[1][party];
+                if (compareAverages(votes[party], seats, votes[best], allocationData[1][best]) == 0) {
+                    tied[tiedCount++] = party;
+                } else {
+                    heap.push(key(votes[party], seats), party);
+                }
+            }
+            if (tiedCount <= remainingSeats) {
+                for (int t = 0; t < tiedCount; t++) {
+                    int party = tied[t];
+                    int seats = ++allocationData[1][party];
+                    if (seats < listSizes[party]) {
+                        heap.push(key(votes[party], seats), party);
+                    }
+                }
+                remainingSeats -= tiedCount;
+            } else {
+                Arrays.sort(tied, 0, tiedCount);
+                for (int index : election.tiebreak(tiedCount, remainingSeats)) {
+                    allocationData[3][tied[index]]++;
+                }
+                remainingSeats = 0;
+            }
+        }
+
+        for (int i = 0; i < partyCount; i++) {
+            allocationData[4][i] = allocationData[1][i] + allocationData[3][i];
+            double divisor = divisor(allocationData[4][i]);
+            allocationData[2][i] = divisor == 0 ? votes[i] : (int) (votes[i] / divisor);
+        }
+        return allocationData;
+    }
+
+    /**
+     * Computes how many votes each party would need to gain or lose a seat. A party gains a seat once its next
+     * average passes the lowest average of a seat won by another party, and loses one once the average of its last
+     * seat falls below the highest next average of another party that can still take a seat. Keeping the two lowest
+     * and two highest of those averages gives each party its bar without the party itself, and the votes that pass
+     * it are found by a binary search over the party's own votes, so this costs {@code O(P log V)}.
+     *
+     * @param votes          the votes of each party.
+     * @param listSizes      the number of candidates of each party.
+     * @param ballotCount    the number of ballots cast.
+     * @param seatCount      the number of seats.
+     * @param allocationData the allocation data from {@link #allocate(int[], int[], int, int, Election)}.
+     * @return the margins.
+     */
+    @Override
+    public SeatSensitivity computeSensitivity(int[] votes, int[] listSizes, int ballotCount, int seatCount,
+                                              int[][] allocationData) {
+        int partyCount = votes.length;
+        // the two lowest averages of a party's last seat won, and the two highest averages for a next seat
+        double lowest = Double.POSITIVE_INFINITY;
+        double secondLowest = Double.POSITIVE_INFINITY;
+        int lowestParty = -1;
+        double highest = Double.NEGATIVE_INFINITY;
+        double secondHighest = Double.NEGATIVE_INFINITY;
+        int highestParty = -1;
+        for (int i = 0; i < partyCount; i++) {
+            int seats = allocationData[4][i];
+            if (seats > 0) {
+                double last = key(votes[i], seats - 1);
+                if (last < lowest) {
+                    secondLowest = lowest;
+                    lowest = last;
+                    lowestParty = i;
+                } else if (last < secondLowest) {
+                    secondLowest = last;
+                }
+            }
+            if (seats < listSizes[i]) {
+                double next = key(votes[i], seats);
+                if (next > highest) {
+                    secondHighest = highest;
+                    highest = next;
+                    highestParty = i;
+                } else if (next > secondHighest) {
+                    secondHighest = next;
+                }
+            }
+        }
+
+        long[] votesToGain = new long[partyCount];
+        long[] votesToLose = new long[partyCount];
+        for (int i = 0; i < partyCount; i++) {
+            int seats = allocationData[4][i];
+            double lowestOther = i == lowestParty ? secondLowest : lowest;
+            double highestOther = i == highestParty ? secondHighest : highest;
+            votesToGain[i] = seats < listSizes[i] && lowestOther != Double.POSITIVE_INFINITY
+                    ? votesToPass(votes[i], seats, lowestOther) : SeatSensitivity.NONE;
+            votesToLose[i] = seats > 0 && highestOther != Double.NEGATIVE_INFINITY
+                    ? votesToFall(votes[i], seats - 1, highestOther) : SeatSensitivity.NONE;
+        }
+        return new SeatSensitivity(votesToGain, votesToLose, null);
+    }
+
+    /**
+     * Finds the fewest added votes that raise a party's average above a bar.
+     *
+     * @param votes the party's votes.
+     * @param seats the number of seats held, which sets the divisor.
+     * @param bar   the average to pass.
+     * @return the votes, or {@link SeatSensitivity#NONE} if no vote count passes the bar.
+     */
+    protected long votesToPass(int votes, int seats, double bar) {
+        long low = 1;
+        long high = (long) Integer.MAX_VALUE - votes;
+        if (high < low || key(Integer.MAX_VALUE, seats) <= bar) {
+            return SeatSensitivity.NONE;
+        }
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (key((int) (votes + middle), seats) > bar) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the fewest removed votes that drop a party's average below a bar.
+     *
+     * @param votes the party's votes.
+     * @param seats the number of seats held before the seat in question, which sets the divisor.
+     * @param bar   the average to fall below.
+     * @return the votes, or {@link SeatSensitivity#NONE} if even no votes do not fall below the bar.
+     */
+    protected long votesToFall(int votes, int seats, double bar) {
+        if (votes == 0 || key(0, seats) >= bar) {
+            return SeatSensitivity.NONE;
+        }
+        long low = 1;
+        long high = votes;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (key((int) (votes - middle), seats) < bar) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Produces the explanation of the calculation for the audit file.
+     *
+     * @param ballotCount the number of ballots cast.
+     * @param seatCount   the number of seats.
+     * @return the divisor sequence as a displayable String.
+     */
+    @Override
+    public String generateCalculation(int ballotCount, int seatCount) {
+        String divisors = switch (rule) {
+            case D_HONDT -> "1, 2, 3, ...";
+            case SAINTE_LAGUE -> "1, 3, 5, ...";
+            case MODIFIED_SAINTE_LAGUE -> "1.4, 3, 5, ...";
+            case HUNTINGTON_HILL -> "sqrt(s * (s + 1)) for a party holding s seats: 0, 1.41, 2.45, ...";
+        };
+        return getName() + " Highest Averages Calculation:\n"
+                + " - Each of the " + seatCount + " seats goes to the party with the highest Votes / Divisor\n"
+                + " - Divisors: " + divisors + "\n\n";
+    }
+
+    /**
+     * A binary max-heap of parties keyed by a double, stored in parallel primitive arrays.
+     */
+    protected static class MaxHeap {
+        /**
+         * The keys, in heap order.
+         */
+        protected final double[] keys;
+
+        /**
+         * The parties, in the same order as their keys.
+         */
+        protected final int[] values;
+
+        /**
+         * The number of entries.
+         */
+        protected int size;
+
+        /**
+         * Constructs an empty MaxHeap.
+         *
+         * @param capacity the largest number of entries.
+         */
+        protected MaxHeap(int capacity) {
+            this.keys = new double[capacity];
+            this.values = new int[capacity];
+            this.size = 0;
+        }
+
+        /**
+         * Gets the number of entries.
+         *
+         * @return the size.
+         */
+        protected int size() {
+            return size;
+        }
+
+        /**
+         * Appends an entry without restoring the heap order; call {@link #heapify()} after the last one.
+         *
+         * @param key   the key.
+         * @param value the party.
+         */
+        protected void add(double key, int value) {
+            keys[size] = key;
+            values[size] = value;
+            size++;
+        }
+
+        /**
+         * Restores the heap order after {@link #add(double, int)}, in linear time.
+         */
+        protected void heapify() {
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        /**
+         * Inserts an entry.
+         *
+         * @param key   the key.
+         * @param value the party.
+         */
+        protected void push(double key, int value) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (keys[parent] >= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        /**
+         * Gets the highest key.
+         *
+         * @return the key of the top entry; the heap must not be empty.
+         */
+        protected double peekKey() {
+            return keys[0];
+        }
+
+        /**
+         * Removes the entry with the highest key.
+         *
+         * @return its party; the heap must not be empty.
+         */
+        protected int poll() {
+            int value = values[0];
+            size--;
+            keys[0] = keys[size];
+            values[0] = values[size];
+            siftDown(0);
+            return value;
+        }
+
+        /**
+         * Moves an entry down until neither child has a higher key.
+         *
+         * @param i the index of the entry.
+         */
+        protected void siftDown(int i) {
+            double key = keys[i];
+            int value = values[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] > keys[child]) {
+                    child++;
+                }
+                if (keys[child] <= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+    }
+}
@@ -7,18 +7,14 @@ The Election abstract class defines fields and behaviors shared by OPLElection a
 
 package AES;
 
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.IntStream;
 
 /**
  * Abstract class representing a general election. This class defines the structure and
  * necessary operations for managing an election, including processing ballot data,
  * allocating seats, generating audit files, and displaying election winners.
  */
-public abstract class Election {
+public abstract class Election implements Cloneable {
     /**
      * The type of the election, {@code "OPL"} or {@code "CPL"}.
      */
@@ -63,7 +59,42 @@ public abstract class Election {
     protected ArrayList<ArrayList<Candidate>> candidates;
 
     /**
-     * Performs a fair tiebreak and returns an array of indices.
+     * Stores the validation statistics of the ballots tallied so far, or {@code null} if none have been tallied.
+     */
+    protected BallotStatistics ballotStatistics;
+
+    /**
+     * The method dividing the seats among the parties.
+     */
+    protected ApportionmentMethod apportionmentMethod = ApportionmentMethod.LARGEST_REMAINDER;
+
+    /**
+     * The source of the election's tiebreaks.
+     */
+    protected Tiebreaker tiebreaker = new Tiebreaker(Tiebreaker.Source.SPLITTABLE);
+
+    /**
+     * The ties broken so far, as {@code {n, r}} pairs of {@link #tiebreak(int, int)} calls that had a choice.
+     */
+    protected List<int[]> ties = new ArrayList<>();
+
+    /**
+     * The options chosen by each tie in {@code ties}, in the same order.
+     */
+    protected List<int[]> tieSelections = new ArrayList<>();
+
+    /**
+     * The live results the ballots are reported to as they are tallied, or {@code null}.
+     */
+    protected LiveResults liveResults;
+
+    /**
+     * The Merkle trees of the tallied files that were hashed, in the order they were recorded.
+     */
+    protected List<BallotMerkleTree> merkleTrees = new ArrayList<>();
+
+    /**
+     * Performs a fair tiebreak with the election's {@link Tiebreaker} and returns an array of indices.
      *
      * @param n the number of options to choose from; {@code n >= r}.
      * @param r the number of allowed winners; must be positive.
@@ -71,25 +102,65 @@ public abstract class Election {
      * @throws RuntimeException if {@code n < r} or if {@code r <= 0}.
      */
     public int[] tiebreak(int n, int r) { // n choose r
-        if (n < r || r <= 0) {
-            throw new RuntimeException("Cannot tiebreak n=" + n + ", r=" + r + ". Need n >= r > 0.");
+        int[] selected = tiebreaker.choose(n, r);
+        if (n > r) {
+            ties.add(new int[]{n, r});
+            tieSelections.add(selected.clone());
+        }
+        return selected;
+    }
+
+    /**
+     * Gets the ties broken so far, e.g. to check their fairness with a {@link TiebreakSimulation}.
+     *
+     * @return a copy of the ties, as {@code {n, r}} pairs: {@code r} winners chosen among {@code n} tied options.
+     */
+    public List<int[]> getTies() {
+        List<int[]> copy = new ArrayList<>(ties.size());
+        for (int[] tie : ties) {
+            copy.add(tie.clone());
         }
+        return copy;
+    }
 
-        Random rand = new Random();
-        List<Integer> choices = new ArrayList<>(IntStream.range(0, n).boxed().toList()); // ArrayList of [0,n)
-        int[] selected = new int[r];
-        Arrays.fill(selected, -1);
+    /**
+     * Sets the source of the election's tiebreaks, e.g. to replay them from the seed in an audit file.
+     *
+     * @param tiebreaker the tiebreaker; a {@link Tiebreaker.Source#SPLITTABLE} one with a random seed by default.
+     */
+    public void setTiebreaker(Tiebreaker tiebreaker) {
+        this.tiebreaker = tiebreaker;
+    }
 
-        // select r options, removing already taken choices
-        for (int i = 0; i < r; i++) {
-            int next = rand.nextInt(choices.size());
-            selected[i] = choices.get(next);
-            choices.remove(next);
+    /**
+     * Reports the ballots to a seat projection as they are tallied; see {@link LiveResults}.
+     *
+     * @param liveResults the live results, or {@code null} to not report.
+     */
+    public void setLiveResults(LiveResults liveResults) {
+        this.liveResults = liveResults;
+    }
+
+    /**
+     * Sets up the live results, if any, once a file's header has been read, and has the file report its tally to
+     * them.
+     *
+     * @param fin the file input wrapper of the file.
+     */
+    protected void beginLiveResults(FileInput fin) {
+        if (liveResults != null) {
+            liveResults.begin(this);
+            fin.setLiveResults(liveResults);
         }
+    }
 
-        // return sorted array
-        Arrays.sort(selected);
-        return selected;
+    /**
+     * Gets the source of the election's tiebreaks.
+     *
+     * @return the tiebreaker.
+     */
+    public Tiebreaker getTiebreaker() {
+        return tiebreaker;
     }
 
     /**
@@ -100,117 +171,212 @@ public abstract class Election {
     public abstract void processBallotData(FileInput fin);
 
     /**
-     * Allocates seats to candidates based on the votes received.
+     * Sets the method dividing the seats among the parties.
+     *
+     * @param apportionmentMethod the method; {@link ApportionmentMethod#LARGEST_REMAINDER} by default.
+     */
+    public void setApportionmentMethod(ApportionmentMethod apportionmentMethod) {
+        this.apportionmentMethod = apportionmentMethod;
+    }
+
+    /**
+     * Gets the method dividing the seats among the parties.
+     *
+     * @return the apportionment method.
+     */
+    public ApportionmentMethod getApportionmentMethod() {
+        return apportionmentMethod;
+    }
+
+    /**
+     * Allocates seats to parties based on the votes received, with the election's {@link ApportionmentMethod}.
      */
     public void allocatePartySeats() {
-        allocationData = new int[5][partyCount];
-        // array representing the parties that have candidates that can be allocated
-        boolean[] hasCandidatesLeft = new boolean[partyCount];
-        // int representing the number of parties with candidates that can be allocated
-        int numberCandidatesLeft = partyCount;
-        // evaluates votesPerSeat to determine first allocation of seats
-        int votesPerSeat = (int) Math.ceil((double) ballotCount / seatCount);
-        // variable representing the seats have been taken so far
-        int seatsTaken = 0;
-        // Sets first row equal to vote count and initializes 4th row to all 0s
+        allocationData = apportionmentMethod.allocate(getPartyVotes(), getListSizes(), ballotCount, seatCount, this);
+    }
+
+    /**
+     * Gets the votes of each party.
+     *
+     * @return the votes, in party number order.
+     */
+    protected int[] getPartyVotes() {
+        int[] votes = new int[partyCount];
         for (int i = 0; i < partyCount; i++) {
-            allocationData[0][i] = parties[i].getVoteCount();
-            allocationData[3][i] = 0;
-            allocationData[1][i] = 0;
-            hasCandidatesLeft[i] = true;
+            votes[i] = parties[i].getVoteCount();
         }
-        // if there is more than one ballot per seat
-        if (votesPerSeat != 0) {
-            for (int i = 0; i < partyCount; i++) {
-                // Tests if the number of seats we allocate to a party is less than the number of candidates they have
-                if (allocationData[0][i] / votesPerSeat < candidates.get(i).size()) {
-                    allocationData[1][i] = allocationData[0][i] / votesPerSeat;
-                } else {
-                    // if it is not, first allocation is equal to the number of candidates that party has
-                    allocationData[1][i] = candidates.get(i).size();
-                    // then set variables to represent that there are no seats left
-                    hasCandidatesLeft[i] = false;
-                    numberCandidatesLeft--;
-                }
-                // The votes remaining can be found using this formula:
-                allocationData[2][i] = allocationData[0][i] - allocationData[1][i] * votesPerSeat;
-                // seats taken incremented based on the seats each party takes
-                seatsTaken += allocationData[1][i];
-            }
-        } else {
-            if (partyCount >= 0) System.arraycopy(allocationData[0], 0, allocationData[2], 0, partyCount);
+        return votes;
+    }
+
+    /**
+     * Gets the number of candidates of each party.
+     *
+     * @return the list sizes, in party number order.
+     */
+    protected int[] getListSizes() {
+        int[] listSizes = new int[partyCount];
+        for (int i = 0; i < partyCount; i++) {
+            listSizes[i] = candidates.get(i).size();
         }
+        return listSizes;
+    }
 
-        // remaining seats is the amount of seats still left ot be allocated
-        int remainingSeats = seatCount - seatsTaken;
-        // System.out.println(numberCandidatesLeft);
-        // if there are more seats left than parties that can have seats allocated to then
-        while (remainingSeats >= numberCandidatesLeft) {
-            for (int i = 0; i < partyCount; i++) {
-                // give all of those parties a seat
-                if (hasCandidatesLeft[i]) {
-                    remainingSeats--;
-                    allocationData[3][i]++;
-                    // if adding seats this way makes a party use all of their candidates, changes variables
-                    // to represent that there are no candidates left for that party to allocate
-                    if (allocationData[1][i] + allocationData[3][i] >= candidates.get(i).size()) {
-                        hasCandidatesLeft[i] = false;
-                        // System.out.println("Removed " + i);
-                        numberCandidatesLeft--;
-                    }
-                }
-            }
+    /**
+     * Computes how many votes each party would need to gain or lose a seat, after the seats are allocated.
+     *
+     * @return the margins.
+     */
+    public SeatSensitivity getSeatSensitivity() {
+        return apportionmentMethod.computeSensitivity(getPartyVotes(), getListSizes(), ballotCount, seatCount,
+                allocationData);
+    }
+
+    /**
+     * Processes the header data from a file. If the election was already set up by an earlier file, the header
+     * must describe the same election.
+     *
+     * @param fin the file input wrapper, where the next line available is the 2nd line of the original file.
+     * @return the ballot count in the current file.
+     * @throws RuntimeException if the header does not match the election set up by an earlier file.
+     */
+    protected abstract int processHeaderData(FileInput fin);
+
+    /**
+     * Creates the exception thrown when a file's header does not describe the election set up by an earlier file.
+     *
+     * @param fin the file input wrapper of the mismatched file.
+     * @return the exception.
+     */
+    protected RuntimeException headerMismatch(FileInput fin) {
+        return new RuntimeException("Error: Header of file \"" + fin.getFilename()
+                + "\" does not match the " + electionType + " election of the earlier files");
+    }
+
+    /**
+     * Gets the number of votable entities on a ballot.
+     *
+     * @return the number of parties for CPL, or the number of candidates for OPL.
+     */
+    protected abstract int getVotableCount();
+
+    /**
+     * Gets the party of each votable entity on a ballot.
+     *
+     * @return the party numbers, in ballot order; by default the ballot positions, as a ballot lists the parties.
+     */
+    protected int[] getVotableParties() {
+        int[] votableParties = new int[partyCount];
+        for (int i = 0; i < partyCount; i++) {
+            votableParties[i] = i;
         }
+        return votableParties;
+    }
 
-        // creates array temp which is a copy of the remaining seats for each party in column 0 and the party number
-        // in column 1 containing only parties with candidates left, sorted by column 0
-        int[][] temp = new int[numberCandidatesLeft][2];
-        int nonEmptyParty = 0;
-        if (remainingSeats != 0) {
-            for (int i = 0; i < partyCount; i++) {
-                if (hasCandidatesLeft[i]) {
-                    temp[nonEmptyParty][1] = i;
-                    temp[nonEmptyParty][0] = allocationData[2][i];
-                    nonEmptyParty++;
-                }
-            }
-            Arrays.sort(temp, Comparator.comparingInt(o -> Integer.MAX_VALUE - o[0]));
-            // tieEnd represents the end of the tied region
-            int tieEnd = remainingSeats - 1;
-            while (tieEnd > -1 && tieEnd + 1 < temp.length && (temp[tieEnd][0] == temp[tieEnd + 1][0])) {
-                tieEnd++;
-            }
-            // tieStart represents the beginning of the tied region
-            int tieStart = remainingSeats - 1;
-            while (tieStart > 0 && (temp[tieStart][0] == temp[tieStart - 1][0])) {
-                tieStart--;
-            }
-            // gives the tiebreak indices.
-            int[] indices = tiebreak(tieEnd - tieStart + 1, remainingSeats - tieStart);
-            // gives seats to all parties with more votes than the tied value
-            for (int iCount = 0; iCount < tieStart; iCount++) {
-                allocationData[3][temp[iCount][1]]++;
-                remainingSeats--;
-            }
-            //  gives seats to all parties that are tied based on the indices that were tiebroken
-            for (int index : indices) {
-                allocationData[3][temp[index + tieStart][1]]++;
-                remainingSeats--;
-            }
+    /**
+     * Adds tallied votes to the parties and candidates.
+     *
+     * @param voteCounts the votes per votable entity, in ballot order.
+     */
+    protected abstract void recordVotes(int[] voteCounts);
+
+    /**
+     * Adds the validation statistics of a tallied file to the election's statistics.
+     *
+     * @param statistics the statistics of the file, or {@code null} if the file kept none.
+     */
+    protected void recordStatistics(BallotStatistics statistics) {
+        if (statistics == null) {
+            return;
         }
-        // finds total allocation of seats by adding first and second allocations
-        for (int i = 0; i < partyCount; i++) {
-            allocationData[4][i] = allocationData[3][i] + allocationData[1][i];
+        if (ballotStatistics == null) {
+            ballotStatistics = new BallotStatistics();
         }
+        ballotStatistics.add(statistics);
     }
 
-    protected abstract int processHeaderData(FileInput fin);
+    /**
+     * Records the Merkle tree of a tallied file, whose root the audit file commits to.
+     *
+     * @param tree the tree of the file, or {@code null} if the file was not hashed.
+     */
+    protected void recordMerkleTree(BallotMerkleTree tree) {
+        if (tree != null) {
+            merkleTrees.add(tree);
+        }
+    }
 
     /**
      * Assigns seats to candidates based on the seats a party receives.
      */
     public abstract void assignCandidateSeats();
 
+    /**
+     * Copies the counted election, so the copy can be audited on another thread while this one is displayed or
+     * used further. The copy shares no mutable state with this election: the parties, candidates, allocation data,
+     * statistics and ties are copied, and the tiebreaker is replaced by a {@link Tiebreaker#snapshot()}.
+     *
+     * @return the copy.
+     */
+    public Election snapshot() {
+        Election copy;
+        try {
+            copy = (Election) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException("Error: Unable to copy the election");
+        }
+        copy.copyState();
+        return copy;
+    }
+
+    /**
+     * Replaces the mutable state shared with the election this one was cloned from by copies of it.
+     */
+    protected void copyState() {
+        if (allocationData != null) {
+            allocationData = allocationData.clone();
+            for (int i = 0; i < allocationData.length; i++) {
+                allocationData[i] = allocationData[i].clone();
+            }
+        }
+        if (parties != null) {
+            parties = parties.clone();
+            for (int i = 0; i < parties.length; i++) {
+                Party party = new Party(parties[i].isIndep(), parties[i].getName());
+                party.setVoteCount(parties[i].getVoteCount());
+                parties[i] = party;
+            }
+        }
+        if (candidates != null) {
+            ArrayList<ArrayList<Candidate>> lists = new ArrayList<>(candidates.size());
+            for (ArrayList<Candidate> list : candidates) {
+                ArrayList<Candidate> copies = new ArrayList<>(list.size());
+                for (Candidate candidate : list) {
+                    Candidate copy = new Candidate(candidate.getName());
+                    copy.setVoteCount(candidate.getVoteCount());
+                    copy.hasSeat = candidate.hasSeat;
+                    copies.add(copy);
+                }
+                lists.add(copies);
+            }
+            candidates = lists;
+        }
+        if (ballotStatistics != null) {
+            BallotStatistics statistics = new BallotStatistics();
+            statistics.add(ballotStatistics);
+            ballotStatistics = statistics;
+        }
+        ties = getTies();
+        List<int[]> selections = new ArrayList<>(tieSelections.size());
+        for (int[] selection : tieSelections) {
+            selections.add(selection.clone());
+        }
+        tieSelections = selections;
+        // the trees are not changed once built
+        merkleTrees = new ArrayList<>(merkleTrees);
+        tiebreaker = tiebreaker.snapshot();
+        liveResults = null;
+    }
+
     /**
      * Creates an audit file for the Election, detailing party, candidate,
      * and seat allocation information.
@@ -218,40 +384,88 @@ public abstract class Election {
      * @throws RuntimeException if the audit file could not be created.
      */
     public void generateAuditFile() throws RuntimeException {
-        StringBuilder builder = new StringBuilder();
+        generateAuditFiles(EnumSet.of(AuditExport.Format.TEXT));
+    }
+
+    /**
+     * Creates the chosen audit outputs for the Election, named after the same timestamp, on the calling thread,
+     * and forces them to the storage device; see {@link AuditJob}.
+     *
+     * @param formats the outputs to create.
+     * @throws RuntimeException if an output could not be created.
+     */
+    public void generateAuditFiles(Set<AuditExport.Format> formats) throws RuntimeException {
+        AuditJob job = new AuditJob(this, formats);
+        job.run();
+        System.out.print("\n" + job.generateReport());
+    }
 
+    /**
+     * Creates an audit file for the Election under the given name. The audit is written section by section through
+     * an {@link AuditWriter}, so elections with very long candidate lists are not held in memory as one String.
+     *
+     * @param filename the name of the audit file.
+     * @throws RuntimeException if the audit file could not be created.
+     */
+    public void generateAuditFile(String filename) throws RuntimeException {
+        try (AuditWriter out = new AuditWriter(filename)) {
+            writeAudit(out);
+        }
+    }
+
+    /**
+     * Produces the contents of the audit file.
+     *
+     * @return the audit as a displayable String.
+     */
+    protected String generateAudit() {
+        return AuditWriter.capture(this::writeAudit);
+    }
+
+    /**
+     * Writes the contents of the audit file.
+     *
+     * @param out the writer.
+     * @throws RuntimeException if the audit could not be written.
+     */
+    protected void writeAudit(AuditWriter out) throws RuntimeException {
         // add basic info
-        builder.append(generateElectionInfo()).append("\n");
+        out.append(generateElectionInfo()).append('\n');
+
+        // roots of the hashed ballot files, to check the audit against them
+        for (BallotMerkleTree tree : merkleTrees) {
+            out.append(tree.generateReport()).append('\n');
+        }
+
+        // add ballot validation results
+        if (ballotStatistics != null) {
+            ballotStatistics.writeReport(out);
+            out.append('\n');
+        }
 
         // add party/candidate list
-        builder.append(generatePartyCandidateList()).append("\n");
+        writePartyCandidateList(out);
+        out.append('\n');
 
-        // LRA calculation
-        builder.append("Largest Remainder Approach Calculation:\n");
-        int votesPerSeat = (int) Math.ceil((double) ballotCount / seatCount);
-        builder.append(" - Ceiling of (Total Votes / Number of Seats) = ceil(").append(ballotCount).append(" / ").append(seatCount)
-                .append(") = ").append(votesPerSeat).append("\n\n");
+        // apportionment calculation
+        out.append(apportionmentMethod.generateCalculation(ballotCount, seatCount));
 
         // allocation table
-        builder.append(generateAllocationTable()).append("\n");
-
-        // seat winners and their party affiliation
-        builder.append(generateWinnerList());
-
-        // create the audit file
-        SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss-SSS");
-        Date date = new Date();
-        String filename = electionType + "_AuditFile_" + timestamp.format(date) + ".txt";
-
-        // write to file
-        try (PrintWriter printWriter = new PrintWriter(filename)) {
-            printWriter.write(builder.toString());
-            printWriter.flush();
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException("Error: Unable to create or write to the audit file");
+        writeAllocationTable(out);
+        out.append('\n');
+
+        // votes that would change the seats of each party, and of the candidates at the edge of their party's seats
+        getSeatSensitivity().writeReport(out, parties, allocationData);
+        out.append('\n');
+        if (writeCandidateMargins(out)) {
+            out.append('\n');
         }
 
-        System.out.println("\nAudit File Generated: " + filename);
+        // tiebreak seed, to replay the tiebreaks
+        out.append(tiebreaker.generateReport()).append('\n');
+
+        // seat winners and their party affiliation
+        writeWinnerList(out);
     }
 
     /**
@@ -274,22 +488,44 @@ public abstract class Election {
      */
     protected abstract String generatePartyCandidateList();
 
+    /**
+     * Writes the list of parties and candidates for the audit file. Elections with their own streaming list
+     * override this; by default it writes {@link #generatePartyCandidateList()}.
+     *
+     * @param out the writer.
+     * @throws RuntimeException if the list could not be written.
+     */
+    protected void writePartyCandidateList(AuditWriter out) throws RuntimeException {
+        out.append(generatePartyCandidateList());
+    }
+
     /**
      * Produces a readable table containing the party allocation data.
      *
      * @return the table as a displayable String.
      */
     protected String generateAllocationTable() {
-        StringBuilder builder = new StringBuilder();
-        builder.append("Seat Allocation Data:\n");
+        return AuditWriter.capture(this::writeAllocationTable);
+    }
+
+    /**
+     * Writes a readable table containing the party allocation data.
+     *
+     * @param out the writer.
+     * @throws RuntimeException if the table could not be written.
+     */
+    protected void writeAllocationTable(AuditWriter out) throws RuntimeException {
+        out.append("Seat Allocation Data:\n");
 
         final String headerFormat = " | %-15s | %10s | %25s | %15s | %26s | %16s | %23s |\n " + "-".repeat(152) + "\n";
-        final String rowFormat = " | %-15s | %,10d | %,25d | %,15d | %,26d | %,16d |  %6.2f%%   /  %6.2f%%   |\n";
-        String header = String.format(headerFormat, "Parties", "Votes", "First Allocation Of Seats", "Remaining Votes", "Second Allocation of Seats", "Final Seat Total", "% of Vote to % of Seats");
-        builder.append(header);
+        final AuditWriter.RowFormat rowFormat = new AuditWriter.RowFormat(
+                " | %-15s | %,10d | %,25d | %,15d | %,26d | %,16d |  %6.2f%%   /  %6.2f%%   |\n");
+        String[] columnNames = apportionmentMethod.getColumnNames();
+        out.append(String.format(headerFormat, "Parties", "Votes", columnNames[0], columnNames[1], columnNames[2],
+                "Final Seat Total", "% of Vote to % of Seats"));
 
         for (int i = 0; i < parties.length; i++) {
-            String row = String.format(rowFormat,
+            rowFormat.write(out,
                     parties[i].getName(), // Party name
                     allocationData[0][i], // Votes
                     allocationData[1][i], // First Allocation
@@ -299,10 +535,31 @@ public abstract class Election {
                     (double) allocationData[0][i] / ballotCount * 100, // % of Votes
                     (double) allocationData[4][i] / seatCount * 100    // % of Seats
             );
-            builder.append(row);
         }
-        builder.append("\n");
-        return builder.toString();
+        out.append('\n');
+    }
+
+    /**
+     * Produces the votes that would change which candidates of a party win its seats, for the audit file.
+     *
+     * @return the margins as a displayable String, or an empty String if the election's lists are closed.
+     */
+    protected String generateCandidateMargins() {
+        return "";
+    }
+
+    /**
+     * Writes the votes that would change which candidates of a party win its seats. By default it writes
+     * {@link #generateCandidateMargins()}.
+     *
+     * @param out the writer.
+     * @return {@code true} if margins were written, {@code false} if the election's lists are closed.
+     * @throws RuntimeException if the margins could not be written.
+     */
+    protected boolean writeCandidateMargins(AuditWriter out) throws RuntimeException {
+        String candidateMargins = generateCandidateMargins();
+        out.append(candidateMargins);
+        return !candidateMargins.isEmpty();
     }
 
     /**
@@ -311,8 +568,17 @@ public abstract class Election {
      * @return the list as a displayable String.
      */
     protected String generateWinnerList() {
-        StringBuilder builder = new StringBuilder();
-        builder.append("Seat Winners and their Party Affiliation:\n");
+        return AuditWriter.capture(this::writeWinnerList);
+    }
+
+    /**
+     * Writes the list of winners and their party affiliation.
+     *
+     * @param out the writer.
+     * @throws RuntimeException if the list could not be written.
+     */
+    protected void writeWinnerList(AuditWriter out) throws RuntimeException {
+        out.append("Seat Winners and their Party Affiliation:\n");
         for (int partyIndex = 0; partyIndex < parties.length; partyIndex++) {
             ArrayList<Candidate> partyCandidates = candidates.get(partyIndex);
             String partyName = parties[partyIndex].getName();
@@ -320,11 +586,10 @@ public abstract class Election {
             // Add all candidates who got a seat
             for (Candidate candidate : partyCandidates) {
                 if (candidate.isSat()) {
-                    builder.append(" - ").append(candidate.getName()).append(" (").append(partyName).append(")\n");
+                    out.append(" - ").append(candidate.getName()).append(" (").append(partyName).append(")\n");
                 }
             }
         }
-        return builder.toString();
     }
 
     /**
@@ -429,4 +694,18 @@ public abstract class Election {
         }
         return copy;
     }
+
+    /**
+     * Gets the validation statistics of the ballots tallied so far.
+     *
+     * @return a copy of the statistics, or {@code null} if no ballots have been tallied.
+     */
+    public BallotStatistics getBallotStatistics() {
+        if (ballotStatistics == null) {
+            return null;
+        }
+        BallotStatistics copy = new BallotStatistics();
+        copy.add(ballotStatistics);
+        return copy;
+    }
 }
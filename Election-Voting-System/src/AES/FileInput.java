@@ -8,7 +8,20 @@ The FileInput class wraps the file name input, validation, and read/close behavi
 package AES;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Handles file input operations for election data processing. This class is responsible
@@ -16,6 +29,27 @@ import java.util.Scanner;
  * methods to facilitate file operations needed during election processing.
  */
 public class FileInput {
+    /**
+     * The largest region of the ballot section mapped into memory at once.
+     */
+    protected static final long MAP_WINDOW = 1L << 28;
+
+    /**
+     * The smallest ballot section, in bytes, that is worth tallying in parallel, whatever the number of threads.
+     * Smaller sections are tallied sequentially, since starting the threads would cost more than it saves.
+     */
+    protected static final long PARALLEL_THRESHOLD = 1L << 24;
+
+    /**
+     * The leading bytes of a gzip file.
+     */
+    protected static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+
+    /**
+     * The leading bytes of a zstd frame.
+     */
+    protected static final byte[] ZSTD_MAGIC = {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd};
+
     /**
      * The filename of the data.
      */
@@ -24,6 +58,71 @@ public class FileInput {
      * The internal buffer used by FileInput to read in data.
      */
     protected BufferedReader buffer;
+    /**
+     * The number of lines consumed through {@link #getLine()}.
+     */
+    protected int linesRead;
+    /**
+     * The number of threads used to tally the ballot section.
+     */
+    protected int threadCount;
+    /**
+     * The input all reading is delegated to when the file is not plain CSV (compressed or binary), or {@code null}.
+     */
+    protected FileInput delegate;
+    /**
+     * What happens to spoiled ballots during a tally.
+     */
+    protected BallotStatistics.Policy spoilagePolicy;
+    /**
+     * The validation statistics of the last tally, or {@code null} before the first tally.
+     */
+    protected BallotStatistics statistics;
+    /**
+     * Saves the progress of the tally so an interrupted tally can resume, or {@code null} to not checkpoint.
+     */
+    protected TallyCheckpoint checkpoint;
+    /**
+     * The size of the read-ahead buffers of the sequential tally, or 0 to memory-map the file instead.
+     */
+    protected int readAheadSize;
+    /**
+     * The number of filled read-ahead buffers that may wait for the tally.
+     */
+    protected int readAheadDepth;
+    /**
+     * The read-ahead of the last sequential tally, kept for its stall counters, or {@code null}.
+     */
+    protected ReadAheadStream readAhead;
+    /**
+     * The number of ballots between indexed offsets when the tally writes a {@link BallotIndex}, or 0 to not index.
+     */
+    protected int indexStride;
+
+    /**
+     * The chunk size of the {@link BallotMerkleTree} hashed during the tally, in bytes, or 0 to not hash.
+     */
+    protected int merkleChunkSize;
+
+    /**
+     * The Merkle tree of the last tally, or {@code null} if it was not hashed.
+     */
+    protected BallotMerkleTree merkleTree;
+
+    /**
+     * The live results the tally reports its progress to, or {@code null}.
+     */
+    protected LiveResults liveResults;
+
+    /**
+     * The votes already reported to the live results.
+     */
+    protected int[] liveVotes;
+
+    /**
+     * The number of ballots already reported to the live results.
+     */
+    protected long liveBallots;
 
     /**
      * Constructs a FileInput object with a specified filename.
@@ -34,11 +133,71 @@ public class FileInput {
     public FileInput(String filename) throws RuntimeException {
         this.filename = filename;
         this.buffer = null;
+        this.linesRead = 0;
+        this.threadCount = 1;
+        this.delegate = null;
+        this.spoilagePolicy = BallotStatistics.Policy.SKIP;
+        this.statistics = null;
+        this.checkpoint = null;
+        this.readAheadSize = 0;
+        this.readAheadDepth = ReadAheadStream.DEFAULT_QUEUE_DEPTH;
+        this.readAhead = null;
+        this.indexStride = 0;
+        this.merkleChunkSize = 0;
+        this.merkleTree = null;
         if (!validateFile()) {
             throw new RuntimeException("Error: File \"" + filename + "\" does not exist or has incorrect permissions");
         }
     }
 
+    /**
+     * Constructs a FileInput that reads through {@code buffer} without validating {@code filename}. Used by
+     * subclasses whose input is not a named file.
+     *
+     * @param filename the name of the input, for messages.
+     * @param buffer   the reader, or {@code null} if the subclass does its own reading.
+     */
+    protected FileInput(String filename, BufferedReader buffer) {
+        this.filename = filename;
+        this.buffer = buffer;
+        this.linesRead = 0;
+        this.threadCount = 1;
+        this.delegate = null;
+        this.spoilagePolicy = BallotStatistics.Policy.SKIP;
+        this.statistics = null;
+        this.checkpoint = null;
+        this.readAheadSize = 0;
+        this.readAheadDepth = ReadAheadStream.DEFAULT_QUEUE_DEPTH;
+        this.readAhead = null;
+        this.indexStride = 0;
+        this.merkleChunkSize = 0;
+        this.merkleTree = null;
+    }
+
+    /**
+     * Opens the named ballot data input. {@code "-"} reads standard input, and names that are not regular files,
+     * such as named pipes, are read as streams by a {@link StreamInput}. Other names are opened as a FileInput.
+     *
+     * @param filename the name of the input.
+     * @return the input.
+     * @throws RuntimeException if the input is not accessible.
+     */
+    public static FileInput open(String filename) throws RuntimeException {
+        if (filename.equals("-")) {
+            return new StreamInput(System.in, "<stdin>");
+        }
+        File file = new File(filename);
+        if (file.exists() && file.canRead() && !file.isFile() && !file.isDirectory()) {
+            try {
+                return new StreamInput(new FileInputStream(file), filename);
+            } catch (FileNotFoundException e) {
+                throw new RuntimeException("Error: File \"" + filename
+                        + "\" does not exist or has incorrect permissions");
+            }
+        }
+        return new FileInput(filename);
+    }
+
     /**
      * Default constructor. Initiates prompting the user for a filename and
      * validates it.
@@ -46,6 +205,18 @@ public class FileInput {
     public FileInput() {
         this.filename = "";
         this.buffer = null;
+        this.linesRead = 0;
+        this.threadCount = 1;
+        this.delegate = null;
+        this.spoilagePolicy = BallotStatistics.Policy.SKIP;
+        this.statistics = null;
+        this.checkpoint = null;
+        this.readAheadSize = 0;
+        this.readAheadDepth = ReadAheadStream.DEFAULT_QUEUE_DEPTH;
+        this.readAhead = null;
+        this.indexStride = 0;
+        this.merkleChunkSize = 0;
+        this.merkleTree = null;
         promptFilename();
     }
 
@@ -58,6 +229,198 @@ public class FileInput {
         return filename;
     }
 
+    /**
+     * Gets thread count.
+     *
+     * @return the number of threads used to tally the ballot section.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads used to tally the ballot section. With more than one thread, large ballot sections
+     * are split into line-aligned chunks that are tallied in parallel.
+     *
+     * @param threadCount the number of threads; must be positive.
+     * @throws RuntimeException if {@code threadCount <= 0}.
+     */
+    public void setThreadCount(int threadCount) throws RuntimeException {
+        if (threadCount <= 0) {
+            throw new RuntimeException("Error: Thread count must be positive, got " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Sets what happens to spoiled ballots (overvotes and malformed lines) during a tally. They are never counted;
+     * under {@link BallotStatistics.Policy#QUARANTINE} they are also listed in the statistics.
+     *
+     * @param spoilagePolicy the policy.
+     */
+    public void setSpoilagePolicy(BallotStatistics.Policy spoilagePolicy) {
+        this.spoilagePolicy = spoilagePolicy;
+        if (delegate != null) {
+            delegate.setSpoilagePolicy(spoilagePolicy);
+        }
+    }
+
+    /**
+     * Checkpoints the tally to a sidecar file every {@code ballots} ballots or every {@code seconds} seconds,
+     * whichever comes first, and resumes from an existing checkpoint of this file; see {@link TallyCheckpoint}.
+     * A checkpointed tally always runs on one thread.
+     *
+     * @param ballots the number of ballots between checkpoints, or 0 to not checkpoint by ballots.
+     * @param seconds the number of seconds between checkpoints, or 0 to not checkpoint by time.
+     * @throws RuntimeException if an interval is negative or both are 0, or if the input is not an uncompressed
+     *                          CSV file.
+     */
+    public void setCheckpointInterval(long ballots, long seconds) throws RuntimeException {
+        if (!isPlainFile()) {
+            throw new RuntimeException("Error: Cannot checkpoint \"" + filename
+                    + "\"; only uncompressed CSV files can be resumed");
+        }
+        this.checkpoint = new TallyCheckpoint(filename, ballots, seconds);
+    }
+
+    /**
+     * Checks whether this input is an uncompressed CSV file, which can be checkpointed and indexed since its
+     * ballots can be found by byte offset.
+     *
+     * @return true for uncompressed CSV files, false otherwise.
+     */
+    protected boolean isPlainFile() {
+        return delegate == null;
+    }
+
+    /**
+     * Reads the ballot section of a sequential tally through a {@link ReadAheadStream} instead of memory-mapping it:
+     * a background thread fills direct buffers from the file while the tally scans the previous one, so waiting for
+     * the disk overlaps with counting. Compressed files always read ahead; binary files and parallel tallies are not
+     * affected.
+     *
+     * @param bufferSize the size of each buffer, in bytes; must be positive.
+     * @param queueDepth the number of filled buffers that may wait for the tally; must be positive.
+     * @throws RuntimeException if {@code bufferSize} or {@code queueDepth} is not positive.
+     */
+    public void setReadAhead(int bufferSize, int queueDepth) throws RuntimeException {
+        if (bufferSize <= 0 || queueDepth <= 0) {
+            throw new RuntimeException("Error: Read-ahead needs a positive buffer size and queue depth, got "
+                    + bufferSize + " and " + queueDepth);
+        }
+        this.readAheadSize = bufferSize;
+        this.readAheadDepth = queueDepth;
+    }
+
+    /**
+     * Gets the read-ahead of the last tally, whose counters show how long the tally and the reader spent stalled.
+     *
+     * @return the read-ahead, or {@code null} if the last tally did not read ahead.
+     */
+    public ReadAheadStream getReadAhead() {
+        return delegate != null ? delegate.getReadAhead() : readAhead;
+    }
+
+    /**
+     * Writes a {@link BallotIndex} sidecar during the tally, recording the offset of every {@code stride}-th ballot
+     * (or only the line length if every ballot line has the same length), for random access to the ballots later.
+     * An indexed tally always runs on one thread, and a tally resumed from a checkpoint writes no index.
+     *
+     * @param stride the number of ballots between indexed offsets; must be positive.
+     * @throws RuntimeException if {@code stride} is not positive, or if the input is not an uncompressed CSV file.
+     */
+    public void setIndexStride(int stride) throws RuntimeException {
+        if (!isPlainFile()) {
+            throw new RuntimeException("Error: Cannot index \"" + filename + "\"; only uncompressed CSV files can be "
+                    + "indexed");
+        }
+        if (stride <= 0) {
+            throw new RuntimeException("Error: Index stride must be positive, got " + stride);
+        }
+        this.indexStride = stride;
+    }
+
+    /**
+     * Hashes the file into a {@link BallotMerkleTree} during the tally, on {@link #getThreadCount()} threads of its
+     * own, and writes the tree's sidecar. The hashing reads the file alongside the tally, so it mostly adds CPU time
+     * on other cores rather than another pass over the disk.
+     *
+     * @param chunkSize the size of the hashed chunks, in bytes; must be positive.
+     * @throws RuntimeException if {@code chunkSize} is not positive, or if the input is not an uncompressed CSV file.
+     */
+    public void setMerkleChunkSize(int chunkSize) throws RuntimeException {
+        if (!isPlainFile()) {
+            throw new RuntimeException("Error: Cannot hash \"" + filename + "\"; only uncompressed CSV files can be "
+                    + "hashed");
+        }
+        if (chunkSize <= 0) {
+            throw new RuntimeException("Error: Merkle chunk size must be positive, got " + chunkSize);
+        }
+        this.merkleChunkSize = chunkSize;
+    }
+
+    /**
+     * Gets the Merkle tree of the last tally.
+     *
+     * @return the tree, or {@code null} if the last tally was not hashed.
+     */
+    public BallotMerkleTree getMerkleTree() {
+        return delegate != null ? delegate.getMerkleTree() : merkleTree;
+    }
+
+    /**
+     * Reports the progress of the tally to a seat projection, once per {@link TallyCheckpoint#SLICE} bytes or read
+     * buffer. A tally with live results always runs on one thread.
+     *
+     * @param liveResults the live results, set up for the election; {@code null} to not report.
+     */
+    public void setLiveResults(LiveResults liveResults) {
+        this.liveResults = liveResults;
+        if (delegate != null) {
+            delegate.setLiveResults(liveResults);
+        }
+    }
+
+    /**
+     * Adds the votes and ballots tallied since the last report to the live results, if any.
+     *
+     * @param votes   the votes tallied so far.
+     * @param ballots the number of ballots tallied so far.
+     */
+    protected void reportLive(int[] votes, long ballots) {
+        if (liveResults == null || ballots == liveBallots) {
+            return;
+        }
+        if (liveVotes == null) {
+            liveVotes = new int[votes.length];
+        }
+        int[] delta = new int[votes.length];
+        for (int i = 0; i < votes.length; i++) {
+            delta[i] = votes[i] - liveVotes[i];
+            liveVotes[i] = votes[i];
+        }
+        liveResults.addBallots(delta, ballots - liveBallots);
+        liveBallots = ballots;
+    }
+
+    /**
+     * Gets the checkpoint of the tally.
+     *
+     * @return the checkpoint, or {@code null} if the tally is not checkpointed.
+     */
+    public TallyCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Gets the validation statistics of the last tally.
+     *
+     * @return the statistics, or {@code null} if nothing has been tallied.
+     */
+    public BallotStatistics getStatistics() {
+        return delegate != null ? delegate.getStatistics() : statistics;
+    }
+
     /**
      * Prompts the user to enter a valid ballot data filename until a valid file
      * is provided.
@@ -76,9 +439,13 @@ public class FileInput {
     }
 
     /**
-     * Validates the existence and readability of the specified file.
+     * Validates the existence and readability of the specified file. A gzip-compressed file, detected by its leading
+     * bytes, is decompressed on a background thread by a {@link ReadAheadStream} and read as a {@link StreamInput}, so
+     * decompressing and tallying overlap. A file in the binary ballot format of {@link BinaryBallotFile} is read by a
+     * {@link BinaryInput}.
      *
      * @return true if the file exists and is readable, false otherwise.
+     * @throws RuntimeException if the file is compressed in a format that cannot be read.
      */
     protected boolean validateFile() {
         if (this.filename.equals("")) {
@@ -90,6 +457,31 @@ public class FileInput {
             return false;
         }
 
+        byte[] magic = new byte[ZSTD_MAGIC.length];
+        int magicLength;
+        try (FileInputStream stream = new FileInputStream(file)) {
+            magicLength = stream.readNBytes(magic, 0, magic.length);
+        } catch (IOException e) {
+            return false;
+        }
+        if (startsWith(magic, magicLength, ZSTD_MAGIC)) {
+            throw new RuntimeException("Error: File \"" + filename
+                    + "\" is zstd-compressed, which is not supported; recompress it with gzip or decompress it");
+        }
+        if (startsWith(magic, magicLength, BinaryBallotFile.MAGIC)) {
+            delegate = new BinaryInput(filename);
+            return true;
+        }
+        if (startsWith(magic, magicLength, GZIP_MAGIC)) {
+            try {
+                GZIPInputStream gzip = new GZIPInputStream(new FileInputStream(file), 1 << 16);
+                delegate = new StreamInput(new ReadAheadStream(Channels.newChannel(gzip), filename), filename);
+            } catch (IOException e) {
+                return false;
+            }
+            return true;
+        }
+
         FileReader reader;
         try {
             reader = new FileReader(file);
@@ -101,6 +493,26 @@ public class FileInput {
         return true;
     }
 
+    /**
+     * Checks whether the first {@code length} bytes of {@code bytes} start with {@code prefix}.
+     *
+     * @param bytes  the bytes to check.
+     * @param length the number of valid bytes.
+     * @param prefix the expected leading bytes.
+     * @return true if {@code bytes} starts with {@code prefix}, false otherwise.
+     */
+    protected static boolean startsWith(byte[] bytes, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Consumes and returns the next line from the file.
      *
@@ -108,9 +520,15 @@ public class FileInput {
      * @throws RuntimeException if the file could not be read.
      */
     public String getLine() throws RuntimeException {
+        if (delegate != null) {
+            return delegate.getLine();
+        }
         String line = "";
         try {
             line = buffer.readLine();
+            if (line != null) {
+                linesRead++;
+            }
         } catch (IOException e) {
             throw new RuntimeException("Error: Could not read file \"" + filename + "\"");
         }
@@ -123,6 +541,10 @@ public class FileInput {
      * @throws RuntimeException if the file could not be closed.
      */
     public void close() {
+        if (delegate != null) {
+            delegate.close();
+            return;
+        }
         try {
             buffer.close();
         } catch (IOException e) {
@@ -142,21 +564,341 @@ public class FileInput {
 
     /**
      * Tallies {@code ballotCount} ballots from the current file. The next unconsumed line must be the first ballot
-     * to tally.
+     * to tally. The ballot section is memory-mapped and scanned byte by byte by a {@link BallotScanner}, so no Strings
+     * are created per ballot. The lines returned by {@link #getLine()} are not advanced past the ballots.
+     * <p>
+     * If more than one thread is configured and the ballot section is large enough, the section is tallied in
+     * parallel by {@link #tallyParallel(FileChannel, long, int, int)}. Compressed and binary files are tallied by
+     * their delegate. If a checkpoint interval is set, the tally runs sequentially, saving its progress as it goes,
+     * and resumes from an earlier checkpoint of the same file. If an index stride is set, the tally also runs
+     * sequentially and writes a {@link BallotIndex} of the ballots it read. If live results are set, the tally runs
+     * sequentially and reports its progress to them.
+     * <p>
+     * Only valid ballots are counted; the validation results are available from {@link #getStatistics()} afterwards.
      *
      * @param votableCount the number of votable entities on the ballot
      * @param ballotCount the number of ballots to tally
      * @return an int array of all the vote counts
+     * @throws RuntimeException if the file could not be read.
+     */
+    public int[] tallyVotes(int votableCount, int ballotCount) throws RuntimeException {
+        if (delegate != null) {
+            return delegate.tallyVotes(votableCount, ballotCount);
+        }
+        BallotMerkleTree.Hasher hasher = null;
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long start = findBallotOffset(channel);
+            long size = channel.size();
+            if (merkleChunkSize > 0) {
+                // hash the file on other threads while it is tallied
+                hasher = new BallotMerkleTree.Hasher(filename, start, merkleChunkSize, threadCount);
+            }
+            if (checkpoint == null && indexStride == 0 && liveResults == null && threadCount > 1
+                    && size - start >= PARALLEL_THRESHOLD) {
+                int[] votes = tallyParallel(channel, start, votableCount, ballotCount);
+                finishMerkleTree(hasher);
+                return votes;
+            }
+            BallotScanner scanner = new BallotScanner(votableCount, ballotCount, spoilagePolicy);
+            long from = checkpoint != null ? checkpoint.begin(channel, scanner, start) : start;
+            BallotIndex.Builder indexer = null;
+            if (indexStride > 0 && from == start) {
+                indexer = new BallotIndex.Builder(start, indexStride);
+                scanner.setIndexer(indexer);
+            }
+            long position = readAheadSize > 0 ? scanReadAhead(scanner, from, checkpoint)
+                    : scanRegion(channel, scanner, from, size, checkpoint, liveResults != null);
+            if (checkpoint != null) {
+                checkpoint.end(scanner, position);
+            }
+            scanner.finish();
+            reportLive(scanner.getVotes(), scanner.getBallotsScanned());
+            if (indexer != null) {
+                scanner.setIndexer(null);
+                indexer.write(filename, scanner.getBallotsScanned());
+            }
+
+            // count any lines after the declared ballots
+            long extra = 0;
+            if (position < size) {
+                BallotScanner trailing = new BallotScanner(votableCount, Long.MAX_VALUE);
+                scanRegion(channel, trailing, position, size);
+                trailing.finish();
+                extra = trailing.getNonBlankLines();
+            }
+            statistics = scanner.getStatistics(filename, ballotCount, extra);
+            finishMerkleTree(hasher);
+            return scanner.getVotes();
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not read file \"" + filename + "\"");
+        } finally {
+            if (hasher != null) {
+                hasher.cancel();
+            }
+        }
+    }
+
+    /**
+     * Waits for the Merkle tree of a tally to be hashed and writes its sidecar.
+     *
+     * @param hasher the hasher started with the tally, or {@code null} if the tally is not hashed.
+     * @throws IOException if the sidecar could not be written.
+     */
+    protected void finishMerkleTree(BallotMerkleTree.Hasher hasher) throws IOException {
+        if (hasher != null) {
+            merkleTree = hasher.finish();
+            merkleTree.write();
+        }
+    }
+
+    /**
+     * Feeds the bytes of the file on the range {@code [start, end)} to {@code scanner}, mapping the range one window
+     * at a time. The scanner carries partial lines across windows. Scanning stops early once the scanner is done.
+     *
+     * @param channel the channel open on the current file.
+     * @param scanner the scanner to feed.
+     * @param start   the offset of the first byte to scan.
+     * @param end     the offset after the last byte to scan.
+     * @return the offset after the last consumed byte.
+     * @throws IOException if the file could not be read.
+     */
+    protected long scanRegion(FileChannel channel, BallotScanner scanner, long start, long end) throws IOException {
+        return scanRegion(channel, scanner, start, end, null, false);
+    }
+
+    /**
+     * Feeds the bytes of the file on the range {@code [start, end)} to {@code scanner} like
+     * {@link #scanRegion(FileChannel, BallotScanner, long, long)}, reporting the consumed bytes to
+     * {@code checkpoint}, and the scanner's tally to the live results, once per {@link TallyCheckpoint#SLICE} bytes.
+     *
+     * @param channel    the channel open on the current file.
+     * @param scanner    the scanner to feed.
+     * @param start      the offset of the first byte to scan.
+     * @param end        the offset after the last byte to scan.
+     * @param checkpoint the checkpoint to report to, or {@code null}.
+     * @param live       whether to report the scanner's tally to the live results.
+     * @return the offset after the last consumed byte.
+     * @throws IOException if the file could not be read or the checkpoint could not be written.
+     */
+    protected long scanRegion(FileChannel channel, BallotScanner scanner, long start, long end,
+                              TallyCheckpoint checkpoint, boolean live) throws IOException {
+        long position = start;
+        while (position < end && !scanner.isDone()) {
+            int length = (int) Math.min(MAP_WINDOW, end - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (scanner.indexer != null) {
+                scanner.indexer.setBase(position);
+            }
+            if (checkpoint == null && !live) {
+                position += scanner.scan(window, 0, length);
+                continue;
+            }
+            int from = 0;
+            while (from < length && !scanner.isDone()) {
+                int to = scanner.scan(window, from, Math.min(length, from + TallyCheckpoint.SLICE));
+                if (checkpoint != null) {
+                    checkpoint.scanned(window, from, to, scanner, position + to);
+                }
+                if (live) {
+                    reportLive(scanner.getVotes(), scanner.getBallotsScanned());
+                }
+                from = to;
+            }
+            position += from;
+        }
+        return position;
+    }
+
+    /**
+     * Feeds the bytes of the file from {@code start} to its end to {@code scanner} through a {@link ReadAheadStream}
+     * of direct buffers. The read-ahead has its own channel, since closing it interrupts the background thread and
+     * an interrupted {@code FileChannel} closes itself. Scanning stops early once the scanner is done.
+     *
+     * @param scanner    the scanner to feed.
+     * @param start      the offset of the first byte to scan.
+     * @param checkpoint the checkpoint to report to, or {@code null}; the live results, if any, are reported to after
+     *                   every buffer as well.
+     * @return the offset after the last consumed byte.
+     * @throws IOException if the file could not be read or the checkpoint could not be written.
+     */
+    protected long scanReadAhead(BallotScanner scanner, long start, TallyCheckpoint checkpoint) throws IOException {
+        FileChannel source = FileChannel.open(Path.of(filename), StandardOpenOption.READ);
+        source.position(start);
+        long position = start;
+        try (ReadAheadStream stream = new ReadAheadStream(source, filename, readAheadSize, readAheadDepth, true)) {
+            readAhead = stream;
+            ByteBuffer buffer;
+            while (!scanner.isDone() && (buffer = stream.next()) != null) {
+                int from = buffer.position();
+                if (scanner.indexer != null) {
+                    scanner.indexer.setBase(position - from);
+                }
+                int to = scanner.scan(buffer, from, buffer.limit());
+                position += to - from;
+                if (checkpoint != null) {
+                    checkpoint.scanned(buffer, from, to, scanner, position);
+                }
+                reportLive(scanner.getVotes(), scanner.getBallotsScanned());
+                stream.release(buffer);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Tallies the ballot section in parallel and sets the statistics. The section is split into one line-aligned
+     * chunk per thread, each chunk is tallied by a private scanner, and the scanners are merged in order at the end.
+     * <p>
+     * Chunks cannot know which ballot they start at, so every line up to the end of the file is tallied. If that is
+     * more than {@code ballotCount} lines, the chunks are merged up to the one holding the last declared ballot. If
+     * the lines after that ballot in its chunk are all blank, they are untallied; otherwise that chunk alone is
+     * tallied again, stopping after the ballot. The non-blank lines after the declared ballots are counted as extra
+     * lines, as in the sequential tally.
+     *
+     * @param channel      the channel open on the current file.
+     * @param start        the offset of the first ballot.
+     * @param votableCount the number of votable entities on the ballot.
+     * @param ballotCount  the number of ballots to tally.
+     * @return an int array of all the vote counts.
+     * @throws IOException if the file could not be read.
      */
-    public int[] tallyVotes(int votableCount, int ballotCount) {
-        // tally votes
-        int[] votes = new int[votableCount];
-        for (int i = 0; i < ballotCount; i++) {
-            // if there are k commas before the '1', then the '1' is at index k.
-            String[] tokens = getLine().split("1");
-            int index = tokens[0].length();
-            votes[index] += 1;
+    protected int[] tallyParallel(FileChannel channel, long start, int votableCount, int ballotCount)
+            throws IOException {
+        long end = channel.size();
+        long[] bounds = new long[threadCount + 1];
+        bounds[0] = start;
+        bounds[threadCount] = end;
+        for (int i = 1; i < threadCount; i++) {
+            long nominal = start + (end - start) / threadCount * i;
+            bounds[i] = Math.max(bounds[i - 1], findLineStart(channel, nominal, end));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<BallotScanner>> futures = new ArrayList<>(threadCount);
+            for (int i = 0; i < threadCount; i++) {
+                final long chunkStart = bounds[i];
+                final long chunkEnd = bounds[i + 1];
+                futures.add(pool.submit(() -> {
+                    BallotScanner scanner = new BallotScanner(votableCount, Long.MAX_VALUE, spoilagePolicy);
+                    scanRegion(channel, scanner, chunkStart, chunkEnd);
+                    scanner.finish();
+                    return scanner;
+                }));
+            }
+
+            // merge the partial tallies in file order, so quarantined ballot numbers stay correct
+            BallotScanner merged = new BallotScanner(votableCount, Long.MAX_VALUE, spoilagePolicy);
+            long extra = 0;
+            for (int i = 0; i < threadCount; i++) {
+                BallotScanner scanner = futures.get(i).get();
+                long remaining = ballotCount - merged.getBallotsScanned();
+                if (remaining <= 0) {
+                    extra += scanner.getNonBlankLines();
+                    continue;
+                }
+                long excess = scanner.getBallotsScanned() - remaining;
+                if (excess > 0 && excess <= scanner.getTrailingBlankLines()) {
+                    scanner.dropTrailingBlankLines(excess);
+                } else if (excess > 0) {
+                    // the declared ballots end inside this chunk, so tally it again up to there
+                    scanner = new BallotScanner(votableCount, remaining, spoilagePolicy);
+                    long position = scanRegion(channel, scanner, bounds[i], bounds[i + 1]);
+                    scanner.finish();
+                    BallotScanner trailing = new BallotScanner(votableCount, Long.MAX_VALUE);
+                    scanRegion(channel, trailing, position, bounds[i + 1]);
+                    trailing.finish();
+                    extra += trailing.getNonBlankLines();
+                }
+                merged.append(scanner);
+            }
+            statistics = merged.getStatistics(filename, ballotCount, extra);
+            return merged.getVotes();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Error: Could not tally file \"" + filename + "\": " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Error: Interrupted while tallying file \"" + filename + "\"");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Finds the offset of the first line that starts at or after {@code offset}.
+     *
+     * @param channel the channel open on the current file.
+     * @param offset  the offset to search from; must be positive.
+     * @param end     the offset to stop searching at.
+     * @return the offset of the line start, or {@code end} if there is none.
+     * @throws IOException if the file could not be read.
+     */
+    protected long findLineStart(FileChannel channel, long offset, long end) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(8192);
+        // a line starts at offset if the byte before it ends a line, so begin with that byte
+        long position = offset - 1;
+        boolean pendingLineFeed = false;
+        while (position < end) {
+            chunk.clear();
+            int read = channel.read(chunk, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = chunk.get(i);
+                if (pendingLineFeed) {
+                    return b == '\n' ? position + i + 1 : position + i;
+                }
+                if (b == '\n') {
+                    return position + i + 1;
+                }
+                pendingLineFeed = b == '\r';
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    /**
+     * Finds the byte offset of the first unconsumed line, i.e. the first byte after the {@code linesRead} lines
+     * returned by {@link #getLine()}. Line terminators are {@code "\n"}, {@code "\r"} or {@code "\r\n"}, the same
+     * as {@link BufferedReader#readLine()}.
+     *
+     * @param channel the channel open on the current file.
+     * @return the offset of the first unconsumed byte.
+     * @throws IOException if the file could not be read.
+     */
+    protected long findBallotOffset(FileChannel channel) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(8192);
+        long offset = 0;
+        int lines = 0;
+        boolean pendingLineFeed = false;
+        while (true) {
+            chunk.clear();
+            int read = channel.read(chunk, offset);
+            if (read <= 0) {
+                return offset;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = chunk.get(i);
+                if (pendingLineFeed) {
+                    pendingLineFeed = false;
+                    if (b == '\n') {
+                        continue;
+                    }
+                }
+                if (lines == linesRead) {
+                    return offset + i;
+                }
+                if (b == '\n' || b == '\r') {
+                    lines++;
+                    pendingLineFeed = b == '\r';
+                }
+            }
+            offset += read;
         }
-        return votes;
     }
 }
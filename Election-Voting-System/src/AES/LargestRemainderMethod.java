@@ -0,0 +1,603 @@
+/*
+LargestRemainderMethod.java
+
+The LargestRemainderMethod class allocates seats by the largest remainder method with the Hare quota.
+
+*/
+
+package AES;
+
+import java.util.Arrays;
+
+/**
+ * The largest remainder method (LRA). Each party first gets one seat per full {@code ceil(ballots / seats)} votes,
+ * its first allocation. The seats left are then given out in the second allocation: a seat per party per round while
+ * there are at least as many seats as parties with candidates left, and the rest to the parties with the most
+ * remaining votes, with ties settled by the election's tiebreak.
+ */
+public class LargestRemainderMethod extends ApportionmentMethod {
+    /**
+     * The most party-quota steps {@link #computeSensitivity} takes in each direction before giving up.
+     */
+    protected static final long MAX_QUOTA_WORK = 1L << 24;
+
+    /**
+     * Gets the name of the method for display.
+     *
+     * @return the name.
+     */
+    @Override
+    public String getName() {
+        return "Largest Remainder";
+    }
+
+    /**
+     * Gets the audit file column headers of rows 1 to 3 of the allocation data.
+     *
+     * @return the 3 headers.
+     */
+    @Override
+    public String[] getColumnNames() {
+        return new String[]{"First Allocation Of Seats", "Remaining Votes", "Second Allocation of Seats"};
+    }
+
+    /**
+     * Allocates the seats. Row 1 of the allocation data holds the first allocation, row 2 the votes remaining after
+     * it and row 3 the second allocation.
+     *
+     * @param votes       the votes of each party.
+     * @param listSizes   the number of candidates of each party.
+     * @param ballotCount the number of ballots cast.
+     * @param seatCount   the number of seats.
+     * @param election    the election, whose {@link Election#tiebreak(int, int)} settles ties.
+     * @return the allocation data.
+     */
+    @Override
+    public int[][] allocate(int[] votes, int[] listSizes, int ballotCount, int seatCount, Election election) {
+        int partyCount = votes.length;
+        int[][] allocationData = new int[5][partyCount];
+        // array representing the parties that have candidates that can be allocated
+        boolean[] hasCandidatesLeft = new boolean[partyCount];
+        // int representing the number of parties with candidates that can be allocated
+        int numberCandidatesLeft = partyCount;
+        // evaluates votesPerSeat to determine first allocation of seats
+        int votesPerSeat = (int) Math.ceil((double) ballotCount / seatCount);
+        // variable representing the seats have been taken so far
+        int seatsTaken = 0;
+        // Sets first row equal to vote count and initializes 4th row to all 0s
+        for (int i = 0; i < partyCount; i++) {
+            allocationData[0][i] = votes[i];
+            allocationData[3][i] = 0;
+            allocationData[1][i] = 0;
+            hasCandidatesLeft[i] = true;
+        }
+        // if there is more than one ballot per seat
+        if (votesPerSeat != 0) {
+            for (int i = 0; i < partyCount; i++) {
+                // Tests if the number of seats we allocate to a party is less than the number of candidates they have
+                if (allocationData[0][i] / votesPerSeat < listSizes[i]) {
+                    allocationData[1][i] = allocationData[0][i] / votesPerSeat;
+                } else {
+                    // if it is not, first allocation is equal to the number of candidates that party has
+                    allocationData[1][i] = listSizes[i];
+                    // then set variables to represent that there are no seats left
+                    hasCandidatesLeft[i] = false;
+                    numberCandidatesLeft--;
+                }
+                // The votes remaining can be found using this formula:
+                allocationData[2][i] = allocationData[0][i] - allocationData[1][i] * votesPerSeat;
+                // seats taken incremented based on the seats each party takes
+                seatsTaken += allocationData[1][i];
+            }
+        } else {
+            if (partyCount >= 0) System.arraycopy(allocationData[0], 0, allocationData[2], 0, partyCount);
+        }
+
+        // remaining seats is the amount of seats still left ot be allocated
+        int remainingSeats = seatCount - seatsTaken;
+        // while there are at least as many seats left as parties with candidates left, every such party gets a seat
+        // per round, and a party drops out once its list is used up
+        int[] capacities = new int[numberCandidatesLeft];
+        int eligible = 0;
+        for (int i = 0; i < partyCount; i++) {
+            if (hasCandidatesLeft[i]) {
+                // a party without candidates is only eligible when there are no ballots, and still takes one seat
+                capacities[eligible++] = Math.max(listSizes[i] - allocationData[1][i], 1);
+            }
+        }
+        Arrays.sort(capacities);
+        int rounds = countRounds(capacities, remainingSeats);
+        for (int i = 0; i < partyCount; i++) {
+            if (hasCandidatesLeft[i]) {
+                int capacity = Math.max(listSizes[i] - allocationData[1][i], 1);
+                allocationData[3][i] = Math.min(capacity, rounds);
+                remainingSeats -= allocationData[3][i];
+                if (capacity <= rounds) {
+                    hasCandidatesLeft[i] = false;
+                    numberCandidatesLeft--;
+                }
+            }
+        }
+
+        // ranks the parties with candidates left by remaining votes, most first and in party order among equals, by
+        // sorting one packed long per party; if every candidate is seated the remaining seats stay empty
+        if (remainingSeats != 0 && numberCandidatesLeft > 0) {
+            long[] ranking = new long[numberCandidatesLeft];
+            int nonEmptyParty = 0;
+            for (int i = 0; i < partyCount; i++) {
+                if (hasCandidatesLeft[i]) {
+                    ranking[nonEmptyParty++] = rank(allocationData[2][i], i);
+                }
+            }
+            Arrays.sort(ranking);
+            // the remaining votes of the last seat; parties before tieStart have more, those up to tieEnd as many
+            int tiedRemainder = remainder(ranking[remainingSeats - 1]);
+            // tieEnd represents the end of the tied region
+            int tieEnd = remainingSeats - 1;
+            while (tieEnd + 1 < ranking.length && remainder(ranking[tieEnd + 1]) == tiedRemainder) {
+                tieEnd++;
+            }
+            // tieStart represents the beginning of the tied region
+            int tieStart = remainingSeats - 1;
+            while (tieStart > 0 && remainder(ranking[tieStart - 1]) == tiedRemainder) {
+                tieStart--;
+            }
+            // gives the tiebreak indices.
+            int[] indices = election.tiebreak(tieEnd - tieStart + 1, remainingSeats - tieStart);
+            // gives seats to all parties with more votes than the tied value
+            for (int iCount = 0; iCount < tieStart; iCount++) {
+                allocationData[3][party(ranking[iCount])]++;
+                remainingSeats--;
+            }
+            //  gives seats to all parties that are tied based on the indices that were tiebroken
+            for (int index : indices) {
+                allocationData[3][party(ranking[index + tieStart])]++;
+                remainingSeats--;
+            }
+        }
+        // finds total allocation of seats by adding first and second allocations
+        for (int i = 0; i < partyCount; i++) {
+            allocationData[4][i] = allocationData[3][i] + allocationData[1][i];
+        }
+        return allocationData;
+    }
+
+    /**
+     * Counts the rounds of the second allocation in which every party with candidates left gets a seat, which go on
+     * while there are at least as many seats left as such parties. Instead of simulating the rounds, the number of
+     * seats each party can still take is sorted: between two drop-outs the number of seats per round is constant, so
+     * each stretch of rounds takes one division.
+     *
+     * @param capacities     the number of seats each party with candidates left can still take, in ascending order.
+     * @param remainingSeats the number of seats left after the first allocation.
+     * @return the number of rounds; every party gets {@code min(capacity, rounds)} seats from them.
+     */
+    protected static int countRounds(int[] capacities, int remainingSeats) {
+        int rounds = 0;
+        int dropped = 0;
+        while (dropped < capacities.length) {
+            int perRound = capacities.length - dropped;
+            int stretch = capacities[dropped] - rounds;
+            int affordable = remainingSeats / perRound;
+            if (affordable < stretch) {
+                return rounds + affordable;
+            }
+            rounds += stretch;
+            remainingSeats -= stretch * perRound;
+            while (dropped < capacities.length && capacities[dropped] <= rounds) {
+                dropped++;
+            }
+        }
+        return rounds;
+    }
+
+    /**
+     * Packs a party's remaining votes and number into a long that sorts before the longs of parties with fewer
+     * remaining votes, and of parties with as many and a higher number.
+     *
+     * @param remainder the party's remaining votes.
+     * @param party     the party number.
+     * @return the packed rank.
+     */
+    protected static long rank(int remainder, int party) {
+        return (long) ~remainder << 32 | party;
+    }
+
+    /**
+     * Unpacks the remaining votes from a rank.
+     *
+     * @param rank the rank from {@link #rank(int, int)}.
+     * @return the remaining votes.
+     */
+    protected static int remainder(long rank) {
+        return ~(int) (rank >> 32);
+    }
+
+    /**
+     * Unpacks the party number from a rank.
+     *
+     * @param rank the rank from {@link #rank(int, int)}.
+     * @return the party number.
+     */
+    protected static int party(long rank) {
+        return (int) rank;
+    }
+
+    /**
+     * Computes how many votes each party would need to gain or lose a seat. The votes a party gains or loses are
+     * ballots added to or removed from the count, so the quota is worked out again from the new ballot count, and the
+     * first allocation and remaining votes of every other party move with it. The quota only changes every
+     * {@code seatCount} ballots, and at one quota a party's seats only grow with its own votes, so each margin is
+     * found by stepping through the quotas from the current one: the far end of each quota's range of votes shows
+     * whether the seats change within it, and a binary search then finds the fewest votes that change them. The
+     * first allocation and ranked remaining votes at each quota are shared by every party, so a quota step costs one
+     * sort, and a binary search per party still looking for its margin.
+     * <p>
+     * The margins are not available if finding them would take more than {@link #MAX_QUOTA_WORK} party-quota steps,
+     * which takes a margin spanning many quotas, e.g. with few seats and many ballots.
+     *
+     * @param votes          the votes of each party.
+     * @param listSizes      the number of candidates of each party.
+     * @param ballotCount    the number of ballots cast.
+     * @param seatCount      the number of seats.
+     * @param allocationData the allocation data from {@link #allocate(int[], int[], int, int, Election)}.
+     * @return the margins.
+     */
+    @Override
+    public SeatSensitivity computeSensitivity(int[] votes, int[] listSizes, int ballotCount, int seatCount,
+                                              int[][] allocationData) {
+        int partyCount = votes.length;
+        if (ballotCount == 0) {
+            return SeatSensitivity.unavailable("there were no ballots");
+        }
+        long maxSteps = Math.max(1, MAX_QUOTA_WORK / partyCount);
+
+        // gaining votes: the quotas from that of one more ballot upwards
+        long[] votesToGain = new long[partyCount];
+        int unresolved = 0;
+        for (int i = 0; i < partyCount; i++) {
+            int seats = allocationData[4][i];
+            boolean canGain = seats < listSizes[i] && seats < seatCount;
+            votesToGain[i] = canGain ? 0 : SeatSensitivity.NONE;
+            if (canGain) {
+                unresolved++;
+            }
+        }
+        long steps = 0;
+        for (long quota = quota(ballotCount + 1L, seatCount); unresolved > 0; quota++) {
+            if (++steps > maxSteps) {
+                return SeatSensitivity.unavailable("the margins span more quotas than can be searched");
+            }
+            QuotaState state = new QuotaState(votes, listSizes, quota);
+            long low = Math.max(1, (quota - 1) * seatCount - ballotCount + 1);
+            long high = quota * seatCount - ballotCount;
+            for (int i = 0; i < partyCount; i++) {
+                if (votesToGain[i] != 0) {
+                    continue;
+                }
+                int seats = allocationData[4][i];
+                if (state.seats(listSizes, seatCount, i, votes[i] + high, false) > seats) {
+                    // the fewest added votes in this quota's range that gain a seat, with ties going against the party
+                    long from = low;
+                    long to = high;
+                    while (from < to) {
+                        long mid = (from + to) >>> 1;
+                        if (state.seats(listSizes, seatCount, i, votes[i] + mid, false) > seats) {
+                            to = mid;
+                        } else {
+                            from = mid + 1;
+                        }
+                    }
+                    votesToGain[i] = from;
+                    unresolved--;
+                }
+            }
+        }
+
+        // losing votes: the quotas from that of one ballot fewer downwards, until every party has lost all its votes
+        long[] votesToLose = new long[partyCount];
+        int mostVotes = 0;
+        unresolved = 0;
+        for (int i = 0; i < partyCount; i++) {
+            boolean canLose = allocationData[4][i] > 0 && votes[i] > 0;
+            votesToLose[i] = canLose ? 0 : SeatSensitivity.NONE;
+            if (canLose) {
+                unresolved++;
+                mostVotes = Math.max(mostVotes, votes[i]);
+            }
+        }
+        steps = 0;
+        for (long quota = quota(ballotCount - 1L, seatCount); unresolved > 0 && quota >= 0; quota--) {
+            long low = Math.max(1, ballotCount - quota * seatCount);
+            long high = quota == 0 ? ballotCount : ballotCount - (quota - 1) * seatCount - 1;
+            if (low > mostVotes) {
+                break;
+            }
+            if (++steps > maxSteps) {
+                return SeatSensitivity.unavailable("the margins span more quotas than can be searched");
+            }
+            QuotaState state = new QuotaState(votes, listSizes, quota);
+            for (int i = 0; i < partyCount; i++) {
+                if (votesToLose[i] != 0 || low > votes[i]) {
+                    continue;
+                }
+                int seats = allocationData[4][i];
+                long most = Math.min(high, votes[i]);
+                if (state.seats(listSizes, seatCount, i, votes[i] - most, true) < seats) {
+                    // the fewest removed votes in this quota's range that lose a seat, with ties going for the party
+                    long from = low;
+                    long to = most;
+                    while (from < to) {
+                        long mid = (from + to) >>> 1;
+                        if (state.seats(listSizes, seatCount, i, votes[i] - mid, true) < seats) {
+                            to = mid;
+                        } else {
+                            from = mid + 1;
+                        }
+                    }
+                    votesToLose[i] = from;
+                    unresolved--;
+                }
+            }
+        }
+        for (int i = 0; i < partyCount; i++) {
+            if (votesToLose[i] == 0) {
+                // the party keeps its seats with no votes left
+                votesToLose[i] = SeatSensitivity.NONE;
+            }
+        }
+        return new SeatSensitivity(votesToGain, votesToLose, "Votes gained or lost are ballots added or removed, so "
+                + "the quota of " + quota(ballotCount, seatCount) + " votes per seat is worked out again");
+    }
+
+    /**
+     * Gets the quota of a ballot count, {@code ceil(ballots / seats)}.
+     *
+     * @param ballots   the number of ballots.
+     * @param seatCount the number of seats.
+     * @return the votes per seat.
+     */
+    protected static long quota(long ballots, int seatCount) {
+        return (ballots + seatCount - 1) / seatCount;
+    }
+
+    /**
+     * The first allocation and remaining votes of every party at one quota, from which a party's seats at that quota
+     * with its own votes changed follow without allocating again.
+     */
+    protected static class QuotaState {
+        /**
+         * The quota, in votes per seat; 0 if there are no ballots.
+         */
+        protected final long quota;
+
+        /**
+         * The first allocation of each party.
+         */
+        protected final int[] first;
+
+        /**
+         * The remaining votes of each party.
+         */
+        protected final long[] remainders;
+
+        /**
+         * Whether each party has candidates left for the second allocation.
+         */
+        protected final boolean[] eligible;
+
+        /**
+         * The number of seats each party with candidates left can still take.
+         */
+        protected final int[] capacities;
+
+        /**
+         * The total first allocation.
+         */
+        protected final long firstTotal;
+
+        /**
+         * The number of parties with candidates left.
+         */
+        protected final int eligibleCount;
+
+        /**
+         * The remaining votes of the parties with candidates left, in ascending order.
+         */
+        protected final long[] sortedRemainders;
+
+        /**
+         * The capacities of the parties with candidates left, in ascending order.
+         */
+        protected final int[] sortedCapacities;
+
+        /**
+         * Computes the first allocation of every party at a quota, as {@link LargestRemainderMethod#allocate} does.
+         *
+         * @param votes     the votes of each party.
+         * @param listSizes the number of candidates of each party.
+         * @param quota     the quota.
+         */
+        protected QuotaState(int[] votes, int[] listSizes, long quota) {
+            int partyCount = votes.length;
+            this.quota = quota;
+            first = new int[partyCount];
+            remainders = new long[partyCount];
+            eligible = new boolean[partyCount];
+            capacities = new int[partyCount];
+            long total = 0;
+            int count = 0;
+            for (int i = 0; i < partyCount; i++) {
+                Part part = new Part(votes[i], listSizes[i], quota);
+                first[i] = part.first;
+                remainders[i] = part.remainder;
+                eligible[i] = part.eligible;
+                capacities[i] = part.capacity;
+                total += part.first;
+                if (part.eligible) {
+                    count++;
+                }
+            }
+            firstTotal = total;
+            eligibleCount = count;
+            sortedRemainders = new long[count];
+            sortedCapacities = new int[count];
+            int k = 0;
+            for (int i = 0; i < partyCount; i++) {
+                if (eligible[i]) {
+                    sortedRemainders[k] = remainders[i];
+                    sortedCapacities[k++] = capacities[i];
+                }
+            }
+            Arrays.sort(sortedRemainders);
+            Arrays.sort(sortedCapacities);
+        }
+
+        /**
+         * Gets a party's seats at this quota with its votes changed and every other party's votes unchanged.
+         *
+         * @param listSizes  the number of candidates of each party.
+         * @param seatCount  the number of seats.
+         * @param party      the party.
+         * @param partyVotes the party's changed votes.
+         * @param favoured   whether ties for the last seats go to the party.
+         * @return the party's seats.
+         */
+        protected int seats(int[] listSizes, int seatCount, int party, long partyVotes, boolean favoured) {
+            Part part = new Part(partyVotes, listSizes[party], quota);
+            if (!part.eligible) {
+                return part.first;
+            }
+            int otherCount = eligibleCount - (eligible[party] ? 1 : 0);
+            long remainingSeats = seatCount - (firstTotal - first[party]) - part.first;
+            if (remainingSeats <= 0) {
+                return part.first;
+            }
+            if (remainingSeats < otherCount + 1) {
+                // no rounds: the party needs a remaining seat among the other parties with candidates left
+                long ahead = eligibleCount - countBelow(sortedRemainders, part.remainder, favoured);
+                if (eligible[party] && (favoured ? remainders[party] > part.remainder
+                        : remainders[party] >= part.remainder)) {
+                    ahead--;
+                }
+                return ahead < remainingSeats ? part.first + 1 : part.first;
+            }
+
+            // rounds: every party with candidates left gets a seat per round, then the rest go by remaining votes
+            int[] roundCapacities = new int[otherCount + 1];
+            int k = 0;
+            boolean skipped = !eligible[party];
+            for (int capacity : sortedCapacities) {
+                if (!skipped && capacity == capacities[party]) {
+                    skipped = true;
+                } else {
+                    roundCapacities[k++] = capacity;
+                }
+            }
+            roundCapacities[k] = part.capacity;
+            Arrays.sort(roundCapacities);
+            int rounds = countRounds(roundCapacities, (int) remainingSeats);
+            if (part.capacity <= rounds) {
+                return part.first + part.capacity;
+            }
+            long leftover = remainingSeats;
+            for (int capacity : roundCapacities) {
+                leftover -= Math.min(capacity, rounds);
+            }
+            if (leftover == 0) {
+                return part.first + rounds;
+            }
+            long ahead = 0;
+            for (int i = 0; i < first.length; i++) {
+                if (i != party && eligible[i] && capacities[i] > rounds && (favoured
+                        ? remainders[i] > part.remainder : remainders[i] >= part.remainder)) {
+                    ahead++;
+                }
+            }
+            return part.first + rounds + (ahead < leftover ? 1 : 0);
+        }
+
+        /**
+         * Counts the values below a remaining vote count, or at most it if ties are counted as below.
+         *
+         * @param sorted    the values, in ascending order.
+         * @param remainder the remaining votes.
+         * @param inclusive whether values equal to {@code remainder} are counted.
+         * @return the count.
+         */
+        protected static int countBelow(long[] sorted, long remainder, boolean inclusive) {
+            int from = 0;
+            int to = sorted.length;
+            while (from < to) {
+                int mid = (from + to) >>> 1;
+                if (sorted[mid] < remainder || (inclusive && sorted[mid] == remainder)) {
+                    from = mid + 1;
+                } else {
+                    to = mid;
+                }
+            }
+            return from;
+        }
+    }
+
+    /**
+     * A party's first allocation and remaining votes at one quota.
+     */
+    protected static class Part {
+        /**
+         * The first allocation.
+         */
+        protected final int first;
+
+        /**
+         * The remaining votes.
+         */
+        protected final long remainder;
+
+        /**
+         * Whether the party has candidates left for the second allocation.
+         */
+        protected final boolean eligible;
+
+        /**
+         * The number of seats the party can still take in the second allocation.
+         */
+        protected final int capacity;
+
+        /**
+         * Computes a party's first allocation at a quota, as {@link LargestRemainderMethod#allocate} does.
+         *
+         * @param votes    the party's votes.
+         * @param listSize the party's number of candidates.
+         * @param quota    the quota; with no ballots, 0, and every party takes part in the second allocation.
+         */
+        protected Part(long votes, int listSize, long quota) {
+            if (quota == 0) {
+                first = 0;
+                remainder = votes;
+                eligible = true;
+                capacity = Math.max(listSize, 1);
+                return;
+            }
+            long whole = votes / quota;
+            eligible = whole < listSize;
+            first = eligible ? (int) whole : listSize;
+            remainder = votes - first * quota;
+            capacity = listSize - first;
+        }
+    }
+
+    /**
+     * Produces the explanation of the calculation for the audit file.
+     *
+     * @param ballotCount the number of ballots cast.
+     * @param seatCount   the number of seats.
+     * @return the quota calculation as a displayable String.
+     */
+    @Override
+    public String generateCalculation(int ballotCount, int seatCount) {
+        int votesPerSeat = (int) Math.ceil((double) ballotCount / seatCount);
+        return "Largest Remainder Approach Calculation:\n - Ceiling of (Total Votes / Number of Seats) = ceil("
+                + ballotCount + " / " + seatCount + ") = " + votesPerSeat + "\n\n";
+    }
+}
@@ -0,0 +1,697 @@
+/*
+LiveResults.java
+
+The LiveResults class projects the seats of an election from the ballots tallied so far, while the tally goes on.
+
+*/
+
+package AES;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A seat projection kept up to date as ballots are tallied, for reporting on election night. Tallying threads add
+ * their progress with {@link #addBallots(int[], long)}, which only queues the batch, so ingesting never waits for the
+ * projection. {@link #update()} folds the queued batches into the running tallies and publishes an immutable
+ * {@link Snapshot}, which readers get from {@link #getSnapshot()} without locking.
+ * <p>
+ * The projection divides the seats by the largest remainder method, with the quota of the ballots counted so far,
+ * so once every ballot is in it matches {@link ApportionmentMethod#LARGEST_REMAINDER}. An update only recomputes the
+ * first allocation and remaining votes of the parties that received votes, and re-ranks just those parties, unless
+ * the quota changed; in an OPL election, only the parties whose candidates received votes or whose seats changed
+ * have their candidates ranked again. Ties are not broken by the election's tiebreaker, which must only be drawn
+ * once: a projected seat that depends on a tie goes to the lowest party number, or to the candidate listed first,
+ * and the snapshot counts these seats.
+ */
+public class LiveResults {
+    /**
+     * The names of the parties, in party number order, or {@code null} before {@link #begin(Election)}.
+     */
+    protected String[] partyNames;
+
+    /**
+     * The names of each party's candidates, in list order.
+     */
+    protected String[][] candidateNames;
+
+    /**
+     * The party of each votable entity on a ballot.
+     */
+    protected int[] votableParties;
+
+    /**
+     * The list position of each votable entity on a ballot within its party.
+     */
+    protected int[] listPositions;
+
+    /**
+     * Whether the candidates of a party are ranked by their own votes, as in an OPL election.
+     */
+    protected boolean openLists;
+
+    /**
+     * The number of seats available.
+     */
+    protected int seatCount;
+
+    /**
+     * The batches added since the last update.
+     */
+    protected final ConcurrentLinkedQueue<Batch> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The ballots counted so far.
+     */
+    protected long ballots;
+
+    /**
+     * The votes of each party so far.
+     */
+    protected int[] partyVotes;
+
+    /**
+     * The candidates of each party ranked by their votes so far, or {@code null} if the lists are closed.
+     */
+    protected CandidateRanking candidateRanking;
+
+    /**
+     * The quota of the last update, or 0 if no ballots were counted.
+     */
+    protected int votesPerSeat;
+
+    /**
+     * The first allocation of each party.
+     */
+    protected int[] first;
+
+    /**
+     * The votes of each party remaining after its first allocation.
+     */
+    protected int[] remainders;
+
+    /**
+     * The total of the first allocations.
+     */
+    protected int firstTotal;
+
+    /**
+     * The parties with candidates left after their first allocation, ranked by packed remaining votes as in
+     * {@link LargestRemainderMethod#rank(int, int)}, in {@code [0, rankedCount)}.
+     */
+    protected long[] ranking;
+
+    /**
+     * The number of ranked parties.
+     */
+    protected int rankedCount;
+
+    /**
+     * Whether each party's votes changed since the last update.
+     */
+    protected boolean[] dirty;
+
+    /**
+     * Whether each party's candidates must be ranked again, because their votes or the party's seats changed.
+     */
+    protected boolean[] reseat;
+
+    /**
+     * The last published snapshot, or {@code null} before {@link #begin(Election)}.
+     */
+    protected volatile Snapshot snapshot;
+
+    /**
+     * Runs the periodic updates, or {@code null} if none were started.
+     */
+    protected ScheduledExecutorService scheduler;
+
+    /**
+     * Sets up the projection for an election whose header has been read. Later calls, e.g. for the next file of the
+     * same election, keep the tallies.
+     *
+     * @param election the election.
+     * @throws RuntimeException if the projection was set up for an election with a different ballot.
+     */
+    public synchronized void begin(Election election) throws RuntimeException {
+        int[] parties = election.getVotableParties();
+        if (partyNames != null) {
+            if (!Arrays.equals(parties, votableParties) || election.seatCount != seatCount) {
+                throw new RuntimeException("Error: Live results were set up for a different election");
+            }
+            return;
+        }
+        int partyCount = election.partyCount;
+        openLists = election instanceof OPLElection;
+        partyNames = new String[partyCount];
+        candidateNames = new String[partyCount][];
+        for (int i = 0; i < partyCount; i++) {
+            partyNames[i] = election.parties[i].getName();
+            candidateNames[i] = new String[election.candidates.get(i).size()];
+            for (int j = 0; j < candidateNames[i].length; j++) {
+                candidateNames[i][j] = election.candidates.get(i).get(j).getName();
+            }
+        }
+        votableParties = parties;
+        listPositions = new int[parties.length];
+        int[] found = new int[partyCount];
+        for (int i = 0; i < parties.length; i++) {
+            listPositions[i] = found[parties[i]]++;
+        }
+        seatCount = election.seatCount;
+        partyVotes = new int[partyCount];
+        candidateRanking = openLists ? new CandidateRanking(election.getListSizes()) : null;
+        first = new int[partyCount];
+        remainders = new int[partyCount];
+        ranking = new long[partyCount];
+        dirty = new boolean[partyCount];
+        reseat = new boolean[partyCount];
+        int[] zeros = new int[partyCount];
+        int[][] seated = new int[partyCount][0];
+        snapshot = new Snapshot(partyNames, candidateNames, 0, 0, 0, zeros, zeros, zeros, zeros, zeros, seated, 0, 0);
+    }
+
+    /**
+     * Adds a batch of tallied ballots. The batch is copied and queued for the next update, without locking.
+     *
+     * @param voteCounts the votes of each votable entity in the batch, in ballot order.
+     * @param ballots    the number of ballots in the batch.
+     */
+    public void addBallots(int[] voteCounts, long ballots) {
+        pending.add(new Batch(voteCounts.clone(), ballots));
+    }
+
+    /**
+     * Folds the queued batches into the tallies and publishes a new snapshot if any were queued.
+     *
+     * @return the latest snapshot, or {@code null} before {@link #begin(Election)}.
+     */
+    public synchronized Snapshot update() {
+        if (partyNames == null) {
+            return null;
+        }
+        int partyCount = partyNames.length;
+        int[] added = new int[votableParties.length];
+        Batch batch;
+        boolean changed = false;
+        while ((batch = pending.poll()) != null) {
+            ballots += batch.ballots;
+            for (int i = 0; i < added.length; i++) {
+                added[i] += batch.voteCounts[i];
+            }
+            changed = true;
+        }
+        if (!changed) {
+            return snapshot;
+        }
+        int[][] candidateAdded = new int[partyCount][];
+        for (int i = 0; i < added.length; i++) {
+            if (added[i] != 0) {
+                int party = votableParties[i];
+                partyVotes[party] += added[i];
+                dirty[party] = true;
+                if (openLists) {
+                    if (candidateAdded[party] == null) {
+                        candidateAdded[party] = new int[candidateNames[party].length];
+                    }
+                    candidateAdded[party][listPositions[i]] = added[i];
+                }
+            }
+        }
+        // only the parties whose candidates received votes are ranked again
+        for (int party = 0; party < partyCount; party++) {
+            if (candidateAdded[party] != null) {
+                candidateRanking.addVotes(party, candidateAdded[party]);
+                reseat[party] = true;
+            }
+        }
+
+        // a new quota changes every party's first allocation
+        int quota = seatCount > 0 ? (int) ((ballots + seatCount - 1) / seatCount) : 0;
+        if (quota != votesPerSeat) {
+            votesPerSeat = quota;
+            Arrays.fill(dirty, true);
+        }
+        int recomputed = rerank();
+
+        int[] second = new int[partyCount];
+        int tiedSeats = votesPerSeat > 0 ? allocateRemaining(second) : 0;
+        Snapshot previous = snapshot;
+        int[] seats = new int[partyCount];
+        int[][] seated = new int[partyCount][];
+        for (int i = 0; i < partyCount; i++) {
+            seats[i] = first[i] + second[i];
+            if (reseat[i] || seats[i] != previous.seats[i]) {
+                seated[i] = seatCandidates(i, seats[i]);
+                reseat[i] = false;
+            } else {
+                seated[i] = previous.seated[i];
+            }
+        }
+        snapshot = new Snapshot(partyNames, candidateNames, previous.version + 1, ballots, votesPerSeat,
+                partyVotes.clone(), first.clone(), remainders.clone(), second, seats, seated, tiedSeats, recomputed);
+        return snapshot;
+    }
+
+    /**
+     * Recomputes the first allocation and remaining votes of the dirty parties, and moves them to their new places
+     * in the ranking: the other parties keep their order, so the dirty ones are sorted on their own and merged in.
+     *
+     * @return the number of parties recomputed.
+     */
+    protected int rerank() {
+        int partyCount = partyNames.length;
+        long[] fresh = new long[partyCount];
+        int freshCount = 0;
+        int recomputed = 0;
+        for (int i = 0; i < partyCount; i++) {
+            if (!dirty[i]) {
+                continue;
+            }
+            firstTotal -= first[i];
+            int listSize = candidateNames[i].length;
+            first[i] = votesPerSeat > 0 ? Math.min(partyVotes[i] / votesPerSeat, listSize) : 0;
+            remainders[i] = partyVotes[i] - first[i] * votesPerSeat;
+            firstTotal += first[i];
+            if (first[i] < listSize) {
+                fresh[freshCount++] = LargestRemainderMethod.rank(remainders[i], i);
+            }
+            recomputed++;
+        }
+        Arrays.sort(fresh, 0, freshCount);
+
+        long[] merged = new long[partyCount];
+        int count = 0;
+        int next = 0;
+        for (int i = 0; i < rankedCount; i++) {
+            long rank = ranking[i];
+            if (dirty[LargestRemainderMethod.party(rank)]) {
+                continue;
+            }
+            while (next < freshCount && fresh[next] < rank) {
+                merged[count++] = fresh[next++];
+            }
+            merged[count++] = rank;
+        }
+        while (next < freshCount) {
+            merged[count++] = fresh[next++];
+        }
+        ranking = merged;
+        rankedCount = count;
+        Arrays.fill(dirty, false);
+        return recomputed;
+    }
+
+    /**
+     * Gives out the seats left after the first allocation, as {@link LargestRemainderMethod} does: in rounds while
+     * there are at least as many seats left as ranked parties, and the rest by the ranking.
+     *
+     * @param second receives the second allocation of each party.
+     * @return the number of seats that went to parties tied with parties left without them.
+     */
+    protected int allocateRemaining(int[] second) {
+        int remainingSeats = seatCount - firstTotal;
+        int rounds = 0;
+        if (rankedCount > 0 && remainingSeats >= rankedCount) {
+            int[] capacities = new int[rankedCount];
+            for (int i = 0; i < rankedCount; i++) {
+                int party = LargestRemainderMethod.party(ranking[i]);
+                capacities[i] = candidateNames[party].length - first[party];
+            }
+            Arrays.sort(capacities);
+            rounds = LargestRemainderMethod.countRounds(capacities, remainingSeats);
+            for (int i = 0; i < rankedCount; i++) {
+                int party = LargestRemainderMethod.party(ranking[i]);
+                second[party] = Math.min(candidateNames[party].length - first[party], rounds);
+                remainingSeats -= second[party];
+            }
+        }
+
+        // the best ranked parties that still have candidates left take the rest
+        int lastRemainder = 0;
+        int lastTied = 0;
+        int i = 0;
+        for (; i < rankedCount && remainingSeats > 0; i++) {
+            int party = LargestRemainderMethod.party(ranking[i]);
+            if (first[party] + rounds >= candidateNames[party].length) {
+                continue;
+            }
+            int remainder = LargestRemainderMethod.remainder(ranking[i]);
+            lastTied = lastTied > 0 && remainder == lastRemainder ? lastTied + 1 : 1;
+            lastRemainder = remainder;
+            second[party]++;
+            remainingSeats--;
+        }
+        for (; i < rankedCount && lastTied > 0; i++) {
+            int party = LargestRemainderMethod.party(ranking[i]);
+            if (first[party] + rounds < candidateNames[party].length) {
+                return LargestRemainderMethod.remainder(ranking[i]) == lastRemainder ? lastTied : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Picks the candidates of a party who win its seats: the first on the list in a CPL election, and those with the
+     * most votes in an OPL election, read off the {@link CandidateRanking}.
+     *
+     * @param party the party number.
+     * @param seats the party's seats.
+     * @return the list positions of the seated candidates, in list order.
+     */
+    protected int[] seatCandidates(int party, int seats) {
+        int[] seated = new int[seats];
+        if (!openLists) {
+            for (int i = 0; i < seats; i++) {
+                seated[i] = i;
+            }
+            return seated;
+        }
+        // candidates with more votes than the last seat win, and the first listed of those with exactly as many
+        CandidateRanking.Cutoff cutoff = candidateRanking.cutoff(party, seats);
+        int[] winners = cutoff.winners;
+        System.arraycopy(winners, 0, seated, 0, winners.length);
+        System.arraycopy(cutoff.tied, 0, seated, winners.length, cutoff.tiedSeats);
+        Arrays.sort(seated);
+        return seated;
+    }
+
+    /**
+     * Gets the last published snapshot. Never blocks.
+     *
+     * @return the snapshot, or {@code null} before {@link #begin(Election)}.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Updates the projection every {@code periodMillis} milliseconds on a background thread, passing every new
+     * snapshot to {@code listener}.
+     *
+     * @param periodMillis the milliseconds between updates; must be positive.
+     * @param listener     receives each new snapshot, on the background thread.
+     * @throws RuntimeException if {@code periodMillis} is not positive or the updates were already started.
+     */
+    public synchronized void start(long periodMillis, Consumer<Snapshot> listener) throws RuntimeException {
+        if (periodMillis <= 0) {
+            throw new RuntimeException("Error: Live update period must be positive, got " + periodMillis);
+        }
+        if (scheduler != null) {
+            throw new RuntimeException("Error: Live updates were already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "live-results");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            /**
+             * The version of the last snapshot passed to the listener.
+             */
+            private long published = -1;
+
+            /**
+             * Updates the projection and passes it on if it changed.
+             */
+            @Override
+            public void run() {
+                Snapshot latest = update();
+                if (latest != null && latest.version != published) {
+                    published = latest.version;
+                    listener.accept(latest);
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic updates, if any were started, and folds in the batches still queued.
+     *
+     * @return the final snapshot, or {@code null} before {@link #begin(Election)}.
+     * @throws RuntimeException if interrupted while waiting for a running update.
+     */
+    public Snapshot stop() throws RuntimeException {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running != null) {
+            running.shutdown();
+            try {
+                running.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Error: Interrupted while stopping the live results");
+            }
+        }
+        return update();
+    }
+
+    /**
+     * A batch of tallied ballots waiting for the next update.
+     */
+    protected static class Batch {
+        /**
+         * The votes of each votable entity in the batch.
+         */
+        protected final int[] voteCounts;
+
+        /**
+         * The number of ballots in the batch.
+         */
+        protected final long ballots;
+
+        /**
+         * Constructs a Batch.
+         *
+         * @param voteCounts the votes of each votable entity, owned by the batch.
+         * @param ballots    the number of ballots.
+         */
+        protected Batch(int[] voteCounts, long ballots) {
+            this.voteCounts = voteCounts;
+            this.ballots = ballots;
+        }
+    }
+
+    /**
+     * An immutable seat projection, consistent with the ballots counted up to one update.
+     */
+    public static class Snapshot {
+        /**
+         * The names of the parties, shared with the projection and never modified.
+         */
+        protected final String[] partyNames;
+
+        /**
+         * The names of each party's candidates, shared with the projection and never modified.
+         */
+        protected final String[][] candidateNames;
+
+        /**
+         * The number of updates that published a snapshot before this one.
+         */
+        protected final long version;
+
+        /**
+         * The ballots counted.
+         */
+        protected final long ballots;
+
+        /**
+         * The quota, or 0 if no ballots were counted.
+         */
+        protected final int votesPerSeat;
+
+        /**
+         * The votes of each party.
+         */
+        protected final int[] partyVotes;
+
+        /**
+         * The first allocation of each party.
+         */
+        protected final int[] first;
+
+        /**
+         * The votes of each party remaining after its first allocation.
+         */
+        protected final int[] remainders;
+
+        /**
+         * The second allocation of each party.
+         */
+        protected final int[] second;
+
+        /**
+         * The projected seats of each party.
+         */
+        protected final int[] seats;
+
+        /**
+         * The list positions of each party's seated candidates.
+         */
+        protected final int[][] seated;
+
+        /**
+         * The number of seats that went to parties tied with parties left without them.
+         */
+        protected final int tiedSeats;
+
+        /**
+         * The number of parties whose allocation was recomputed by the update.
+         */
+        protected final int recomputedParties;
+
+        /**
+         * Constructs a Snapshot, taking ownership of the arrays.
+         *
+         * @param partyNames        the names of the parties.
+         * @param candidateNames    the names of each party's candidates.
+         * @param version           the number of earlier snapshots.
+         * @param ballots           the ballots counted.
+         * @param votesPerSeat      the quota.
+         * @param partyVotes        the votes of each party.
+         * @param first             the first allocation of each party.
+         * @param remainders        the remaining votes of each party.
+         * @param second            the second allocation of each party.
+         * @param seats             the seats of each party.
+         * @param seated            the list positions of each party's seated candidates.
+         * @param tiedSeats         the number of seats decided by a tie.
+         * @param recomputedParties the number of parties recomputed.
+         */
+        protected Snapshot(String[] partyNames, String[][] candidateNames, long version, long ballots,
+                           int votesPerSeat, int[] partyVotes, int[] first, int[] remainders, int[] second, int[] seats,
+                           int[][] seated, int tiedSeats, int recomputedParties) {
+            this.partyNames = partyNames;
+            this.candidateNames = candidateNames;
+            this.version = version;
+            this.ballots = ballots;
+            this.votesPerSeat = votesPerSeat;
+            this.partyVotes = partyVotes;
+            this.first = first;
+            this.remainders = remainders;
+            this.second = second;
+            this.seats = seats;
+            this.seated = seated;
+            this.tiedSeats = tiedSeats;
+            this.recomputedParties = recomputedParties;
+        }
+
+        /**
+         * Gets the number of snapshots published before this one.
+         *
+         * @return the version.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Gets the number of ballots counted.
+         *
+         * @return the ballots.
+         */
+        public long getBallotCount() {
+            return ballots;
+        }
+
+        /**
+         * Gets the quota of the ballots counted.
+         *
+         * @return the votes per seat, or 0 if no ballots were counted.
+         */
+        public int getVotesPerSeat() {
+            return votesPerSeat;
+        }
+
+        /**
+         * Gets the votes of each party.
+         *
+         * @return a copy of the votes, in party number order.
+         */
+        public int[] getPartyVotes() {
+            return partyVotes.clone();
+        }
+
+        /**
+         * Gets the projected allocation, laid out like rows 0 to 4 of {@link Election#getAllocationData()}.
+         *
+         * @return a copy of the allocation data.
+         */
+        public int[][] getAllocationData() {
+            return new int[][]{partyVotes.clone(), first.clone(), remainders.clone(), second.clone(), seats.clone()};
+        }
+
+        /**
+         * Gets the projected seats of each party.
+         *
+         * @return a copy of the seats, in party number order.
+         */
+        public int[] getSeats() {
+            return seats.clone();
+        }
+
+        /**
+         * Gets the candidates of a party who would win its seats.
+         *
+         * @param party the party number.
+         * @return the names of the seated candidates, in list order.
+         */
+        public String[] getSeatedCandidates(int party) {
+            String[] seatedNames = new String[seated[party].length];
+            for (int i = 0; i < seatedNames.length; i++) {
+                seatedNames[i] = candidateNames[party][seated[party][i]];
+            }
+            return seatedNames;
+        }
+
+        /**
+         * Gets the number of projected seats that went to parties tied with parties left without them, which the
+         * election's tiebreak may give differently.
+         *
+         * @return the tied seats.
+         */
+        public int getTiedSeats() {
+            return tiedSeats;
+        }
+
+        /**
+         * Gets the number of parties whose allocation the update recomputed.
+         *
+         * @return the number of parties.
+         */
+        public int getRecomputedParties() {
+            return recomputedParties;
+        }
+
+        /**
+         * Produces a readable table of the projection.
+         *
+         * @return the projection as a displayable String.
+         */
+        public String generateReport() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Live Projection ").append(version).append(":\n");
+            builder.append(" - Ballots Counted : ").append(ballots).append("\n");
+            builder.append(" - Votes Per Seat  : ").append(votesPerSeat).append("\n");
+            if (tiedSeats > 0) {
+                builder.append(" - Tied Seats      : ").append(tiedSeats).append("\n");
+            }
+
+            final String headerFormat = " | %-15s | %10s | %10s | %s\n " + "-".repeat(60) + "\n";
+            final String rowFormat = " | %-15s | %,10d | %,10d | %s\n";
+            builder.append(String.format(headerFormat, "Parties", "Votes", "Seats", "Seated Candidates"));
+            for (int i = 0; i < seats.length; i++) {
+                builder.append(String.format(rowFormat, partyNames[i], partyVotes[i], seats[i],
+                        String.join(", ", getSeatedCandidates(i))));
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -27,10 +27,18 @@ public class OPLElection extends Election {
     protected Map<Integer, Integer[]> ballotTo2DIndex;
 
     /**
-     * Processes the header data from a file.
+     * The candidates of each party ranked by votes, kept up to date as votes are recorded, or {@code null} if the
+     * candidates were not set up from a header.
+     */
+    protected CandidateRanking candidateRanking;
+
+    /**
+     * Processes the header data from a file. If the election was already set up by an earlier file, the header
+     * must list the same seat count and candidates in the same order.
      *
      * @param fin the file input wrapper, where the next line available is the 2nd line of the original file.
      * @return the ballot count in the current file.
+     * @throws RuntimeException if the header does not match the election set up by an earlier file.
      */
     protected int processHeaderData(FileInput fin) {
         // consume the first 3 lines
@@ -38,10 +46,18 @@ public class OPLElection extends Election {
         int currentBallots = Integer.parseInt(fin.getLine());
         int candidateCount = Integer.parseInt(fin.getLine());
 
-        // if we already set up our data structures, just consume the candidate lines, record the ballotCount and return
+        // if we already set up our data structures, check the candidate lines, record the ballotCount and return
         if (candidates != null) {
+            if (seatCount != this.seatCount || candidateCount != this.candidateCount) {
+                throw headerMismatch(fin);
+            }
             for (int i = 0; i < candidateCount; i++) {
-                fin.getLine();
+                String[] tokens = fin.getLine().split(", ");
+                Integer[] pcIndex = ballotTo2DIndex.get(i);
+                if (tokens.length != 2 || !tokens[0].equals(parties[pcIndex[0]].getName())
+                        || !tokens[1].equals(candidates.get(pcIndex[0]).get(pcIndex[1]).getName())) {
+                    throw headerMismatch(fin);
+                }
             }
             this.ballotCount += currentBallots;
             return currentBallots;
@@ -97,27 +113,74 @@ public class OPLElection extends Election {
             boolean indep = partyName.contains("Independent");
             parties[i] = new Party(indep, partyName);
         }
+        candidateRanking = new CandidateRanking(getListSizes());
 
         return currentBallots;
     }
 
     /**
-     * Processes the ballot data from the specified FileInput object.
+     * Processes the ballot data from the specified FileInput object. Votes are added to those of any earlier file.
      *
      * @param fin the file input wrapper that contains the path to the election data file.
      */
     @Override
     public void processBallotData(FileInput fin) {
         int currentBallots = processHeaderData(fin);
+        beginLiveResults(fin);
         int[] voteCounts = fin.tallyVotes(candidateCount, currentBallots);
         fin.close();
+        recordVotes(voteCounts);
+        recordStatistics(fin.getStatistics());
+        recordMerkleTree(fin.getMerkleTree());
+    }
+
+    /**
+     * Gets the number of votable entities on a ballot.
+     *
+     * @return the number of candidates.
+     */
+    @Override
+    protected int getVotableCount() {
+        return candidateCount;
+    }
+
+    /**
+     * Gets the party of each votable entity on a ballot.
+     *
+     * @return the party number of each candidate, in ballot order.
+     */
+    @Override
+    protected int[] getVotableParties() {
+        int[] votableParties = new int[candidateCount];
+        for (int i = 0; i < candidateCount; i++) {
+            votableParties[i] = ballotTo2DIndex.get(i)[0];
+        }
+        return votableParties;
+    }
 
+    /**
+     * Adds tallied votes to the candidates, moves them up the candidate ranking and recalculates the party votes.
+     *
+     * @param voteCounts the votes per candidate, in ballot order.
+     */
+    @Override
+    protected void recordVotes(int[] voteCounts) {
         // record candidate votes
+        int[][] added = new int[partyCount][];
+        for (int i = 0; i < partyCount; i++) {
+            added[i] = new int[candidates.get(i).size()];
+        }
         for (int i = 0; i < candidateCount; i++) {
             Integer[] pcIndex = ballotTo2DIndex.get(i);
             int pIndex = pcIndex[0];
             int cIndex = pcIndex[1];
-            candidates.get(pIndex).get(cIndex).setVoteCount(voteCounts[i]);
+            candidates.get(pIndex).get(cIndex).addVoteCount(voteCounts[i]);
+            added[pIndex][cIndex] = voteCounts[i];
+        }
+        if (candidateRanking != null) {
+            for (int i = 0; i < partyCount; i++) {
+                candidateRanking.addVotes(i, added[i]);
+            }
         }
 
         // calculate/record party votes
@@ -132,7 +195,8 @@ public class OPLElection extends Election {
     }
 
     /**
-     * Assigns seats to candidates based on the seats a party receives.
+     * Assigns seats to candidates based on the seats a party receives. The winners are read off the candidate
+     * ranking, and the tiebreak picks among the candidates tied with a party's last seat, in list order.
      */
     @Override
     public void assignCandidateSeats() {
@@ -141,36 +205,104 @@ public class OPLElection extends Election {
             int seatNo = allocationData[4][partyNo];
             // if there are seats to allocate
             if (seatNo > 0) {
-                // creates an array to store the relevant per candidates votes for each party
-                int[][] sortedCandidates = new int[candidates.get(partyNo).size()][2];
-                for (int i = 0; i < candidates.get(partyNo).size(); i++) {
-                    sortedCandidates[i][1] = i;
-                    sortedCandidates[i][0] = candidates.get(partyNo).get(i).voteCount;
+                ArrayList<Candidate> partyCandidates = candidates.get(partyNo);
+                CandidateRanking.Cutoff cutoff = getCandidateCutoff(partyNo, seatNo);
+                // candidates with more votes than the last seat win, and those with exactly as many are tied for the
+                // seats left
+                for (int index : cutoff.winners) {
+                    partyCandidates.get(index).giveSeat();
                 }
-                Arrays.sort(sortedCandidates, Comparator.comparingInt(o -> Integer.MAX_VALUE - o[0]));
-                // tieEnd represents the end of the tied region
-                int tieEnd = seatNo - 1;
-                while (tieEnd > -1 && tieEnd + 1 < sortedCandidates.length
-                        && (sortedCandidates[tieEnd][0] == sortedCandidates[tieEnd + 1][0])) {
-                    tieEnd++;
+                // gives seats to the tied candidates chosen by the tiebreak, in list order
+                for (int index : tiebreak(cutoff.tied.length, cutoff.tiedSeats)) {
+                    partyCandidates.get(cutoff.tied[index]).giveSeat();
                 }
-                // tieStart represents the beginning of the tied region
-                int tieStart = seatNo - 1;
-                while (tieStart > 0 && (sortedCandidates[tieStart][0] == sortedCandidates[tieStart - 1][0])) {
-                    tieStart--;
+            }
+        }
+    }
+
+    /**
+     * Finds which candidates of a party would win a number of seats, without seating them or breaking the tie, e.g.
+     * to see what a different allocation would mean.
+     *
+     * @param partyNo the party number.
+     * @param seats   the number of seats, from 0 to the party's list size.
+     * @return the cutoff, with candidates identified by their position in the party's list.
+     * @throws RuntimeException if {@code seats} is out of range.
+     */
+    public CandidateRanking.Cutoff getCandidateCutoff(int partyNo, int seats) throws RuntimeException {
+        if (candidateRanking == null) {
+            candidateRanking = CandidateRanking.of(candidates);
+        }
+        return candidateRanking.cutoff(partyNo, seats);
+    }
+
+    /**
+     * Replaces the mutable state shared with the election this one was cloned from by copies of it. The candidate
+     * ranking is dropped, to be rebuilt from the copied candidates if a cutoff is asked for.
+     */
+    @Override
+    protected void copyState() {
+        super.copyState();
+        candidateRanking = null;
+    }
+
+    /**
+     * Produces the votes that would change which candidates of a party win its seats, for the audit file: for each
+     * party with both seated and unseated candidates, the seated candidates with the fewest votes and how many they
+     * could lose before falling behind, and the unseated candidates with the most votes and how many they would need
+     * to pass them. The party's seats are held unchanged.
+     *
+     * @return the margins as a displayable String.
+     */
+    @Override
+    protected String generateCandidateMargins() {
+        return AuditWriter.capture(this::writeCandidateMargins);
+    }
+
+    /**
+     * Writes the votes that would change which candidates of a party win its seats.
+     *
+     * @param out the writer.
+     * @return {@code true}, since open lists always have margins to report.
+     * @throws RuntimeException if the margins could not be written.
+     */
+    @Override
+    protected boolean writeCandidateMargins(AuditWriter out) throws RuntimeException {
+        out.append("Candidate Margins:\n");
+        out.append(" - Votes a candidate at the edge of its party's seats would need to change places, with the "
+                + "party's seats unchanged\n");
+        for (int partyNo = 0; partyNo < partyCount; partyNo++) {
+            int lowestSeated = Integer.MAX_VALUE;
+            int highestUnseated = Integer.MIN_VALUE;
+            for (Candidate candidate : candidates.get(partyNo)) {
+                if (candidate.isSat()) {
+                    lowestSeated = Math.min(lowestSeated, candidate.voteCount);
+                } else {
+                    highestUnseated = Math.max(highestUnseated, candidate.voteCount);
                 }
-                // gives the tiebreak indices.
-                int[] indices = tiebreak(tieEnd - tieStart + 1, seatNo - tieStart);
-                // gives seats to all candidates with more votes than the tied value
-                for (int i = 0; i < tieStart; i++) {
-                    candidates.get(partyNo).get(sortedCandidates[i][1]).giveSeat();
+            }
+            if (lowestSeated == Integer.MAX_VALUE || highestUnseated == Integer.MIN_VALUE) {
+                continue;
+            }
+            out.append(" - Party: ").append(parties[partyNo].getName()).append('\n');
+            for (Candidate candidate : candidates.get(partyNo)) {
+                if (candidate.isSat() && candidate.voteCount == lowestSeated) {
+                    out.append("   - Last Seated    : ").append(candidate.getName())
+                            .append(", Votes: ").append(candidate.voteCount)
+                            .append(", loses the seat with ").append((long) lowestSeated - highestUnseated + 1)
+                            .append(" fewer\n");
                 }
-                //  gives seats to all candidates that are tied based on the indices that were tiebroken
-                for (int index : indices) {
-                    candidates.get(partyNo).get(sortedCandidates[index + tieStart][1]).giveSeat();
+            }
+            for (Candidate candidate : candidates.get(partyNo)) {
+                if (!candidate.isSat() && candidate.voteCount == highestUnseated) {
+                    out.append("   - First Unseated : ").append(candidate.getName())
+                            .append(", Votes: ").append(candidate.voteCount)
+                            .append(", wins a seat with ").append((long) lowestSeated - highestUnseated + 1)
+                            .append(" more\n");
                 }
             }
         }
+        return true;
     }
 
     /**
@@ -180,25 +312,33 @@ public class OPLElection extends Election {
      */
     @Override
     public String generatePartyCandidateList() {
-        StringBuilder builder = new StringBuilder();
-        builder.append("Parties & Candidates:\n");
+        return AuditWriter.capture(this::writePartyCandidateList);
+    }
+
+    /**
+     * Writes the list of parties and candidates, along with vote counts and proportions, one candidate at a time.
+     *
+     * @param out the writer.
+     * @throws RuntimeException if the list could not be written.
+     */
+    @Override
+    protected void writePartyCandidateList(AuditWriter out) throws RuntimeException {
+        final AuditWriter.RowFormat shareFormat = new AuditWriter.RowFormat("%.2f%%");
+        out.append("Parties & Candidates:\n");
         for (int i = 0; i < parties.length; i++) {
             int partyVotes = parties[i].getVoteCount();
-            builder.append(" - Party: ").append(parties[i].getName())
-                    .append(", Votes: ").append(partyVotes)
-                    .append(" (").append(
-                            String.format("%.2f%%", (double) partyVotes / ballotCount * 100)
-                    ).append(" of total)").append("\n");
+            out.append(" - Party: ").append(parties[i].getName())
+                    .append(", Votes: ").append(partyVotes).append(" (");
+            shareFormat.write(out, (double) partyVotes / ballotCount * 100);
+            out.append(" of total)\n");
             for (Candidate candidate : candidates.get(i)) {
                 int votes = candidate.getVoteCount();
-                builder.append("   - Candidate: ").append(candidate.getName())
-                        .append(", Votes: ").append(votes)
-                        .append(" (").append(
-                                String.format("%.2f%%", (double) votes / ballotCount * 100)
-                        ).append(" of total)").append("\n");
+                out.append("   - Candidate: ").append(candidate.getName())
+                        .append(", Votes: ").append(votes).append(" (");
+                shareFormat.write(out, (double) votes / ballotCount * 100);
+                out.append(" of total)\n");
             }
-            builder.append("\n");
+            out.append('\n');
         }
-        return builder.toString();
     }
 }
@@ -0,0 +1,311 @@
+/*
+PrecinctLoader.java
+
+The PrecinctLoader class builds one election from many precinct files, tallying them concurrently.
+
+*/
+
+package AES;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds a single Election from several precinct files that share the same header. The headers are read and checked
+ * against each other in sequence, then the ballot sections are tallied concurrently on a thread pool and the tallies
+ * are merged. Files are submitted largest first, so a huge precinct starts early instead of holding up the end of the
+ * run, but their statistics and Merkle trees are recorded in the order the files were given.
+ */
+public class PrecinctLoader {
+    /**
+     * The precinct filenames.
+     */
+    protected List<String> filenames;
+
+    /**
+     * The number of threads used to tally the precinct files.
+     */
+    protected int threadCount;
+
+    /**
+     * What happens to spoiled ballots in every file.
+     */
+    protected BallotStatistics.Policy spoilagePolicy;
+
+    /**
+     * The number of ballots between checkpoints of each file's tally, or 0.
+     */
+    protected long checkpointBallots;
+
+    /**
+     * The number of seconds between checkpoints of each file's tally, or 0.
+     */
+    protected long checkpointSeconds;
+
+    /**
+     * The size of the read-ahead buffers of each file's tally, or 0 to not read ahead.
+     */
+    protected int readAheadSize;
+
+    /**
+     * The number of filled read-ahead buffers that may wait for each file's tally.
+     */
+    protected int readAheadDepth;
+
+    /**
+     * The number of ballots between indexed offsets of each file's index, or 0 to not index.
+     */
+    protected int indexStride;
+
+    /**
+     * The chunk size of each file's Merkle tree, in bytes, or 0 to not hash.
+     */
+    protected int merkleChunkSize;
+
+    /**
+     * The live results every file's tally reports to, or {@code null}.
+     */
+    protected LiveResults liveResults;
+
+    /**
+     * Constructs a PrecinctLoader for the given precinct files.
+     *
+     * @param filenames   the precinct filenames; must not be empty.
+     * @param threadCount the number of threads used to tally the files; must be positive.
+     * @throws RuntimeException if there are no files or if {@code threadCount <= 0}.
+     */
+    public PrecinctLoader(List<String> filenames, int threadCount) throws RuntimeException {
+        if (filenames.isEmpty()) {
+            throw new RuntimeException("Error: No precinct files given");
+        }
+        if (threadCount <= 0) {
+            throw new RuntimeException("Error: Thread count must be positive, got " + threadCount);
+        }
+        this.filenames = new ArrayList<>(filenames);
+        this.threadCount = threadCount;
+        this.spoilagePolicy = BallotStatistics.Policy.SKIP;
+        this.checkpointBallots = 0;
+        this.checkpointSeconds = 0;
+        this.readAheadSize = 0;
+        this.readAheadDepth = ReadAheadStream.DEFAULT_QUEUE_DEPTH;
+        this.indexStride = 0;
+        this.merkleChunkSize = 0;
+    }
+
+    /**
+     * Sets what happens to spoiled ballots in every file.
+     *
+     * @param spoilagePolicy the spoilage policy.
+     */
+    public void setSpoilagePolicy(BallotStatistics.Policy spoilagePolicy) {
+        this.spoilagePolicy = spoilagePolicy;
+    }
+
+    /**
+     * Checkpoints the tally of every file; see {@link FileInput#setCheckpointInterval(long, long)}. Each file keeps
+     * its own sidecar, so a rerun resumes every file that was interrupted.
+     *
+     * @param ballots the number of ballots between checkpoints, or 0 to not checkpoint by ballots.
+     * @param seconds the number of seconds between checkpoints, or 0 to not checkpoint by time.
+     */
+    public void setCheckpointInterval(long ballots, long seconds) {
+        this.checkpointBallots = ballots;
+        this.checkpointSeconds = seconds;
+    }
+
+    /**
+     * Reads every file ahead of its tally; see {@link FileInput#setReadAhead(int, int)}.
+     *
+     * @param bufferSize the size of each buffer, in bytes; must be positive.
+     * @param queueDepth the number of filled buffers that may wait for each tally; must be positive.
+     */
+    public void setReadAhead(int bufferSize, int queueDepth) {
+        this.readAheadSize = bufferSize;
+        this.readAheadDepth = queueDepth;
+    }
+
+    /**
+     * Writes a {@link BallotIndex} of every file during its tally; see {@link FileInput#setIndexStride(int)}.
+     *
+     * @param stride the number of ballots between indexed offsets, or 0 to not index.
+     */
+    public void setIndexStride(int stride) {
+        this.indexStride = stride;
+    }
+
+    /**
+     * Hashes every file into a {@link BallotMerkleTree} during its tally; see {@link FileInput#setMerkleChunkSize}.
+     * Each file is hashed on one thread, since the files are already tallied concurrently.
+     *
+     * @param chunkSize the size of the hashed chunks, in bytes, or 0 to not hash.
+     */
+    public void setMerkleChunkSize(int chunkSize) {
+        this.merkleChunkSize = chunkSize;
+    }
+
+    /**
+     * Reports the tally of every file to a seat projection as it goes; see {@link FileInput#setLiveResults}. The
+     * projection is set up once all headers are read, and the files report to it concurrently.
+     *
+     * @param liveResults the live results, or {@code null} to not report.
+     */
+    public void setLiveResults(LiveResults liveResults) {
+        this.liveResults = liveResults;
+    }
+
+    /**
+     * Lists the precinct files in a directory, in name order. Hidden files and subdirectories are skipped.
+     *
+     * @param directory the directory name.
+     * @return the filenames of the regular files in the directory.
+     * @throws RuntimeException if the directory could not be listed.
+     */
+    public static List<String> listDirectory(String directory) throws RuntimeException {
+        File[] files = new File(directory).listFiles(file -> file.isFile() && !file.isHidden());
+        if (files == null) {
+            throw new RuntimeException("Error: Could not list directory \"" + directory + "\"");
+        }
+        Arrays.sort(files);
+        List<String> filenames = new ArrayList<>(files.length);
+        for (File file : files) {
+            filenames.add(file.getPath());
+        }
+        return filenames;
+    }
+
+    /**
+     * Gets the precinct filenames.
+     *
+     * @return a copy of the filenames.
+     */
+    public List<String> getFilenames() {
+        return new ArrayList<>(filenames);
+    }
+
+    /**
+     * Reads every precinct file into one election.
+     *
+     * @return the election with the merged ballot data of all files.
+     * @throws RuntimeException if a file could not be read, or if the files do not describe the same election.
+     */
+    public Election load() throws RuntimeException {
+        // read and check the headers in sequence; the first file sets up the election
+        Election election = null;
+        boolean isOPL = false;
+        int[] ballotCounts = new int[filenames.size()];
+        for (int i = 0; i < filenames.size(); i++) {
+            // the tally reopens each file, so only one reader is open at a time here
+            FileInput fin = new FileInput(filenames.get(i));
+            try {
+                if (election == null) {
+                    isOPL = fin.isOPL();
+                    election = isOPL ? new OPLElection() : new CPLElection();
+                } else if (fin.isOPL() != isOPL) {
+                    throw election.headerMismatch(fin);
+                }
+                ballotCounts[i] = election.processHeaderData(fin);
+            } finally {
+                fin.close();
+            }
+        }
+
+        if (liveResults != null) {
+            liveResults.begin(election);
+        }
+        BallotStatistics[] statistics = new BallotStatistics[filenames.size()];
+        BallotMerkleTree[] trees = new BallotMerkleTree[filenames.size()];
+        election.recordVotes(tallyAll(ballotCounts, election.getVotableCount(), statistics, trees));
+        for (BallotStatistics fileStatistics : statistics) {
+            election.recordStatistics(fileStatistics);
+        }
+        for (BallotMerkleTree tree : trees) {
+            election.recordMerkleTree(tree);
+        }
+        return election;
+    }
+
+    /**
+     * Tallies the ballot sections of all files on the thread pool and merges the tallies. The tallies are scheduled
+     * largest file first, so a large file does not start last and hold up the rest. Each task reopens its file and
+     * skips the header, which is the type line, 3 count lines and one line per votable entity.
+     *
+     * @param ballotCounts the number of ballots in each file, in the order of the filenames.
+     * @param votableCount the number of votable entities on the ballot.
+     * @param statistics   receives the validation statistics of each file, in the order of the filenames.
+     * @param trees        receives the Merkle tree of each file, if hashed, in the order of the filenames.
+     * @return an int array of the merged vote counts.
+     * @throws RuntimeException if a file could not be tallied.
+     */
+    protected int[] tallyAll(int[] ballotCounts, int votableCount, BallotStatistics[] statistics,
+                             BallotMerkleTree[] trees) throws RuntimeException {
+        List<Integer> schedule = new ArrayList<>(filenames.size());
+        for (int i = 0; i < filenames.size(); i++) {
+            schedule.add(i);
+        }
+        schedule.sort(Comparator.comparingLong((Integer i) -> new File(filenames.get(i)).length()).reversed());
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threadCount, filenames.size()));
+        try {
+            List<Future<int[]>> futures = new ArrayList<>(filenames.size());
+            for (int index : schedule) {
+                final String filename = filenames.get(index);
+                final int ballotCount = ballotCounts[index];
+                futures.add(pool.submit(() -> {
+                    FileInput fin = new FileInput(filename);
+                    try {
+                        fin.setSpoilagePolicy(spoilagePolicy);
+                        if (checkpointBallots > 0 || checkpointSeconds > 0) {
+                            fin.setCheckpointInterval(checkpointBallots, checkpointSeconds);
+                        }
+                        if (readAheadSize > 0) {
+                            fin.setReadAhead(readAheadSize, readAheadDepth);
+                        }
+                        if (indexStride > 0) {
+                            fin.setIndexStride(indexStride);
+                        }
+                        if (merkleChunkSize > 0) {
+                            fin.setMerkleChunkSize(merkleChunkSize);
+                        }
+                        fin.setLiveResults(liveResults);
+                        for (int line = 0; line < 4 + votableCount; line++) {
+                            fin.getLine();
+                        }
+                        int[] votes = fin.tallyVotes(votableCount, ballotCount);
+                        // published to the caller by Future.get()
+                        statistics[index] = fin.getStatistics();
+                        trees[index] = fin.getMerkleTree();
+                        return votes;
+                    } finally {
+                        fin.close();
+                    }
+                }));
+            }
+
+            int[] votes = new int[votableCount];
+            for (Future<int[]> future : futures) {
+                int[] partial = future.get();
+                for (int i = 0; i < votableCount; i++) {
+                    votes[i] += partial[i];
+                }
+            }
+            return votes;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Error: Could not tally precinct files: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Error: Interrupted while tallying precinct files");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ReadAheadStream.java
+
+The ReadAheadStream class reads a channel on a background thread so that reading and tallying overlap.
+
+*/
+
+package AES;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a channel ahead of its consumer. A background thread fills buffers from the source channel and hands them to
+ * the consumer through a bounded queue, so the work behind the channel (e.g. decompression) runs while the consumer
+ * processes the previous buffer. Buffers are recycled, so nothing is allocated after construction.
+ * <p>
+ * Buffers can be consumed directly through {@link #next()} and {@link #release(ByteBuffer)}, or through the
+ * {@link InputStream} methods, which copy out of them. Buffers may be direct, so a {@code FileChannel} source reads
+ * into them without an intermediate copy.
+ * <p>
+ * Both sides count the time they spend stalled: the consumer waiting for a filled buffer means the source is the
+ * bottleneck, and the background thread waiting for a free buffer (or for room in the queue) means the consumer is.
+ */
+public class ReadAheadStream extends InputStream {
+    /**
+     * The default size of each buffer, in bytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The default number of filled buffers that may wait for the consumer.
+     */
+    public static final int DEFAULT_QUEUE_DEPTH = 4;
+
+    /**
+     * Marks the end of the source in the queue of filled buffers.
+     */
+    protected static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * The channel being read ahead.
+     */
+    protected final ReadableByteChannel source;
+
+    /**
+     * The name of the source, for messages.
+     */
+    protected final String name;
+
+    /**
+     * Filled buffers waiting for the consumer, ending with {@code END}.
+     */
+    protected final BlockingQueue<ByteBuffer> filled;
+
+    /**
+     * Buffers released by the consumer, waiting to be filled.
+     */
+    protected final BlockingQueue<ByteBuffer> free;
+
+    /**
+     * The background thread filling buffers.
+     */
+    protected final Thread reader;
+
+    /**
+     * The buffer the InputStream methods are copying out of, or {@code null}.
+     */
+    protected ByteBuffer current;
+
+    /**
+     * Whether the consumer has seen the end of the source.
+     */
+    protected boolean ended;
+
+    /**
+     * The exception that stopped the background thread, or {@code null}.
+     */
+    protected volatile IOException failure;
+
+    /**
+     * The number of times the consumer waited for a filled buffer.
+     */
+    protected long consumerStalls;
+
+    /**
+     * The total time the consumer waited for filled buffers, in nanoseconds.
+     */
+    protected long consumerStallNanos;
+
+    /**
+     * The number of times the background thread waited for a free buffer or for room in the queue.
+     */
+    protected volatile long producerStalls;
+
+    /**
+     * The total time the background thread waited for free buffers or for room in the queue, in nanoseconds.
+     */
+    protected volatile long producerStallNanos;
+
+    /**
+     * The number of buffers filled by the background thread.
+     */
+    protected volatile long buffersFilled;
+
+    /**
+     * Constructs a ReadAheadStream with the default buffer size and queue depth, and starts reading.
+     *
+     * @param source the channel to read.
+     * @param name   the name of the source, for messages.
+     */
+    public ReadAheadStream(ReadableByteChannel source, String name) {
+        this(source, name, DEFAULT_BUFFER_SIZE, DEFAULT_QUEUE_DEPTH);
+    }
+
+    /**
+     * Constructs a ReadAheadStream and starts reading.
+     *
+     * @param source     the channel to read.
+     * @param name       the name of the source, for messages.
+     * @param bufferSize the size of each buffer, in bytes; must be positive.
+     * @param queueDepth the number of filled buffers that may wait for the consumer; must be positive.
+     * @throws RuntimeException if {@code bufferSize} or {@code queueDepth} is not positive.
+     */
+    public ReadAheadStream(ReadableByteChannel source, String name, int bufferSize, int queueDepth)
+            throws RuntimeException {
+        this(source, name, bufferSize, queueDepth, false);
+    }
+
+    /**
+     * Constructs a ReadAheadStream and starts reading.
+     *
+     * @param source     the channel to read.
+     * @param name       the name of the source, for messages.
+     * @param bufferSize the size of each buffer, in bytes; must be positive.
+     * @param queueDepth the number of filled buffers that may wait for the consumer; must be positive.
+     * @param direct     whether to allocate direct buffers instead of heap buffers.
+     * @throws RuntimeException if {@code bufferSize} or {@code queueDepth} is not positive.
+     */
+    public ReadAheadStream(ReadableByteChannel source, String name, int bufferSize, int queueDepth, boolean direct)
+            throws RuntimeException {
+        if (bufferSize <= 0 || queueDepth <= 0) {
+            throw new RuntimeException("Error: Read-ahead needs a positive buffer size and queue depth, got "
+                    + bufferSize + " and " + queueDepth);
+        }
+        this.source = source;
+        this.name = name;
+        this.filled = new ArrayBlockingQueue<>(queueDepth + 1);
+        // one buffer being filled, queueDepth waiting, one being consumed
+        this.free = new ArrayBlockingQueue<>(queueDepth + 2);
+        for (int i = 0; i < queueDepth + 2; i++) {
+            free.add(direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize));
+        }
+        this.current = null;
+        this.ended = false;
+        this.failure = null;
+        this.consumerStalls = 0;
+        this.consumerStallNanos = 0;
+        this.producerStalls = 0;
+        this.producerStallNanos = 0;
+        this.buffersFilled = 0;
+        this.reader = new Thread(this::readAhead, "read-ahead " + name);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Fills free buffers from the source until its end, then queues {@code END}.
+     */
+    protected void readAhead() {
+        try {
+            boolean atEnd = false;
+            while (!atEnd) {
+                ByteBuffer buffer = free.poll();
+                if (buffer == null) {
+                    long stalled = System.nanoTime();
+                    buffer = free.take();
+                    producerStalled(stalled);
+                }
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer) < 0) {
+                        atEnd = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+                if (buffer.hasRemaining()) {
+                    buffersFilled++;
+                    if (!filled.offer(buffer)) {
+                        long stalled = System.nanoTime();
+                        filled.put(buffer);
+                        producerStalled(stalled);
+                    }
+                } else {
+                    free.put(buffer);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            // closed by the consumer
+            return;
+        }
+        try {
+            filled.put(END);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * Counts a stall of the background thread.
+     *
+     * @param stalled the value of {@link System#nanoTime()} when the stall began.
+     */
+    protected void producerStalled(long stalled) {
+        producerStallNanos += System.nanoTime() - stalled;
+        producerStalls++;
+    }
+
+    /**
+     * Takes the next filled buffer, waiting for the background thread if necessary. The buffer's position and limit
+     * span its data. It must be handed back through {@link #release(ByteBuffer)} once consumed.
+     *
+     * @return the next buffer, or {@code null} at the end of the source.
+     * @throws RuntimeException if the source could not be read.
+     */
+    public ByteBuffer next() throws RuntimeException {
+        if (ended) {
+            return null;
+        }
+        ByteBuffer buffer = filled.poll();
+        try {
+            if (buffer == null) {
+                long stalled = System.nanoTime();
+                buffer = filled.take();
+                consumerStallNanos += System.nanoTime() - stalled;
+                consumerStalls++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Error: Interrupted while reading \"" + name + "\"");
+        }
+        if (buffer == END) {
+            ended = true;
+            if (failure != null) {
+                throw new RuntimeException("Error: Could not read \"" + name + "\": " + failure.getMessage());
+            }
+            return null;
+        }
+        return buffer;
+    }
+
+    /**
+     * Hands a consumed buffer back to the background thread.
+     *
+     * @param buffer a buffer returned by {@link #next()}.
+     */
+    public void release(ByteBuffer buffer) {
+        free.offer(buffer);
+    }
+
+    /**
+     * Gets the number of times the consumer waited for a filled buffer.
+     *
+     * @return the number of consumer stalls.
+     */
+    public long getConsumerStalls() {
+        return consumerStalls;
+    }
+
+    /**
+     * Gets the total time the consumer waited for filled buffers, i.e. the time the source held the consumer up.
+     *
+     * @return the consumer stall time in nanoseconds.
+     */
+    public long getConsumerStallNanos() {
+        return consumerStallNanos;
+    }
+
+    /**
+     * Gets the number of times the background thread waited for a free buffer or for room in the queue.
+     *
+     * @return the number of producer stalls.
+     */
+    public long getProducerStalls() {
+        return producerStalls;
+    }
+
+    /**
+     * Gets the total time the background thread waited for free buffers or for room in the queue, i.e. the time the
+     * consumer held the source up.
+     *
+     * @return the producer stall time in nanoseconds.
+     */
+    public long getProducerStallNanos() {
+        return producerStallNanos;
+    }
+
+    /**
+     * Gets the number of buffers filled from the source.
+     *
+     * @return the number of buffers filled.
+     */
+    public long getBuffersFilled() {
+        return buffersFilled;
+    }
+
+    /**
+     * Produces a summary of the stall counters for display.
+     *
+     * @return the summary as a displayable String.
+     */
+    public String generateStallReport() {
+        return "Read-Ahead of " + name + ":\n" +
+                " - Buffers Filled  : " + buffersFilled + "\n" +
+                " - Tally Stalls    : " + consumerStalls + " (" + consumerStallNanos / 1_000_000 + " ms)\n" +
+                " - Reader Stalls   : " + producerStalls + " (" + producerStallNanos / 1_000_000 + " ms)\n";
+    }
+
+    /**
+     * Reads one byte.
+     *
+     * @return the byte, or -1 at the end of the source.
+     * @throws IOException if the source could not be read.
+     */
+    @Override
+    public int read() throws IOException {
+        return advance() ? current.get() & 0xff : -1;
+    }
+
+    /**
+     * Reads up to {@code len} bytes into {@code b}, copying out of the current buffer.
+     *
+     * @param b   the destination.
+     * @param off the offset in {@code b} to start at.
+     * @param len the maximum number of bytes to read.
+     * @return the number of bytes read, or -1 at the end of the source.
+     * @throws IOException if the source could not be read.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!advance()) {
+            return -1;
+        }
+        int count = Math.min(len, current.remaining());
+        current.get(b, off, count);
+        return count;
+    }
+
+    /**
+     * Makes {@code current} a buffer with unread bytes, releasing the old one.
+     *
+     * @return false at the end of the source, true otherwise.
+     * @throws IOException if the source could not be read.
+     */
+    protected boolean advance() throws IOException {
+        while (current == null || !current.hasRemaining()) {
+            if (current != null) {
+                release(current);
+                current = null;
+            }
+            try {
+                current = next();
+            } catch (RuntimeException e) {
+                throw new IOException(e.getMessage(), failure);
+            }
+            if (current == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the background thread and closes the source.
+     *
+     * @throws IOException if the source could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        source.close();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+SeatSensitivity.java
+
+The SeatSensitivity class holds how many votes each party would need to gain or lose a seat.
+
+*/
+
+package AES;
+
+/**
+ * The seat margins of an election: for every party, the fewest votes it would need to gain a seat, and the fewest
+ * it could lose before losing one, with the votes of every other party unchanged. The votes a party gains or loses
+ * are ballots added or removed, so a quota worked out from the ballot count moves with them. A margin changes the
+ * outcome for certain, so a party that would only tie for a seat needs one vote more. Margins are computed by the
+ * {@link ApportionmentMethod} from the allocation data, without running the allocation again.
+ */
+public class SeatSensitivity {
+    /**
+     * The margin of a party that cannot gain or lose a seat by its own votes, e.g. one whose candidates all have
+     * seats.
+     */
+    public static final long NONE = -1;
+
+    /**
+     * The fewest added votes that gain each party a seat, or {@link #NONE}; {@code null} if not available.
+     */
+    protected final long[] votesToGain;
+
+    /**
+     * The fewest removed votes that lose each party a seat, or {@link #NONE}; {@code null} if not available.
+     */
+    protected final long[] votesToLose;
+
+    /**
+     * The assumption behind the margins, or why they are not available.
+     */
+    protected final String note;
+
+    /**
+     * Constructs a SeatSensitivity.
+     *
+     * @param votesToGain the fewest added votes that gain each party a seat.
+     * @param votesToLose the fewest removed votes that lose each party a seat.
+     * @param note        the assumption behind the margins, or {@code null} if there is none to state.
+     */
+    public SeatSensitivity(long[] votesToGain, long[] votesToLose, String note) {
+        this.votesToGain = votesToGain;
+        this.votesToLose = votesToLose;
+        this.note = note;
+    }
+
+    /**
+     * Constructs a SeatSensitivity for an election whose margins cannot be computed.
+     *
+     * @param reason why the margins are not available.
+     * @return the SeatSensitivity.
+     */
+    public static SeatSensitivity unavailable(String reason) {
+        return new SeatSensitivity(null, null, reason);
+    }
+
+    /**
+     * Checks whether the margins were computed.
+     *
+     * @return {@code true} if the margins are available.
+     */
+    public boolean isAvailable() {
+        return votesToGain != null;
+    }
+
+    /**
+     * Gets the fewest added votes that gain a party a seat.
+     *
+     * @param party the party number.
+     * @return the votes, or {@link #NONE} if the party cannot gain a seat.
+     */
+    public long getVotesToGain(int party) {
+        return votesToGain[party];
+    }
+
+    /**
+     * Gets the fewest removed votes that lose a party a seat.
+     *
+     * @param party the party number.
+     * @return the votes, or {@link #NONE} if the party cannot lose a seat.
+     */
+    public long getVotesToLose(int party) {
+        return votesToLose[party];
+    }
+
+    /**
+     * Gets the assumption behind the margins, or why they are not available.
+     *
+     * @return the note, or {@code null}.
+     */
+    public String getNote() {
+        return note;
+    }
+
+    /**
+     * Produces a readable table of the margins.
+     *
+     * @param parties        the parties, in party number order.
+     * @param allocationData the allocation data the margins were computed from.
+     * @return the table as a displayable String.
+     */
+    public String generateReport(Party[] parties, int[][] allocationData) {
+        return AuditWriter.capture(out -> writeReport(out, parties, allocationData));
+    }
+
+    /**
+     * Writes a readable table of the margins.
+     *
+     * @param out            the writer.
+     * @param parties        the parties, in party number order.
+     * @param allocationData the allocation data the margins were computed from.
+     * @throws RuntimeException if the table could not be written.
+     */
+    public void writeReport(AuditWriter out, Party[] parties, int[][] allocationData) throws RuntimeException {
+        out.append("Seat Sensitivity:\n");
+        if (!isAvailable()) {
+            out.append(" - Not available: ").append(note).append('\n');
+            return;
+        }
+        out.append(" - Votes a party would need to gain or lose a seat, with the votes of every other party "
+                + "unchanged\n");
+        if (note != null) {
+            out.append(" - ").append(note).append('\n');
+        }
+
+        final String headerFormat = " | %-15s | %10s | %20s | %20s |\n " + "-".repeat(78) + "\n";
+        final AuditWriter.RowFormat rowFormat = new AuditWriter.RowFormat(" | %-15s | %,10d | %20s | %20s |\n");
+        out.append(String.format(headerFormat, "Parties", "Seats", "Votes to Gain a Seat", "Votes to Lose a Seat"));
+        for (int i = 0; i < parties.length; i++) {
+            rowFormat.write(out, parties[i].getName(), allocationData[4][i],
+                    format(votesToGain[i]), format(votesToLose[i]));
+        }
+    }
+
+    /**
+     * Formats a margin for the table.
+     *
+     * @param votes the margin.
+     * @return the margin with grouping separators, or {@code "-"} for {@link #NONE}.
+     */
+    protected static String format(long votes) {
+        return votes == NONE ? "-" : String.format("%,d", votes);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+StreamInput.java
+
+The StreamInput class reads ballot data from standard input, a pipe, or any other InputStream.
+
+*/
+
+package AES;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads ballot data from an {@link InputStream} instead of a named file, so ballots can be piped in from another
+ * process without being stored first. The header lines are read through {@link #getLine()} as with a FileInput; the
+ * ballots are then tallied as they arrive, through one fixed-size buffer, so memory use does not grow with the number
+ * of ballots.
+ */
+public class StreamInput extends FileInput {
+    /**
+     * The size of the read buffer, in bytes.
+     */
+    protected static final int READ_SIZE = 1 << 16;
+
+    /**
+     * The stream the ballot data is read from.
+     */
+    protected InputStream stream;
+
+    /**
+     * The read buffer, shared by header lines and ballots.
+     */
+    protected byte[] readBuffer;
+
+    /**
+     * The index of the next unconsumed byte in {@code readBuffer}.
+     */
+    protected int readPosition;
+
+    /**
+     * The index after the last valid byte in {@code readBuffer}.
+     */
+    protected int readLimit;
+
+    /**
+     * Whether the last line read ended with a {@code '\r'}, in which case a following {@code '\n'} is skipped.
+     */
+    protected boolean pendingLineFeed;
+
+    /**
+     * Constructs a StreamInput that reads from {@code stream}.
+     *
+     * @param stream the stream to read from.
+     * @param name   the name of the stream, for messages.
+     */
+    public StreamInput(InputStream stream, String name) {
+        super(name, null);
+        this.stream = stream;
+        this.readBuffer = new byte[READ_SIZE];
+        this.readPosition = 0;
+        this.readLimit = 0;
+        this.pendingLineFeed = false;
+    }
+
+    /**
+     * Constructs a StreamInput that reads from {@code stream}.
+     *
+     * @param stream the stream to read from.
+     */
+    public StreamInput(InputStream stream) {
+        this(stream, "<stream>");
+    }
+
+    /**
+     * Refills the read buffer if all of it has been consumed.
+     *
+     * @return false if the end of the stream was reached, true otherwise.
+     * @throws RuntimeException if the stream could not be read.
+     */
+    protected boolean fill() throws RuntimeException {
+        while (readPosition >= readLimit) {
+            try {
+                int read = stream.read(readBuffer, 0, readBuffer.length);
+                if (read < 0) {
+                    return false;
+                }
+                readPosition = 0;
+                readLimit = read;
+            } catch (IOException e) {
+                throw new RuntimeException("Error: Could not read \"" + filename + "\"");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips the {@code '\n'} of a {@code "\r\n"} pair whose {@code '\r'} ended the last line.
+     */
+    protected void skipPendingLineFeed() {
+        if (pendingLineFeed && fill() && readBuffer[readPosition] == '\n') {
+            readPosition++;
+        }
+        pendingLineFeed = false;
+    }
+
+    /**
+     * Consumes and returns the next line from the stream.
+     *
+     * @return the line read from the stream, or {@code null} at the end of the stream.
+     * @throws RuntimeException if the stream could not be read.
+     */
+    @Override
+    public String getLine() throws RuntimeException {
+        skipPendingLineFeed();
+        if (!fill()) {
+            return null;
+        }
+
+        // collect the line; it usually lies within the buffer, otherwise it is copied piece by piece
+        byte[] line = null;
+        int length = 0;
+        while (fill()) {
+            int start = readPosition;
+            int end = start;
+            while (end < readLimit && readBuffer[end] != '\n' && readBuffer[end] != '\r') {
+                end++;
+            }
+            int count = end - start;
+            if (line == null || length + count > line.length) {
+                byte[] grown = new byte[Math.max(length + count, length * 2) + 16];
+                if (line != null) {
+                    System.arraycopy(line, 0, grown, 0, length);
+                }
+                line = grown;
+            }
+            System.arraycopy(readBuffer, start, line, length, count);
+            length += count;
+            readPosition = end;
+            if (end < readLimit) {
+                pendingLineFeed = readBuffer[end] == '\r';
+                readPosition++;
+                break;
+            }
+        }
+        linesRead++;
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tallies {@code ballotCount} ballots as they arrive on the stream. The next unconsumed line must be the first
+     * ballot to tally. The rest of the stream is then read to count any lines after the declared ballots. Live
+     * results, if set, get the progress after every read.
+     *
+     * @param votableCount the number of votable entities on the ballot
+     * @param ballotCount the number of ballots to tally
+     * @return an int array of all the vote counts
+     * @throws RuntimeException if the stream could not be read.
+     */
+    @Override
+    public int[] tallyVotes(int votableCount, int ballotCount) throws RuntimeException {
+        BallotScanner scanner = new BallotScanner(votableCount, ballotCount, spoilagePolicy);
+        ByteBuffer wrapped = ByteBuffer.wrap(readBuffer);
+        skipPendingLineFeed();
+        while (!scanner.isDone() && fill()) {
+            readPosition = scanner.scan(wrapped, readPosition, readLimit);
+            reportLive(scanner.getVotes(), scanner.getBallotsScanned());
+        }
+        scanner.finish();
+        reportLive(scanner.getVotes(), scanner.getBallotsScanned());
+
+        // drain and count any lines after the declared ballots
+        BallotScanner trailing = new BallotScanner(votableCount, Long.MAX_VALUE);
+        while (fill()) {
+            readPosition = trailing.scan(wrapped, readPosition, readLimit);
+        }
+        trailing.finish();
+        statistics = scanner.getStatistics(filename, ballotCount, trailing.getNonBlankLines());
+        return scanner.getVotes();
+    }
+
+    /**
+     * Closes the stream.
+     *
+     * @throws RuntimeException if the stream could not be closed.
+     */
+    @Override
+    public void close() {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Error: Could not close \"" + filename + "\"");
+        }
+    }
+
+    /**
+     * Checks whether this input is an uncompressed CSV file. Streams are not, so they cannot be checkpointed or
+     * indexed.
+     *
+     * @return false.
+     */
+    @Override
+    protected boolean isPlainFile() {
+        return false;
+    }
+}
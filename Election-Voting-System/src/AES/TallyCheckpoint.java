@@ -0,0 +1,264 @@
+/*
+TallyCheckpoint.java
+
+The TallyCheckpoint class saves the progress of a tally to a sidecar file so an interrupted tally can resume.
+
+*/
+
+package AES;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Periodically saves the progress of a sequential tally to a sidecar file next to the ballot file, named after it
+ * with {@link #SUFFIX} appended. A checkpoint holds the complete {@link BallotScanner} state (the partial tally,
+ * validation counts and any partial line), the byte offset the scan reached, and a CRC-32C of every byte of the file
+ * before that offset.
+ * <p>
+ * When a tally starts and a checkpoint exists, the prefix of the ballot file is hashed again and compared. If the
+ * hashes match the tally continues from the offset; otherwise (the file changed, or the checkpoint belongs to a
+ * tally with other settings) the checkpoint is ignored and the tally starts over. Hashing runs far faster than
+ * tallying, so verifying a prefix costs a fraction of re-tallying it.
+ * <p>
+ * Checkpoints are written every {@code ballotInterval} ballots or every {@code secondsInterval} seconds, whichever
+ * comes first; progress is checked once per {@link #SLICE} bytes, or once per buffer when the tally reads ahead.
+ * A checkpoint is written to a temporary file and then moved over the old one, so a crash while writing leaves the
+ * previous checkpoint intact. The sidecar is deleted once all declared ballots have been tallied.
+ */
+public class TallyCheckpoint {
+    /**
+     * The suffix appended to the ballot filename to name the sidecar file.
+     */
+    public static final String SUFFIX = ".checkpoint";
+
+    /**
+     * The number of bytes scanned between progress checks.
+     */
+    public static final int SLICE = 1 << 22;
+
+    /**
+     * The leading bytes of a checkpoint file.
+     */
+    protected static final int MAGIC = 0x41455343;
+
+    /**
+     * The current checkpoint format version.
+     */
+    protected static final int VERSION = 1;
+
+    /**
+     * The sidecar file.
+     */
+    protected final Path path;
+
+    /**
+     * The number of ballots between checkpoints, or 0 to not checkpoint by ballots.
+     */
+    protected final long ballotInterval;
+
+    /**
+     * The time between checkpoints in nanoseconds, or 0 to not checkpoint by time.
+     */
+    protected final long nanoInterval;
+
+    /**
+     * The running hash of the bytes of the ballot file before the scan position.
+     */
+    protected final CRC32C hash;
+
+    /**
+     * The number of ballots scanned when the last checkpoint was written.
+     */
+    protected long lastBallots;
+
+    /**
+     * The value of {@link System#nanoTime()} when the last checkpoint was written.
+     */
+    protected long lastTime;
+
+    /**
+     * The offset the tally resumed from, or 0 if it started over.
+     */
+    protected long resumedOffset;
+
+    /**
+     * The number of checkpoints written.
+     */
+    protected int written;
+
+    /**
+     * Constructs a TallyCheckpoint for a ballot file.
+     *
+     * @param ballotFilename  the ballot file.
+     * @param ballotInterval  the number of ballots between checkpoints, or 0 to not checkpoint by ballots.
+     * @param secondsInterval the number of seconds between checkpoints, or 0 to not checkpoint by time.
+     * @throws RuntimeException if an interval is negative or both are 0.
+     */
+    public TallyCheckpoint(String ballotFilename, long ballotInterval, long secondsInterval) throws RuntimeException {
+        if (ballotInterval < 0 || secondsInterval < 0 || ballotInterval == 0 && secondsInterval == 0) {
+            throw new RuntimeException("Error: Checkpoint interval must be positive, got " + ballotInterval
+                    + " ballots and " + secondsInterval + " seconds");
+        }
+        this.path = Path.of(ballotFilename + SUFFIX);
+        this.ballotInterval = ballotInterval;
+        this.nanoInterval = secondsInterval * 1_000_000_000L;
+        this.hash = new CRC32C();
+        this.lastBallots = 0;
+        this.lastTime = System.nanoTime();
+        this.resumedOffset = 0;
+        this.written = 0;
+    }
+
+    /**
+     * Gets the sidecar filename.
+     *
+     * @return the name of the checkpoint file.
+     */
+    public String getFilename() {
+        return path.toString();
+    }
+
+    /**
+     * Gets the offset the last tally resumed from.
+     *
+     * @return the byte offset in the ballot file, or 0 if the tally did not resume from a checkpoint.
+     */
+    public long getResumedOffset() {
+        return resumedOffset;
+    }
+
+    /**
+     * Gets the number of checkpoints written by the last tally.
+     *
+     * @return the number of checkpoints written.
+     */
+    public int getWritten() {
+        return written;
+    }
+
+    /**
+     * Prepares a tally: restores {@code scanner} from the sidecar if it holds a checkpoint of this file with the same
+     * settings, and sets up the running hash.
+     *
+     * @param channel the channel open on the ballot file.
+     * @param scanner a new scanner for the tally.
+     * @param start   the offset of the first ballot.
+     * @return the offset to continue scanning from: the checkpoint's offset, or {@code start}.
+     * @throws IOException if the ballot file could not be read.
+     */
+    protected long begin(FileChannel channel, BallotScanner scanner, long start) throws IOException {
+        resumedOffset = 0;
+        written = 0;
+        lastTime = System.nanoTime();
+        if (Files.exists(path)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    long offset = in.readLong();
+                    long savedHash = in.readLong();
+                    if (offset >= start && offset <= channel.size()) {
+                        hash.reset();
+                        update(channel, 0, offset);
+                        if (hash.getValue() == savedHash && scanner.readState(in)) {
+                            resumedOffset = offset;
+                            lastBallots = scanner.getBallotsScanned();
+                            return offset;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // an unreadable checkpoint is ignored like a stale one
+            }
+        }
+        hash.reset();
+        update(channel, 0, start);
+        lastBallots = 0;
+        return start;
+    }
+
+    /**
+     * Adds bytes of the ballot file to the running hash.
+     *
+     * @param channel the channel open on the ballot file.
+     * @param from    the offset of the first byte.
+     * @param to      the offset after the last byte.
+     * @throws IOException if the ballot file could not be read.
+     */
+    protected void update(FileChannel channel, long from, long to) throws IOException {
+        while (from < to) {
+            long length = Math.min(FileInput.MAP_WINDOW, to - from);
+            hash.update(channel.map(FileChannel.MapMode.READ_ONLY, from, length));
+            from += length;
+        }
+    }
+
+    /**
+     * Records that {@code scanner} consumed the bytes {@code [from, to)} of {@code window}, and writes a checkpoint
+     * if one is due. The window's position and limit are restored.
+     *
+     * @param window  the mapped window or read buffer being scanned.
+     * @param from    the index of the first consumed byte.
+     * @param to      the index after the last consumed byte.
+     * @param scanner the scanner.
+     * @param offset  the offset in the ballot file after the last consumed byte.
+     * @throws IOException if the checkpoint could not be written.
+     */
+    protected void scanned(ByteBuffer window, int from, int to, BallotScanner scanner, long offset)
+            throws IOException {
+        int position = window.position();
+        int limit = window.limit();
+        window.limit(to).position(from);
+        hash.update(window);
+        window.limit(limit).position(position);
+
+        if (ballotInterval > 0 && scanner.getBallotsScanned() - lastBallots >= ballotInterval
+                || nanoInterval > 0 && System.nanoTime() - lastTime >= nanoInterval) {
+            write(scanner, offset);
+        }
+    }
+
+    /**
+     * Ends a tally. If every declared ballot was tallied the sidecar is deleted; otherwise the ballot file ended
+     * early, perhaps while still being written, and a final checkpoint is written so a later tally of the complete
+     * file can resume.
+     *
+     * @param scanner the scanner, before {@link BallotScanner#finish()}.
+     * @param offset  the offset in the ballot file after the last consumed byte.
+     * @throws IOException if the sidecar could not be written or deleted.
+     */
+    protected void end(BallotScanner scanner, long offset) throws IOException {
+        if (scanner.isDone()) {
+            Files.deleteIfExists(path);
+        } else {
+            write(scanner, offset);
+        }
+    }
+
+    /**
+     * Writes a checkpoint, replacing the previous one.
+     *
+     * @param scanner the scanner.
+     * @param offset  the offset in the ballot file after the last consumed byte.
+     * @throws IOException if the checkpoint could not be written.
+     */
+    protected void write(BallotScanner scanner, long offset) throws IOException {
+        Path temporary = Path.of(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(offset);
+            out.writeLong(hash.getValue());
+            scanner.writeState(out);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastBallots = scanner.getBallotsScanned();
+        lastTime = System.nanoTime();
+        written++;
+    }
+}
@@ -0,0 +1,480 @@
+/*
+TiebreakSimulation.java
+
+The TiebreakSimulation class repeats a tiebreak many times in parallel and tests whether its outcomes are uniform.
+
+*/
+
+package AES;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evidence that a tie of {@code r} winners among {@code n} options is broken uniformly: the tiebreak is repeated
+ * {@code trials} times by {@link Tiebreaker#choose(int, int, int[])}, on several threads with independent random
+ * streams seeded from one seed, and chi-square tests compare the frequencies to uniform ones.
+ * <p>
+ * Two histograms are kept. The per-option histogram counts how often each option wins; since {@code r} options win
+ * each trial without replacement, its chi-square statistic is scaled by {@code (n - 1) / (n - r)} to follow a
+ * chi-square distribution with {@code n - 1} degrees of freedom. The per-outcome histogram counts each of the
+ * {@code C(n, r)} sets of winners, ranked by the combinatorial number system, and is kept when there are at most
+ * {@link #MAX_OUTCOMES} of them. The trial loop allocates nothing, so the trial rate is bound by the random source.
+ * <p>
+ * The ties an election broke with {@link Election#tiebreak(int, int)} are collected by {@link Election#getTies()};
+ * since the allocation maps tiebreak indices one to one onto the tied parties or candidates, uniform indices mean
+ * uniform tie handling.
+ */
+public class TiebreakSimulation {
+    /**
+     * The largest number of outcomes given a per-outcome histogram.
+     */
+    public static final int MAX_OUTCOMES = 1 << 16;
+
+    /**
+     * The p-value below which a test rejects uniformity.
+     */
+    public static final double SIGNIFICANCE = 0.01;
+
+    /**
+     * The largest number of options listed in a report.
+     */
+    protected static final int MAX_LISTED = 50;
+
+    /**
+     * The number of tied options.
+     */
+    protected final int n;
+
+    /**
+     * The number of winners.
+     */
+    protected final int r;
+
+    /**
+     * The number of trials.
+     */
+    protected final long trials;
+
+    /**
+     * The number of threads.
+     */
+    protected final int threadCount;
+
+    /**
+     * The seed of the random streams.
+     */
+    protected final long seed;
+
+    /**
+     * The number of outcomes, {@code C(n, r)}, or -1 if it exceeds {@link #MAX_OUTCOMES}.
+     */
+    protected final int outcomeCount;
+
+    /**
+     * {@code binomials[i][d] = C(i + d, i + 1)}, the rank term of the {@code i}-th smallest winner when it is option
+     * {@code i + d}, for {@code i < r} and {@code d <= n - r}; {@code null} if the outcomes are not counted.
+     */
+    protected final int[][] binomials;
+
+    /**
+     * The number of times each option won, after {@link #run()}.
+     */
+    protected long[] optionCounts;
+
+    /**
+     * The number of times each outcome occurred, after {@link #run()}, or {@code null} if not counted.
+     */
+    protected long[] outcomeCounts;
+
+    /**
+     * The time the trials took, in nanoseconds.
+     */
+    protected long elapsedNanos;
+
+    /**
+     * Constructs a TiebreakSimulation.
+     *
+     * @param n           the number of tied options; {@code n >= r}.
+     * @param r           the number of winners; must be positive.
+     * @param trials      the number of trials; must be positive.
+     * @param threadCount the number of threads; must be positive.
+     * @param seed        the seed; the same settings and seed give the same histograms.
+     * @throws RuntimeException if an argument is out of range.
+     */
+    public TiebreakSimulation(int n, int r, long trials, int threadCount, long seed) throws RuntimeException {
+        if (n < r || r <= 0) {
+            throw new RuntimeException("Error: Cannot simulate a tie with n=" + n + ", r=" + r + ". Need n >= r > 0.");
+        }
+        if (trials <= 0 || threadCount <= 0) {
+            throw new RuntimeException("Error: Trials and threads must be positive, got " + trials + " trials and "
+                    + threadCount + " threads");
+        }
+        this.n = n;
+        this.r = r;
+        this.trials = trials;
+        this.threadCount = threadCount;
+        this.seed = seed;
+        this.outcomeCount = binomial(n, r);
+        this.binomials = outcomeCount > 0 ? binomialTable(n, r) : null;
+    }
+
+    /**
+     * Computes a binomial coefficient, if it is small enough to count outcomes.
+     *
+     * @param n the number of options.
+     * @param k the number chosen.
+     * @return {@code C(n, k)}, or -1 if it exceeds {@link #MAX_OUTCOMES}.
+     */
+    protected static int binomial(int n, int k) {
+        k = Math.min(k, n - k);
+        long value = 1;
+        for (int i = 1; i <= k; i++) {
+            // exact, since value * (n - k + i) is divisible by i
+            value = value * (n - k + i) / i;
+            if (value > MAX_OUTCOMES) {
+                return -1;
+            }
+        }
+        return (int) value;
+    }
+
+    /**
+     * Builds the table of rank terms. Every term is at most {@code C(n - 1, r)}, so fits in an int when the number of
+     * outcomes does.
+     *
+     * @param n the number of options.
+     * @param r the number of winners.
+     * @return the table.
+     */
+    protected static int[][] binomialTable(int n, int r) {
+        int[][] table = new int[r][n - r + 1];
+        for (int d = 0; d <= n - r; d++) {
+            table[0][d] = d;
+        }
+        // C(i + d, i + 1) = C(i + d - 1, i) + C(i + d - 1, i + 1)
+        for (int i = 1; i < r; i++) {
+            for (int d = 1; d <= n - r; d++) {
+                table[i][d] = table[i - 1][d] + table[i][d - 1];
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Runs the trials.
+     *
+     * @throws RuntimeException if a thread failed or was interrupted.
+     */
+    public void run() throws RuntimeException {
+        SplittableRandom seeds = new SplittableRandom(seed);
+        long startTime = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<long[][]>> futures = new ArrayList<>(threadCount);
+            for (int t = 0; t < threadCount; t++) {
+                long threadTrials = trials / threadCount + (t < trials % threadCount ? 1 : 0);
+                long threadSeed = seeds.nextLong();
+                futures.add(pool.submit(() -> simulate(threadTrials, threadSeed)));
+            }
+            optionCounts = new long[n];
+            outcomeCounts = outcomeCount > 0 ? new long[outcomeCount] : null;
+            for (Future<long[][]> future : futures) {
+                long[][] counts = future.get();
+                add(optionCounts, counts[0]);
+                if (outcomeCounts != null) {
+                    add(outcomeCounts, counts[1]);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error: Tiebreak simulation failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Error: Interrupted during tiebreak simulation");
+        } finally {
+            pool.shutdownNow();
+        }
+        elapsedNanos = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Runs one thread's share of the trials.
+     *
+     * @param threadTrials the number of trials.
+     * @param threadSeed   the seed of the thread's random stream.
+     * @return the option and outcome histograms.
+     */
+    protected long[][] simulate(long threadTrials, long threadSeed) {
+        Tiebreaker tiebreaker = new Tiebreaker(Tiebreaker.Source.SPLITTABLE, threadSeed);
+        int[] selected = new int[r];
+        long[] options = new long[n];
+        long[] outcomes = outcomeCount > 0 ? new long[outcomeCount] : null;
+        for (long trial = 0; trial < threadTrials; trial++) {
+            tiebreaker.choose(n, r, selected);
+            int rank = 0;
+            for (int i = 0; i < r; i++) {
+                options[selected[i]]++;
+                if (outcomes != null) {
+                    rank += binomials[i][selected[i] - i];
+                }
+            }
+            if (outcomes != null) {
+                outcomes[rank]++;
+            }
+        }
+        return new long[][]{options, outcomes};
+    }
+
+    /**
+     * Adds one histogram to another.
+     *
+     * @param total  the histogram to add to.
+     * @param counts the histogram to add.
+     */
+    protected static void add(long[] total, long[] counts) {
+        for (int i = 0; i < total.length; i++) {
+            total[i] += counts[i];
+        }
+    }
+
+    /**
+     * Gets the per-option histogram.
+     *
+     * @return a copy of the number of times each option won.
+     */
+    public long[] getOptionCounts() {
+        return optionCounts.clone();
+    }
+
+    /**
+     * Gets the per-outcome histogram.
+     *
+     * @return a copy of the number of times each set of winners occurred, or {@code null} if there are more than
+     * {@link #MAX_OUTCOMES} sets.
+     */
+    public long[] getOutcomeCounts() {
+        return outcomeCounts != null ? outcomeCounts.clone() : null;
+    }
+
+    /**
+     * Computes Pearson's chi-square statistic of a histogram against equal expected counts.
+     *
+     * @param counts   the histogram.
+     * @param expected the expected count of each bin.
+     * @return the statistic.
+     */
+    protected static double chiSquare(long[] counts, double expected) {
+        double sum = 0;
+        for (long count : counts) {
+            double difference = count - expected;
+            sum += difference * difference;
+        }
+        return sum / expected;
+    }
+
+    /**
+     * Gets the chi-square statistic of the per-option histogram, with {@code n - 1} degrees of freedom.
+     *
+     * @return the scaled statistic, or 0 if every option always wins.
+     */
+    public double getOptionChiSquare() {
+        if (n == r) {
+            return 0;
+        }
+        return chiSquare(optionCounts, (double) trials * r / n) * (n - 1) / (n - r);
+    }
+
+    /**
+     * Gets the p-value of the per-option test.
+     *
+     * @return the probability of a statistic at least as large if the tiebreak is uniform.
+     */
+    public double getOptionPValue() {
+        return n == r ? 1 : chiSquarePValue(getOptionChiSquare(), n - 1);
+    }
+
+    /**
+     * Gets the chi-square statistic of the per-outcome histogram, with {@code C(n, r) - 1} degrees of freedom.
+     *
+     * @return the statistic, or {@link Double#NaN} if the outcomes were not counted.
+     */
+    public double getOutcomeChiSquare() {
+        if (outcomeCounts == null) {
+            return Double.NaN;
+        }
+        return outcomeCount == 1 ? 0 : chiSquare(outcomeCounts, (double) trials / outcomeCount);
+    }
+
+    /**
+     * Gets the p-value of the per-outcome test.
+     *
+     * @return the probability of a statistic at least as large if the tiebreak is uniform, or {@link Double#NaN} if
+     * the outcomes were not counted.
+     */
+    public double getOutcomePValue() {
+        if (outcomeCounts == null) {
+            return Double.NaN;
+        }
+        return outcomeCount == 1 ? 1 : chiSquarePValue(getOutcomeChiSquare(), outcomeCount - 1);
+    }
+
+    /**
+     * Checks whether the tests are consistent with a uniform tiebreak.
+     *
+     * @return true if no test rejects uniformity at {@link #SIGNIFICANCE}.
+     */
+    public boolean isUniform() {
+        return getOptionPValue() >= SIGNIFICANCE && !(getOutcomePValue() < SIGNIFICANCE);
+    }
+
+    /**
+     * Computes the upper tail probability of the chi-square distribution, {@code Q(df / 2, x / 2)}.
+     *
+     * @param x  the statistic.
+     * @param df the degrees of freedom; must be positive.
+     * @return the p-value.
+     */
+    public static double chiSquarePValue(double x, int df) {
+        if (x <= 0) {
+            return 1;
+        }
+        double a = df / 2.0;
+        double z = x / 2;
+        double logPrefix = a * Math.log(z) - z - logGamma(a);
+        if (z < a + 1) {
+            // series for the lower regularized gamma function
+            double term = 1 / a;
+            double sum = term;
+            for (int i = 1; i < 100_000 && Math.abs(term) > Math.abs(sum) * 1e-15; i++) {
+                term *= z / (a + i);
+                sum += term;
+            }
+            return Math.max(0, 1 - sum * Math.exp(logPrefix));
+        }
+        // Lentz's continued fraction for the upper regularized gamma function
+        double tiny = 1e-300;
+        double b = z + 1 - a;
+        double c = 1 / tiny;
+        double d = 1 / b;
+        double h = d;
+        for (int i = 1; i < 100_000; i++) {
+            double an = -i * (i - a);
+            b += 2;
+            d = an * d + b;
+            d = Math.abs(d) < tiny ? tiny : d;
+            c = b + an / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            d = 1 / d;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1) < 1e-15) {
+                break;
+            }
+        }
+        return Math.min(1, h * Math.exp(logPrefix));
+    }
+
+    /**
+     * Computes the natural logarithm of the gamma function by the Lanczos approximation.
+     *
+     * @param x the argument; must be positive.
+     * @return {@code ln(Gamma(x))}.
+     */
+    protected static double logGamma(double x) {
+        final double[] coefficients = {676.5203681218851, -1259.1392167224028, 771.32342877765313,
+                -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+                1.5056327351493116e-7};
+        if (x < 0.5) {
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1 - x);
+        }
+        x -= 1;
+        double sum = 0.99999999999980993;
+        for (int i = 0; i < coefficients.length; i++) {
+            sum += coefficients[i] / (x + i + 1);
+        }
+        double t = x + coefficients.length - 0.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+
+    /**
+     * Produces the results for the report.
+     *
+     * @return the results as a displayable String.
+     */
+    public String generateReport() {
+        StringBuilder builder = new StringBuilder();
+        double seconds = elapsedNanos / 1e9;
+        builder.append("Tiebreak Simulation: ").append(r).append(" of ").append(n).append(" tied options\n");
+        builder.append(String.format(" - Trials           : %,d on %d threads (seed %d)%n", trials, threadCount,
+                seed));
+        builder.append(String.format(" - Time             : %.2f s (%,.0f trials/s)%n", seconds, trials / seconds));
+        builder.append(String.format(" - Per-option test  : chi-square %.3f, %d degrees of freedom, p = %.4f%n",
+                getOptionChiSquare(), n - 1, getOptionPValue()));
+        if (outcomeCounts != null) {
+            builder.append(String.format(" - Per-outcome test : chi-square %.3f, %d degrees of freedom, p = %.4f%n",
+                    getOutcomeChiSquare(), outcomeCount - 1, getOutcomePValue()));
+        } else {
+            builder.append(" - Per-outcome test : not run, more than ").append(MAX_OUTCOMES).append(" outcomes\n");
+        }
+        builder.append(" - Result           : ").append(isUniform()
+                ? "consistent with a uniform tiebreak" : "NOT consistent with a uniform tiebreak")
+                .append(" (significance ").append(SIGNIFICANCE).append(")\n\n");
+
+        double expected = (double) trials * r / n;
+        builder.append(String.format(" | %-8s | %16s | %10s |%n", "Option", "Times Won", "Deviation"));
+        for (int i = 0; i < Math.min(n, MAX_LISTED); i++) {
+            builder.append(String.format(" | %-8d | %,16d | %+9.3f%% |%n", i, optionCounts[i],
+                    (optionCounts[i] - expected) / expected * 100));
+        }
+        if (n > MAX_LISTED) {
+            long min = Arrays.stream(optionCounts).min().orElse(0);
+            long max = Arrays.stream(optionCounts).max().orElse(0);
+            builder.append(String.format(" | %d more options; fewest %,d and most %,d wins of %,.0f expected%n",
+                    n - MAX_LISTED, min, max, expected));
+        }
+        builder.append("\n");
+        return builder.toString();
+    }
+
+    /**
+     * Simulates every distinct tie an election broke, and writes the results to a report file.
+     *
+     * @param election    the election, after its seats were allocated and assigned.
+     * @param trials      the number of trials per tie.
+     * @param threadCount the number of threads.
+     * @return the name of the report file.
+     * @throws RuntimeException if the simulation failed or the report could not be written.
+     */
+    public static String writeReport(Election election, long trials, int threadCount) throws RuntimeException {
+        StringBuilder builder = new StringBuilder();
+        builder.append(election.getElectionType()).append(" Election Tiebreak Fairness Report\n\n");
+        Set<List<Integer>> simulated = new HashSet<>();
+        long seed = election.getTiebreaker().getSeed();
+        for (int[] tie : election.getTies()) {
+            if (simulated.add(List.of(tie[0], tie[1]))) {
+                TiebreakSimulation simulation = new TiebreakSimulation(tie[0], tie[1], trials, threadCount, seed);
+                simulation.run();
+                builder.append(simulation.generateReport());
+            }
+        }
+        if (simulated.isEmpty()) {
+            builder.append("No ties were broken in this election.\n");
+        }
+
+        SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss-SSS");
+        String filename = election.getElectionType() + "_TiebreakReport_" + timestamp.format(new Date()) + ".txt";
+        try (PrintWriter printWriter = new PrintWriter(filename)) {
+            printWriter.write(builder.toString());
+            printWriter.flush();
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException("Error: Unable to create or write to the tiebreak report");
+        }
+        return filename;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+Tiebreaker.java
+
+The Tiebreaker class performs fair, reproducible random tiebreaks.
+
+*/
+
+package AES;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Performs fair random tiebreaks from a seeded random source, so the tiebreaks of an election can be replayed
+ * exactly from the seed recorded in its audit file.
+ * <p>
+ * A tiebreak choosing {@code r} of {@code n} options uses Floyd's sampling: for each {@code j} from {@code n - r} to
+ * {@code n - 1} it draws from {@code [0, j]}, keeping the draw unless it was already chosen, and {@code j} if it was.
+ * The chosen options are tracked in a hash table sized to {@code r}, so a tiebreak keeps no state of size {@code n}.
+ * Apart from its result, it allocates nothing once the table has grown to the most winners, and costs
+ * {@code O(r log r)} including sorting the result, whatever the size of {@code n}.
+ */
+public class Tiebreaker {
+    /**
+     * The random sources.
+     */
+    public enum Source {
+        /**
+         * A {@link SplittableRandom}, fast and statistically strong.
+         */
+        SPLITTABLE,
+
+        /**
+         * A {@link SecureRandom} using the {@code SHA1PRNG} algorithm, whose output cannot be predicted without the
+         * seed.
+         */
+        SECURE
+    }
+
+    /**
+     * The random source.
+     */
+    protected final Source source;
+
+    /**
+     * The seed of the random source.
+     */
+    protected final long seed;
+
+    /**
+     * The random number generator.
+     */
+    protected final RandomGenerator random;
+
+    /**
+     * The open-addressing hash table of the options chosen by the current tiebreak, each stored plus one so that 0
+     * marks an empty slot. A tiebreak uses and clears only the first power of two of at least {@code 2r} slots.
+     */
+    protected int[] chosen;
+
+    /**
+     * The number of tiebreaks performed among more options than winners.
+     */
+    protected int tiebreakCount;
+
+    /**
+     * Constructs a Tiebreaker with a random seed.
+     *
+     * @param source the random source.
+     */
+    public Tiebreaker(Source source) {
+        this(source, new SecureRandom().nextLong());
+    }
+
+    /**
+     * Constructs a Tiebreaker.
+     *
+     * @param source the random source.
+     * @param seed   the seed; the same source and seed give the same tiebreaks.
+     * @throws RuntimeException if the secure source is not available.
+     */
+    public Tiebreaker(Source source, long seed) throws RuntimeException {
+        this.source = source;
+        this.seed = seed;
+        this.random = switch (source) {
+            case SPLITTABLE -> new SplittableRandom(seed);
+            case SECURE -> secureRandom(seed);
+        };
+        this.chosen = new int[0];
+        this.tiebreakCount = 0;
+    }
+
+    /**
+     * Creates a deterministic {@link SecureRandom}.
+     *
+     * @param seed the seed.
+     * @return the generator, seeded before its first use so its output depends only on the seed.
+     * @throws RuntimeException if the {@code SHA1PRNG} algorithm is not available.
+     */
+    protected static SecureRandom secureRandom(long seed) throws RuntimeException {
+        try {
+            SecureRandom secureRandom = SecureRandom.getInstance("SHA1PRNG");
+            byte[] bytes = new byte[Long.BYTES];
+            for (int i = 0; i < Long.BYTES; i++) {
+                bytes[i] = (byte) (seed >>> (8 * i));
+            }
+            secureRandom.setSeed(bytes);
+            return secureRandom;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Error: The secure random source is not available");
+        }
+    }
+
+    /**
+     * Gets the random source.
+     *
+     * @return the source.
+     */
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * Gets the seed.
+     *
+     * @return the seed of the random source.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the number of tiebreaks performed, not counting choices of every option.
+     *
+     * @return the number of tiebreaks.
+     */
+    public int getTiebreakCount() {
+        return tiebreakCount;
+    }
+
+    /**
+     * Chooses {@code r} of {@code n} options uniformly at random.
+     *
+     * @param n the number of options to choose from; {@code n >= r}.
+     * @param r the number of allowed winners; must be positive.
+     * @return a sorted integer array containing {@code r} unique integers on the range {@code [0, n)}.
+     * @throws RuntimeException if {@code n < r} or if {@code r <= 0}.
+     */
+    public int[] choose(int n, int r) throws RuntimeException {
+        if (n < r || r <= 0) {
+            throw new RuntimeException("Cannot tiebreak n=" + n + ", r=" + r + ". Need n >= r > 0.");
+        }
+        int[] selected = new int[r];
+        choose(n, r, selected);
+        return selected;
+    }
+
+    /**
+     * Chooses {@code r} of {@code n} options uniformly at random into an existing array, allocating nothing once the
+     * hash table has grown to {@code r}.
+     *
+     * @param n        the number of options to choose from; {@code n >= r > 0}, which is not checked.
+     * @param r        the number of allowed winners.
+     * @param selected the array to receive the {@code r} chosen options in its first {@code r} entries, sorted.
+     */
+    public void choose(int n, int r, int[] selected) {
+        int slots = r > 1 << 29 ? 1 << 30 : Integer.highestOneBit(2 * r - 1) << 1;
+        if (chosen.length < slots) {
+            chosen = new int[slots];
+        }
+        int mask = slots - 1;
+
+        for (int i = 0; i < r; i++) {
+            int j = n - r + i;
+            int option = random.nextInt(j + 1);
+            if (!add(option, mask)) {
+                // j is new to the table, since every earlier draw was below it
+                add(j, mask);
+                option = j;
+            }
+            selected[i] = option;
+        }
+        Arrays.fill(chosen, 0, slots, 0);
+        // choosing every option is no tie, but still draws, so a seed replays the same stream
+        if (n > r) {
+            tiebreakCount++;
+        }
+
+        Arrays.sort(selected, 0, r);
+    }
+
+    /**
+     * Adds an option to the hash table of chosen options.
+     *
+     * @param option the option.
+     * @param mask   the number of slots in use, minus one.
+     * @return whether the option was added; false if it was already chosen.
+     */
+    protected boolean add(int option, int mask) {
+        // Fibonacci hashing, taking the top bits of the product
+        int slot = (option * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+        while (chosen[slot] != 0) {
+            if (chosen[slot] == option + 1) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        chosen[slot] = option + 1;
+        return true;
+    }
+
+    /**
+     * Copies the settings and tiebreak count of this tiebreaker, for an audit of the tiebreaks drawn so far. The
+     * copy's random stream starts again from the seed; it does not continue this one's.
+     *
+     * @return the copy.
+     */
+    public Tiebreaker snapshot() {
+        Tiebreaker copy = new Tiebreaker(source, seed);
+        copy.tiebreakCount = tiebreakCount;
+        return copy;
+    }
+
+    /**
+     * Produces the tiebreak settings for the audit file.
+     *
+     * @return the settings, which replay every tiebreak, as a displayable String.
+     */
+    public String generateReport() {
+        return "Tiebreaks:\n" +
+                " - Random Source   : " + source.name().toLowerCase() + "\n" +
+                " - Seed            : " + seed + "\n" +
+                " - Tiebreaks Drawn : " + tiebreakCount + "\n";
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ApportionmentMethodTest.java
+
+Unit tests for the ApportionmentMethod classes.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApportionmentMethodTest {
+    /**
+     * Votes of 4 parties for 7 seats, the usual example of the highest averages methods.
+     */
+    private static final int[] VOTES = {100_000, 80_000, 30_000, 20_000};
+
+    /**
+     * An election whose tiebreak picks the first {@code r} options, so ties have a known outcome.
+     */
+    private final Election election = new FakeElection();
+
+    /**
+     * Allocates the seats of {@link #VOTES} with long enough lists.
+     *
+     * @param method the method.
+     * @return the allocation data.
+     */
+    private int[][] allocate(ApportionmentMethod method) {
+        return method.allocate(VOTES, new int[]{7, 7, 7, 7}, 230_000, 7, election);
+    }
+
+    /**
+     * Tests the highest averages methods against their worked examples.
+     */
+    @Test
+    @DisplayName("highest averages examples")
+    void testExamples() {
+        assertArrayEquals(new int[]{3, 3, 1, 0}, allocate(ApportionmentMethod.D_HONDT)[4]);
+        assertArrayEquals(new int[]{3, 2, 1, 1}, allocate(ApportionmentMethod.SAINTE_LAGUE)[4]);
+        assertArrayEquals(new int[]{3, 3, 1, 0}, allocate(ApportionmentMethod.MODIFIED_SAINTE_LAGUE)[4]);
+        assertArrayEquals(new int[]{3, 2, 1, 1}, allocate(ApportionmentMethod.HUNTINGTON_HILL)[4]);
+
+        // D'Hondt's next averages: 100000 / 4, 80000 / 4, 30000 / 2, 20000 / 1
+        int[][] allocationData = allocate(ApportionmentMethod.D_HONDT);
+        assertArrayEquals(VOTES, allocationData[0]);
+        assertArrayEquals(new int[]{25_000, 20_000, 15_000, 20_000}, allocationData[2]);
+        assertArrayEquals(new int[]{0, 0, 0, 0}, allocationData[3]);
+    }
+
+    /**
+     * Tests that Sainte-Lague's tie for the last two seats at 20000 gives both tied parties a seat, and that a tie
+     * for fewer seats than tied parties goes to the tiebreak.
+     */
+    @Test
+    @DisplayName("ties")
+    void testTies() {
+        int[][] allocationData = allocate(ApportionmentMethod.SAINTE_LAGUE);
+        assertArrayEquals(new int[]{3, 2, 1, 1}, allocationData[1]);
+
+        allocationData = ApportionmentMethod.D_HONDT.allocate(new int[]{10, 30, 10, 10}, new int[]{5, 5, 5, 5},
+                60, 5, election);
+        // 30 and 15, then 4 parties at 10 for the last 3 seats
+        assertArrayEquals(new int[]{0, 2, 0, 0}, allocationData[1]);
+        assertArrayEquals(new int[]{1, 1, 1, 0}, allocationData[3]);
+        assertArrayEquals(new int[]{1, 3, 1, 0}, allocationData[4]);
+    }
+
+    /**
+     * Tests that Huntington-Hill finds a tie between averages whose rounded values differ: 1000 votes over sqrt(1 * 2)
+     * and 6000 votes over sqrt(8 * 9) are equal, but not as doubles.
+     */
+    @Test
+    @DisplayName("exact ties")
+    void testExactTies() {
+        assertNotEquals(1000 / Math.sqrt(2), 6000 / Math.sqrt(72));
+        int[][] allocationData = ApportionmentMethod.HUNTINGTON_HILL.allocate(new int[]{1000, 6000},
+                new int[]{10, 10}, 7000, 10, election);
+        // 1 and 8 seats, then both parties at 1000 / sqrt(2) for the last seat
+        assertArrayEquals(new int[]{1, 8}, allocationData[1]);
+        assertArrayEquals(new int[]{1, 0}, allocationData[3]);
+        assertArrayEquals(new int[]{2, 8}, allocationData[4]);
+
+        // with a seat for each, the tied parties both get one
+        allocationData = ApportionmentMethod.HUNTINGTON_HILL.allocate(new int[]{1000, 6000}, new int[]{10, 10},
+                7000, 11, election);
+        assertArrayEquals(new int[]{2, 9}, allocationData[1]);
+        assertArrayEquals(new int[]{0, 0}, allocationData[3]);
+    }
+
+    /**
+     * Tests that no party gets more seats than candidates, and that seats nobody can take stay empty.
+     */
+    @Test
+    @DisplayName("list sizes")
+    void testListSizes() {
+        int[][] allocationData = ApportionmentMethod.D_HONDT.allocate(VOTES, new int[]{1, 2, 0, 3}, 230_000, 7,
+                election);
+        assertArrayEquals(new int[]{1, 2, 0, 3}, allocationData[4]);
+        allocationData = ApportionmentMethod.HUNTINGTON_HILL.allocate(new int[]{1000, 10, 5}, new int[]{9, 9, 9},
+                1015, 3, election);
+        assertArrayEquals(new int[]{1, 1, 1}, allocationData[4]);
+    }
+
+    /**
+     * Tests the heap-driven allocation against rescanning every party for every seat, on random elections.
+     */
+    @Test
+    @DisplayName("same allocation as rescans")
+    void testRandom() {
+        Random random = new Random(12);
+        for (ApportionmentMethod method : new ApportionmentMethod[]{ApportionmentMethod.D_HONDT,
+                ApportionmentMethod.SAINTE_LAGUE}) {
+            DivisorMethod divisorMethod = (DivisorMethod) method;
+            for (int trial = 0; trial < 2000; trial++) {
+                int partyCount = 1 + random.nextInt(20);
+                int[] votes = new int[partyCount];
+                int[] listSizes = new int[partyCount];
+                int ballotCount = 0;
+                for (int i = 0; i < partyCount; i++) {
+                    votes[i] = 1 + random.nextInt(trial % 2 == 0 ? 10 : 100_000);
+                    listSizes[i] = random.nextInt(15);
+                    ballotCount += votes[i];
+                }
+                int seatCount = 1 + random.nextInt(60);
+
+                // give each seat to the first party with the highest average; the fake tiebreak does the same
+                int[] expected = new int[partyCount];
+                for (int seat = 0; seat < seatCount; seat++) {
+                    int best = -1;
+                    for (int i = 0; i < partyCount; i++) {
+                        if (expected[i] < listSizes[i] && (best == -1 || votes[i] / divisorMethod.divisor(expected[i])
+                                > votes[best] / divisorMethod.divisor(expected[best]))) {
+                            best = i;
+                        }
+                    }
+                    if (best != -1) {
+                        expected[best]++;
+                    }
+                }
+                int[][] actual = method.allocate(votes, listSizes, ballotCount, seatCount, election);
+                assertArrayEquals(expected, actual[4], method.getName() + " trial " + trial);
+            }
+        }
+    }
+
+    /**
+     * Tests that the largest remainder method gives the seats left after the first allocation to the parties with
+     * the most remaining votes, on an election with tens of thousands of parties.
+     */
+    @Test
+    @DisplayName("remainder ranking")
+    void testRemainders() {
+        Random random = new Random(15);
+        int partyCount = 40_000;
+        int[] votes = new int[partyCount];
+        int[] listSizes = new int[partyCount];
+        int ballotCount = 0;
+        for (int i = 0; i < partyCount; i++) {
+            votes[i] = random.nextInt(1000);
+            listSizes[i] = 50;
+            ballotCount += votes[i];
+        }
+        int seatCount = 5_000;
+        int[][] allocationData = ApportionmentMethod.LARGEST_REMAINDER.allocate(votes, listSizes, ballotCount,
+                seatCount, election);
+        assertEquals(seatCount, Arrays.stream(allocationData[4]).sum());
+        int lowestSeated = Integer.MAX_VALUE;
+        int highestUnseated = Integer.MIN_VALUE;
+        for (int i = 0; i < partyCount; i++) {
+            assertTrue(allocationData[3][i] <= 1);
+            if (allocationData[3][i] == 1) {
+                lowestSeated = Math.min(lowestSeated, allocationData[2][i]);
+            } else {
+                highestUnseated = Math.max(highestUnseated, allocationData[2][i]);
+            }
+        }
+        assertTrue(lowestSeated >= highestUnseated);
+    }
+
+    /**
+     * Tests looking methods up by name.
+     */
+    @Test
+    @DisplayName("names")
+    void testForName() {
+        assertSame(ApportionmentMethod.LARGEST_REMAINDER, ApportionmentMethod.forName("lra"));
+        assertSame(ApportionmentMethod.MODIFIED_SAINTE_LAGUE, ApportionmentMethod.forName("Modified-Sainte-Lague"));
+        assertEquals("Huntington-Hill", ApportionmentMethod.forName("huntington-hill").getName());
+        assertThrows(RuntimeException.class, () -> ApportionmentMethod.forName("webster"));
+    }
+
+    /**
+     * An implementation of Election whose tiebreak picks the first options.
+     */
+    private static class FakeElection extends Election {
+        @Override
+        public int[] tiebreak(int n, int r) {
+            int[] indices = new int[r];
+            for (int i = 0; i < r; i++) {
+                indices[i] = i;
+            }
+            return indices;
+        }
+
+        @Override
+        public void processBallotData(FileInput fin) {
+
+        }
+
+        @Override
+        protected int processHeaderData(FileInput fin) {
+            return 0;
+        }
+
+        @Override
+        protected int getVotableCount() {
+            return 0;
+        }
+
+        @Override
+        protected void recordVotes(int[] voteCounts) {
+
+        }
+
+        @Override
+        public void assignCandidateSeats() {
+
+        }
+
+        @Override
+        protected String generatePartyCandidateList() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+AuditExportTest.java
+
+Unit tests for the AuditExport and ColumnarAudit classes.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditExportTest {
+    /**
+     * Counts an OPL election, allocates its seats and assigns them.
+     *
+     * @param dir     the directory to write the ballot file in.
+     * @param ballots the ballot file.
+     * @return the election.
+     * @throws IOException if the file could not be written.
+     */
+    private Election count(Path dir, String ballots) throws IOException {
+        Path file = dir.resolve("ballots.csv");
+        Files.writeString(file, ballots, StandardCharsets.UTF_8);
+        FileInput fin = new FileInput(file.toString());
+        assertTrue(fin.isOPL());
+        Election election = new OPLElection();
+        election.processBallotData(fin);
+        election.setTiebreaker(new Tiebreaker(Tiebreaker.Source.SPLITTABLE, 22L));
+        election.allocatePartySeats();
+        election.assignCandidateSeats();
+        return election;
+    }
+
+    /**
+     * Tests the records of the JSON Lines output, with names that need escaping, and the columns of the columnar
+     * output, against the election.
+     */
+    @Test
+    @DisplayName("JSON Lines and columnar outputs")
+    void testOutputs(@TempDir Path dir) throws IOException {
+        Election election = count(dir, "OPL\n2\n6\n4\nRed, \"Ann\"\nRed, B\\ob\nBlue, Ch\u00e9\nGreen, Dan\n"
+                + "1,,,\n1,,,\n,1,,\n,,1,\n,,1,\n,,,1\n");
+        String jsonl = dir.resolve("audit.jsonl").toString();
+        String columnar = dir.resolve("audit.aesa").toString();
+        new AuditExport(election).write(jsonl, columnar);
+
+        List<String> lines = Files.readAllLines(Path.of(jsonl), StandardCharsets.UTF_8);
+        assertEquals("{\"type\":\"election\",\"electionType\":\"OPL\",\"parties\":3,\"candidates\":4,\"ballots\":6,"
+                + "\"seats\":2,\"method\":\"Largest Remainder\"}", lines.get(0));
+        assertEquals("{\"type\":\"tiebreaker\",\"source\":\"splittable\",\"seed\":22,\"drawn\":"
+                + election.getTiebreaker().getTiebreakCount() + "}", lines.get(1));
+        assertTrue(lines.contains("{\"type\":\"candidate\",\"party\":0,\"index\":0,\"name\":\"\\\"Ann\\\"\","
+                + "\"votes\":2,\"seated\":true}"));
+        assertTrue(lines.contains("{\"type\":\"winner\",\"party\":0,\"index\":0,\"name\":\"\\\"Ann\\\"\","
+                + "\"partyName\":\"Red\"}"));
+        assertTrue(lines.contains("{\"type\":\"candidate\",\"party\":0,\"index\":1,\"name\":\"B\\\\ob\","
+                + "\"votes\":1,\"seated\":false}"));
+        // the name as the UTF-8 ballot file was decoded in the default charset, written back in UTF-8
+        String blue = election.getCandidates().get(1).get(0).getName();
+        assertTrue(blue.startsWith("Ch") && blue.length() > 2);
+        assertTrue(lines.contains("{\"type\":\"candidate\",\"party\":1,\"index\":0,\"name\":\"" + blue + "\","
+                + "\"votes\":2,\"seated\":true}"));
+        assertTrue(lines.contains("{\"type\":\"allocation\",\"party\":1,\"votes\":2,\"firstAllocationOfSeats\":0,"
+                + "\"remainingVotes\":2,\"secondAllocationOfSeats\":1,\"seats\":1}"));
+        // Red wins a seat by the quota and Blue the remaining one, so only candidate ties could be broken
+        assertEquals(election.getTies().size(), lines.stream().filter(l -> l.contains("\"tiebreak\"")).count());
+        assertEquals(2, lines.stream().filter(l -> l.startsWith("{\"type\":\"winner\"")).count());
+
+        ColumnarAudit audit = new ColumnarAudit(columnar);
+        assertEquals("OPL", audit.getElectionType());
+        assertEquals(3, audit.getPartyCount());
+        assertEquals(4, audit.getCandidateCount());
+        assertEquals(6, audit.getBallotCount());
+        assertEquals(2, audit.getSeatCount());
+        assertEquals(22L, audit.getSeed());
+        assertSame(ApportionmentMethod.LARGEST_REMAINDER, audit.getApportionmentMethod());
+        for (int row = 0; row < 5; row++) {
+            assertArrayEquals(election.getAllocationData()[row], audit.getAllocationRow(row));
+        }
+        assertEquals(election.getAllocationData()[2][1], audit.getAllocation(2, 1));
+        assertEquals("Blue", audit.getPartyName(1));
+        assertArrayEquals(new int[]{2, 1, 2, 1}, audit.getVotes());
+        assertEquals("\"Ann\"", audit.getCandidateName(0));
+        assertEquals(blue, audit.getCandidateName(2));
+        assertEquals(1, audit.getParty(2));
+        assertEquals(2, audit.getCandidateStart(1));
+        assertEquals(4, audit.getCandidateStart(3));
+        assertTrue(audit.isSeated(0));
+        assertFalse(audit.isSeated(3));
+    }
+
+    /**
+     * Tests that the allocation records and columns of a divisor method are named after its audit file columns.
+     */
+    @Test
+    @DisplayName("divisor method outputs")
+    void testDivisorMethod(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("ballots.csv");
+        Files.writeString(file, "OPL\n2\n6\n3\nRed, Ann\nRed, Bob\nBlue, Cat\n1,,\n1,,\n,1,\n1,,\n,,1\n,,1\n");
+        FileInput fin = new FileInput(file.toString());
+        assertTrue(fin.isOPL());
+        Election election = new OPLElection();
+        election.processBallotData(fin);
+        election.setApportionmentMethod(ApportionmentMethod.D_HONDT);
+        election.setTiebreaker(new Tiebreaker(Tiebreaker.Source.SPLITTABLE, 22L));
+        election.allocatePartySeats();
+        election.assignCandidateSeats();
+        String jsonl = dir.resolve("audit.jsonl").toString();
+        String columnar = dir.resolve("audit.aesa").toString();
+        new AuditExport(election).write(jsonl, columnar);
+
+        int[][] data = election.getAllocationData();
+        List<String> lines = Files.readAllLines(Path.of(jsonl), StandardCharsets.UTF_8);
+        assertTrue(lines.get(0).endsWith(",\"method\":\"D'Hondt\"}"));
+        assertTrue(lines.contains("{\"type\":\"allocation\",\"party\":0,\"votes\":4,\"seatsByHighestAverage\":"
+                + data[1][0] + ",\"nextAverage\":" + data[2][0] + ",\"seatsByTiebreak\":" + data[3][0]
+                + ",\"seats\":" + data[4][0] + "}"));
+        assertTrue(lines.stream().noneMatch(l -> l.contains("remainingVotes")));
+
+        ColumnarAudit audit = new ColumnarAudit(columnar);
+        assertSame(ApportionmentMethod.D_HONDT, audit.getApportionmentMethod());
+        assertArrayEquals(new String[]{"Seats by Highest Average", "Next Average", "Seats by Tiebreak"},
+                audit.getApportionmentMethod().getColumnNames());
+        for (int row = 0; row < 5; row++) {
+            assertArrayEquals(data[row], audit.getAllocationRow(row));
+        }
+    }
+
+    /**
+     * Tests a columnar output of many candidates against the election, and that a file that is not one, or was cut
+     * short, is rejected.
+     */
+    @Test
+    @DisplayName("large columnar output")
+    void testLarge(@TempDir Path dir) throws IOException {
+        int partyCount = 50;
+        int perParty = 2000;
+        StringBuilder ballots = new StringBuilder("OPL\n3\n3\n" + partyCount * perParty + "\n");
+        for (int p = 0; p < partyCount; p++) {
+            for (int c = 0; c < perParty; c++) {
+                ballots.append("Party").append(p).append(", C").append(p).append('_').append(c).append('\n');
+            }
+        }
+        String empty = ",".repeat(partyCount * perParty - 1);
+        for (int b = 0; b < 3; b++) {
+            int choice = b * 40001;
+            ballots.append(empty, 0, choice).append('1').append(empty, choice, empty.length()).append('\n');
+        }
+        Election election = count(dir, ballots.toString());
+        Path columnar = dir.resolve("large.aesa");
+        new AuditExport(election).write(null, columnar.toString());
+
+        ColumnarAudit audit = new ColumnarAudit(columnar.toString());
+        assertEquals(partyCount * perParty, audit.getCandidateCount());
+        List<Integer> seated = new ArrayList<>();
+        int index = 0;
+        for (List<Candidate> list : election.getCandidates()) {
+            for (Candidate candidate : list) {
+                assertEquals(candidate.getVoteCount(), audit.getVotes(index));
+                assertEquals(candidate.getName(), audit.getCandidateName(index));
+                assertEquals(candidate.isSat(), audit.isSeated(index));
+                if (candidate.isSat()) {
+                    seated.add(index);
+                }
+                index++;
+            }
+        }
+        assertEquals(List.of(0, 40001, 80002), seated);
+        assertEquals(40, audit.getParty(80002));
+        assertEquals("Party49", audit.getPartyName(49));
+
+        Path truncated = dir.resolve("truncated.aesa");
+        byte[] bytes = Files.readAllBytes(columnar);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(RuntimeException.class, () -> new ColumnarAudit(truncated.toString()));
+        assertThrows(RuntimeException.class, () -> new ColumnarAudit(dir.resolve("ballots.csv").toString()));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+AuditJobTest.java
+
+Unit tests for the AuditJob class and Election snapshots.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditJobTest {
+    /**
+     * Counts an OPL election, allocates its seats and assigns them.
+     *
+     * @param dir the directory to write the ballot file in.
+     * @return the election.
+     * @throws IOException if the file could not be written.
+     */
+    private ChangingElection count(Path dir) throws IOException {
+        Path file = dir.resolve("ballots.csv");
+        Files.writeString(file, "OPL\n2\n7\n4\nRed, Ann\nRed, Bob\nBlue, Cat\nBlue, Dan\n"
+                + "1,,,\n1,,,\n,1,,\n,,1,\n,,1,\n,,,1\n,,,1\n");
+        FileInput fin = new FileInput(file.toString());
+        assertTrue(fin.isOPL());
+        ChangingElection election = new ChangingElection();
+        election.processBallotData(fin);
+        election.setTiebreaker(new Tiebreaker(Tiebreaker.Source.SPLITTABLE, 23L));
+        election.allocatePartySeats();
+        election.assignCandidateSeats();
+        return election;
+    }
+
+    /**
+     * Tests that a started job writes the audit the election had when the job was created, even though the
+     * election changes while the job runs, and reports every output with its timings.
+     */
+    @Test
+    @DisplayName("audit of a snapshot")
+    void testSnapshot(@TempDir Path dir) throws IOException {
+        ChangingElection election = count(dir);
+        Path expected = dir.resolve("expected.txt");
+        election.generateAuditFile(expected.toString());
+
+        AuditJob job = AuditJob.start(election, EnumSet.of(AuditExport.Format.TEXT, AuditExport.Format.COLUMNAR));
+        election.change();
+        String report;
+        Path text = Path.of(job.getFilename(AuditExport.Format.TEXT));
+        Path columnar = Path.of(job.getFilename(AuditExport.Format.COLUMNAR));
+        try {
+            report = job.await();
+            assertEquals(Files.readString(expected), Files.readString(text));
+            ColumnarAudit audit = new ColumnarAudit(columnar.toString());
+            assertEquals(1, audit.getAllocation(4, 0));
+            assertFalse(audit.isSeated(1));
+        } finally {
+            Files.deleteIfExists(text);
+            Files.deleteIfExists(columnar);
+        }
+        assertTrue(report.startsWith("Audit File Generated: " + text + "\n - Formatting : "));
+        assertTrue(report.contains("Columnar Audit Generated: " + columnar + "\n"));
+        assertEquals(2, report.split(" - Syncing    : ", -1).length - 1);
+        assertFalse(Files.exists(Path.of(job.getFilename(AuditExport.Format.JSONL))));
+    }
+
+    /**
+     * Tests that a snapshot shares no state with its election and can still find candidate cutoffs.
+     */
+    @Test
+    @DisplayName("snapshot copies")
+    void testCopy(@TempDir Path dir) throws IOException {
+        ChangingElection election = count(dir);
+        OPLElection copy = (OPLElection) election.snapshot();
+        assertNotSame(election.getTiebreaker(), copy.getTiebreaker());
+        assertEquals(election.getTiebreaker().getTiebreakCount(), copy.getTiebreaker().getTiebreakCount());
+        assertEquals(election.getTiebreaker().getSeed(), copy.getTiebreaker().getSeed());
+
+        election.change();
+        assertEquals(1000, election.getParties()[0].getVoteCount());
+        assertTrue(election.getCandidates().get(0).get(1).isSat());
+        assertEquals(3, copy.getParties()[0].getVoteCount());
+        assertFalse(copy.getCandidates().get(0).get(1).isSat());
+        assertEquals(1, copy.getAllocationData()[4][0]);
+        assertEquals(election.getTies().size() - 1, copy.getTies().size());
+        assertArrayEquals(new int[]{0}, copy.getCandidateCutoff(0, 1).getTied());
+    }
+
+    /**
+     * An OPLElection whose counted state can be changed afterwards, as a caller could while it is audited.
+     */
+    private static class ChangingElection extends OPLElection {
+        /**
+         * Changes the votes, seats and allocation data of the first party and draws another tiebreak.
+         */
+        void change() {
+            parties[0].setVoteCount(1000);
+            candidates.get(0).get(1).giveSeat();
+            allocationData[4][0] = 2;
+            tiebreak(5, 2);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+AuditVerifierTest.java
+
+Unit tests for the AuditVerifier class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditVerifierTest {
+    /**
+     * A ballot file whose one seat goes to Red, where Ann and Bob tie for it.
+     */
+    private static final String BALLOTS = "OPL\n1\n5\n3\nRed, Ann\nRed, Bob\nBlue, Cat\n"
+            + "1,,\n,1,\n1,,\n,1,\n,,1\n";
+
+    /**
+     * Counts the ballot file and writes its text audit, and optionally its JSON Lines audit, next to it.
+     *
+     * @param ballots the ballot file.
+     * @param seed    the tiebreak seed.
+     * @param jsonl   whether to write the JSON Lines audit.
+     * @return the name of the text audit.
+     */
+    private String audit(Path ballots, long seed, boolean jsonl) {
+        FileInput fin = new FileInput(ballots.toString());
+        assertTrue(fin.isOPL());
+        Election election = new OPLElection();
+        election.processBallotData(fin);
+        election.setTiebreaker(new Tiebreaker(Tiebreaker.Source.SPLITTABLE, seed));
+        election.allocatePartySeats();
+        election.assignCandidateSeats();
+        String text = ballots.resolveSibling("audit.txt").toString();
+        election.generateAuditFile(text);
+        if (jsonl) {
+            new AuditExport(election).write(ballots.resolveSibling("audit.jsonl").toString(), null);
+        }
+        return text;
+    }
+
+    /**
+     * Finds the winner of the tie between Ann and Bob drawn by a seed.
+     *
+     * @param dir  the directory of the ballot file.
+     * @param seed the tiebreak seed.
+     * @return the winner's name.
+     */
+    private String winner(Path dir, long seed) throws IOException {
+        String text = Files.readString(Path.of(audit(dir.resolve("ballots.csv"), seed, false)));
+        return text.substring(text.indexOf("Affiliation:\n - ") + 16, text.indexOf(" (Red)"));
+    }
+
+    /**
+     * Tests that an untouched ballot file recounts to its audit, and that a changed ballot shows in the votes of the
+     * parties and candidates and in the allocation.
+     */
+    @Test
+    @DisplayName("recount and discrepancies")
+    void testRecount(@TempDir Path dir) throws IOException {
+        Path ballots = dir.resolve("ballots.csv");
+        Files.writeString(ballots, BALLOTS);
+        String audit = audit(ballots, 3L, false);
+
+        AuditVerifier verifier = new AuditVerifier(audit, List.of(ballots.toString()), 2);
+        assertEquals(List.of(), verifier.verify());
+        String report = verifier.generateReport();
+        assertTrue(report.contains(" - Ballots Read    : 5\n - Bytes Read      : " + BALLOTS.length() + "\n"));
+        assertTrue(report.contains(" - Tiebreaks       : replayed from the recorded seed\n"));
+        assertTrue(report.endsWith(" - Discrepancies   : 0\n"));
+
+        Files.writeString(ballots, BALLOTS.replace(",,1\n", "1,,\n"));
+        List<AuditVerifier.Discrepancy> discrepancies = verifier.verify();
+        AuditVerifier.Discrepancy ann = discrepancies.stream()
+                .filter(d -> d.getItem().equals("Party: Red / Candidate: Ann")).findFirst().orElseThrow();
+        assertEquals("Parties & Candidates", ann.getSection());
+        assertEquals("2 (40.00% of total)", ann.getAuditValue());
+        assertEquals("3 (60.00% of total)", ann.getRecountValue());
+        assertTrue(discrepancies.stream().anyMatch(d -> d.getSection().equals("Seat Allocation Data")
+                && d.getItem().equals("Blue")));
+        assertTrue(verifier.generateReport().contains("\nDiscrepancies:\n - [Parties & Candidates] Party: Red: audit "
+                + "\"4 (80.00% of total)\", recount \"5 (100.00% of total)\"\n"));
+    }
+
+    /**
+     * Tests that the tie selections of a JSON Lines audit are replayed even where the recorded seed would draw
+     * differently, and that without them, or in place of an invalid one, the seed's draw is used.
+     */
+    @Test
+    @DisplayName("recorded tiebreaks")
+    void testTiebreaks(@TempDir Path dir) throws IOException {
+        Path ballots = dir.resolve("ballots.csv");
+        Files.writeString(ballots, BALLOTS);
+        String drawn = winner(dir, 0);
+        long other = 1;
+        while (winner(dir, other).equals(drawn)) {
+            other++;
+        }
+        String audit = audit(ballots, 0, true);
+        Path text = Path.of(audit);
+        // the audit now records the seed that draws the other candidate, but the selection of seed 0
+        Files.writeString(text, Files.readString(text).replace(" - Seed            : 0\n",
+                " - Seed            : " + other + "\n"));
+
+        AuditVerifier verifier = new AuditVerifier(audit, List.of(ballots.toString()), 1);
+        assertEquals(List.of(), verifier.verify());
+        assertTrue(verifier.generateReport().contains(" - Tiebreaks       : replayed from 1 recorded selections\n"));
+
+        // a selection out of range is reported and the seed's draw is used instead
+        Path jsonl = dir.resolve("audit.jsonl");
+        String recorded = Files.readString(jsonl);
+        Files.writeString(jsonl, recorded.replaceAll("\"selected\":\\[\\d+]", "\"selected\":[7]"));
+        List<AuditVerifier.Discrepancy> tampered = verifier.verify();
+        AuditVerifier.Discrepancy tie = tampered.stream().filter(d -> d.getSection().equals("Tiebreaks"))
+                .findFirst().orElseThrow();
+        assertEquals("Tie 1", tie.getItem());
+        assertEquals("[7]", tie.getAuditValue());
+        assertTrue(tampered.stream().anyMatch(d -> d.getItem().equals(drawn + " (Red)")
+                && d.getRecountValue() == null));
+
+        Files.delete(jsonl);
+        List<AuditVerifier.Discrepancy> discrepancies = verifier.verify();
+        assertTrue(discrepancies.stream().anyMatch(d -> d.getSection().equals("Seat Winners and their Party "
+                + "Affiliation") && d.getItem().equals(drawn + " (Red)") && d.getRecountValue() == null));
+    }
+
+    /**
+     * Tests that a ballot file is found from the audit's commitment and hashed again, so an edit that keeps every
+     * count shows only as a different Merkle root, and the keys the audit is parsed into.
+     */
+    @Test
+    @DisplayName("commitments and parsing")
+    void testCommitment(@TempDir Path dir) throws IOException {
+        Path ballots = dir.resolve("ballots.csv");
+        Files.writeString(ballots, BALLOTS);
+        FileInput fin = new FileInput(ballots.toString());
+        fin.setMerkleChunkSize(16);
+        assertTrue(fin.isOPL());
+        Election election = new OPLElection();
+        election.processBallotData(fin);
+        election.allocatePartySeats();
+        election.assignCandidateSeats();
+        String audit = dir.resolve("audit.txt").toString();
+        election.generateAuditFile(audit);
+
+        Map<String, Map<String, String>> sections = AuditVerifier.parse(Files.readString(Path.of(audit)));
+        assertEquals("5", sections.get("OPL Election").get("Ballot Count"));
+        assertEquals("16 bytes", sections.get("Ballot Commitment (" + ballots + ")").get("Chunk Size"));
+        assertEquals("4 (80.00% of total)", sections.get("Parties & Candidates").get("Party: Red"));
+        assertEquals("1 | 0 | 1 | 0 | 0 | 20.00% / 0.00%", sections.get("Seat Allocation Data").get("Blue"));
+
+        AuditVerifier verifier = new AuditVerifier(audit, List.of(), 2);
+        assertEquals(List.of(), verifier.verify());
+        assertTrue(verifier.generateReport().contains(" - Ballot File     : " + ballots + "\n"));
+
+        // swap the two Ann ballots with the two Bob ballots: same counts, different file
+        Files.writeString(ballots, BALLOTS.replace("1,,\n,1,\n1,,\n,1,\n", ",1,\n1,,\n,1,\n1,,\n"));
+        List<AuditVerifier.Discrepancy> discrepancies = verifier.verify();
+        assertEquals(1, discrepancies.size());
+        assertEquals("Merkle Root", discrepancies.get(0).getItem());
+        assertNotEquals(discrepancies.get(0).getAuditValue(), discrepancies.get(0).getRecountValue());
+    }
+}
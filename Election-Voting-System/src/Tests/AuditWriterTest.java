@@ -0,0 +1,132 @@
+/*
+AuditWriterTest.java
+
+Unit tests for the AuditWriter class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditWriterTest {
+    /**
+     * The row pattern of the allocation table.
+     */
+    private static final String ROW = " | %-15s | %,10d | %,25d | %10s |  %6.2f%%   /  %6.2f%%   |\n";
+
+    /**
+     * Tests rows written by a RowFormat against String.format, in locales with other separators, for random values
+     * and the values whose rounding or sign is special.
+     */
+    @Test
+    @DisplayName("same rows as String.format")
+    void testRowFormat() {
+        Locale original = Locale.getDefault(Locale.Category.FORMAT);
+        double[] special = {0.0, -0.0, 0.125, 0.005, 1.005, 2.675, 99.995, 100.0, Double.NaN,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1e-9, 12345678.9, 33.333333333333336};
+        try {
+            for (Locale locale : new Locale[]{Locale.US, Locale.GERMANY, Locale.FRANCE, new Locale("de", "CH")}) {
+                Locale.setDefault(Locale.Category.FORMAT, locale);
+                AuditWriter.RowFormat format = new AuditWriter.RowFormat(ROW);
+                Random random = new Random(21);
+                StringBuilder expected = new StringBuilder();
+                String actual = AuditWriter.capture(out -> {
+                    for (int i = 0; i < 2000; i++) {
+                        Object[] args = {
+                                i % 7 == 0 ? "A party name longer than the column" : "Party" + i,
+                                i % 5 == 0 ? -random.nextInt(1000000) : random.nextInt(),
+                                random.nextLong(),
+                                i % 3 == 0 ? null : "x",
+                                i < special.length ? special[i] : random.nextDouble() * 100,
+                                (double) random.nextInt(1000) / (1 + random.nextInt(1000)) * 100
+                        };
+                        expected.append(String.format(ROW, args));
+                        format.write(out, args);
+                    }
+                });
+                assertEquals(expected.toString(), actual, locale.toString());
+            }
+        } finally {
+            Locale.setDefault(Locale.Category.FORMAT, original);
+        }
+        assertThrows(RuntimeException.class, () -> new AuditWriter.RowFormat("%x"));
+        assertThrows(RuntimeException.class, () -> new AuditWriter.RowFormat("%,s"));
+    }
+
+    /**
+     * Tests that a file written in many pieces, with characters outside the default charset and surrogate pairs
+     * split across the buffer's edge, has the same bytes as one written by a PrintWriter.
+     */
+    @Test
+    @DisplayName("same bytes as PrintWriter")
+    void testEncoding(@TempDir Path dir) throws IOException {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(21);
+        String[] pieces = {"Ann", "\u00e9l\u00e8ve", "\u4e2d\u6587", "\ud83d\uddf3", "\n", ", ", "\ud800"};
+        while (text.length() < 300000) {
+            text.append(pieces[random.nextInt(pieces.length)]);
+        }
+        Path expectedFile = dir.resolve("expected.txt");
+        try (PrintWriter printWriter = new PrintWriter(expectedFile.toString())) {
+            printWriter.write(text.toString());
+        }
+
+        Path actualFile = dir.resolve("actual.txt");
+        try (AuditWriter out = new AuditWriter(actualFile.toString())) {
+            int start = 0;
+            while (start < text.length()) {
+                int end = Math.min(text.length(), start + 1 + random.nextInt(5000));
+                if (end - start == 1) {
+                    out.append(text.charAt(start));
+                } else {
+                    out.append(text.substring(start, end));
+                }
+                start = end;
+            }
+        }
+        assertArrayEquals(Files.readAllBytes(expectedFile), Files.readAllBytes(actualFile),
+                Charset.defaultCharset().name());
+        assertThrows(RuntimeException.class, () -> new AuditWriter(dir.resolve("missing/audit.txt").toString()));
+    }
+
+    /**
+     * Tests that the audit file of an OPL election holds each section as the String methods produce it.
+     */
+    @Test
+    @DisplayName("streamed audit file")
+    void testAuditFile(@TempDir Path dir) throws IOException {
+        StringBuilder ballots = new StringBuilder("OPL\n2\n7\n4\nRed, Ann\nRed, Bob\nBlue, Cat\nBlue, Dan\n");
+        for (int candidate : new int[]{0, 0, 1, 2, 2, 3, 0}) {
+            ballots.append(",".repeat(candidate)).append("1").append(",".repeat(3 - candidate)).append("\n");
+        }
+        Path file = dir.resolve("opl.csv");
+        Files.writeString(file, ballots.toString());
+        FileInput fin = new FileInput(file.toString());
+        assertTrue(fin.isOPL());
+        OPLElection election = new OPLElection();
+        election.processBallotData(fin);
+        election.allocatePartySeats();
+        election.assignCandidateSeats();
+
+        Path audit = dir.resolve("audit.txt");
+        election.generateAuditFile(audit.toString());
+        String contents = Files.readString(audit, Charset.defaultCharset());
+        assertTrue(contents.startsWith("OPL Election:\n"));
+        assertTrue(contents.contains("\n" + election.generatePartyCandidateList() + "\n"));
+        assertTrue(contents.contains("   - Candidate: Ann, Votes: 3 (42.86% of total)\n"));
+        assertTrue(contents.contains("Candidate Margins:\n"));
+        assertTrue(contents.endsWith("Seat Winners and their Party Affiliation:\n - Ann (Red)\n - Cat (Blue)\n"));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+BallotIndexTest.java
+
+Unit tests for the BallotIndex class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BallotIndexTest {
+    /**
+     * Writes a CPL election with 3 parties.
+     *
+     * @param file       the file to write.
+     * @param ballots    the ballot lines.
+     * @param terminator the line terminator.
+     * @throws IOException if the file could not be written.
+     */
+    private void writeElection(Path file, List<String> ballots, String terminator) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        List<String> header = List.of("CPL", "2", String.valueOf(ballots.size()), "3", "Democratic, Joe",
+                "Republican, Allen", "Green, Ross");
+        for (String line : header) {
+            builder.append(line).append(terminator);
+        }
+        for (String ballot : ballots) {
+            builder.append(ballot).append(terminator);
+        }
+        Files.writeString(file, builder);
+    }
+
+    /**
+     * Tallies a file, writing its index.
+     *
+     * @param file      the ballot file.
+     * @param stride    the index stride.
+     * @param readAhead whether to read ahead instead of memory-mapping.
+     */
+    private void tally(Path file, int stride, boolean readAhead) {
+        FileInput fin = new FileInput(file.toString());
+        fin.setIndexStride(stride);
+        if (readAhead) {
+            fin.setReadAhead(5, 2);
+        }
+        assertFalse(fin.isOPL());
+        new CPLElection().processBallotData(fin);
+    }
+
+    /**
+     * Tests random access to ballot lines of varying lengths, on both tally paths.
+     */
+    @Test
+    @DisplayName("variable-length lines")
+    void testVariable(@TempDir Path dir) throws IOException {
+        List<String> ballots = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ballots.add(i % 3 == 0 ? "1,," : i % 3 == 1 ? " , 1 ," : ",,\t1");
+        }
+        Path file = dir.resolve("ballots.csv");
+        writeElection(file, ballots, "\r\n");
+
+        for (boolean readAhead : new boolean[]{false, true}) {
+            tally(file, 7, readAhead);
+            try (BallotIndex index = BallotIndex.open(file.toString())) {
+                assertFalse(index.isFixedLength());
+                assertEquals(1000, index.getBallotCount());
+                for (int i = 0; i < 1000; i++) {
+                    assertEquals(ballots.get(i), index.getBallot(i));
+                }
+                assertEquals(ballots.subList(495, 520), index.getBallots(495, 25));
+                assertThrows(RuntimeException.class, () -> index.getBallots(990, 11));
+            }
+        }
+    }
+
+    /**
+     * Tests that a file with equal-length "\r\n" lines is indexed by its line length alone.
+     */
+    @Test
+    @DisplayName("fixed-length lines")
+    void testFixed(@TempDir Path dir) throws IOException {
+        List<String> ballots = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ballots.add(new String[]{"1,,", ",1,", ",,1"}[i * 5 % 3]);
+        }
+        Path file = dir.resolve("ballots.csv");
+        writeElection(file, ballots, "\r\n");
+        tally(file, 64, false);
+        try (BallotIndex index = BallotIndex.open(file.toString())) {
+            assertTrue(index.isFixedLength());
+            for (int i = 0; i < 500; i++) {
+                assertEquals(ballots.get(i), index.getBallot(i));
+            }
+        }
+        assertTrue(Files.size(Path.of(file + BallotIndex.SUFFIX)) < 100);
+    }
+
+    /**
+     * Tests that an index is refused once its ballot file has changed.
+     */
+    @Test
+    @DisplayName("out of date")
+    void testStale(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("ballots.csv");
+        writeElection(file, List.of("1,,", ",1,"), "\n");
+        tally(file, 1, false);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 5000));
+        assertThrows(RuntimeException.class, () -> BallotIndex.open(file.toString()));
+    }
+}
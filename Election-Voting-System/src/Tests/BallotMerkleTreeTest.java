@@ -0,0 +1,192 @@
+/*
+BallotMerkleTreeTest.java
+
+Unit tests for the BallotMerkleTree class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BallotMerkleTreeTest {
+    /**
+     * The ballot file of the tests, with ballots of different lengths.
+     */
+    private static final String BALLOTS = "OPL\n2\n9\n4\nRed, Ann\nRed, Bob\nBlue, Cat\nBlue, Dan\n"
+            + "1,,,\n,1,,\n,,1,\n,,,1\n1,,,\n1,1,,\n,,1,\n,,,\n1,,,";
+
+    /**
+     * Computes the root of a file the way the tree is specified, one level at a time.
+     *
+     * @param bytes     the file contents.
+     * @param chunkSize the chunk size.
+     * @return the root.
+     */
+    private static byte[] expectedRoot(byte[] bytes, int chunkSize) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        List<byte[]> level = new ArrayList<>();
+        for (int start = 0; start < Math.max(bytes.length, 1); start += chunkSize) {
+            digest.update((byte) 0);
+            digest.update(bytes, start, Math.min(chunkSize, bytes.length - start));
+            level.add(digest.digest());
+        }
+        while (level.size() > 1) {
+            List<byte[]> next = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += 2) {
+                if (i + 1 < level.size()) {
+                    digest.update((byte) 1);
+                    digest.update(level.get(i));
+                    next.add(digest.digest(level.get(i + 1)));
+                } else {
+                    next.add(level.get(i));
+                }
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * Tallies a ballot file with hashing, like the driver does.
+     *
+     * @param file      the ballot file.
+     * @param chunkSize the chunk size.
+     * @return the counted election.
+     */
+    private Election count(Path file, int chunkSize) {
+        FileInput fin = new FileInput(file.toString());
+        fin.setThreadCount(3);
+        fin.setMerkleChunkSize(chunkSize);
+        assertTrue(fin.isOPL());
+        Election election = new OPLElection();
+        election.processBallotData(fin);
+        election.setTiebreaker(new Tiebreaker(Tiebreaker.Source.SPLITTABLE, 24L));
+        election.allocatePartySeats();
+        election.assignCandidateSeats();
+        return election;
+    }
+
+    /**
+     * Tests that a hashed tally commits to the file in the audit and the sidecar, and that every ballot, including
+     * the last one without a terminator, is proved against the audit's root, chunk size and chunk count alone.
+     */
+    @Test
+    @DisplayName("root and ballot proofs")
+    void testProofs(@TempDir Path dir) throws IOException, NoSuchAlgorithmException {
+        Path file = dir.resolve("ballots.csv");
+        Files.writeString(file, BALLOTS);
+        byte[] bytes = Files.readAllBytes(file);
+        int chunkSize = 8;
+        Election election = count(file, chunkSize);
+        String root = HexFormat.of().formatHex(expectedRoot(bytes, chunkSize));
+        int chunkCount = (bytes.length + chunkSize - 1) / chunkSize;
+        long ballotOffset = BALLOTS.indexOf("1,,,\n");
+
+        Path audit = dir.resolve("audit.txt");
+        election.generateAuditFile(audit.toString());
+        String text = Files.readString(audit);
+        assertTrue(text.contains("Ballot Commitment (" + file + "):\n - Merkle Root   : " + root + "\n"));
+        assertTrue(text.contains(" - Chunk Size    : 8 bytes\n - Chunk Count   : " + chunkCount + "\n"
+                + " - Ballot Offset : " + ballotOffset + "\n"));
+        assertTrue(text.indexOf("Ballot Commitment") < text.indexOf("Ballot Validation"));
+
+        BallotMerkleTree tree = BallotMerkleTree.open(file.toString());
+        assertEquals(root, tree.getRootHex());
+        assertEquals(chunkCount, tree.getChunkCount());
+        String[] lines = BALLOTS.substring((int) ballotOffset).split("\n");
+        int depth = 32 - Integer.numberOfLeadingZeros(chunkCount - 1);
+        for (int ballot = 0; ballot < lines.length; ballot++) {
+            BallotMerkleTree.Proof proof = tree.proveBallot(ballot);
+            assertEquals(lines[ballot], proof.getLine());
+            assertTrue(proof.verify(root, chunkSize, chunkCount, ballotOffset, lines[ballot]), "ballot " + ballot);
+            assertTrue(proof.getHashCount() <= depth * 2);
+            assertFalse(proof.verify(root, chunkSize, chunkCount, ballotOffset, lines[ballot] + ","));
+            assertFalse(proof.verify(root, chunkSize * 2, chunkCount, ballotOffset, null));
+        }
+        assertThrows(RuntimeException.class, () -> tree.proveBallot(lines.length));
+
+        // a header line is in the file but is not a ballot
+        BallotMerkleTree.Proof header = new BallotMerkleTree.Proof(0, 0, 0, 3, 0,
+                new byte[][]{Arrays.copyOf(bytes, chunkSize)}, new byte[][][]{tree.getPath(0)});
+        assertEquals("OPL", header.getLine());
+        assertTrue(header.verify(root, chunkSize, chunkCount, 0, "OPL"));
+        assertFalse(header.verify(root, chunkSize, chunkCount, ballotOffset, "OPL"));
+
+        // a changed ballot no longer hashes to the root
+        byte[] forged = bytes.clone();
+        int at = (int) ballotOffset;
+        forged[at] = ',';
+        forged[at + 1] = '1';
+        int first = (at - 1) / chunkSize;
+        byte[][] chunks = {Arrays.copyOfRange(forged, first * chunkSize, (first + 1) * chunkSize),
+                Arrays.copyOfRange(forged, (first + 1) * chunkSize, (first + 2) * chunkSize)};
+        BallotMerkleTree.Proof fake = new BallotMerkleTree.Proof(0, at, at - first * chunkSize, 4, first, chunks,
+                new byte[][][]{tree.getPath(first), tree.getPath(first + 1)});
+        assertEquals(",1,,", fake.getLine());
+        assertFalse(fake.verify(root, chunkSize, chunkCount, ballotOffset, ",1,,"));
+    }
+
+    /**
+     * Tests proofs of "\r\n" ballot lines found through a ballot index, which straddle chunks, and that the tree of
+     * a changed file is refused.
+     */
+    @Test
+    @DisplayName("indexed ballots across chunks")
+    void testIndexed(@TempDir Path dir) throws IOException, NoSuchAlgorithmException {
+        Path file = dir.resolve("ballots.csv");
+        StringBuilder ballots = new StringBuilder("OPL\r\n2\r\n500\r\n4\r\nRed, Ann\r\nRed, Bob\r\nBlue, Cat\r\n"
+                + "Blue, Dan\r\n");
+        for (int b = 0; b < 500; b++) {
+            String[] marks = {"", "", "", ""};
+            marks[b * 7 % 4] = b % 3 == 0 ? "1" : "01";
+            ballots.append(String.join(",", marks)).append("\r\n");
+        }
+        Files.writeString(file, ballots.toString());
+        byte[] bytes = Files.readAllBytes(file);
+        int chunkSize = 13;
+        FileInput fin = new FileInput(file.toString());
+        fin.setMerkleChunkSize(chunkSize);
+        fin.setIndexStride(16);
+        assertTrue(fin.isOPL());
+        Election election = new OPLElection();
+        election.processBallotData(fin);
+        BallotMerkleTree tree = fin.getMerkleTree();
+        String root = HexFormat.of().formatHex(expectedRoot(bytes, chunkSize));
+        assertEquals(root, tree.getRootHex());
+
+        int straddling = 0;
+        try (BallotIndex index = BallotIndex.open(file.toString())) {
+            for (int ballot = 0; ballot < 500; ballot++) {
+                BallotMerkleTree.Proof proof = tree.proveBallot(ballot);
+                assertTrue(proof.verify(root, chunkSize, tree.getChunkCount(), tree.getBallotOffset(),
+                        index.getBallot(ballot)));
+                long end = proof.getOffset() + proof.getLine().length() - 1;
+                if (proof.getOffset() / chunkSize != end / chunkSize) {
+                    straddling++;
+                }
+            }
+        }
+        assertTrue(straddling > 0);
+
+        Files.writeString(file, ballots.toString().replace("01,", "1,"));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        assertThrows(RuntimeException.class, () -> BallotMerkleTree.open(file.toString()));
+        assertThrows(RuntimeException.class, () -> tree.proveBallot(0));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+BallotScannerTest.java
+
+Unit tests for the BallotScanner class.
+
+*/
+
+import AES.BallotScanner;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BallotScannerTest {
+    /**
+     * Tallies {@code ballots} by feeding the scanner {@code step} bytes at a time.
+     *
+     * @param ballots      the ballot section text.
+     * @param votableCount the number of votable entities.
+     * @param ballotCount  the number of ballots to tally.
+     * @param step         the number of bytes per scan call.
+     * @return the scanner after finishing.
+     */
+    private BallotScanner tally(String ballots, int votableCount, int ballotCount, int step) {
+        ByteBuffer buffer = ByteBuffer.wrap(ballots.getBytes(StandardCharsets.US_ASCII));
+        BallotScanner scanner = new BallotScanner(votableCount, ballotCount);
+        int position = 0;
+        while (position < buffer.limit() && !scanner.isDone()) {
+            position = scanner.scan(buffer, position, Math.min(position + step, buffer.limit()));
+        }
+        scanner.finish();
+        return scanner;
+    }
+
+    /**
+     * Tests that the tally does not depend on how the input is split.
+     */
+    @Test
+    @DisplayName("split input")
+    void testSplit() {
+        String ballots = "1,,,\n,,,1\n,1,,\n,1,,\n,,1,\n";
+        for (int step = 1; step <= ballots.length(); step++) {
+            BallotScanner scanner = tally(ballots, 4, 5, step);
+            assertArrayEquals(new int[]{1, 2, 1, 1}, scanner.getVotes());
+            assertEquals(5, scanner.getBallotsScanned());
+        }
+    }
+
+    /**
+     * Tests "\r\n" line terminators and a final line without a terminator.
+     */
+    @Test
+    @DisplayName("CRLF, no trailing newline")
+    void testLineTerminators() {
+        BallotScanner scanner = tally(",1,\r\n1,,\r\n,,1", 3, 3, 2);
+        assertArrayEquals(new int[]{1, 1, 1}, scanner.getVotes());
+        assertEquals(3, scanner.getBallotsScanned());
+    }
+
+    /**
+     * Tests that the scanner stops consuming input after the ballot limit.
+     */
+    @Test
+    @DisplayName("ballot limit")
+    void testLimit() {
+        BallotScanner scanner = tally("1,\n,1\n,1\ntrailing text\n", 2, 2, 64);
+        assertTrue(scanner.isDone());
+        assertArrayEquals(new int[]{1, 1}, scanner.getVotes());
+    }
+}
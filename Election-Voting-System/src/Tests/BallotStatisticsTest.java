@@ -0,0 +1,136 @@
+/*
+BallotStatisticsTest.java
+
+Unit tests for ballot validation and the BallotStatistics class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BallotStatisticsTest {
+    /**
+     * A CPL election with 3 parties declaring 8 ballots: 3 valid, an undervote, an overvote, a line with too few
+     * entries, a blank line and a line with another character, followed by one extra line.
+     */
+    private static final String ELECTION = "CPL\n2\n8\n3\n"
+            + "Democratic, Joe, Sally\nRepublican, Allen\nIndependent, Ross\n"
+            + "1,,\n,1,\n,,\n1,1,\n,1\n\n,x,1\n, 1 ,\n1,,\n";
+
+    /**
+     * Counts the election in a file.
+     *
+     * @param filename the ballot file.
+     * @param policy   the spoilage policy.
+     * @return the election after counting.
+     */
+    private Election count(String filename, BallotStatistics.Policy policy) {
+        FileInput fin = FileInput.open(filename);
+        fin.setSpoilagePolicy(policy);
+        assertFalse(fin.isOPL());
+        Election election = new CPLElection();
+        election.processBallotData(fin);
+        return election;
+    }
+
+    /**
+     * Tests that the scanner classifies each kind of line and counts only valid ballots.
+     */
+    @Test
+    @DisplayName("scanner classification")
+    void testScanner() {
+        String ballots = "1,,\n,1,\n,,\n1,1,\n,1\n\n,x,1\n, 1 ,\n";
+        ByteBuffer buffer = ByteBuffer.wrap(ballots.getBytes(StandardCharsets.US_ASCII));
+        BallotScanner scanner = new BallotScanner(3, 8, BallotStatistics.Policy.QUARANTINE);
+        scanner.scan(buffer, 0, buffer.limit());
+        scanner.finish();
+        assertArrayEquals(new int[]{1, 2, 0}, scanner.getVotes());
+
+        BallotStatistics statistics = scanner.getStatistics("ballots.csv", 8, 0);
+        assertEquals(8, statistics.getRead());
+        assertEquals(3, statistics.getValid());
+        assertEquals(1, statistics.getUndervotes());
+        assertEquals(1, statistics.getOvervotes());
+        assertEquals(3, statistics.getMalformed());
+        assertEquals(List.of("ballots.csv: ballot 4 (overvote)", "ballots.csv: ballot 5 (malformed)",
+                "ballots.csv: ballot 6 (malformed)", "ballots.csv: ballot 7 (malformed)"),
+                statistics.getQuarantined());
+    }
+
+    /**
+     * Tests that a sequential file tally keeps the statistics, including extra lines, and that skipping spoiled
+     * ballots lists none of them.
+     */
+    @Test
+    @DisplayName("file statistics")
+    void testFile(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("ballots.csv");
+        Files.writeString(csv, ELECTION);
+
+        Election election = count(csv.toString(), BallotStatistics.Policy.SKIP);
+        assertEquals(1, election.getParties()[0].getVoteCount());
+        assertEquals(2, election.getParties()[1].getVoteCount());
+        BallotStatistics statistics = election.getBallotStatistics();
+        assertEquals(8, statistics.getDeclared());
+        assertEquals(3, statistics.getValid());
+        assertEquals(0, statistics.getMissing());
+        assertEquals(1, statistics.getExtra());
+        assertTrue(statistics.getQuarantined().isEmpty());
+
+        statistics = count(csv.toString(), BallotStatistics.Policy.QUARANTINE).getBallotStatistics();
+        assertEquals(4, statistics.getQuarantined().size());
+        assertTrue(statistics.generateReport().contains(" - Overvotes          : 1\n"));
+    }
+
+    /**
+     * Tests that a file with fewer ballots than declared is counted, with the shortfall reported as missing.
+     */
+    @Test
+    @DisplayName("missing ballots")
+    void testMissing(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("short.csv");
+        Files.writeString(csv, ELECTION.replace("CPL\n2\n8\n", "CPL\n2\n12\n"));
+        BallotStatistics statistics = count(csv.toString(), BallotStatistics.Policy.SKIP).getBallotStatistics();
+        assertEquals(9, statistics.getRead());
+        assertEquals(3, statistics.getMissing());
+        assertEquals(4, statistics.getValid());
+    }
+
+    /**
+     * Tests that the binary single-choice encodings keep the classification of spoiled ballots.
+     */
+    @Test
+    @DisplayName("binary statistics")
+    void testBinary(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("ballots.csv");
+        Files.writeString(csv, ELECTION);
+        BallotStatistics expected = count(csv.toString(), BallotStatistics.Policy.QUARANTINE).getBallotStatistics();
+
+        for (BinaryBallotFile.Encoding encoding : new BinaryBallotFile.Encoding[]{
+                BinaryBallotFile.Encoding.FIXED, BinaryBallotFile.Encoding.VARINT}) {
+            Path binary = dir.resolve("ballots." + encoding + ".aesb");
+            BinaryBallotFile.convert(csv.toString(), binary.toString(), encoding);
+            BallotStatistics actual = count(binary.toString(), BallotStatistics.Policy.QUARANTINE)
+                    .getBallotStatistics();
+            assertEquals(expected.getValid(), actual.getValid(), encoding.toString());
+            assertEquals(expected.getUndervotes(), actual.getUndervotes(), encoding.toString());
+            assertEquals(expected.getOvervotes(), actual.getOvervotes(), encoding.toString());
+            assertEquals(expected.getMalformed(), actual.getMalformed(), encoding.toString());
+            assertEquals(expected.getQuarantined().size(), actual.getQuarantined().size(), encoding.toString());
+        }
+        Path bitmap = dir.resolve("ballots.bitmap.aesb");
+        assertThrows(RuntimeException.class, () -> BinaryBallotFile.convert(csv.toString(), bitmap.toString(),
+                BinaryBallotFile.Encoding.BITMAP));
+    }
+}
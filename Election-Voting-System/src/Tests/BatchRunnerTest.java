@@ -0,0 +1,104 @@
+/*
+BatchRunnerTest.java
+
+Unit tests for the BatchRunner class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRunnerTest {
+    private static final String CPL_HEADER = "CPL\n3\n%d\n3\nDemocratic, Joe, Sally\nRepublican, Allen\nGreen, Bethany\n";
+
+    /**
+     * Writes a district ballot file of CPL ballots.
+     *
+     * @param file    the file.
+     * @param ballots the party marked on each ballot.
+     * @throws IOException if the file could not be written.
+     */
+    private void writeDistrict(Path file, int... ballots) throws IOException {
+        StringBuilder builder = new StringBuilder(String.format(CPL_HEADER, ballots.length));
+        for (int party : ballots) {
+            builder.append(",".repeat(party)).append("1").append(",".repeat(2 - party)).append("\n");
+        }
+        Files.writeString(file, builder.toString());
+    }
+
+    /**
+     * Tests a batch of districts listed in a manifest, one of them missing: every other district is audited exactly
+     * as a single run with its seed would audit it, and the summary totals them.
+     */
+    @Test
+    @DisplayName("manifest of districts")
+    void testBatch(@TempDir Path dir) throws IOException {
+        Path ballots = Files.createDirectory(dir.resolve("ballots"));
+        writeDistrict(ballots.resolve("north.csv"), 0, 0, 1, 2, 1, 0);
+        writeDistrict(ballots.resolve("south.csv"), 1, 1, 1, 2);
+        Path east = Files.createDirectory(ballots.resolve("east"));
+        writeDistrict(east.resolve("p1.csv"), 2, 2, 0);
+        writeDistrict(east.resolve("p2.csv"), 2, 1);
+        Path manifest = dir.resolve("manifest.txt");
+        Files.writeString(manifest, "# election night\nballots/north.csv\n\nballots/south.csv\nballots/east\n"
+                + "ballots/west.csv\nballots/north.csv\n");
+        Path output = Files.createDirectory(dir.resolve("audits"));
+
+        List<String> filenames = BatchRunner.readManifest(manifest.toString());
+        assertEquals(5, filenames.size());
+        assertEquals(ballots.resolve("north.csv").toString(), filenames.get(0));
+
+        BatchRunner batch = new BatchRunner(filenames, 3);
+        batch.setOutputDirectory(output.toString());
+        batch.setTiebreaker(Tiebreaker.Source.SPLITTABLE, 42L);
+        batch.run();
+        BatchRunner.DistrictResult[] results = batch.getResults();
+        assertEquals(1, batch.getFailureCount());
+        assertEquals("west", results[3].getName());
+        assertNotNull(results[3].getError());
+        assertEquals("north_2", results[4].getName());
+        assertEquals(5, results[2].getBallotCount());
+        assertArrayEquals(new int[]{1, 1, 1}, results[1].getPartySeats());
+
+        for (int i : new int[]{0, 1, 4}) {
+            FileInput fin = new FileInput(results[i].getFilename());
+            assertFalse(fin.isOPL());
+            Election election = new CPLElection();
+            election.processBallotData(fin);
+            election.setTiebreaker(new Tiebreaker(Tiebreaker.Source.SPLITTABLE, results[i].getSeed()));
+            election.allocatePartySeats();
+            election.assignCandidateSeats();
+            Path expected = dir.resolve("expected" + i + ".txt");
+            election.generateAuditFile(expected.toString());
+            assertEquals(Files.readString(expected), Files.readString(Path.of(results[i].getAuditFile())));
+        }
+        assertNotEquals(results[0].getSeed(), results[4].getSeed());
+
+        String summary = Files.readString(Path.of(batch.writeSummary()));
+        assertTrue(summary.contains(" - District Count  : 5 (4 completed, 1 failed)\n"));
+        assertTrue(summary.contains(" - Ballot Count    : 21\n"));
+        assertTrue(summary.contains(" - west ("));
+    }
+
+    /**
+     * Tests that a manifest without districts and a batch without threads are rejected.
+     */
+    @Test
+    @DisplayName("invalid batches")
+    void testInvalid(@TempDir Path dir) throws IOException {
+        Path manifest = dir.resolve("manifest.txt");
+        Files.writeString(manifest, "# nothing yet\n\n");
+        assertThrows(RuntimeException.class, () -> BatchRunner.readManifest(manifest.toString()));
+        assertThrows(RuntimeException.class, () -> BatchRunner.readManifest(dir.resolve("none.txt").toString()));
+        assertThrows(RuntimeException.class, () -> new BatchRunner(List.of("a.csv"), 0));
+    }
+}
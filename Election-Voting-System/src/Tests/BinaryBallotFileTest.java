@@ -0,0 +1,126 @@
+/*
+BinaryBallotFileTest.java
+
+Unit tests for the BinaryBallotFile converter and the BinaryInput reader.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryBallotFileTest {
+    /**
+     * Reads an OPL election and returns the candidate vote counts in ballot order.
+     *
+     * @param filename the ballot file.
+     * @return the candidate vote counts.
+     */
+    private int[] candidateVotes(String filename) {
+        FileInput fin = new FileInput(filename);
+        assertTrue(fin.isOPL());
+        Election election = new OPLElection();
+        election.processBallotData(fin);
+        ArrayList<ArrayList<Candidate>> candidates = election.getCandidates();
+        return candidates.stream().flatMap(ArrayList::stream).mapToInt(Candidate::getVoteCount).toArray();
+    }
+
+    /**
+     * Tests that every encoding reads back the same tally as the CSV file, with enough candidates to need 2-byte
+     * fixed records and 2-byte varints.
+     */
+    @Test
+    @DisplayName("300 candidates, all encodings")
+    void testEncodings(@TempDir Path dir) throws IOException {
+        int candidateCount = 300;
+        int ballotCount = 1000;
+        StringBuilder builder = new StringBuilder("OPL\n5\n" + ballotCount + "\n" + candidateCount + "\n");
+        for (int i = 0; i < candidateCount; i++) {
+            builder.append("Party").append(i % 7).append(", C").append(i).append("\n");
+        }
+        for (int i = 0; i < ballotCount; i++) {
+            int choice = i * 37 % candidateCount;
+            builder.append(",".repeat(choice)).append("1").append(",".repeat(candidateCount - 1 - choice)).append("\n");
+        }
+        Path csv = dir.resolve("ballots.csv");
+        Files.writeString(csv, builder);
+        int[] expected = candidateVotes(csv.toString());
+
+        for (BinaryBallotFile.Encoding encoding : BinaryBallotFile.Encoding.values()) {
+            Path binary = dir.resolve("ballots." + encoding + ".aesb");
+            assertEquals(ballotCount, BinaryBallotFile.convert(csv.toString(), binary.toString(), encoding));
+            assertTrue(Files.size(binary) < Files.size(csv));
+            assertArrayEquals(expected, candidateVotes(binary.toString()), encoding.toString());
+        }
+    }
+
+    /**
+     * Tests that files with fewer or more ballot lines than their header declares convert every line, and tally and
+     * report the missing or extra ballots like the CSV file.
+     */
+    @Test
+    @DisplayName("short and long files")
+    void testLineCounts(@TempDir Path dir) throws IOException {
+        String header = "OPL\n1\n%d\n3\nRed, Ann\nRed, Bob\nBlue, Cat\n";
+        String ballots = "1,,\n,1,\n\n,,1\n1,1,\n,,1\n";
+        // 6 lines, one of them blank, and a blank line past them that is not a ballot line
+        String[] files = {String.format(header, 9) + ballots, String.format(header, 4) + ballots + "\n,1,\n"};
+        int[] lines = {6, 7};
+        for (int f = 0; f < files.length; f++) {
+            Path csv = dir.resolve("ballots" + f + ".csv");
+            Files.writeString(csv, files[f]);
+            FileInput fin = new FileInput(csv.toString());
+            assertTrue(fin.isOPL());
+            Election election = new OPLElection();
+            election.processBallotData(fin);
+            BallotStatistics expected = election.getBallotStatistics();
+            assertEquals(f == 0 ? 3 : 0, expected.getMissing());
+            assertEquals(f == 0 ? 0 : 3, expected.getExtra());
+            int[] expectedVotes = candidateVotes(csv.toString());
+
+            for (BinaryBallotFile.Encoding encoding : new BinaryBallotFile.Encoding[]{
+                    BinaryBallotFile.Encoding.FIXED, BinaryBallotFile.Encoding.VARINT}) {
+                Path binary = dir.resolve("ballots" + f + "." + encoding + ".aesb");
+                assertEquals(lines[f], BinaryBallotFile.convert(csv.toString(), binary.toString(), encoding));
+                assertArrayEquals(expectedVotes, candidateVotes(binary.toString()), encoding.toString());
+                fin = new BinaryInput(binary.toString());
+                assertTrue(fin.isOPL());
+                election = new OPLElection();
+                election.processBallotData(fin);
+                BallotStatistics actual = election.getBallotStatistics();
+                assertEquals(expected.getRead(), actual.getRead(), encoding.toString());
+                assertEquals(expected.getMissing(), actual.getMissing(), encoding.toString());
+                assertEquals(expected.getExtra(), actual.getExtra(), encoding.toString());
+                assertEquals(expected.getMalformed(), actual.getMalformed(), encoding.toString());
+            }
+        }
+    }
+
+    /**
+     * Tests that the header lines of a binary file match the CSV file.
+     */
+    @Test
+    @DisplayName("CPLexample.csv header")
+    void testHeader(@TempDir Path dir) {
+        String csv = "Project1/testing/testfiles/CPLexample.csv";
+        Path binary = dir.resolve("CPLexample.aesb");
+        BinaryBallotFile.convert(csv, binary.toString(), BinaryBallotFile.Encoding.VARINT);
+
+        FileInput expected = new FileInput(csv);
+        BinaryInput actual = new BinaryInput(binary.toString());
+        assertEquals(BinaryBallotFile.Encoding.VARINT, actual.getEncoding());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(expected.getLine(), actual.getLine());
+        }
+        assertArrayEquals(expected.tallyVotes(6, 9), actual.tallyVotes(6, 9));
+        expected.close();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+CandidateRankingTest.java
+
+Unit tests for the CandidateRanking class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CandidateRankingTest {
+    /**
+     * Ranks candidates by sorting, most votes first and in list order among equals, as a reference.
+     *
+     * @param votes the votes of each candidate.
+     * @return the list positions in rank order.
+     */
+    private int[] sortedOrder(int[] votes) {
+        return IntStream.range(0, votes.length).boxed()
+                .sorted((a, b) -> votes[a] != votes[b] ? Integer.compare(votes[b], votes[a]) : Integer.compare(a, b))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Tests single and batched vote additions against sorting, and the cutoff of every seat count against the
+     * sorted order.
+     */
+    @Test
+    @DisplayName("same order as sorting")
+    void testRandom() {
+        Random random = new Random(20);
+        for (int trial = 0; trial < 300; trial++) {
+            int[] listSizes = {random.nextInt(30), 1 + random.nextInt(30)};
+            CandidateRanking ranking = new CandidateRanking(listSizes);
+            int[][] votes = {new int[listSizes[0]], new int[listSizes[1]]};
+            for (int step = 0; step < 40; step++) {
+                int party = 1;
+                int range = trial % 2 == 0 ? 3 : 1000;
+                if (random.nextBoolean()) {
+                    int candidate = random.nextInt(listSizes[party]);
+                    int added = random.nextInt(range);
+                    ranking.addVotes(party, candidate, added);
+                    votes[party][candidate] += added;
+                } else {
+                    int[] added = new int[listSizes[party]];
+                    for (int i = 0; i < added.length; i++) {
+                        added[i] = random.nextInt(4) == 0 ? random.nextInt(range) : 0;
+                        votes[party][i] += added[i];
+                    }
+                    ranking.addVotes(party, added);
+                }
+                int[] expected = sortedOrder(votes[party]);
+                assertArrayEquals(expected, ranking.getOrder(party), "trial " + trial + " step " + step);
+
+                int seats = random.nextInt(listSizes[party] + 1);
+                CandidateRanking.Cutoff cutoff = ranking.cutoff(party, seats);
+                int[] winners = cutoff.getWinners();
+                int[] tied = cutoff.getTied();
+                assertEquals(seats, winners.length + cutoff.getTiedSeats());
+                assertArrayEquals(Arrays.copyOf(expected, winners.length), winners);
+                for (int index : tied) {
+                    assertEquals(votes[party][expected[seats - 1]], votes[party][index]);
+                }
+                int tiedVotes = seats > 0 ? votes[party][expected[seats - 1]] : -1;
+                assertEquals(Arrays.stream(votes[party]).filter(v -> v == tiedVotes).count(), tied.length);
+                assertEquals(tied.length > cutoff.getTiedSeats(), cutoff.isTie());
+            }
+            assertArrayEquals(sortedOrder(votes[0]), ranking.getOrder(0));
+        }
+    }
+
+    /**
+     * Tests the tied group of a cutoff and that votes cannot be removed.
+     */
+    @Test
+    @DisplayName("tied group")
+    void testTies() {
+        CandidateRanking ranking = new CandidateRanking(new int[]{6});
+        ranking.addVotes(0, new int[]{5, 9, 5, 2, 5, 9});
+        CandidateRanking.Cutoff cutoff = ranking.cutoff(0, 3);
+        assertArrayEquals(new int[]{1, 5}, cutoff.getWinners());
+        assertArrayEquals(new int[]{0, 2, 4}, cutoff.getTied());
+        assertEquals(1, cutoff.getTiedSeats());
+        assertTrue(cutoff.isTie());
+
+        // the whole group has seats, so no tiebreak is needed
+        cutoff = ranking.cutoff(0, 5);
+        assertArrayEquals(new int[]{1, 5}, cutoff.getWinners());
+        assertArrayEquals(new int[]{0, 2, 4}, cutoff.getTied());
+        assertEquals(3, cutoff.getTiedSeats());
+        assertFalse(cutoff.isTie());
+        assertEquals(0, ranking.cutoff(0, 0).getWinners().length);
+
+        ranking.addVotes(0, 3, 4);
+        assertArrayEquals(new int[]{1, 5, 3, 0, 2, 4}, ranking.getOrder(0));
+        assertThrows(RuntimeException.class, () -> ranking.addVotes(0, 1, -1));
+        assertThrows(RuntimeException.class, () -> ranking.cutoff(0, 7));
+    }
+
+    /**
+     * Tests that an OPL election keeps its ranking through two files, answers cutoffs for other seat counts, and
+     * seats the candidates the cutoff of its own seats names.
+     */
+    @Test
+    @DisplayName("OPL election cutoffs")
+    void testElection(@TempDir Path dir) throws IOException {
+        String header = "OPL\n2\n%d\n4\nRed, Ann\nRed, Bob\nRed, Cat\nBlue, Dan\n";
+        Path first = dir.resolve("first.csv");
+        Files.writeString(first, String.format(header, 3) + "1,,,\n,1,,\n,1,,\n");
+        Path second = dir.resolve("second.csv");
+        Files.writeString(second, String.format(header, 6) + ",,1,\n,,1,\n,,1,\n,,,1\n,,,1\n,,,1\n");
+
+        OPLElection election = new OPLElection();
+        for (Path file : new Path[]{first, second}) {
+            FileInput fin = new FileInput(file.toString());
+            assertTrue(fin.isOPL());
+            election.processBallotData(fin);
+        }
+        // the last seat's candidate is in the group tied with it, even when alone
+        CandidateRanking.Cutoff cutoff = election.getCandidateCutoff(0, 1);
+        assertEquals(0, cutoff.getWinners().length);
+        assertArrayEquals(new int[]{2}, cutoff.getTied());
+        assertFalse(cutoff.isTie());
+        CandidateRanking.Cutoff whatIf = election.getCandidateCutoff(0, 2);
+        assertArrayEquals(new int[]{2}, whatIf.getWinners());
+        assertArrayEquals(new int[]{1}, whatIf.getTied());
+
+        election.allocatePartySeats();
+        election.assignCandidateSeats();
+        assertArrayEquals(new int[]{1, 1}, election.getAllocationData()[4]);
+        assertTrue(election.getCandidates().get(0).get(2).isSat());
+        assertFalse(election.getCandidates().get(0).get(1).isSat());
+        assertTrue(election.getCandidates().get(1).get(0).isSat());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+CandidateSelectionTest.java
+
+Unit tests and a benchmark for the selection of seated candidates in the assignCandidateSeats() method of the
+OPLElection class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CandidateSelectionTest {
+    /**
+     * Builds an election with the given candidate votes and seats per party.
+     *
+     * @param votes the votes of each candidate, per party.
+     * @param seats the seats won by each party.
+     * @param seed  the tiebreak seed.
+     * @return the election, before candidates are seated.
+     */
+    private FakeElection election(int[][] votes, int[] seats, long seed) {
+        ArrayList<ArrayList<Candidate>> candidates = new ArrayList<>();
+        for (int[] partyVotes : votes) {
+            ArrayList<Candidate> partyCandidates = new ArrayList<>();
+            for (int vote : partyVotes) {
+                Candidate candidate = new Candidate("c" + partyCandidates.size());
+                candidate.setVoteCount(vote);
+                partyCandidates.add(candidate);
+            }
+            candidates.add(partyCandidates);
+        }
+        int[][] allocationData = new int[5][votes.length];
+        allocationData[4] = seats;
+        FakeElection election = new FakeElection(allocationData, candidates);
+        election.setTiebreaker(new Tiebreaker(Tiebreaker.Source.SPLITTABLE, seed));
+        return election;
+    }
+
+    /**
+     * Seats the candidates by sorting each party's list, as a reference.
+     *
+     * @param election the election.
+     */
+    private void assignBySorting(FakeElection election) {
+        ArrayList<ArrayList<Candidate>> candidates = election.getCandidateLists();
+        int[] seats = election.getAllocationData()[4];
+        for (int partyNo = 0; partyNo < candidates.size(); partyNo++) {
+            int seatNo = seats[partyNo];
+            if (seatNo > 0) {
+                int[][] sortedCandidates = new int[candidates.get(partyNo).size()][2];
+                for (int i = 0; i < sortedCandidates.length; i++) {
+                    sortedCandidates[i][1] = i;
+                    sortedCandidates[i][0] = candidates.get(partyNo).get(i).getVoteCount();
+                }
+                Arrays.sort(sortedCandidates, Comparator.comparingInt(o -> Integer.MAX_VALUE - o[0]));
+                int tieEnd = seatNo - 1;
+                while (tieEnd + 1 < sortedCandidates.length
+                        && sortedCandidates[tieEnd][0] == sortedCandidates[tieEnd + 1][0]) {
+                    tieEnd++;
+                }
+                int tieStart = seatNo - 1;
+                while (tieStart > 0 && sortedCandidates[tieStart][0] == sortedCandidates[tieStart - 1][0]) {
+                    tieStart--;
+                }
+                int[] indices = election.tiebreak(tieEnd - tieStart + 1, seatNo - tieStart);
+                for (int i = 0; i < tieStart; i++) {
+                    candidates.get(partyNo).get(sortedCandidates[i][1]).giveSeat();
+                }
+                for (int index : indices) {
+                    candidates.get(partyNo).get(sortedCandidates[index + tieStart][1]).giveSeat();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets which candidates have seats.
+     *
+     * @param election the election.
+     * @return the seated flags of each candidate, per party.
+     */
+    private boolean[][] seated(FakeElection election) {
+        ArrayList<ArrayList<Candidate>> candidates = election.getCandidateLists();
+        boolean[][] seated = new boolean[candidates.size()][];
+        for (int i = 0; i < seated.length; i++) {
+            seated[i] = new boolean[candidates.get(i).size()];
+            for (int j = 0; j < seated[i].length; j++) {
+                seated[i][j] = candidates.get(i).get(j).isSat();
+            }
+        }
+        return seated;
+    }
+
+    /**
+     * Tests that selection seats the same candidates as sorting, with the same tiebreaks, on random parties with
+     * many ties.
+     */
+    @Test
+    @DisplayName("same candidates as sorting")
+    void testRandom() {
+        Random random = new Random(14);
+        for (int trial = 0; trial < 1000; trial++) {
+            int partyCount = 1 + random.nextInt(5);
+            int[][] votes = new int[partyCount][];
+            int[] seats = new int[partyCount];
+            for (int i = 0; i < partyCount; i++) {
+                votes[i] = new int[1 + random.nextInt(40)];
+                int range = 1 + random.nextInt(trial % 2 == 0 ? 5 : 10_000);
+                for (int j = 0; j < votes[i].length; j++) {
+                    votes[i][j] = random.nextInt(range);
+                }
+                seats[i] = random.nextInt(votes[i].length + 1);
+            }
+            FakeElection expected = election(votes, seats, trial);
+            assignBySorting(expected);
+            FakeElection actual = election(votes, seats, trial);
+            actual.assignCandidateSeats();
+            assertArrayEquals(seated(expected), seated(actual), "trial " + trial);
+        }
+    }
+
+    /**
+     * Tests a party that won 3 seats among 50,000 write-in candidates, most of them without votes.
+     */
+    @Test
+    @DisplayName("large list")
+    void testLarge() {
+        int[][] votes = new int[1][50_000];
+        Random random = new Random(15);
+        for (int i = 0; i < 500; i++) {
+            votes[0][random.nextInt(50_000)] = random.nextInt(100);
+        }
+        votes[0][123] = 1000;
+        int[] seats = {3};
+
+        for (int run = 0; run < 20; run++) {
+            FakeElection expected = election(votes, seats, run);
+            assignBySorting(expected);
+            FakeElection actual = election(votes, seats, run);
+            actual.assignCandidateSeats();
+            assertArrayEquals(seated(expected), seated(actual), "run " + run);
+            assertTrue(actual.getCandidateLists().get(0).get(123).isSat());
+        }
+    }
+
+    /**
+     * A version of OPLElection with a constructor that sets up seated parties.
+     */
+    private static class FakeElection extends OPLElection {
+        public FakeElection(int[][] allocationData, ArrayList<ArrayList<Candidate>> candidates) {
+            this.electionType = "OPL";
+            this.allocationData = allocationData;
+            this.partyCount = candidates.size();
+            this.candidates = candidates;
+        }
+
+        /**
+         * Gets the candidate lists themselves rather than copies.
+         *
+         * @return the candidate lists.
+         */
+        public ArrayList<ArrayList<Candidate>> getCandidateLists() {
+            return candidates;
+        }
+    }
+}
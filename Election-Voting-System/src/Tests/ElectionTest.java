@@ -212,6 +212,21 @@ public class ElectionTest {
 
         }
 
+        @Override
+        protected int processHeaderData(FileInput fin) {
+            return 0;
+        }
+
+        @Override
+        protected int getVotableCount() {
+            return 0;
+        }
+
+        @Override
+        protected void recordVotes(int[] voteCounts) {
+
+        }
+
         @Override
         public void assignCandidateSeats() {
 
@@ -5,12 +5,19 @@ Unit tests for the FileInput class.
 
 */
 
+import AES.BallotStatistics;
 import AES.FileInput;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -76,4 +83,111 @@ class FileInputTest {
 
         assertEquals("Project1/testing/testfiles/OPLexample.csv", fin.getFilename());
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that a parallel tally of a large ballot section matches the sequential tally, including the statistics,
+     * when the declared ballots end with the file, before its trailing blank lines, in the middle of it, or after it.
+     */
+    @Test
+    @DisplayName("parallel tally")
+    void testParallelTally(@TempDir Path dir) throws IOException {
+        // 3 header lines, then enough ballots to pass the parallel threshold, then 2 blank lines
+        int lineCount = 3_500_000;
+        StringBuilder builder = new StringBuilder("CPL\n1\n" + lineCount + "\n");
+        String[] ballots = {"1,,,\n", ",1,,\n", ",,1,\n", ",,,1\r\n", "1,1,,\n", "x\n"};
+        for (int i = 0; i < lineCount; i++) {
+            builder.append(ballots[i % 7 % 6]);
+        }
+        builder.append("\n\n");
+        Path file = dir.resolve("parallel.csv");
+        Files.writeString(file, builder);
+
+        for (int ballotCount : new int[]{lineCount + 2, lineCount, lineCount - 1_000_001, lineCount + 5}) {
+            FileInput sequential = new FileInput(file.toString());
+            for (int i = 0; i < 3; i++) sequential.getLine();
+            int[] expected = sequential.tallyVotes(4, ballotCount);
+            BallotStatistics expectedStatistics = sequential.getStatistics();
+            sequential.close();
+
+            FileInput parallel = new FileInput(file.toString());
+            parallel.setThreadCount(4);
+            for (int i = 0; i < 3; i++) parallel.getLine();
+            assertArrayEquals(expected, parallel.tallyVotes(4, ballotCount));
+            BallotStatistics statistics = parallel.getStatistics();
+            parallel.close();
+            assertEquals(expectedStatistics.getRead(), statistics.getRead());
+            assertEquals(expectedStatistics.getValid(), statistics.getValid());
+            assertEquals(expectedStatistics.getOvervotes(), statistics.getOvervotes());
+            assertEquals(expectedStatistics.getMalformed(), statistics.getMalformed());
+            assertEquals(expectedStatistics.getMissing(), statistics.getMissing());
+            assertEquals(expectedStatistics.getExtra(), statistics.getExtra());
+        }
+    }
+
+    /**
+     * Tests the exception thrown for a non-positive thread count
+     */
+    @Test
+    @DisplayName("thread count 0")
+    void testBadThreadCount() {
+        fin = new FileInput("Project1/testing/testfiles/CPLexample.csv");
+        assertThrows(RuntimeException.class, () -> fin.setThreadCount(0));
+        fin.close();
+    }
+
+    /**
+     * Tests that a gzip-compressed file reads the same as the original.
+     */
+    @Test
+    @DisplayName("CPLexample.csv.gz")
+    void testGzip(@TempDir Path dir) throws IOException {
+        Path original = Path.of("Project1/testing/testfiles/CPLexample.csv");
+        Path compressed = dir.resolve("CPLexample.csv.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+            Files.copy(original, out);
+        }
+
+        FileInput expected = new FileInput(original.toString());
+        fin = new FileInput(compressed.toString());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(expected.getLine(), fin.getLine());
+        }
+        assertArrayEquals(expected.tallyVotes(6, 9), fin.tallyVotes(6, 9));
+        expected.close();
+        assertDoesNotThrow(() -> fin.close());
+    }
+
+    /**
+     * Tests the exception thrown for a zstd-compressed file
+     */
+    @Test
+    @DisplayName("zstd")
+    void testZstd(@TempDir Path dir) throws IOException {
+        Path compressed = dir.resolve("ballots.csv.zst");
+        Files.write(compressed, new byte[]{(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd, 0, 0});
+        assertThrows(RuntimeException.class, () -> new FileInput(compressed.toString()));
+    }
+
+    /**
+     * Tests that a read-ahead tally with buffers smaller than a line matches the memory-mapped tally, and that the
+     * stall counters account for every buffer.
+     */
+    @Test
+    @DisplayName("read-ahead tally")
+    void testReadAhead() {
+        String filename = "Project1/testing/testfiles/OPLexample.csv";
+        FileInput mapped = new FileInput(filename);
+        for (int i = 0; i < 10; i++) mapped.getLine();
+        int[] expected = mapped.tallyVotes(6, 9);
+        mapped.close();
+
+        fin = new FileInput(filename);
+        fin.setReadAhead(3, 2);
+        for (int i = 0; i < 10; i++) fin.getLine();
+        assertArrayEquals(expected, fin.tallyVotes(6, 9));
+        assertTrue(fin.getReadAhead().getBuffersFilled() > 9);
+        assertTrue(fin.getReadAhead().getConsumerStallNanos() >= 0);
+        assertThrows(RuntimeException.class, () -> fin.setReadAhead(0, 2));
+        fin.close();
+    }
+}
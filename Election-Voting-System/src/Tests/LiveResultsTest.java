@@ -0,0 +1,256 @@
+/*
+LiveResultsTest.java
+
+Unit tests for the LiveResults class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LiveResultsTest {
+    /**
+     * An election whose tiebreak picks the first {@code r} options, so ties go to the lowest party number as in the
+     * projection.
+     */
+    private final Election election = new FakeElection();
+
+    /**
+     * Sets up a CPL election from a header without ballots.
+     *
+     * @param dir       the directory to write the file in.
+     * @param seatCount the number of seats.
+     * @param listSizes the number of candidates of each party.
+     * @return the election.
+     * @throws IOException if the file could not be written.
+     */
+    private Election header(Path dir, int seatCount, int[] listSizes) throws IOException {
+        StringBuilder builder = new StringBuilder("CPL\n" + seatCount + "\n0\n" + listSizes.length + "\n");
+        for (int i = 0; i < listSizes.length; i++) {
+            builder.append("Party").append(i);
+            for (int j = 0; j < listSizes[i]; j++) {
+                builder.append(", C").append(i).append("_").append(j);
+            }
+            builder.append("\n");
+        }
+        Path file = dir.resolve("header.csv");
+        Files.writeString(file, builder.toString());
+        FileInput fin = new FileInput(file.toString());
+        assertFalse(fin.isOPL());
+        Election cpl = new CPLElection();
+        cpl.processBallotData(fin);
+        return cpl;
+    }
+
+    /**
+     * Checks that a snapshot is the largest remainder allocation of its own tallies.
+     *
+     * @param snapshot  the snapshot.
+     * @param listSizes the number of candidates of each party.
+     * @param seatCount the number of seats.
+     */
+    private void assertConsistent(LiveResults.Snapshot snapshot, int[] listSizes, int seatCount) {
+        if (snapshot.getBallotCount() == 0) {
+            return;
+        }
+        int[][] expected = ApportionmentMethod.LARGEST_REMAINDER.allocate(snapshot.getPartyVotes(), listSizes,
+                (int) snapshot.getBallotCount(), seatCount, election);
+        int[][] actual = snapshot.getAllocationData();
+        for (int row = 0; row < 5; row++) {
+            assertArrayEquals(expected[row], actual[row], "row " + row + " of version " + snapshot.getVersion());
+        }
+    }
+
+    /**
+     * Tests batches added by several threads while another publishes snapshots: every snapshot is the allocation of
+     * the ballots it counted, and the last one counts every ballot.
+     */
+    @Test
+    @DisplayName("concurrent batches")
+    void testConcurrent(@TempDir Path dir) throws Exception {
+        Random random = new Random(19);
+        for (int trial = 0; trial < 20; trial++) {
+            int partyCount = 1 + random.nextInt(8);
+            int[] listSizes = new int[partyCount];
+            for (int i = 0; i < partyCount; i++) {
+                listSizes[i] = random.nextInt(trial % 2 == 0 ? 4 : 30);
+            }
+            int seatCount = 1 + random.nextInt(25);
+            LiveResults live = new LiveResults();
+            live.begin(header(dir, seatCount, listSizes));
+
+            int[] totals = new int[partyCount];
+            List<Thread> threads = new ArrayList<>();
+            List<int[]> batches = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                List<int[]> own = new ArrayList<>();
+                for (int b = 0; b < 100; b++) {
+                    int[] votes = new int[partyCount];
+                    int ballots = random.nextInt(20);
+                    for (int v = 0; v < ballots; v++) {
+                        votes[random.nextInt(partyCount)]++;
+                    }
+                    // a few spoiled ballots without votes
+                    int[] batch = new int[partyCount + 1];
+                    System.arraycopy(votes, 0, batch, 0, partyCount);
+                    batch[partyCount] = ballots + random.nextInt(2);
+                    own.add(batch);
+                    batches.add(batch);
+                }
+                threads.add(new Thread(() -> {
+                    for (int[] batch : own) {
+                        live.addBallots(Arrays.copyOf(batch, partyCount), batch[partyCount]);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            while (threads.stream().anyMatch(Thread::isAlive)) {
+                assertConsistent(live.update(), listSizes, seatCount);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            LiveResults.Snapshot last = live.stop();
+            assertConsistent(last, listSizes, seatCount);
+
+            long ballots = 0;
+            for (int[] batch : batches) {
+                for (int i = 0; i < partyCount; i++) {
+                    totals[i] += batch[i];
+                }
+                ballots += batch[partyCount];
+            }
+            assertArrayEquals(totals, last.getPartyVotes());
+            assertEquals(ballots, last.getBallotCount());
+            assertSame(last, live.update());
+        }
+    }
+
+    /**
+     * Tests that an update with the quota unchanged only recomputes the parties that received votes.
+     */
+    @Test
+    @DisplayName("only changed parties recomputed")
+    void testIncremental(@TempDir Path dir) throws IOException {
+        int[] listSizes = {40, 40, 40, 40, 40, 40, 40, 40, 40, 40};
+        LiveResults live = new LiveResults();
+        live.begin(header(dir, 100, listSizes));
+        live.addBallots(new int[]{300, 200, 150, 100, 90, 70, 50, 25, 15, 1}, 1001);
+        LiveResults.Snapshot snapshot = live.update();
+        assertEquals(10, snapshot.getRecomputedParties());
+        assertEquals(11, snapshot.getVotesPerSeat());
+        assertConsistent(snapshot, listSizes, 100);
+
+        // 1006 ballots keep the quota at 11
+        live.addBallots(new int[]{0, 0, 5, 0, 0, 0, 0, 0, 0, 0}, 5);
+        snapshot = live.update();
+        assertEquals(1, snapshot.getRecomputedParties());
+        assertEquals(11, snapshot.getVotesPerSeat());
+        assertConsistent(snapshot, listSizes, 100);
+
+        // 1106 ballots raise it to 12, which changes every party
+        live.addBallots(new int[]{0, 50, 0, 0, 0, 0, 0, 0, 0, 50}, 100);
+        snapshot = live.update();
+        assertEquals(10, snapshot.getRecomputedParties());
+        assertConsistent(snapshot, listSizes, 100);
+        assertEquals(3, snapshot.getVersion());
+    }
+
+    /**
+     * Tests a projection reported by the tally of an OPL file: once every ballot is in, it seats the same parties
+     * and candidates as the election, and a tie is counted.
+     */
+    @Test
+    @DisplayName("OPL file tally")
+    void testOPL(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("opl.csv");
+        StringBuilder builder = new StringBuilder("OPL\n3\n9\n5\nRed, Ann\nBlue, Bob\nRed, Cat\nBlue, Dan\nRed, Eve\n");
+        for (int candidate : new int[]{0, 2, 2, 4, 1, 1, 3, 2, 4}) {
+            builder.append(",".repeat(candidate)).append("1").append(",".repeat(4 - candidate)).append("\n");
+        }
+        Files.writeString(file, builder.toString());
+
+        LiveResults live = new LiveResults();
+        Election opl = new OPLElection();
+        opl.setLiveResults(live);
+        FileInput fin = new FileInput(file.toString());
+        assertTrue(fin.isOPL());
+        opl.processBallotData(fin);
+        LiveResults.Snapshot snapshot = live.stop();
+        opl.allocatePartySeats();
+        opl.assignCandidateSeats();
+
+        assertEquals(9, snapshot.getBallotCount());
+        assertArrayEquals(opl.getAllocationData()[4], snapshot.getSeats());
+        assertArrayEquals(new String[]{"Cat", "Eve"}, snapshot.getSeatedCandidates(0));
+        assertArrayEquals(new String[]{"Bob"}, snapshot.getSeatedCandidates(1));
+        assertEquals(0, snapshot.getTiedSeats());
+        assertTrue(snapshot.generateReport().contains(" | Blue            |          3 |          1 | Bob\n"));
+
+        // three more ballots for Dan raise the quota to 4 and tie the parties at 2 remaining votes for the last seat
+        live.addBallots(new int[]{0, 0, 0, 3, 0}, 3);
+        snapshot = live.update();
+        assertEquals(1, snapshot.getTiedSeats());
+        assertArrayEquals(new int[]{2, 1}, snapshot.getSeats());
+        assertArrayEquals(new String[]{"Cat", "Eve"}, snapshot.getSeatedCandidates(0));
+        assertArrayEquals(new String[]{"Dan"}, snapshot.getSeatedCandidates(1));
+    }
+
+    /**
+     * An implementation of Election whose tiebreak picks the first options.
+     */
+    private static class FakeElection extends Election {
+        @Override
+        public int[] tiebreak(int n, int r) {
+            int[] indices = new int[r];
+            for (int i = 0; i < r; i++) {
+                indices[i] = i;
+            }
+            return indices;
+        }
+
+        @Override
+        public void processBallotData(FileInput fin) {
+
+        }
+
+        @Override
+        protected int processHeaderData(FileInput fin) {
+            return 0;
+        }
+
+        @Override
+        protected int getVotableCount() {
+            return 0;
+        }
+
+        @Override
+        protected void recordVotes(int[] voteCounts) {
+
+        }
+
+        @Override
+        public void assignCandidateSeats() {
+
+        }
+
+        @Override
+        protected String generatePartyCandidateList() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+PrecinctLoaderTest.java
+
+Unit tests for the PrecinctLoader class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrecinctLoaderTest {
+    private static final String CPL_HEADER = "CPL\n3\n%d\n3\nDemocratic, Joe, Sally\nRepublican, Allen\nGreen, Bethany\n";
+
+    /**
+     * Tests that precinct files are merged into one election.
+     */
+    @Test
+    @DisplayName("CPL precincts")
+    void testMerge(@TempDir Path dir) throws IOException {
+        Files.writeString(dir.resolve("p1.csv"), String.format(CPL_HEADER, 3) + "1,,\n1,,\n,1,\n");
+        Files.writeString(dir.resolve("p2.csv"), String.format(CPL_HEADER, 2) + ",,1\n1,,\n");
+        Files.writeString(dir.resolve("p3.csv"), String.format(CPL_HEADER, 4) + ",1,\n,1,\n,,1\n1,,\n");
+
+        List<String> filenames = PrecinctLoader.listDirectory(dir.toString());
+        assertEquals(3, filenames.size());
+
+        Election election = new PrecinctLoader(filenames, 2).load();
+        Party[] parties = election.getParties();
+        assertEquals("CPL", election.getElectionType());
+        assertEquals(9, election.getBallotCount());
+        assertEquals(3, election.getSeatCount());
+        assertEquals(4, parties[0].getVoteCount());
+        assertEquals(3, parties[1].getVoteCount());
+        assertEquals(2, parties[2].getVoteCount());
+    }
+
+    /**
+     * Tests that the statistics of precinct files are recorded in the order the files were given, not the order
+     * their tallies were scheduled in, which is largest first.
+     */
+    @Test
+    @DisplayName("file order")
+    void testFileOrder(@TempDir Path dir) throws IOException {
+        Path small = dir.resolve("small.csv");
+        Path large = dir.resolve("large.csv");
+        Files.writeString(small, String.format(CPL_HEADER, 2) + "1,1,\n1,,\n");
+        Files.writeString(large, String.format(CPL_HEADER, 4) + ",1,\n,1,\n1,,1\n,1,\n");
+
+        PrecinctLoader loader = new PrecinctLoader(List.of(small.toString(), large.toString()), 2);
+        loader.setSpoilagePolicy(BallotStatistics.Policy.QUARANTINE);
+        Election election = loader.load();
+        assertEquals(List.of(small + ": ballot 1 (overvote)", large + ": ballot 3 (overvote)"),
+                election.getBallotStatistics().getQuarantined());
+    }
+
+    /**
+     * Tests that precinct files with different parties are rejected.
+     */
+    @Test
+    @DisplayName("mismatched headers")
+    void testMismatch(@TempDir Path dir) throws IOException {
+        Path p1 = dir.resolve("p1.csv");
+        Path p2 = dir.resolve("p2.csv");
+        Files.writeString(p1, String.format(CPL_HEADER, 1) + "1,,\n");
+        Files.writeString(p2, String.format(CPL_HEADER, 1).replace("Green", "Reform") + "1,,\n");
+
+        PrecinctLoader loader = new PrecinctLoader(List.of(p1.toString(), p2.toString()), 2);
+        assertThrows(RuntimeException.class, loader::load);
+    }
+
+    /**
+     * Tests that precinct files of different election types are rejected.
+     */
+    @Test
+    @DisplayName("mismatched types")
+    void testMismatchedTypes() {
+        PrecinctLoader loader = new PrecinctLoader(List.of("Project1/testing/testfiles/CPLexample.csv",
+                "Project1/testing/testfiles/OPLexample.csv"), 1);
+        assertThrows(RuntimeException.class, loader::load);
+    }
+}
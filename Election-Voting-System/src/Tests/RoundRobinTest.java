@@ -0,0 +1,267 @@
+/*
+RoundRobinTest.java
+
+Unit tests and a benchmark for the round-robin phase of the allocatePartySeats() method in the Election class.
+
+*/
+
+import AES.Candidate;
+import AES.Election;
+import AES.FileInput;
+import AES.Party;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoundRobinTest {
+    /**
+     * Builds the parties and candidate lists of an election.
+     *
+     * @param votes   the votes of each party.
+     * @param sizes   the number of candidates of each party.
+     * @param parties the array to fill with the parties.
+     * @return the candidate lists.
+     */
+    private static ArrayList<ArrayList<Candidate>> candidates(int[] votes, int[] sizes, Party[] parties) {
+        ArrayList<ArrayList<Candidate>> candidates = new ArrayList<>();
+        for (int i = 0; i < votes.length; i++) {
+            parties[i] = new Party("p" + i);
+            parties[i].setVoteCount(votes[i]);
+            candidates.add(new ArrayList<>());
+            for (int j = 0; j < sizes[i]; j++) {
+                candidates.get(i).add(new Candidate("c" + i + "_" + j));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Allocates seats with both the current and the per-seat round-robin and checks the allocation data match.
+     *
+     * @param votes       the votes of each party.
+     * @param sizes       the number of candidates of each party.
+     * @param ballotCount the number of ballots.
+     * @param seatCount   the number of seats.
+     */
+    private void compare(int[] votes, int[] sizes, int ballotCount, int seatCount) {
+        Party[] parties = new Party[votes.length];
+        ArrayList<ArrayList<Candidate>> candidates = candidates(votes, sizes, parties);
+        Election expected = new LegacyElection(votes.length, ballotCount, seatCount, parties, candidates);
+        Election actual = new FakeElection(votes.length, ballotCount, seatCount, parties, candidates);
+        expected.allocatePartySeats();
+        actual.allocatePartySeats();
+        assertArrayEquals(expected.getAllocationData(), actual.getAllocationData(),
+                "votes " + Arrays.toString(votes) + ", sizes " + Arrays.toString(sizes) + ", " + seatCount + " seats");
+    }
+
+    /**
+     * Tests that random elections, with and without ballots, get the same allocation as seat-by-seat rounds.
+     */
+    @Test
+    @DisplayName("same allocation as seat-by-seat rounds")
+    void testRandom() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 5000; trial++) {
+            int partyCount = 1 + random.nextInt(30);
+            int[] votes = new int[partyCount];
+            int[] sizes = new int[partyCount];
+            int totalCandidates = 0;
+            int ballotCount = 0;
+            boolean noBallots = trial % 10 == 0;
+            for (int i = 0; i < partyCount; i++) {
+                sizes[i] = random.nextInt(trial % 3 == 0 ? 3 : 25);
+                votes[i] = noBallots ? 0 : random.nextInt(1000);
+                totalCandidates += sizes[i];
+                ballotCount += votes[i];
+            }
+            // the seat-by-seat rounds never end unless some candidate is left unseated
+            if (totalCandidates < 2) {
+                continue;
+            }
+            compare(votes, sizes, ballotCount, 1 + random.nextInt(totalCandidates - 1));
+        }
+    }
+
+    /**
+     * Tests that an election with more seats than candidates seats every candidate and leaves the other seats empty.
+     */
+    @Test
+    @DisplayName("more seats than candidates")
+    void testTooManySeats() {
+        int[] votes = {50, 30, 20};
+        int[] sizes = {1, 4, 2};
+        Party[] parties = new Party[3];
+        Election election = new FakeElection(3, 100, 12, parties, candidates(votes, sizes, parties));
+        election.allocatePartySeats();
+        int[][] allocationData = election.getAllocationData();
+        assertArrayEquals(new int[]{1, 3, 2}, allocationData[1]);
+        assertArrayEquals(new int[]{1, 4, 2}, allocationData[4]);
+    }
+
+    /**
+     * Tests a national-list election with many seats and parties, where a few long lists take most of the seats,
+     * against seat-by-seat allocation.
+     */
+    @Test
+    @DisplayName("large round-robin")
+    void testLarge() {
+        int partyCount = 1000;
+        int[] votes = new int[partyCount];
+        int[] sizes = new int[partyCount];
+        for (int i = 0; i < partyCount; i++) {
+            votes[i] = 1 + i % 7;
+            sizes[i] = i % 100 == 0 ? 100_000 : 5;
+        }
+        int ballotCount = Arrays.stream(votes).sum();
+        int seatCount = 1_000_000;
+        Party[] parties = new Party[partyCount];
+        ArrayList<ArrayList<Candidate>> candidates = candidates(votes, sizes, parties);
+
+        Election legacy = new LegacyElection(partyCount, ballotCount, seatCount, parties, candidates);
+        legacy.allocatePartySeats();
+        Election election = new FakeElection(partyCount, ballotCount, seatCount, parties, candidates);
+        election.allocatePartySeats();
+        assertArrayEquals(legacy.getAllocationData(), election.getAllocationData());
+    }
+
+    /**
+     * An implementation of Election with a deterministic tiebreak, to compare allocations.
+     */
+    private static class FakeElection extends Election {
+        public FakeElection(int partyCount, int ballotCount, int seatCount, Party[] parties,
+                            ArrayList<ArrayList<Candidate>> candidates) {
+            this.electionType = "CPL";
+            this.partyCount = partyCount;
+            this.ballotCount = ballotCount;
+            this.seatCount = seatCount;
+            this.parties = parties;
+            this.candidates = candidates;
+        }
+
+        @Override
+        public int[] tiebreak(int n, int r) {
+            int[] indices = new int[r];
+            for (int i = 0; i < r; i++) {
+                indices[i] = i;
+            }
+            return indices;
+        }
+
+        @Override
+        public void processBallotData(FileInput fin) {
+
+        }
+
+        @Override
+        protected int processHeaderData(FileInput fin) {
+            return 0;
+        }
+
+        @Override
+        protected int getVotableCount() {
+            return 0;
+        }
+
+        @Override
+        protected void recordVotes(int[] voteCounts) {
+
+        }
+
+        @Override
+        public void assignCandidateSeats() {
+
+        }
+
+        @Override
+        protected String generatePartyCandidateList() {
+            return null;
+        }
+    }
+
+    /**
+     * The allocation with the round-robin phase giving out one seat per party per pass, as a reference.
+     */
+    private static class LegacyElection extends FakeElection {
+        public LegacyElection(int partyCount, int ballotCount, int seatCount, Party[] parties,
+                              ArrayList<ArrayList<Candidate>> candidates) {
+            super(partyCount, ballotCount, seatCount, parties, candidates);
+        }
+
+        @Override
+        public void allocatePartySeats() {
+            allocationData = new int[5][partyCount];
+            boolean[] hasCandidatesLeft = new boolean[partyCount];
+            int numberCandidatesLeft = partyCount;
+            int votesPerSeat = (int) Math.ceil((double) ballotCount / seatCount);
+            int seatsTaken = 0;
+            for (int i = 0; i < partyCount; i++) {
+                allocationData[0][i] = parties[i].getVoteCount();
+                hasCandidatesLeft[i] = true;
+            }
+            if (votesPerSeat != 0) {
+                for (int i = 0; i < partyCount; i++) {
+                    if (allocationData[0][i] / votesPerSeat < candidates.get(i).size()) {
+                        allocationData[1][i] = allocationData[0][i] / votesPerSeat;
+                    } else {
+                        allocationData[1][i] = candidates.get(i).size();
+                        hasCandidatesLeft[i] = false;
+                        numberCandidatesLeft--;
+                    }
+                    allocationData[2][i] = allocationData[0][i] - allocationData[1][i] * votesPerSeat;
+                    seatsTaken += allocationData[1][i];
+                }
+            } else {
+                System.arraycopy(allocationData[0], 0, allocationData[2], 0, partyCount);
+            }
+            int remainingSeats = seatCount - seatsTaken;
+            while (remainingSeats >= numberCandidatesLeft) {
+                for (int i = 0; i < partyCount; i++) {
+                    if (hasCandidatesLeft[i]) {
+                        remainingSeats--;
+                        allocationData[3][i]++;
+                        if (allocationData[1][i] + allocationData[3][i] >= candidates.get(i).size()) {
+                            hasCandidatesLeft[i] = false;
+                            numberCandidatesLeft--;
+                        }
+                    }
+                }
+            }
+            int[][] temp = new int[numberCandidatesLeft][2];
+            int nonEmptyParty = 0;
+            if (remainingSeats != 0) {
+                for (int i = 0; i < partyCount; i++) {
+                    if (hasCandidatesLeft[i]) {
+                        temp[nonEmptyParty][1] = i;
+                        temp[nonEmptyParty][0] = allocationData[2][i];
+                        nonEmptyParty++;
+                    }
+                }
+                Arrays.sort(temp, Comparator.comparingInt(o -> Integer.MAX_VALUE - o[0]));
+                int tieEnd = remainingSeats - 1;
+                while (tieEnd > -1 && tieEnd + 1 < temp.length && (temp[tieEnd][0] == temp[tieEnd + 1][0])) {
+                    tieEnd++;
+                }
+                int tieStart = remainingSeats - 1;
+                while (tieStart > 0 && (temp[tieStart][0] == temp[tieStart - 1][0])) {
+                    tieStart--;
+                }
+                int[] indices = tiebreak(tieEnd - tieStart + 1, remainingSeats - tieStart);
+                for (int iCount = 0; iCount < tieStart; iCount++) {
+                    allocationData[3][temp[iCount][1]]++;
+                }
+                for (int index : indices) {
+                    allocationData[3][temp[index + tieStart][1]]++;
+                }
+            }
+            for (int i = 0; i < partyCount; i++) {
+                allocationData[4][i] = allocationData[3][i] + allocationData[1][i];
+            }
+        }
+    }
+}
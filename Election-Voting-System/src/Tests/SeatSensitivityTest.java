@@ -0,0 +1,248 @@
+/*
+SeatSensitivityTest.java
+
+Unit tests for the seat margins computed by the ApportionmentMethod classes.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SeatSensitivityTest {
+    /**
+     * An election whose tiebreak picks the first {@code r} options, so ties go to the lowest party number.
+     */
+    private final Election election = new FakeElection();
+
+    /**
+     * Gets a party's seats with its votes changed, breaking ties for or against it.
+     *
+     * @param method      the method.
+     * @param votes       the votes of each party.
+     * @param listSizes   the number of candidates of each party.
+     * @param ballotCount the number of ballots.
+     * @param seatCount   the number of seats.
+     * @param party       the party.
+     * @param change      the change to the party's votes, as ballots added or removed.
+     * @param favoured    whether ties go to the party.
+     * @return the party's seats, with the largest remainder quota of the changed ballot count.
+     */
+    private int seats(ApportionmentMethod method, int[] votes, int[] listSizes, int ballotCount, int seatCount,
+                      int party, long change, boolean favoured) {
+        // ties go to the lowest party number, so move the party to the front or the back
+        int partyCount = votes.length;
+        int[] order = new int[partyCount];
+        int next = favoured ? 1 : 0;
+        for (int i = 0; i < partyCount; i++) {
+            if (i != party) {
+                order[next++] = i;
+            }
+        }
+        int place = favoured ? 0 : partyCount - 1;
+        order[place] = party;
+        int[] orderedVotes = new int[partyCount];
+        int[] orderedListSizes = new int[partyCount];
+        for (int i = 0; i < partyCount; i++) {
+            orderedVotes[i] = votes[order[i]];
+            orderedListSizes[i] = listSizes[order[i]];
+        }
+        orderedVotes[place] += (int) change;
+        int[][] allocationData = method.allocate(orderedVotes, orderedListSizes, ballotCount + (int) change, seatCount,
+                election);
+        return allocationData[4][place];
+    }
+
+    /**
+     * Tests the margins against allocating the seats again with every smaller change of each party's votes, with
+     * ties going against the party when it gains and for it when it loses, on random elections.
+     */
+    @Test
+    @DisplayName("same margins as reallocating")
+    void testRandom() {
+        Random random = new Random(17);
+        for (ApportionmentMethod method : new ApportionmentMethod[]{ApportionmentMethod.LARGEST_REMAINDER,
+                ApportionmentMethod.D_HONDT, ApportionmentMethod.SAINTE_LAGUE,
+                ApportionmentMethod.MODIFIED_SAINTE_LAGUE, ApportionmentMethod.HUNTINGTON_HILL}) {
+            int checked = 0;
+            for (int trial = 0; trial < 400; trial++) {
+                int partyCount = 1 + random.nextInt(7);
+                int[] votes = new int[partyCount];
+                int[] listSizes = new int[partyCount];
+                int ballotCount = 0;
+                for (int i = 0; i < partyCount; i++) {
+                    votes[i] = 1 + random.nextInt(trial % 2 == 0 ? 10 : 60);
+                    listSizes[i] = trial % 3 == 0 ? random.nextInt(6) : 20;
+                    ballotCount += votes[i];
+                }
+                int seatCount = 1 + random.nextInt(12);
+                int[][] allocationData = method.allocate(votes, listSizes, ballotCount, seatCount, election);
+                SeatSensitivity sensitivity = method.computeSensitivity(votes, listSizes, ballotCount, seatCount,
+                        allocationData);
+                if (!sensitivity.isAvailable()) {
+                    continue;
+                }
+                checked++;
+                for (int party = 0; party < partyCount; party++) {
+                    String message = method.getName() + " trial " + trial + " party " + party;
+                    int seats = allocationData[4][party];
+
+                    long toGain = sensitivity.getVotesToGain(party);
+                    long limit = toGain == SeatSensitivity.NONE ? 30L * (ballotCount + 1) : toGain;
+                    for (long change = 1; change < limit; change++) {
+                        assertTrue(seats(method, votes, listSizes, ballotCount, seatCount, party, change, false)
+                                <= seats, message + " gains with " + change);
+                    }
+                    if (toGain != SeatSensitivity.NONE) {
+                        assertTrue(seats(method, votes, listSizes, ballotCount, seatCount, party, toGain, false)
+                                > seats, message + " does not gain with " + toGain);
+                    }
+
+                    // a party left without votes ties with every other party without votes, for all its seats
+                    long toLose = sensitivity.getVotesToLose(party);
+                    limit = toLose == SeatSensitivity.NONE ? votes[party] : toLose;
+                    for (long change = 1; change < limit; change++) {
+                        assertTrue(seats(method, votes, listSizes, ballotCount, seatCount, party, -change, true)
+                                >= seats, message + " loses with " + change);
+                    }
+                    if (toLose != SeatSensitivity.NONE) {
+                        assertTrue(seats(method, votes, listSizes, ballotCount, seatCount, party, -toLose, true)
+                                < seats, message + " does not lose with " + toLose);
+                    }
+                }
+            }
+            assertTrue(checked > 150, method.getName() + " checked " + checked);
+        }
+    }
+
+    /**
+     * Tests the margins of worked largest remainder examples, where the quota rises with the ballots a party gains.
+     */
+    @Test
+    @DisplayName("largest remainder example")
+    void testExample() {
+        int[] votes = {60, 25, 15};
+        int[] listSizes = {3, 3, 3};
+        int[][] allocationData = ApportionmentMethod.LARGEST_REMAINDER.allocate(votes, listSizes, 100, 3, election);
+        assertArrayEquals(new int[]{2, 1, 0}, allocationData[4]);
+        SeatSensitivity sensitivity = ApportionmentMethod.LARGEST_REMAINDER.computeSensitivity(votes, listSizes, 100,
+                3, allocationData);
+        // with 155 votes of 195 ballots the quota is 65, and the first party's 25 remaining votes only tie the
+        // second party's; at 158 of 198 the quota is 66 and its 26 remaining votes win the last seat
+        assertEquals(98, sensitivity.getVotesToGain(0));
+        // with 24 votes of 109 ballots the quota is 37, and its 24 remaining votes beat the first party's 23
+        assertEquals(9, sensitivity.getVotesToGain(2));
+        assertEquals(SeatSensitivity.NONE, sensitivity.getVotesToLose(2));
+        assertEquals("Votes gained or lost are ballots added or removed, so the quota of 34 votes per seat is worked "
+                + "out again", sensitivity.getNote());
+
+        // every party has a seat and no candidate left, and keeps it with no votes
+        listSizes = new int[]{1, 1, 1};
+        votes = new int[]{3, 4, 2};
+        allocationData = ApportionmentMethod.LARGEST_REMAINDER.allocate(votes, listSizes, 9, 3, election);
+        sensitivity = ApportionmentMethod.LARGEST_REMAINDER.computeSensitivity(votes, listSizes, 9, 3,
+                allocationData);
+        for (int party = 0; party < 3; party++) {
+            assertEquals(SeatSensitivity.NONE, sensitivity.getVotesToGain(party));
+            assertEquals(SeatSensitivity.NONE, sensitivity.getVotesToLose(party));
+        }
+        assertFalse(ApportionmentMethod.LARGEST_REMAINDER.computeSensitivity(votes, listSizes, 0, 3, allocationData)
+                .isAvailable());
+    }
+
+    /**
+     * Tests the margins of an election with thousands of parties, allocating the seats again at the margins of a few
+     * of the parties.
+     */
+    @Test
+    @DisplayName("thousands of parties")
+    void testLarge() {
+        Random random = new Random(18);
+        int partyCount = 5_000;
+        int[] votes = new int[partyCount];
+        int[] listSizes = new int[partyCount];
+        int ballotCount = 0;
+        for (int i = 0; i < partyCount; i++) {
+            votes[i] = random.nextInt(100_000);
+            listSizes[i] = 200;
+            ballotCount += votes[i];
+        }
+        int seatCount = 20_000;
+        for (ApportionmentMethod method : new ApportionmentMethod[]{ApportionmentMethod.LARGEST_REMAINDER,
+                ApportionmentMethod.D_HONDT, ApportionmentMethod.HUNTINGTON_HILL}) {
+            int[][] allocationData = method.allocate(votes, listSizes, ballotCount, seatCount, election);
+            SeatSensitivity sensitivity = method.computeSensitivity(votes, listSizes, ballotCount, seatCount,
+                    allocationData);
+            assertTrue(sensitivity.isAvailable());
+            for (int i = 0; i < partyCount; i++) {
+                assertTrue(sensitivity.getVotesToGain(i) > 0);
+            }
+            for (int party = 0; party < 3; party++) {
+                String message = method.getName() + " party " + party;
+                int seats = allocationData[4][party];
+                long toGain = sensitivity.getVotesToGain(party);
+                if (toGain != SeatSensitivity.NONE) {
+                    assertTrue(seats(method, votes, listSizes, ballotCount, seatCount, party, toGain - 1, false)
+                            <= seats, message + " gains with " + (toGain - 1));
+                    assertTrue(seats(method, votes, listSizes, ballotCount, seatCount, party, toGain, false)
+                            > seats, message + " does not gain with " + toGain);
+                }
+                long toLose = sensitivity.getVotesToLose(party);
+                if (toLose != SeatSensitivity.NONE) {
+                    assertTrue(seats(method, votes, listSizes, ballotCount, seatCount, party, 1 - toLose, true)
+                            >= seats, message + " loses with " + (toLose - 1));
+                    assertTrue(seats(method, votes, listSizes, ballotCount, seatCount, party, -toLose, true)
+                            < seats, message + " does not lose with " + toLose);
+                }
+            }
+        }
+    }
+
+    /**
+     * An implementation of Election whose tiebreak picks the first options.
+     */
+    private static class FakeElection extends Election {
+        @Override
+        public int[] tiebreak(int n, int r) {
+            int[] indices = new int[r];
+            for (int i = 0; i < r; i++) {
+                indices[i] = i;
+            }
+            return indices;
+        }
+
+        @Override
+        public void processBallotData(FileInput fin) {
+
+        }
+
+        @Override
+        protected int processHeaderData(FileInput fin) {
+            return 0;
+        }
+
+        @Override
+        protected int getVotableCount() {
+            return 0;
+        }
+
+        @Override
+        protected void recordVotes(int[] voteCounts) {
+
+        }
+
+        @Override
+        public void assignCandidateSeats() {
+
+        }
+
+        @Override
+        protected String generatePartyCandidateList() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+StreamInputTest.java
+
+Unit tests for the StreamInput class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamInputTest {
+    /**
+     * Tests that a streamed CPL election matches the same election read from a file.
+     */
+    @Test
+    @DisplayName("CPLexample.csv stream")
+    void testCPL() throws IOException {
+        Election fromFile = new CPLElection();
+        FileInput fin = new FileInput("Project1/testing/testfiles/CPLexample.csv");
+        assertFalse(fin.isOPL());
+        fromFile.processBallotData(fin);
+
+        Election fromStream = new CPLElection();
+        StreamInput sin = new StreamInput(new FileInputStream("Project1/testing/testfiles/CPLexample.csv"));
+        assertFalse(sin.isOPL());
+        fromStream.processBallotData(sin);
+
+        assertEquals(fromFile.getBallotCount(), fromStream.getBallotCount());
+        Party[] expected = fromFile.getParties();
+        Party[] actual = fromStream.getParties();
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getName(), actual[i].getName());
+            assertEquals(expected[i].getVoteCount(), actual[i].getVoteCount());
+        }
+    }
+
+    /**
+     * Tests a stream with "\r\n" line terminators that arrives a few bytes at a time.
+     */
+    @Test
+    @DisplayName("OPL trickled CRLF stream")
+    void testTrickle() {
+        String data = "OPL\r\n1\r\n4\r\n2\r\nDemocrat, Pike\r\nGreen, Lucy\r\n1,\r\n,1\r\n,1\r\n,1";
+        InputStream trickle = new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+
+        StreamInput sin = new StreamInput(trickle);
+        assertTrue(sin.isOPL());
+        Election election = new OPLElection();
+        election.processBallotData(sin);
+
+        assertEquals(4, election.getBallotCount());
+        assertEquals(1, election.getCandidates().get(0).get(0).getVoteCount());
+        assertEquals(3, election.getCandidates().get(1).get(0).getVoteCount());
+        assertEquals("Lucy", election.getCandidates().get(1).get(0).getName());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+TallyCheckpointTest.java
+
+Unit tests for checkpointed, resumable tallies.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TallyCheckpointTest {
+    /**
+     * Writes a CPL election with 4 parties and {@code ballotCount} ballots, every 13th of which is an overvote.
+     *
+     * @param file        the file to write.
+     * @param ballotCount the number of ballots.
+     * @return the file contents.
+     * @throws IOException if the file could not be written.
+     */
+    private byte[] writeElection(Path file, int ballotCount) throws IOException {
+        StringBuilder builder = new StringBuilder("CPL\n3\n" + ballotCount + "\n4\n"
+                + "Democratic, Joe, Sally\nRepublican, Allen\nIndependent, Ross\nGreen, Bethany\n");
+        for (int i = 0; i < ballotCount; i++) {
+            builder.append(i % 13 == 0 ? "1,1,,\n" : new String[]{"1,,,\n", ",1,,\n", ",,1,\n", ",,,1\n"}[i * 7 % 4]);
+        }
+        byte[] contents = builder.toString().getBytes(StandardCharsets.US_ASCII);
+        Files.write(file, contents);
+        return contents;
+    }
+
+    /**
+     * Tallies a file.
+     *
+     * @param filename the ballot file.
+     * @param interval the number of ballots between checkpoints, or 0 to not checkpoint.
+     * @return the file input after the tally.
+     */
+    private FileInput tally(String filename, long interval) {
+        FileInput fin = new FileInput(filename);
+        fin.setSpoilagePolicy(BallotStatistics.Policy.QUARANTINE);
+        if (interval > 0) {
+            fin.setCheckpointInterval(interval, 0);
+        }
+        assertFalse(fin.isOPL());
+        new CPLElection().processBallotData(fin);
+        return fin;
+    }
+
+    /**
+     * Tests that a checkpointed tally matches a plain tally and removes its sidecar once complete.
+     */
+    @Test
+    @DisplayName("complete tally")
+    void testComplete(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("ballots.csv");
+        writeElection(file, 5000);
+        FileInput expected = tally(file.toString(), 0);
+        FileInput actual = tally(file.toString(), 100);
+        assertEquals(expected.getStatistics().getValid(), actual.getStatistics().getValid());
+        assertEquals(0, actual.getCheckpoint().getResumedOffset());
+        assertFalse(Files.exists(Path.of(actual.getCheckpoint().getFilename())));
+    }
+
+    /**
+     * Tests resuming from the checkpoint left by a tally of a truncated copy of the file, cut off in the middle of
+     * a ballot line, as if the tally had been interrupted there.
+     */
+    @Test
+    @DisplayName("resume from a partial line")
+    void testResume(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("ballots.csv");
+        byte[] contents = writeElection(file, 20000);
+        Path truncated = dir.resolve("truncated.csv");
+        Files.write(truncated, Arrays.copyOf(contents, contents.length / 2 + 3));
+
+        FileInput interrupted = tally(truncated.toString(), 1000);
+        Path sidecar = Path.of(interrupted.getCheckpoint().getFilename());
+        assertTrue(Files.exists(sidecar));
+        Files.move(sidecar, Path.of(file + TallyCheckpoint.SUFFIX));
+
+        FileInput resumed = tally(file.toString(), 1000);
+        FileInput expected = tally(file.toString(), 0);
+        assertEquals(contents.length / 2 + 3, resumed.getCheckpoint().getResumedOffset());
+        assertEquals(expected.getStatistics().getValid(), resumed.getStatistics().getValid());
+        assertEquals(expected.getStatistics().getOvervotes(), resumed.getStatistics().getOvervotes());
+        assertEquals(expected.getStatistics().getQuarantined(), resumed.getStatistics().getQuarantined());
+        assertFalse(Files.exists(Path.of(file + TallyCheckpoint.SUFFIX)));
+    }
+
+    /**
+     * Tests that a checkpoint is ignored if the already-tallied part of the file has changed.
+     */
+    @Test
+    @DisplayName("changed prefix")
+    void testChangedPrefix(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("ballots.csv");
+        byte[] contents = writeElection(file, 20000);
+        Path truncated = dir.resolve("truncated.csv");
+        Files.write(truncated, Arrays.copyOf(contents, contents.length / 2));
+        FileInput interrupted = tally(truncated.toString(), 1000);
+        Files.move(Path.of(interrupted.getCheckpoint().getFilename()), Path.of(file + TallyCheckpoint.SUFFIX));
+
+        // turn the first ballot, an overvote, into a vote for the first party
+        String changed = new String(contents, StandardCharsets.US_ASCII).replaceFirst("\n1,1,,\n", "\n1,,,\n");
+        Files.writeString(file, changed);
+        FileInput expected = tally(file.toString(), 0);
+        FileInput actual = tally(file.toString(), 1000);
+        assertEquals(0, actual.getCheckpoint().getResumedOffset());
+        assertEquals(expected.getStatistics().getValid(), actual.getStatistics().getValid());
+    }
+
+    /**
+     * Tests that stream inputs refuse to checkpoint.
+     */
+    @Test
+    @DisplayName("stream input")
+    void testStream() {
+        StreamInput stream = new StreamInput(new ByteArrayInputStream(new byte[0]));
+        assertThrows(RuntimeException.class, () -> stream.setCheckpointInterval(100, 0));
+    }
+}
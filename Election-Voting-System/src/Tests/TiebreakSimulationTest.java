@@ -0,0 +1,82 @@
+/*
+TiebreakSimulationTest.java
+
+Unit tests for the TiebreakSimulation class.
+
+*/
+
+import AES.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TiebreakSimulationTest {
+    /**
+     * Tests the chi-square p-values against table values.
+     */
+    @Test
+    @DisplayName("chi-square p-values")
+    void testPValues() {
+        assertEquals(0.05, TiebreakSimulation.chiSquarePValue(3.841459, 1), 1e-6);
+        assertEquals(0.01, TiebreakSimulation.chiSquarePValue(23.209251, 10), 1e-6);
+        assertEquals(0.5, TiebreakSimulation.chiSquarePValue(99.334129, 100), 1e-6);
+        assertEquals(0.05, TiebreakSimulation.chiSquarePValue(1073.642651, 999), 1e-6);
+        assertEquals(1, TiebreakSimulation.chiSquarePValue(0, 5));
+    }
+
+    /**
+     * Tests that every set of winners is counted once per trial, and that the tiebreak passes both tests.
+     */
+    @Test
+    @DisplayName("uniform tiebreak")
+    void testUniform() {
+        TiebreakSimulation simulation = new TiebreakSimulation(6, 3, 2_000_000, 3, 16);
+        simulation.run();
+        long[] outcomes = simulation.getOutcomeCounts();
+        assertEquals(20, outcomes.length);
+        assertEquals(2_000_000, Arrays.stream(outcomes).sum());
+        assertEquals(6_000_000, Arrays.stream(simulation.getOptionCounts()).sum());
+        assertTrue(simulation.isUniform(), simulation.generateReport());
+
+        TiebreakSimulation replay = new TiebreakSimulation(6, 3, 2_000_000, 3, 16);
+        replay.run();
+        assertArrayEquals(outcomes, replay.getOutcomeCounts());
+    }
+
+    /**
+     * Tests ties too large to count every set of winners, and ties with no choice.
+     */
+    @Test
+    @DisplayName("large and trivial ties")
+    void testEdges() {
+        TiebreakSimulation large = new TiebreakSimulation(5000, 2, 1_000_000, 2, 17);
+        large.run();
+        assertNull(large.getOutcomeCounts());
+        assertTrue(large.getOptionPValue() > 0.0001);
+        assertTrue(large.generateReport().contains("4950 more options"));
+
+        TiebreakSimulation trivial = new TiebreakSimulation(4, 4, 1000, 1, 18);
+        trivial.run();
+        assertArrayEquals(new long[]{1000, 1000, 1000, 1000}, trivial.getOptionCounts());
+        assertTrue(trivial.isUniform());
+        assertThrows(RuntimeException.class, () -> new TiebreakSimulation(2, 3, 10, 1, 0));
+    }
+
+    /**
+     * Tests that an election records the ties it broke.
+     */
+    @Test
+    @DisplayName("election ties")
+    void testElectionTies() {
+        Election election = new CPLElection();
+        election.tiebreak(5, 2);
+        election.tiebreak(1, 1);
+        List<int[]> ties = election.getTies();
+        assertEquals(1, ties.size());
+        assertArrayEquals(new int[]{5, 2}, ties.get(0));
+    }
+}
@@ -83,6 +83,21 @@ class TiebreakTest {
 
         }
 
+        @Override
+        protected int processHeaderData(FileInput fin) {
+            return 0;
+        }
+
+        @Override
+        protected int getVotableCount() {
+            return 0;
+        }
+
+        @Override
+        protected void recordVotes(int[] voteCounts) {
+
+        }
+
         @Override
         public void assignCandidateSeats() {
 
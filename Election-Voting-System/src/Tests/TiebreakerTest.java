@@ -0,0 +1,105 @@
+/*
+TiebreakerTest.java
+
+Unit tests for the Tiebreaker class.
+
+*/
+
+import AES.Tiebreaker;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TiebreakerTest {
+    /**
+     * Tests that a seed replays the same tiebreaks, for both random sources.
+     */
+    @Test
+    @DisplayName("replay from seed")
+    void testReplay() {
+        for (Tiebreaker.Source source : Tiebreaker.Source.values()) {
+            Tiebreaker original = new Tiebreaker(source);
+            Tiebreaker replay = new Tiebreaker(source, original.getSeed());
+            for (int n = 1; n < 50; n++) {
+                assertArrayEquals(original.choose(n, 1 + n / 3), replay.choose(n, 1 + n / 3), source.toString());
+            }
+            // choosing 1 of 1 is not a tie
+            assertEquals(48, replay.getTiebreakCount());
+            assertTrue(replay.generateReport().contains(" - Seed            : " + original.getSeed() + "\n"));
+        }
+    }
+
+    /**
+     * Tests that each option is chosen about equally often, and that choosing every option returns them all.
+     */
+    @Test
+    @DisplayName("fair choice")
+    void testFair() {
+        Tiebreaker tiebreaker = new Tiebreaker(Tiebreaker.Source.SPLITTABLE, 13);
+        int[] counts = new int[6];
+        for (int i = 0; i < 60_000; i++) {
+            for (int index : tiebreaker.choose(6, 2)) {
+                counts[index]++;
+            }
+        }
+        for (int count : counts) {
+            assertTrue(Math.abs(count - 20_000) < 1_000, "count " + count);
+        }
+        int drawn = tiebreaker.getTiebreakCount();
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, tiebreaker.choose(5, 5));
+        assertEquals(drawn, tiebreaker.getTiebreakCount());
+        assertThrows(RuntimeException.class, () -> tiebreaker.choose(3, 4));
+        assertThrows(RuntimeException.class, () -> tiebreaker.choose(3, 0));
+    }
+
+    /**
+     * Tests that tiebreaks among a large group, such as thousands of candidates without votes, keep no state the size
+     * of the group, and still choose fairly across it.
+     */
+    @Test
+    @DisplayName("large groups")
+    void testLarge() {
+        ScratchTiebreaker tiebreaker = new ScratchTiebreaker();
+        int lowerHalf = 0;
+        for (int i = 0; i < 100_000; i++) {
+            int[] result = tiebreaker.choose(Integer.MAX_VALUE, 3);
+            assertTrue(result[0] >= 0 && result[0] < result[1] && result[1] < result[2]);
+            for (int index : result) {
+                if (index < Integer.MAX_VALUE / 2) {
+                    lowerHalf++;
+                }
+            }
+        }
+        assertTrue(Math.abs(lowerHalf - 150_000) < 2_000, "lower half " + lowerHalf);
+        assertEquals(100_000, tiebreaker.getTiebreakCount());
+        // a power of two of at least 2r slots
+        assertEquals(8, tiebreaker.getScratchLength());
+
+        tiebreaker.choose(1_000_000, 1_000);
+        assertEquals(2_048, tiebreaker.getScratchLength());
+        tiebreaker.choose(1_000_000, 3);
+        assertEquals(2_048, tiebreaker.getScratchLength());
+    }
+
+    /**
+     * A Tiebreaker that exposes the size of its scratch table.
+     */
+    private static class ScratchTiebreaker extends Tiebreaker {
+        /**
+         * Constructs a ScratchTiebreaker with a fixed seed.
+         */
+        ScratchTiebreaker() {
+            super(Source.SPLITTABLE, 17);
+        }
+
+        /**
+         * Gets the number of slots in the hash table of chosen options.
+         *
+         * @return the length of the table.
+         */
+        int getScratchLength() {
+            return chosen.length;
+        }
+    }
+}